@@ -0,0 +1,105 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query;
+
+import java.util.Random;
+
+/**
+ * Reproducible data sets for the benchmarks. All generators use a fixed seed,
+ * so that a data set of a given size is identical across runs and versions.
+ */
+public final class BenchmarkData {
+
+  public static final long SEED = 4711;
+
+  private static final String[] WORDS = { "alpha", "beta", "gamma", "delta", "epsilon", "zeta", "eta", "theta", "iota",
+      "kappa", "lambda", "mu" };
+
+  private static final String[] CATEGORIES = { "books", "music", "movies", "games", "garden", "tools" };
+
+  private BenchmarkData() {
+  }
+
+  private static String text(Random rnd, int words) {
+    StringBuilder s = new StringBuilder();
+    for (int i = 0; i < words; i++) {
+      if (i > 0) {
+        s.append(' ');
+      }
+      s.append(WORDS[rnd.nextInt(WORDS.length)]);
+    }
+    return s.toString();
+  }
+
+  /**
+   * Returns an XML document with the given number of
+   * <code>item</code> elements.
+   */
+  public static String xml(int items) {
+    Random rnd = new Random(SEED);
+    StringBuilder s = new StringBuilder("<site><items>");
+    for (int i = 0; i < items; i++) {
+      s.append("<item id=\"i").append(i).append("\" category=\"").append(CATEGORIES[rnd.nextInt(CATEGORIES.length)]);
+      s.append("\"><name>").append(text(rnd, 2)).append("</name>");
+      s.append("<price>").append(rnd.nextInt(10000) / 100.0).append("</price>");
+      s.append("<quantity>").append(rnd.nextInt(100)).append("</quantity>");
+      s.append("<description><text>").append(text(rnd, 12)).append("<bold>").append(text(rnd, 1));
+      s.append("</bold>").append(text(rnd, 6)).append("</text></description></item>");
+    }
+    s.append("</items></site>");
+    return s.toString();
+  }
+
+  /**
+   * Returns a JSON array with the given number of objects.
+   */
+  public static String json(int objects) {
+    Random rnd = new Random(SEED);
+    StringBuilder s = new StringBuilder("[");
+    for (int i = 0; i < objects; i++) {
+      if (i > 0) {
+        s.append(',');
+      }
+      s.append("{\"id\":").append(i);
+      s.append(",\"category\":\"").append(CATEGORIES[rnd.nextInt(CATEGORIES.length)]).append('"');
+      s.append(",\"name\":\"").append(text(rnd, 2)).append('"');
+      s.append(",\"price\":").append(rnd.nextInt(10000) / 100.0);
+      s.append(",\"available\":").append(rnd.nextBoolean());
+      s.append(",\"tags\":[");
+      int tags = rnd.nextInt(4);
+      for (int j = 0; j < tags; j++) {
+        s.append((j > 0) ? ",\"" : "\"").append(WORDS[rnd.nextInt(WORDS.length)]).append('"');
+      }
+      s.append("],\"seller\":{\"name\":\"").append(text(rnd, 1)).append("\",\"rating\":").append(rnd.nextInt(5));
+      s.append("},\"comment\":").append(rnd.nextInt(4) == 0 ? "null" : "\"" + text(rnd, 8) + "\"");
+      s.append('}');
+    }
+    s.append(']');
+    return s.toString();
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query;
+
+import java.util.concurrent.TimeUnit;
+
+import io.brackit.query.atomic.Int32;
+import io.brackit.query.atomic.QNm;
+import io.brackit.query.block.Block;
+import io.brackit.query.block.BlockChain;
+import io.brackit.query.block.ForBind;
+import io.brackit.query.block.GroupBy;
+import io.brackit.query.block.LetBind;
+import io.brackit.query.block.OrderBy;
+import io.brackit.query.block.Select;
+import io.brackit.query.expr.ArithmeticExpr;
+import io.brackit.query.expr.ArithmeticExpr.ArithmeticOp;
+import io.brackit.query.expr.BlockExpr;
+import io.brackit.query.expr.BoundVariable;
+import io.brackit.query.expr.RangeExpr;
+import io.brackit.query.expr.VCmpExpr;
+import io.brackit.query.jdm.Expr;
+import io.brackit.query.jdm.Item;
+import io.brackit.query.jdm.Iter;
+import io.brackit.query.jdm.Sequence;
+import io.brackit.query.operator.TupleImpl;
+import io.brackit.query.util.Cmp;
+import io.brackit.query.util.aggregator.Aggregate;
+import io.brackit.query.util.sort.Ordering.OrderModifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures FLWOR pipelines with for, let, where, order by and group by
+ * clauses. The <code>operator</code> mode evaluates compiled queries with the
+ * pull-based operators, the <code>block</code> mode evaluates equivalent block
+ * chains with the push-based, parallel block operators.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FLWORBenchmark {
+
+  @Param({ "operator", "block" })
+  public String mode;
+
+  @Param({ "100000" })
+  public int size;
+
+  private Query orderBy;
+
+  private Query groupBy;
+
+  private Expr orderByBlock;
+
+  private Expr groupByBlock;
+
+  @Setup
+  public void setup() {
+    orderBy = new Query("for $i in 1 to " + size + " let $k := $i mod 100 where $k lt 50 "
+                            + "order by $k descending, $i return $i");
+    groupBy = new Query("for $i in 1 to " + size + " let $k := $i mod 100 group by $k return count($i)");
+
+    // $i at position 0, $k at position 1
+    BoundVariable i = new BoundVariable(new QNm("i"), 0);
+    BoundVariable k = new BoundVariable(new QNm("k"), 1);
+    Expr mod = new ArithmeticExpr(ArithmeticOp.MOD, i, new Int32(100));
+
+    ForBind forBind = new ForBind(new RangeExpr(Int32.ONE, new Int32(size)), false);
+    forBind.bindVariable(true);
+    Select select = new Select(new VCmpExpr(Cmp.lt, k, new Int32(50)));
+    OrderBy order = new OrderBy(new Expr[] { k, i },
+                                new OrderModifier[] { new OrderModifier(false, false, null),
+                                    new OrderModifier(true, false, null) });
+    orderByBlock = new BlockExpr(new BlockChain(new Block[] { forBind, new LetBind(mod), select, order }), i, true);
+
+    ForBind forBind2 = new ForBind(new RangeExpr(Int32.ONE, new Int32(size)), false);
+    forBind2.bindVariable(true);
+    GroupBy group = new GroupBy(Aggregate.SEQUENCE, new Aggregate[] { Aggregate.COUNT }, 1, false);
+    group.group(0).setPos(1);
+    group.aggregate(0).setPos(0);
+    // $i, $k, count($i)
+    groupByBlock = new BlockExpr(new BlockChain(new Block[] { forBind2, new LetBind(mod), group }),
+                                 new BoundVariable(new QNm("c"), 2),
+                                 true);
+  }
+
+  private static int consume(Sequence s) {
+    int count = 0;
+    try (Iter it = s.iterate()) {
+      Item item;
+      while ((item = it.next()) != null) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  @Benchmark
+  public int orderBy() {
+    QueryContext ctx = new BrackitQueryContext();
+    Sequence s = mode.equals("operator") ? orderBy.evaluate(ctx) : orderByBlock.evaluate(ctx, new TupleImpl());
+    return consume(s);
+  }
+
+  @Benchmark
+  public int groupBy() {
+    QueryContext ctx = new BrackitQueryContext();
+    Sequence s = mode.equals("operator") ? groupBy.evaluate(ctx) : groupByBlock.evaluate(ctx, new TupleImpl());
+    return consume(s);
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.compiler;
+
+import java.util.concurrent.TimeUnit;
+
+import io.brackit.query.compiler.parser.XQParser;
+import io.brackit.query.module.Module;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures parsing and the complete compilation of queries.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompileBenchmark {
+
+  private static final String[] QUERIES = {
+      // simple path and arithmetic
+      "1 + 2 * 3",
+      // FLWOR with join, grouping and ordering
+      "for $a in (1 to 100) for $b in (1 to 100) let $c := $a mod 10 where $a = $b group by $c "
+          + "order by $c descending return <group key='{$c}'>{count($a)}</group>",
+      // JSON construction and navigation
+      "let $o := {\"a\": [1, 2, {\"b\": \"c\"}], \"d\": {\"e\": true}} "
+          + "return for $x in $o.a[] where $x instance of object() return $x.b",
+      // prolog with functions and nested FLWORs
+      "declare function local:fib($n as xs:integer) as xs:integer { "
+          + "if ($n < 2) then $n else local:fib($n - 1) + local:fib($n - 2) }; "
+          + "for $i in 1 to 10 let $f := local:fib($i) where some $x in (1 to $i) satisfies $x * $x = $f "
+          + "return ($i, $f)" };
+
+  @Param({ "0", "1", "2", "3" })
+  public int query;
+
+  @Benchmark
+  public Object parse() {
+    return new XQParser(QUERIES[query]).parse();
+  }
+
+  @Benchmark
+  public Module compile() {
+    return new CompileChain().compile(QUERIES[query]);
+  }
+}
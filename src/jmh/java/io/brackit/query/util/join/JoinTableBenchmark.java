@@ -0,0 +1,132 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.util.join;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import io.brackit.query.atomic.Atomic;
+import io.brackit.query.atomic.Int32;
+import io.brackit.query.atomic.Str;
+import io.brackit.query.jdm.Sequence;
+import io.brackit.query.jdm.Type;
+import io.brackit.query.util.join.AbstractJoinTable.TValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the {@link HashJoinTable} with the open addressing tables for
+ * building and probing a join table with integer and string keys.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JoinTableBenchmark {
+
+  @Param({ "hash", "open" })
+  public String table;
+
+  @Param({ "INR", "STR" })
+  public String keyType;
+
+  @Param({ "100000" })
+  public int rows;
+
+  // number of build rows per distinct key
+  @Param({ "1", "8" })
+  public int duplicates;
+
+  private Atomic[] buildKeys;
+
+  private Atomic[] probeKeys;
+
+  private Sequence[][] bindings;
+
+  private AbstractJoinTable built;
+
+  @Setup
+  public void setup() {
+    Random rnd = new Random(42);
+    int distinct = Math.max(rows / duplicates, 1);
+    buildKeys = new Atomic[rows];
+    bindings = new Sequence[rows][];
+    for (int i = 0; i < rows; i++) {
+      buildKeys[i] = key(rnd.nextInt(distinct));
+      bindings[i] = new Sequence[] { new Int32(i) };
+    }
+    probeKeys = new Atomic[rows];
+    for (int i = 0; i < rows; i++) {
+      // every second probe misses
+      probeKeys[i] = key(rnd.nextInt(2 * distinct));
+    }
+    built = build();
+  }
+
+  private Atomic key(int i) {
+    return keyType.equals("INR") ? new Int32(i) : new Str("key" + i);
+  }
+
+  private AbstractJoinTable create() {
+    if (table.equals("hash")) {
+      return new HashJoinTable();
+    }
+    return keyType.equals("INR") ? new NumericHashJoinTable(Type.INR) : new StringHashJoinTable(Type.STR);
+  }
+
+  @Benchmark
+  public AbstractJoinTable build() {
+    AbstractJoinTable t = create();
+    for (int i = 0; i < rows; i++) {
+      t.add(buildKeys[i], i + 1, bindings[i]);
+    }
+    return t;
+  }
+
+  @Benchmark
+  public int probe() {
+    int count = 0;
+    for (int i = 0; i < rows; i++) {
+      FastList<TValue> matches = new FastList<>();
+      built.lookup(matches, probeKeys[i]);
+      count += matches.getSize();
+    }
+    return count;
+  }
+}
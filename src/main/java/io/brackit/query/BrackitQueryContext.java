@@ -27,11 +27,15 @@
  */
 package io.brackit.query;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
+import io.brackit.query.block.FJControl;
 import io.brackit.query.jdm.Item;
 import io.brackit.query.jdm.Sequence;
+import io.brackit.query.jdm.Statistics;
+import io.brackit.query.jdm.StatisticsProvider;
 import io.brackit.query.jdm.json.JsonCollection;
 import io.brackit.query.jdm.json.JsonStore;
 import io.brackit.query.jdm.node.Node;
@@ -64,13 +68,15 @@ public class BrackitQueryContext implements QueryContext {
 
   private final JsonStore jsonStore;
 
+  private final StatisticsProvider statistics;
+
   private UpdateList updates;
 
   private Item extCtxItem;
 
   private ItemType extCtxItemType;
 
-  private Map<QNm, Sequence> externalVars;
+  private volatile Map<QNm, Sequence> externalVars;
 
   private Node<?> defaultDocument;
 
@@ -86,32 +92,54 @@ public class BrackitQueryContext implements QueryContext {
 
   private final DTD implicitTimezone = AbstractTimeInstant.LOCAL_TIMEZONE;
 
+  private FJControl fjControl;
+
   public BrackitQueryContext() {
     this.nodeFactory = FACTORY;
     this.nodeStore = new SimpleNodeStore();
     this.jsonStore = new SimpleJsonStore();
+    this.statistics = statistics(nodeStore, jsonStore);
   }
 
   public BrackitQueryContext(NodeStore store) {
     this.nodeFactory = FACTORY;
     this.nodeStore = store;
     this.jsonStore = new SimpleJsonStore();
+    this.statistics = statistics(nodeStore, jsonStore);
   }
 
   public BrackitQueryContext(JsonStore store) {
     this.nodeFactory = FACTORY;
     this.nodeStore = new SimpleNodeStore();
     this.jsonStore = store;
+    this.statistics = statistics(nodeStore, jsonStore);
   }
 
   public BrackitQueryContext(NodeStore nodeStore, JsonStore jsonStore) {
     this.nodeFactory = FACTORY;
     this.nodeStore = nodeStore;
     this.jsonStore = jsonStore;
+    this.statistics = statistics(nodeStore, jsonStore);
+  }
+
+  /**
+   * Combines the statistics of both stores. Collections of the JSON store
+   * take precedence over node collections with the same name.
+   */
+  private static StatisticsProvider statistics(NodeStore nodeStore, JsonStore jsonStore) {
+    StatisticsProvider nodes = (nodeStore instanceof StatisticsProvider provider) ? provider : null;
+    StatisticsProvider json = (jsonStore instanceof StatisticsProvider provider) ? provider : null;
+    if ((nodes == null) || (json == null)) {
+      return (json != null) ? json : nodes;
+    }
+    return name -> {
+      Statistics statistics = json.getStatistics(name);
+      return (statistics != null) ? statistics : nodes.getStatistics(name);
+    };
   }
 
   @Override
-  public void addPendingUpdate(UpdateOp op) {
+  public synchronized void addPendingUpdate(UpdateOp op) {
     if (updates == null) {
       updates = new UpdateList();
     }
@@ -136,9 +164,10 @@ public class BrackitQueryContext implements QueryContext {
   }
 
   @Override
-  public void bind(QNm name, Sequence sequence) {
+  public synchronized void bind(QNm name, Sequence sequence) {
     if (externalVars == null) {
-      externalVars = new HashMap<>(3);
+      // variables may be bound concurrently by parallel blocks
+      externalVars = Collections.synchronizedMap(new HashMap<>(3));
     }
     externalVars.put(name, sequence);
   }
@@ -240,4 +269,23 @@ public class BrackitQueryContext implements QueryContext {
   public JsonStore getJsonItemStore() {
     return jsonStore;
   }
+
+  @Override
+  public FJControl getFJControl() {
+    return (fjControl != null) ? fjControl : FJControl.getDefault();
+  }
+
+  /**
+   * Sets dedicated execution resources for this query, e.g., to run it with
+   * its own degree of parallelism. If <code>null</code>, the query shares the
+   * default resources with other queries.
+   */
+  public void setFJControl(FJControl fjControl) {
+    this.fjControl = fjControl;
+  }
+
+  @Override
+  public StatisticsProvider getStatistics() {
+    return statistics;
+  }
 }
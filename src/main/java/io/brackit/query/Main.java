@@ -92,6 +92,7 @@ public class Main {
       Config config = parseParams(args);
       QueryContext ctx = new BrackitQueryContext();
       CompileChain compileChain = new CompileChain();
+      compileChain.setStatistics(ctx.getStatistics());
 
       String file = config.getValue("-f");
       if (file != null) {
@@ -40,6 +40,7 @@ import io.brackit.query.util.Cfg;
 import io.brackit.query.util.serialize.Serializer;
 import io.brackit.query.util.serialize.StringSerializer;
 import io.brackit.query.compiler.CompileChain;
+import io.brackit.query.compiler.PlanCache;
 
 /**
  * @author Sebastian Baechle
@@ -57,14 +58,42 @@ public class Query {
     this.module = module;
   }
 
+  /**
+   * Compiles the given query or takes the compiled module from the shared
+   * {@link PlanCache}, if enabled.
+   */
   public Query(String query) {
-    this.module = new CompileChain().compile(query);
+    this(PlanCache.shared(), new CompileChain(), query);
+  }
+
+  /**
+   * Compiles the given query for the given context, i.e., optimizes it with
+   * the statistics of the stores of the context, or takes the compiled
+   * module from the shared {@link PlanCache}, if enabled.
+   */
+  public Query(QueryContext ctx, String query) {
+    this(PlanCache.shared(), chain(ctx), query);
+  }
+
+  private static CompileChain chain(QueryContext ctx) {
+    CompileChain chain = new CompileChain();
+    chain.setStatistics(ctx.getStatistics());
+    return chain;
   }
 
   public Query(CompileChain chain, String query) {
     this.module = chain.compile(query);
   }
 
+  /**
+   * Takes the compiled module for the given query from the given cache or
+   * compiles it with the given chain. If the cache is <code>null</code>,
+   * the query is always compiled.
+   */
+  public Query(PlanCache cache, CompileChain chain, String query) {
+    this.module = (cache != null) ? cache.compile(chain, query) : chain.compile(query);
+  }
+
   public Module getModule() {
     return module;
   }
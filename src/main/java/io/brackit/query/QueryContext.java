@@ -2,6 +2,7 @@ package io.brackit.query;
 
 import io.brackit.query.jdm.Item;
 import io.brackit.query.jdm.Sequence;
+import io.brackit.query.jdm.StatisticsProvider;
 import io.brackit.query.jdm.json.JsonCollection;
 import io.brackit.query.jdm.json.JsonStore;
 import io.brackit.query.jdm.node.Node;
@@ -11,6 +12,7 @@ import io.brackit.query.jdm.node.NodeStore;
 import io.brackit.query.jdm.type.ItemType;
 import io.brackit.query.update.UpdateList;
 import io.brackit.query.update.op.UpdateOp;
+import io.brackit.query.block.FJControl;
 import io.brackit.query.atomic.AnyURI;
 import io.brackit.query.atomic.DTD;
 import io.brackit.query.atomic.Date;
@@ -73,4 +75,21 @@ public interface QueryContext {
 
   JsonStore getJsonItemStore();
 
+  /**
+   * Returns the execution resources for the parallel evaluation of this
+   * query.
+   */
+  default FJControl getFJControl() {
+    return FJControl.getDefault();
+  }
+
+  /**
+   * Returns the statistics of the stores of this context for the cost-based
+   * optimization of queries, or <code>null</code> if there are none.
+   * Compiled plans are cached per statistics provider, so implementations
+   * should return the same instance for all calls.
+   */
+  default StatisticsProvider getStatistics() {
+    return null;
+  }
 }
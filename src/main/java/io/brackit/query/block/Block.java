@@ -34,7 +34,7 @@ import io.brackit.query.QueryException;
  * @author Sebastian Baechle
  */
 public interface Block {
-  Sink create(QueryContext ctx, Sink sink) throws QueryException;
+  Sink create(QueryContext ctx, FJControl control, Sink sink) throws QueryException;
 
   int outputWidth(int inputWidth);
 }
\ No newline at end of file
@@ -57,10 +57,10 @@ public class BlockChain implements Block {
   }
 
   @Override
-  public Sink create(QueryContext ctx, Sink sink) throws QueryException {
+  public Sink create(QueryContext ctx, FJControl control, Sink sink) throws QueryException {
     Sink s = sink;
     for (int i = blocks.length - 1; i >= 0; i--) {
-      s = blocks[i].create(ctx, s);
+      s = blocks[i].create(ctx, control, s);
     }
     return s;
   }
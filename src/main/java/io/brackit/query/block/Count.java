@@ -40,8 +40,8 @@ import io.brackit.query.Tuple;
 public class Count implements Block {
 
   @Override
-  public Sink create(QueryContext ctx, Sink sink) throws QueryException {
-    return new CountSink(sink);
+  public Sink create(QueryContext ctx, FJControl control, Sink sink) throws QueryException {
+    return new CountSink(control.getPermits(), sink);
   }
 
   @Override
@@ -53,8 +53,8 @@ public class Count implements Block {
     final Sink sink;
     final Counter pos;
 
-    CountSink(Sink sink) {
-      super(FJControl.PERMITS);
+    CountSink(int permits, Sink sink) {
+      super(permits);
       this.sink = sink;
       this.pos = new Counter();
     }
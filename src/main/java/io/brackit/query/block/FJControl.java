@@ -27,25 +27,251 @@
  */
 package io.brackit.query.block;
 
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import io.brackit.query.util.Cfg;
 import io.brackit.query.util.forkjoin.Pool;
+import io.brackit.query.util.forkjoin.Worker;
 import io.brackit.query.util.forkjoin.WorkerFactory;
 
 /**
+ * Execution resources for the parallel evaluation of blocks, i.e., a
+ * fork/join pool and the permit budget of serializing sinks.
+ * <p>
+ * Queries use the default instance unless their context provides a
+ * dedicated one, e.g., to give a heavy analytic query its own degree of
+ * parallelism. A query leases its instance with {@link #lease()} once per
+ * evaluation of a block and passes it to all blocks and sinks, so that
+ * replacing the default instance with {@link #resizePool(int)} does not
+ * affect running queries. The pool of a replaced instance is shut down as
+ * soon as the last query using it finished.
+ * <p>
+ * The default instance does not let concurrent queries compete for the
+ * same workers. Each query gets a lane, i.e., a pool of the default size of
+ * its own, so a query that saturates its workers cannot block the others,
+ * which get an equal share of the processors from the operating system.
+ * The first query uses the pool of the default instance itself and
+ * concurrent ones use additional lanes, which are kept for reuse up to
+ * {@link #IDLE_LANES}. Nested evaluations stay in the lane of their query.
+ * Queries sharing a dedicated instance compete for its workers.
+ *
  * @author Sebastian Baechle
  */
 public class FJControl {
   public static int POOL_SIZE = Cfg.asInt("org.brackit.xquery.poolsize", Runtime.getRuntime().availableProcessors());
-  public static WorkerFactory FACTORY = new WorkerFactory();
-  public static Pool POOL = new Pool(POOL_SIZE, FACTORY);
   public static int PERMITS = 30000;
 
-  public static void resizePool(int newSize) {
+  public static final String IDLE_LANES_CFG = "org.brackit.xquery.pool.idleLanes";
+
+  /**
+   * Maximum number of unused lanes the default instance keeps for reuse.
+   */
+  public static int IDLE_LANES = Cfg.asInt(IDLE_LANES_CFG, 2);
+
+  /**
+   * Shared executor for pipelined producers, which may block while waiting
+   * for their consumers and must therefore not occupy fork/join workers.
+   */
+  public static final ExecutorService PIPELINE = Executors.newCachedThreadPool(new ThreadFactory() {
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, "brackit-pipeline-" + count.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    }
+  });
+
+  private static volatile FJControl DEFAULT;
+
+  private final Pool pool;
+
+  private final int permits;
+
+  // number of running evaluations; negative once shut down
+  private final AtomicInteger active = new AtomicInteger();
+
+  private volatile boolean retired;
+
+  // instance this lane belongs to; null if this is not a lane
+  private final FJControl owner;
+
+  // lanes in use or kept for reuse; null if this instance has no lanes
+  private final CopyOnWriteArrayList<FJControl> lanes;
+
+  private final ConcurrentLinkedQueue<FJControl> idle;
+
+  public FJControl(int poolSize, int permits) {
+    this(poolSize, permits, false, null);
+  }
+
+  FJControl(int poolSize, int permits, boolean laned, FJControl owner) {
+    if (poolSize <= 0) {
+      throw new IllegalArgumentException("Illegal pool size: " + poolSize);
+    }
+    this.pool = new Pool(poolSize, new WorkerFactory());
+    this.permits = permits;
+    this.owner = owner;
+    this.lanes = laned ? new CopyOnWriteArrayList<>() : null;
+    this.idle = laned ? new ConcurrentLinkedQueue<>() : null;
+  }
+
+  public static FJControl getDefault() {
+    FJControl control = DEFAULT;
+    if (control == null) {
+      synchronized (FJControl.class) {
+        control = DEFAULT;
+        if (control == null) {
+          control = new FJControl(POOL_SIZE, PERMITS, true, null);
+          DEFAULT = control;
+        }
+      }
+    }
+    return control;
+  }
+
+  /**
+   * Replaces the default instance with a new one with the given pool size.
+   * Queries, which are currently running with the old instance, are not
+   * affected.
+   */
+  public static synchronized void resizePool(int newSize) {
     if (newSize <= 0) {
       throw new IllegalArgumentException("Illegal pool size: " + newSize);
     }
-    POOL.shutdown();
+    FJControl old = DEFAULT;
     POOL_SIZE = newSize;
-    POOL = new Pool(POOL_SIZE, FACTORY);
+    DEFAULT = new FJControl(newSize, PERMITS, true, null);
+    if (old != null) {
+      old.retire();
+    }
+  }
+
+  public Pool getPool() {
+    return pool;
+  }
+
+  public int getPermits() {
+    return permits;
+  }
+
+  /**
+   * Registers an evaluation and returns the instance it must use, which is
+   * either this instance or one of its lanes. The evaluation must be
+   * deregistered with {@link #release()} on the returned instance.
+   *
+   * @return <code>null</code> if this instance was already shut down and
+   * must not be used anymore
+   */
+  public FJControl lease() {
+    if (lanes == null) {
+      return acquire() ? this : null;
+    }
+    if (Thread.currentThread() instanceof Worker worker) {
+      // nested evaluations stay in the lane of their query
+      Pool current = worker.getPool();
+      if ((current == pool) && (acquire())) {
+        return this;
+      }
+      for (FJControl lane : lanes) {
+        if ((lane.pool == current) && (lane.acquire())) {
+          return lane;
+        }
+      }
+    }
+    if (active.compareAndSet(0, 1)) {
+      return this;
+    }
+    for (FJControl lane = idle.poll(); lane != null; lane = idle.poll()) {
+      if (lane.acquire()) {
+        return lane;
+      }
+    }
+    if ((retired) || (active.get() < 0)) {
+      return null;
+    }
+    FJControl lane = new FJControl(pool.getSize(), permits, false, this);
+    lane.acquire();
+    lanes.add(lane);
+    return lane;
+  }
+
+  /**
+   * Registers an evaluation using this instance.
+   *
+   * @return <code>false</code> if this instance was already shut down and
+   * must not be used anymore
+   */
+  public boolean acquire() {
+    while (true) {
+      int n = active.get();
+      if (n < 0) {
+        return false;
+      }
+      if (active.compareAndSet(n, n + 1)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Deregisters an evaluation and shuts down the pool if this instance was
+   * retired and no other evaluation is running.
+   */
+  public void release() {
+    if (active.decrementAndGet() == 0) {
+      if (owner != null) {
+        owner.recycle(this);
+      } else if (retired) {
+        tryShutdown();
+      }
+    }
+  }
+
+  /**
+   * Keeps an unused lane for reuse or shuts it down.
+   */
+  private void recycle(FJControl lane) {
+    if ((retired) || (idle.size() >= IDLE_LANES)) {
+      lanes.remove(lane);
+      lane.retire();
+      return;
+    }
+    idle.add(lane);
+    if (retired) {
+      // retired concurrently
+      retireIdleLanes();
+    }
+  }
+
+  private void retireIdleLanes() {
+    for (FJControl lane = idle.poll(); lane != null; lane = idle.poll()) {
+      lanes.remove(lane);
+      lane.retire();
+    }
+  }
+
+  /**
+   * Shuts down the pool as soon as no evaluation is using it anymore.
+   * Lanes in use are shut down as soon as their query finished.
+   */
+  public void retire() {
+    retired = true;
+    if (idle != null) {
+      retireIdleLanes();
+    }
+    tryShutdown();
+  }
+
+  private void tryShutdown() {
+    if (active.compareAndSet(0, -1)) {
+      pool.shutdown();
+    }
   }
-}
\ No newline at end of file
+}
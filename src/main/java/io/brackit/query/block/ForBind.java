@@ -32,6 +32,7 @@ import java.util.Deque;
 
 import io.brackit.query.atomic.Int32;
 import io.brackit.query.atomic.IntNumeric;
+import io.brackit.query.ErrorCode;
 import io.brackit.query.QueryContext;
 import io.brackit.query.QueryException;
 import io.brackit.query.Tuple;
@@ -83,8 +84,8 @@ public class ForBind implements Block {
   }
 
   @Override
-  public Sink create(QueryContext ctx, Sink sink) throws QueryException {
-    return new ForBindSink(ctx, sink);
+  public Sink create(QueryContext ctx, FJControl control, Sink sink) throws QueryException {
+    return new ForBindSink(ctx, control, sink);
   }
 
   public void bindVariable(boolean bindVariable) {
@@ -95,13 +96,45 @@ public class ForBind implements Block {
     this.bindPos = bindPos;
   }
 
+  /**
+   * Joins a forked task and returns the error to report for it and its
+   * siblings. The pool only records the error of a failed task, so it must
+   * be rethrown by the joining task. A genuine error is preferred over the
+   * abort that siblings raise after observing it.
+   */
+  private static QueryException joinTask(Task task, boolean serial, QueryException error) {
+    if (serial) {
+      task.joinSerial();
+    } else {
+      task.join();
+    }
+    Throwable e = task.getError();
+    if (e == null) {
+      return error;
+    }
+    QueryException qe = (e instanceof QueryException) ? (QueryException) e
+        : new QueryException(e, ErrorCode.BIT_DYN_INT_ERROR);
+    if ((error == null) || (isAbort(error) && !isAbort(qe))) {
+      return qe;
+    }
+    return error;
+  }
+
+  private static boolean isAbort(QueryException e) {
+    return ErrorCode.BIT_DYN_ABORTED_ERROR.equals(e.getCode());
+  }
+
   private class ForBindTask extends Task {
+    final QueryContext ctx;
+    final FJControl control;
     final Tuple t;
     Iter it;
     Sink sink;
     IntNumeric pos = (bindPos) ? Int32.ZERO : null;
 
-    public ForBindTask(Sink sink, Tuple t, Iter it) {
+    public ForBindTask(QueryContext ctx, FJControl control, Sink sink, Tuple t, Iter it) {
+      this.ctx = ctx;
+      this.control = control;
       this.sink = sink;
       this.t = t;
       this.it = it;
@@ -113,30 +146,45 @@ public class ForBind implements Block {
       if (split.tail == null) {
         process(split.head);
       } else if (!split.serial) {
-        ForBindTask task1 = new ForBindTask(sink, t, split.head);
-        ForBindTask task2 = new ForBindTask(sink.fork(), t, split.tail);
+        ForBindTask task1 = new ForBindTask(ctx, control, sink, t, split.head);
+        ForBindTask task2 = new ForBindTask(ctx, control, sink.fork(), t, split.tail);
         task2.fork();
-        task1.compute();
-        task2.join();
+        try {
+          task1.compute();
+        } catch (QueryException e) {
+          throw joinTask(task2, false, e);
+        }
+        QueryException error = joinTask(task2, false, null);
+        if (error != null) {
+          throw error;
+        }
       } else {
         final Deque<Task> queue = new ArrayDeque<>();
+        QueryException error = null;
         while (true) {
-          ForBindTask task = new ForBindTask(sink, t, split.head);
+          ForBindTask task = new ForBindTask(ctx, control, sink, t, split.head);
           if (split.tail != null) {
             sink = sink.fork();
           }
-          FJControl.POOL.dispatch(task);
+          control.getPool().dispatch(task);
           queue.add(task);
           if (split.tail == null) {
             break;
           }
           if (queue.size() == maxQueue) {
-            queue.poll().joinSerial();
+            error = joinTask(queue.poll(), true, error);
+            if (error != null) {
+              split.tail.close();
+              break;
+            }
           }
           split = split.tail.split(min, max);
         }
         for (Task t = queue.poll(); t != null; t = queue.poll()) {
-          t.joinSerial();
+          error = joinTask(t, true, error);
+        }
+        if (error != null) {
+          throw error;
         }
       }
     }
@@ -182,13 +230,15 @@ public class ForBind implements Block {
 
   private class OutputTask extends Task {
     private final QueryContext ctx;
+    private final FJControl control;
     private final Tuple[] buf;
     private final int start;
     private final int end;
     private Sink sink;
 
-    public OutputTask(QueryContext ctx, Sink sink, Tuple[] buf, int start, int end) {
+    public OutputTask(QueryContext ctx, FJControl control, Sink sink, Tuple[] buf, int start, int end) {
       this.ctx = ctx;
+      this.control = control;
       this.sink = sink;
       this.buf = buf;
       this.start = start;
@@ -199,18 +249,31 @@ public class ForBind implements Block {
     public void compute() throws QueryException {
       if (end - start > splitIn) {
         int mid = start + ((end - start) / 2);
-        OutputTask a = new OutputTask(ctx, sink.fork(), buf, mid, end);
-        OutputTask b = new OutputTask(ctx, sink, buf, start, mid);
+        OutputTask a = new OutputTask(ctx, control, sink.fork(), buf, mid, end);
+        OutputTask b = new OutputTask(ctx, control, sink, buf, start, mid);
         a.fork();
-        b.compute();
-        a.join();
+        try {
+          b.compute();
+        } catch (QueryException e) {
+          throw joinTask(a, false, e);
+        }
+        QueryException error = joinTask(a, false, null);
+        if (error != null) {
+          throw error;
+        }
       } else {
         for (int i = start; i < end; i++) {
-          Sequence s = expr.evaluate(ctx, buf[i]);
+          Sequence s;
+          try {
+            s = expr.evaluate(ctx, buf[i]);
+          } catch (QueryException e) {
+            sink.fail();
+            throw e;
+          }
           if (s != null) {
             Sink ss = sink;
             sink = sink.fork();
-            ForBindTask t = new ForBindTask(ss, buf[i], s.iterate());
+            ForBindTask t = new ForBindTask(ctx, control, ss, buf[i], s.iterate());
             t.compute();
           }
         }
@@ -220,12 +283,14 @@ public class ForBind implements Block {
     }
   }
 
-  private class ForBindSink extends FJControl implements Sink {
+  private class ForBindSink implements Sink {
     Sink s;
     final QueryContext ctx;
+    final FJControl control;
 
-    private ForBindSink(QueryContext ctx, Sink s) {
+    private ForBindSink(QueryContext ctx, FJControl control, Sink s) {
       this.ctx = ctx;
+      this.control = control;
       this.s = s;
     }
 
@@ -234,18 +299,18 @@ public class ForBind implements Block {
       // fork sink for future output calls
       Sink ss = s;
       s = s.fork();
-      OutputTask task = new OutputTask(ctx, ss, t, 0, len);
+      OutputTask task = new OutputTask(ctx, control, ss, t, 0, len);
       task.compute();
     }
 
     @Override
     public Sink fork() {
-      return new ForBindSink(ctx, s.fork());
+      return new ForBindSink(ctx, control, s.fork());
     }
 
     @Override
     public Sink partition(Sink stopAt) {
-      return new ForBindSink(ctx, s.partition(stopAt));
+      return new ForBindSink(ctx, control, s.partition(stopAt));
     }
 
     @Override
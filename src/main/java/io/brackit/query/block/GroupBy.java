@@ -27,15 +27,27 @@
  */
 package io.brackit.query.block;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import io.brackit.query.atomic.Atomic;
 import io.brackit.query.atomic.Int32;
 import io.brackit.query.atomic.Str;
 import io.brackit.query.BrackitQueryContext;
+import io.brackit.query.ErrorCode;
 import io.brackit.query.QueryContext;
 import io.brackit.query.QueryException;
 import io.brackit.query.Tuple;
@@ -49,6 +61,8 @@ import io.brackit.query.function.bit.Delay;
 import io.brackit.query.operator.TupleImpl;
 import io.brackit.query.util.aggregator.Aggregate;
 import io.brackit.query.util.aggregator.Grouping;
+import io.brackit.query.util.Cfg;
+import io.brackit.query.util.io.TupleCodec;
 import io.brackit.query.jdm.Item;
 import io.brackit.query.jdm.Iter;
 import io.brackit.query.jdm.Sequence;
@@ -58,11 +72,33 @@ import io.brackit.query.jdm.Sequence;
  */
 public class GroupBy implements Block {
 
+  public static final String MAX_SIZE_CFG = "org.brackit.xquery.groupby.maxSize";
+
+  public static final String PARTITIONS_CFG = "org.brackit.xquery.groupby.partitions";
+
+  /**
+   * Default memory budget in bytes for the groups of a hash group by.
+   */
+  public static long MAX_SIZE = Cfg.asLong(MAX_SIZE_CFG, 64 * 1024 * 1024);
+
+  /**
+   * Number of hash partitions of a hash group by.
+   */
+  public static int PARTITIONS = Cfg.asInt(PARTITIONS_CFG, 32);
+
+  private static final File SPILL_DIR = new File(Cfg.asString("java.io.tmpdir"));
+
+  private static final int IO_BUFFER_SIZE = 64 * 1024;
+
+  // rough estimate of the heap size of a key and its grouping
+  private static final int GROUP_OVERHEAD = 128;
+
   final int[] groupSpecs; // positions of grouping variables
   final int[] addAggSpecs;
   final Aggregate defaultAgg;
   final Aggregate[] addAggs;
   final boolean sequential;
+  final long maxSize;
 
   private class SequentialGroupBy extends SerialSink {
     final Sink sink;
@@ -150,7 +186,11 @@ public class GroupBy implements Block {
         for (int i = 0; i < val.length; i++) {
           Atomic a1 = val[i];
           Atomic a2 = k.val[i];
-          if (((a1 == null) && (a2 != null)) || (a2 == null) || (a1.atomicCmp(a2) != 0)) {
+          if (a1 == null) {
+            if (a2 != null) {
+              return false;
+            }
+          } else if ((a2 == null) || (a1.atomicCmp(a2) != 0)) {
             return false;
           }
         }
@@ -160,17 +200,45 @@ public class GroupBy implements Block {
     }
   }
 
+  /**
+   * A hash partition of the groups of a {@link HashGroupBy}. Concurrent
+   * updates of groups hold the read lock, spilling holds the write lock.
+   */
+  private static final class Partition {
+    final ConcurrentHashMap<Key, Grouping> map = new ConcurrentHashMap<>();
+    final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    final AtomicLong size = new AtomicLong();
+    File file;
+    DataOutputStream out;
+  }
+
+  /**
+   * Hybrid hash aggregation. Groups are hash partitioned by their grouping
+   * key. When the estimated size of all groups exceeds the memory budget, the
+   * largest partition is spilled, i.e., the grouping keys together with the
+   * intermediate aggregator states are appended to a temporary file of the
+   * partition and the groups are dropped from memory. At the end, each
+   * spilled partition is read back and merged with its remaining in-memory
+   * groups before its groups are emitted.
+   */
   private class HashGroupBy extends ConcurrentSink {
     final Sink sink;
-    final ConcurrentHashMap<Key, Grouping> map;
+    final AtomicLong used;
+    final Partition[] partitions;
+    final TupleCodec codec = new TupleCodec();
 
-    HashGroupBy(Sink sink) {
+    HashGroupBy(Sink sink, AtomicLong used) {
       this.sink = sink;
-      this.map = new ConcurrentHashMap<>();
+      this.used = used;
+      this.partitions = new Partition[(maxSize > 0) ? Math.max(PARTITIONS, 1) : 1];
+      for (int i = 0; i < partitions.length; i++) {
+        partitions[i] = new Partition();
+      }
     }
 
     public Sink partition(Sink stopAt) {
-      return new HashGroupBy(sink.partition(stopAt));
+      // all partitions of this group by share the memory budget
+      return new HashGroupBy(sink.partition(stopAt), used);
     }
 
     @Override
@@ -178,15 +246,108 @@ public class GroupBy implements Block {
       for (int i = 0; i < len; i++) {
         Atomic[] gks = Grouping.groupingKeys(groupSpecs, buf[i]);
         Key key = new Key(gks);
-        Grouping grp = map.get(key);
-        if (grp == null) {
-          grp = new Grouping(groupSpecs, addAggSpecs, defaultAgg, addAggs);
-          Grouping prev = map.putIfAbsent(key, grp);
-          if (prev != null) {
-            grp = prev;
+        Partition p = partitions[Math.floorMod(key.hash ^ (key.hash >>> 16), partitions.length)];
+        long delta = 0;
+        boolean overflow = false;
+        p.lock.readLock().lock();
+        try {
+          Grouping grp = p.map.get(key);
+          if (grp == null) {
+            grp = new Grouping(groupSpecs, addAggSpecs, defaultAgg, addAggs);
+            Grouping prev = p.map.putIfAbsent(key, grp);
+            if (prev != null) {
+              grp = prev;
+            } else if (maxSize > 0) {
+              delta = GROUP_OVERHEAD + TupleCodec.size(buf[i]);
+            }
+          } else if ((maxSize > 0) && (defaultAgg == Aggregate.SEQUENCE)) {
+            delta = TupleCodec.size(buf[i]);
           }
+          grp.add(key.val, buf[i]);
+          if (delta > 0) {
+            // account under the lock, spill() resets the size under the
+            // write lock
+            p.size.addAndGet(delta);
+            overflow = (used.addAndGet(delta) > maxSize);
+          }
+        } finally {
+          p.lock.readLock().unlock();
+        }
+        if (overflow) {
+          spill();
+        }
+      }
+    }
+
+    private synchronized void spill() throws QueryException {
+      while (used.get() > maxSize) {
+        Partition victim = null;
+        for (Partition p : partitions) {
+          if ((p.size.get() > 0) && ((victim == null) || (p.size.get() > victim.size.get()))) {
+            victim = p;
+          }
+        }
+        if (victim == null) {
+          // the budget is occupied by other partitions of this group by
+          return;
         }
-        grp.add(key.val, buf[i]);
+        spill(victim);
+      }
+    }
+
+    private void spill(Partition p) throws QueryException {
+      p.lock.writeLock().lock();
+      try {
+        if (p.out == null) {
+          p.file = File.createTempFile("group", ".spill", SPILL_DIR);
+          p.file.deleteOnExit();
+          p.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(p.file), IO_BUFFER_SIZE));
+        }
+        for (Map.Entry<Key, Grouping> e : p.map.entrySet()) {
+          Atomic[] gk = e.getKey().val;
+          Sequence[] state = e.getValue().getState();
+          Sequence[] record = Arrays.copyOf(gk, gk.length + state.length, Sequence[].class);
+          System.arraycopy(state, 0, record, gk.length, state.length);
+          codec.write(p.out, new TupleImpl(record));
+        }
+        p.map.clear();
+        used.addAndGet(-p.size.getAndSet(0));
+      } catch (IOException e) {
+        throw new QueryException(e, ErrorCode.BIT_DYN_INT_ERROR);
+      } finally {
+        p.lock.writeLock().unlock();
+      }
+    }
+
+    private void restore(Partition p) throws QueryException {
+      try {
+        p.out.close();
+        p.out = null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(p.file),
+                                                                                   IO_BUFFER_SIZE))) {
+          int keyLen = groupSpecs.length;
+          Tuple t;
+          while ((t = codec.read(in)) != null) {
+            Atomic[] gk = new Atomic[keyLen];
+            for (int i = 0; i < keyLen; i++) {
+              gk[i] = (Atomic) t.get(i);
+            }
+            Sequence[] state = Arrays.copyOfRange(t.array(), keyLen, t.getSize());
+            Key key = new Key(gk);
+            Grouping grp = p.map.get(key);
+            if (grp == null) {
+              int tupleSize = state.length - 1 - addAggs.length;
+              grp = new Grouping(groupSpecs, addAggSpecs, defaultAgg, addAggs, tupleSize);
+              p.map.put(key, grp);
+            }
+            grp.addState(gk, state);
+          }
+        }
+      } catch (IOException e) {
+        throw new QueryException(e, ErrorCode.BIT_DYN_INT_ERROR);
+      } finally {
+        p.file.delete();
+        p.file = null;
       }
     }
 
@@ -194,34 +355,59 @@ public class GroupBy implements Block {
     protected void doEnd() throws QueryException {
       try {
         sink.begin();
-        Iterator<Key> it = map.keySet().iterator();
         int bufSize = 20;
         Tuple[] buf = new Tuple[bufSize];
         int len = 0;
-        while (it.hasNext()) {
-          Key key = it.next();
-          Grouping grp = map.get(key);
-          it.remove();
-          buf[len++] = emit(grp);
-          if (len == bufSize) {
-            sink.output(buf, len);
-            buf = new Tuple[bufSize];
-            len = 0;
+        for (Partition p : partitions) {
+          if (p.file != null) {
+            restore(p);
+          }
+          Iterator<Key> it = p.map.keySet().iterator();
+          while (it.hasNext()) {
+            Key key = it.next();
+            Grouping grp = p.map.get(key);
+            it.remove();
+            buf[len++] = emit(grp);
+            if (len == bufSize) {
+              sink.output(buf, len);
+              buf = new Tuple[bufSize];
+              len = 0;
+            }
           }
+          used.addAndGet(-p.size.getAndSet(0));
         }
         if (len > 0) {
           sink.output(buf, len);
         }
         sink.end();
       } finally {
-        map.clear();
+        cleanup();
       }
     }
 
     @Override
     protected void doFail() throws QueryException {
       sink.fail();
-      map.clear();
+      cleanup();
+    }
+
+    private void cleanup() {
+      for (Partition p : partitions) {
+        p.map.clear();
+        if (p.out != null) {
+          try {
+            p.out.close();
+          } catch (IOException e) {
+            // ignore
+          }
+          p.out = null;
+        }
+        if (p.file != null) {
+          p.file.delete();
+          p.file = null;
+        }
+      }
+      codec.clear();
     }
 
     private Tuple emit(Grouping grp) throws QueryException {
@@ -237,6 +423,7 @@ public class GroupBy implements Block {
     this.groupSpecs = new int[grpSpecCnt];
     this.addAggSpecs = new int[addAggs.length];
     this.sequential = sequential;
+    this.maxSize = MAX_SIZE;
   }
 
   @Override
@@ -245,11 +432,11 @@ public class GroupBy implements Block {
   }
 
   @Override
-  public Sink create(QueryContext ctx, Sink sink) throws QueryException {
+  public Sink create(QueryContext ctx, FJControl control, Sink sink) throws QueryException {
     if (sequential) {
-      return new SequentialGroupBy(FJControl.PERMITS, sink);
+      return new SequentialGroupBy(control.getPermits(), sink);
     } else {
-      return new HashGroupBy(sink);
+      return new HashGroupBy(sink, new AtomicLong());
     }
   }
 
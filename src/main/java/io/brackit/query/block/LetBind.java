@@ -43,7 +43,7 @@ public class LetBind implements Block {
   }
 
   @Override
-  public Sink create(QueryContext ctx, Sink sink) throws QueryException {
+  public Sink create(QueryContext ctx, FJControl control, Sink sink) throws QueryException {
     return new LetBindSink(ctx, sink);
   }
 
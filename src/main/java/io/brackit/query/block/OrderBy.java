@@ -55,8 +55,8 @@ public class OrderBy implements Block {
   }
 
   @Override
-  public Sink create(QueryContext ctx, Sink sink) throws QueryException {
-    return new OrderBySink(sink, ctx);
+  public Sink create(QueryContext ctx, FJControl control, Sink sink) throws QueryException {
+    return new OrderBySink(sink, ctx, control);
   }
 
   private static class Sortable extends MutexSink.Out {
@@ -74,16 +74,18 @@ public class OrderBy implements Block {
   private class OrderBySink extends MutexSink {
     final Sink sink;
     final QueryContext ctx;
+    final FJControl control;
     final Ordering sort;
 
-    OrderBySink(Sink sink, QueryContext ctx) {
+    OrderBySink(Sink sink, QueryContext ctx, FJControl control) {
       this.sink = sink;
       this.ctx = ctx;
-      this.sort = new Ordering(orderByExprs, modifier);
+      this.control = control;
+      this.sort = new Ordering(orderByExprs, modifier, control);
     }
 
     public Sink partition(Sink stopAt) {
-      return new OrderBySink(sink.partition(stopAt), ctx);
+      return new OrderBySink(sink.partition(stopAt), ctx, control);
     }
 
     @Override
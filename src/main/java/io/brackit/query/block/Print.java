@@ -115,7 +115,7 @@ public class Print implements Block {
   }
 
   @Override
-  public Sink create(QueryContext ctx, Sink sink) throws QueryException {
+  public Sink create(QueryContext ctx, FJControl control, Sink sink) throws QueryException {
     return new PrintSink(sink, out);
   }
 
@@ -44,7 +44,7 @@ public class Select implements Block {
   }
 
   @Override
-  public Sink create(QueryContext ctx, Sink sink) throws QueryException {
+  public Sink create(QueryContext ctx, FJControl control, Sink sink) throws QueryException {
     return new SelectSink(ctx, sink);
   }
 
@@ -27,10 +27,14 @@
  */
 package io.brackit.query.block;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 import java.util.concurrent.Semaphore;
 
 import io.brackit.query.atomic.Atomic;
+import io.brackit.query.atomic.Numeric;
 import io.brackit.query.util.Cfg;
 import io.brackit.query.QueryContext;
 import io.brackit.query.QueryException;
@@ -38,9 +42,11 @@ import io.brackit.query.Tuple;
 import io.brackit.query.compiler.translator.Reference;
 import io.brackit.query.util.Cmp;
 import io.brackit.query.util.join.FastList;
-import io.brackit.query.util.join.MultiTypeJoinTable;
+import io.brackit.query.util.join.HybridJoinTable;
+import io.brackit.query.util.sort.TupleSort;
 import io.brackit.query.jdm.Expr;
 import io.brackit.query.jdm.Sequence;
+import io.brackit.query.jdm.Stream;
 import io.brackit.query.jdm.node.Node;
 
 /**
@@ -60,7 +66,6 @@ public class TableJoin implements Block {
   int groupVar = -1;
 
   boolean ordRight = Cfg.asBool("org.brackit.xquery.join.loadordered", true);
-  int rPermits = FJControl.PERMITS;
 
   public TableJoin(Cmp cmp, boolean isGCmsp, boolean leftJoin, boolean skipSort, Block l, Expr lExpr, Block r,
       Expr rExpr, Block o) {
@@ -86,50 +91,128 @@ public class TableJoin implements Block {
   }
 
   @Override
-  public Sink create(QueryContext ctx, Sink sink) throws QueryException {
+  public Sink create(QueryContext ctx, FJControl control, Sink sink) throws QueryException {
     Join join = new Join();
     PartitionEnd pe = null;
     if (o != null) {
       pe = new PartitionEnd(sink);
-      sink = o.create(ctx, pe);
+      sink = o.create(ctx, control, pe);
     }
-    Sink probe = new Probe(sink, pe, ctx, join);
-    Sink leftIn = l.create(ctx, probe);
-    return new TableJoinSink(FJControl.PERMITS, ctx, leftIn, join);
+    join.head = new Slot();
+    Sink probe = new Probe(sink, pe, ctx, join, join.head);
+    Sink leftIn = l.create(ctx, control, probe);
+    return new TableJoinSink(control.getPermits(), ctx, control, leftIn, join);
   }
 
   private static class Join {
-    volatile MultiTypeJoinTable table;
+    volatile HybridJoinTable table;
     volatile Atomic gk;
+    final List<HybridJoinTable> spilled = new ArrayList<>();
+    // first slot of the output order
+    Slot head;
+
+    synchronized void clear() {
+      for (HybridJoinTable table : spilled) {
+        table.clear();
+      }
+      spilled.clear();
+    }
+
+    /**
+     * Removes and returns the deferred probe batches of the given table
+     * (or of all tables) in output order.
+     */
+    synchronized List<Deferred> take(HybridJoinTable table) {
+      List<Deferred> list = new ArrayList<>();
+      for (Slot s = head; s != null; s = s.next) {
+        Deferred d = s.deferred;
+        if ((d != null) && ((table == null) || (d.table == table))) {
+          list.add(d);
+          s.deferred = null;
+        }
+      }
+      trim();
+      return list;
+    }
+
+    synchronized void trim() {
+      while ((head != null) && (head.done) && (head.deferred == null)) {
+        head = head.next;
+      }
+    }
+  }
+
+  /**
+   * Position of a probe batch in the output order. Slots are forked in
+   * lockstep with the output sinks of a probe, so that the slot list mirrors
+   * the fork chain of the output.
+   */
+  private static final class Slot {
+    volatile Slot next;
+    volatile Deferred deferred;
+    volatile boolean done;
+
+    Slot fork() {
+      Slot fork = new Slot();
+      fork.next = next;
+      return next = fork;
+    }
+  }
+
+  /**
+   * A batch of probes of a spilled table, whose output sinks are kept open
+   * until the spilled partitions are joined.
+   */
+  private static final class Deferred {
+    final HybridJoinTable table;
+    final long base;
+    final int len;
+    final Sink sink;
+    final PartitionEnd pe;
+
+    Deferred(HybridJoinTable table, long base, int len, Sink sink, PartitionEnd pe) {
+      this.table = table;
+      this.base = base;
+      this.len = len;
+      this.sink = sink;
+      this.pe = pe;
+    }
+
+    boolean contains(long seq) {
+      return (base <= seq) && (seq < base + len);
+    }
   }
 
   private final class TableJoinSink extends SerialSink {
     final QueryContext ctx;
+    final FJControl control;
     final Join join;
     Sink sink;
 
-    public TableJoinSink(int permits, QueryContext ctx, Sink sink, Join join) {
+    public TableJoinSink(int permits, QueryContext ctx, FJControl control, Sink sink, Join join) {
       super(permits);
       this.ctx = ctx;
+      this.control = control;
       this.sink = sink;
       this.join = join;
     }
 
-    public TableJoinSink(Semaphore sem, QueryContext ctx, Sink sink, Join join) {
+    public TableJoinSink(Semaphore sem, QueryContext ctx, FJControl control, Sink sink, Join join) {
       super(sem);
       this.ctx = ctx;
+      this.control = control;
       this.sink = sink;
       this.join = join;
     }
 
     @Override
     protected ChainedSink doFork() {
-      return new TableJoinSink(sem, ctx, sink.fork(), join);
+      return new TableJoinSink(sem, ctx, control, sink.fork(), join);
     }
 
     @Override
     protected ChainedSink doPartition(Sink stopAt) {
-      return new TableJoinSink(sem, ctx, sink.partition(stopAt), join);
+      return new TableJoinSink(sem, ctx, control, sink.partition(stopAt), join);
     }
 
     @Override
@@ -151,9 +234,7 @@ public class TableJoin implements Block {
           if (hasToken) {
             // load table with first tuple in probe window
             Tuple t = buf[start];
-            System.out.println("START LOAD");
             load(t);
-            System.out.println("END LOAD");
             end = start;
             continue;
           } else {
@@ -175,23 +256,140 @@ public class TableJoin implements Block {
     }
 
     private void load(Tuple t) throws QueryException {
+      HybridJoinTable previous = join.table;
+      if ((previous != null) && (previous.isSpilled())) {
+        // all probes of the previous table are done
+        flush(previous);
+      }
       int offset = t.getSize();
-      MultiTypeJoinTable table = new MultiTypeJoinTable(cmp, isGCmp, skipSort);
+      HybridJoinTable table = new HybridJoinTable(cmp, isGCmp, skipSort);
       Sink load = new Load(ctx, table, offset);
-      load = (ordRight) ? new SerialValve(rPermits, load) : load;
-      Sink rightIn = r.create(ctx, load);
+      load = (ordRight) ? new SerialValve(control.getPermits(), load) : load;
+      Sink rightIn = r.create(ctx, control, load);
       rightIn.begin();
       try {
         rightIn.output(new Tuple[] { t }, 1);
         rightIn.end();
+        table.build();
       } catch (QueryException e) {
         rightIn.fail();
+        table.clear();
         throw e;
       }
+      if (table.isSpilled()) {
+        table.beginDeferred(leftJoin, pad);
+        synchronized (join) {
+          join.spilled.add(table);
+        }
+      }
       join.gk = (groupVar >= 0) ? (Atomic) t.get(groupVar) : null;
       join.table = table;
     }
 
+    /**
+     * Joins the spilled partitions of the given table (or of all tables) with
+     * the deferred probes and sends the results to the open output sinks of
+     * the probe batches in output order.
+     */
+    private void flush(HybridJoinTable only) throws QueryException {
+      List<Deferred> deferred = join.take(only);
+      int i = 0;
+      while (i < deferred.size()) {
+        HybridJoinTable table = deferred.get(i).table;
+        int j = i;
+        while ((j < deferred.size()) && (deferred.get(j).table == table)) {
+          j++;
+        }
+        flush(table, deferred.subList(i, j));
+        i = j;
+      }
+    }
+
+    private void flush(HybridJoinTable table, List<Deferred> deferred) throws QueryException {
+      Stream<Tuple> rows = table.endDeferredRows();
+      TupleSort sort = null;
+      try {
+        if (!ascending(deferred)) {
+          // probe batches were processed concurrently,
+          // so probe order differs from output order
+          sort = new TupleSort(outputOrder(deferred), TupleSort.MAX_SIZE, control);
+          Tuple row;
+          while ((row = rows.next()) != null) {
+            sort.add(row);
+          }
+          rows.close();
+          sort.sort();
+          rows = sort.stream();
+        }
+        Tuple row = rows.next();
+        for (Deferred d : deferred) {
+          while ((row != null) && (d.contains(HybridJoinTable.seq(row)))) {
+            long seq = HybridJoinTable.seq(row);
+            Sink out = ((d.pe != null) && (HybridJoinTable.isPadding(row))) ? d.pe : d.sink;
+            List<Tuple> buf = new ArrayList<>();
+            do {
+              buf.add(HybridJoinTable.strip(row));
+              row = rows.next();
+            } while ((row != null) && (HybridJoinTable.seq(row) == seq));
+            out.output(buf.toArray(new Tuple[0]), buf.size());
+          }
+          d.sink.end();
+          if (d.pe != null) {
+            d.pe.doEnd();
+          }
+        }
+      } finally {
+        rows.close();
+        if (sort != null) {
+          sort.clear();
+        }
+      }
+    }
+
+    private boolean ascending(List<Deferred> deferred) {
+      for (int i = 1; i < deferred.size(); i++) {
+        if (deferred.get(i - 1).base > deferred.get(i).base) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private Comparator<Tuple> outputOrder(List<Deferred> deferred) {
+      // rank of the probe batches ordered by sequence number
+      int n = deferred.size();
+      Integer[] byBase = new Integer[n];
+      for (int i = 0; i < n; i++) {
+        byBase[i] = i;
+      }
+      Arrays.sort(byBase, Comparator.comparingLong(i -> deferred.get(i).base));
+      final long[] bases = new long[n];
+      final int[] rank = new int[n];
+      for (int i = 0; i < n; i++) {
+        bases[i] = deferred.get(byBase[i]).base;
+        rank[i] = byBase[i];
+      }
+      return (r1, r2) -> {
+        long s1 = HybridJoinTable.seq(r1);
+        long s2 = HybridJoinTable.seq(r2);
+        int res = Integer.compare(rank(bases, rank, s1), rank(bases, rank, s2));
+        if (res != 0) {
+          return res;
+        }
+        res = Long.compare(s1, s2);
+        if (res != 0) {
+          return res;
+        }
+        // padding rows precede matches, which are ordered by position
+        return ((Numeric) r1.get(1)).compareTo((Numeric) r2.get(1));
+      };
+    }
+
+    private int rank(long[] bases, int[] rank, long seq) {
+      int i = Arrays.binarySearch(bases, seq);
+      return rank[(i >= 0) ? i : -i - 2];
+    }
+
     private int probeSize(Tuple[] buf, int len, int end) throws QueryException {
       if (join.table == null) {
         return 0;
@@ -226,8 +424,18 @@ public class TableJoin implements Block {
       sink.end();
     }
 
+    @Override
+    protected void doFinalEnd() throws QueryException {
+      flush(null);
+      join.clear();
+    }
+
     @Override
     public void doFail() throws QueryException {
+      for (Deferred d : join.take(null)) {
+        d.sink.fail();
+      }
+      join.clear();
       sink.fail();
     }
   }
@@ -238,19 +446,21 @@ public class TableJoin implements Block {
     final Sequence[] padding;
     Sink sink;
     PartitionEnd pe;
+    Slot slot;
 
-    Probe(Sink sink, PartitionEnd pe, QueryContext ctx, Join join) {
+    Probe(Sink sink, PartitionEnd pe, QueryContext ctx, Join join, Slot slot) {
       this.ctx = ctx;
       this.join = join;
       this.padding = new Sequence[pad];
       this.sink = sink;
       this.pe = pe;
+      this.slot = slot;
     }
 
     @Override
     public Sink fork() {
       if (pe == null) {
-        return new Probe(sink.fork(), null, ctx, join);
+        return new Probe(sink.fork(), null, ctx, join, slot.fork());
       }
       return partition(pe);
     }
@@ -258,12 +468,12 @@ public class TableJoin implements Block {
     @Override
     public Sink partition(Sink stopAt) {
       if (pe == null) {
-        return new Probe(sink.partition(stopAt), null, ctx, join);
+        return new Probe(sink.partition(stopAt), null, ctx, join, slot.fork());
       }
       Sink fork = sink.partition(stopAt);
       PartitionEnd fpe = pe.next;
       pe.next = null; // we don't need chaining anymore
-      return new Probe(fork, fpe, ctx, join);
+      return new Probe(fork, fpe, ctx, join, slot.fork());
     }
 
     @Override
@@ -278,13 +488,28 @@ public class TableJoin implements Block {
     private void outputUnconditional(Tuple[] buf, int len) throws QueryException {
       // fork out for future next calls
       Sink s = sink;
+      Slot ss = slot;
       sink = sink.fork();
+      slot = slot.fork();
       s.begin();
+      HybridJoinTable table = join.table;
+      if (table.isSpilled()) {
+        // keep the sink open until the spilled partitions
+        // are joined with all probes of the table
+        Sequence[] keys = new Sequence[len];
+        for (int i = 0; i < len; i++) {
+          keys[i] = keys(buf[i]);
+        }
+        long base = table.deferBatch(buf, keys, len);
+        ss.deferred = new Deferred(table, base, len, s, null);
+        ss.done = true;
+        return;
+      }
       for (int i = 0; i < len; i++) {
-        Tuple t = buf[i];
-        probe(t, s, s);
+        probe(table, buf[i], s, s);
       }
       s.end();
+      ss.done = true;
     }
 
     private void outputConditional(Tuple[] buf, int len) throws QueryException {
@@ -292,20 +517,33 @@ public class TableJoin implements Block {
         // create partitioned fork for future next calls
         Sink ss = sink;
         PartitionEnd spe = pe;
+        Slot sslot = slot;
         sink = sink.partition(pe);
         pe = pe.next;
+        slot = slot.fork();
         spe.doBegin();
         ss.begin();
         Tuple t = buf[i];
-        probe(t, ss, spe);
+        HybridJoinTable table = join.table;
+        if (table.isSpilled()) {
+          long base = table.deferBatch(new Tuple[] { t }, new Sequence[] { keys(t) }, 1);
+          sslot.deferred = new Deferred(table, base, 1, ss, spe);
+          sslot.done = true;
+          continue;
+        }
+        probe(table, t, ss, spe);
         ss.end();
         spe.doEnd();
+        sslot.done = true;
       }
     }
 
-    private void probe(Tuple t, Sink matchSink, Sink ljoinSink) throws QueryException {
-      Sequence keys = (isGCmp) ? lExpr.evaluate(ctx, t) : lExpr.evaluateToItem(ctx, t);
-      FastList<Sequence[]> matches = join.table.probe(keys);
+    private Sequence keys(Tuple t) throws QueryException {
+      return (isGCmp) ? lExpr.evaluate(ctx, t) : lExpr.evaluateToItem(ctx, t);
+    }
+
+    private void probe(HybridJoinTable table, Tuple t, Sink matchSink, Sink ljoinSink) throws QueryException {
+      FastList<Sequence[]> matches = table.probe(keys(t));
       int itSize = matches.getSize();
       if (itSize > 0) {
         Tuple[] buf2 = new Tuple[itSize];
@@ -334,6 +572,8 @@ public class TableJoin implements Block {
       if (pe != null) {
         pe.doEnd();
       }
+      slot.done = true;
+      join.trim();
     }
 
     @Override
@@ -344,11 +584,11 @@ public class TableJoin implements Block {
 
   private final class Load extends ConcurrentSink {
     final QueryContext ctx;
-    final MultiTypeJoinTable table;
+    final HybridJoinTable table;
     final int offset;
     int pos = 1;
 
-    Load(QueryContext ctx, MultiTypeJoinTable table, int offset) {
+    Load(QueryContext ctx, HybridJoinTable table, int offset) {
       this.ctx = ctx;
       this.table = table;
       this.offset = offset;
@@ -43,6 +43,7 @@ import io.brackit.query.compiler.translator.Translator;
 import io.brackit.query.function.json.JSONParse;
 import io.brackit.query.function.json.Keys;
 import io.brackit.query.function.json.Size;
+import io.brackit.query.jdm.StatisticsProvider;
 import io.brackit.query.module.Functions;
 import io.brackit.query.module.Module;
 import io.brackit.query.util.dot.DotUtil;
@@ -114,6 +115,11 @@ public class CompileChain {
   final AnyURI baseURI;
   final ModuleResolver resolver;
 
+  private StatisticsProvider statistics;
+
+  // statistics for the optimizer while compiling
+  private StatisticsProvider compileStatistics;
+
   public CompileChain() {
     this(new BaseResolver(), null);
   }
@@ -132,7 +138,24 @@ public class CompileChain {
   }
 
   protected Optimizer getOptimizer(Map<QNm, Str> options) {
-    return new TopDownOptimizer(options);
+    return new TopDownOptimizer(options, compileStatistics);
+  }
+
+  /**
+   * Returns the statistics for cost-based optimization, e.g., the store the
+   * compiled queries will run on, or <code>null</code> if there are none.
+   */
+  protected StatisticsProvider getStatistics() {
+    return statistics;
+  }
+
+  /**
+   * Sets the statistics for cost-based optimization, usually those of the
+   * {@link io.brackit.query.QueryContext#getStatistics() context} the
+   * compiled queries will run in.
+   */
+  public void setStatistics(StatisticsProvider statistics) {
+    this.statistics = statistics;
   }
 
   protected Translator getTranslator(Map<QNm, Str> options) {
@@ -143,11 +166,42 @@ public class CompileChain {
     return resolver;
   }
 
+  /**
+   * Returns the scope in which modules compiled by this chain can be shared
+   * through a {@link PlanCache}. By default, only a plain chain without
+   * registered library modules shares its modules with other chains of its
+   * kind. Subclasses with additional static state must return a scope which
+   * reflects this state.
+   */
+  protected Object getPlanCacheScope() {
+    if ((getClass() == CompileChain.class) && (resolver.getClass() == BaseResolver.class)
+        && (((BaseResolver) resolver).modules == null)) {
+      return CompileChain.class;
+    }
+    return this;
+  }
+
   protected AST parse(String query) throws QueryException {
     return new XQParser(query).parse();
   }
 
   public Module compile(String query) throws QueryException {
+    return compile(query, getStatistics());
+  }
+
+  /**
+   * Compiles the given query with the given statistics.
+   */
+  Module compile(String query, StatisticsProvider statistics) throws QueryException {
+    compileStatistics = statistics;
+    try {
+      return doCompile(query);
+    } finally {
+      compileStatistics = null;
+    }
+  }
+
+  private Module doCompile(String query) throws QueryException {
     if (Query.DEBUG) {
       System.out.printf("Compiling:\n%s%n", query);
     }
@@ -0,0 +1,236 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.compiler;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.brackit.query.QueryException;
+import io.brackit.query.atomic.AnyURI;
+import io.brackit.query.compiler.optimizer.CostModel;
+import io.brackit.query.compiler.optimizer.DefaultOptimizer;
+import io.brackit.query.compiler.translator.Compiler;
+import io.brackit.query.compiler.translator.TopDownTranslator;
+import io.brackit.query.jdm.StatisticsProvider;
+import io.brackit.query.module.Module;
+import io.brackit.query.util.Cfg;
+
+/**
+ * LRU cache of compiled main modules.
+ * <p>
+ * Modules are looked up by query text, base URI and the static context scope
+ * of the compiling {@link CompileChain}, and the current values of all
+ * settings that affect the compiled plan. A cached module is reused with
+ * any statistics provider that reports approximately the statistics the
+ * optimizer used for it, e.g., by contexts over the same stores, and is
+ * compiled again otherwise. Cached modules keep only these statistics
+ * values and not the provider or its stores. A compiled module does not
+ * hold any dynamic state, so it can be executed repeatedly and concurrently
+ * with different {@link io.brackit.query.QueryContext contexts}. External
+ * variables and the context item are bound per execution in the respective
+ * context.
+ */
+public final class PlanCache {
+  public static final String SIZE_CFG = "org.brackit.xquery.planCache.size";
+
+  /**
+   * Maximum number of modules kept in the shared plan cache. A value of zero
+   * disables the shared cache.
+   */
+  public static int SIZE = Cfg.asInt(SIZE_CFG, 256);
+
+  private static volatile PlanCache SHARED;
+
+  private static final class Key {
+    final Object scope;
+    final AnyURI baseURI;
+    final String query;
+    final boolean statistics;
+    final List<Object> settings;
+
+    Key(Object scope, AnyURI baseURI, String query, boolean statistics, List<Object> settings) {
+      this.scope = scope;
+      this.baseURI = baseURI;
+      this.query = query;
+      this.statistics = statistics;
+      this.settings = settings;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key k = (Key) obj;
+      return (scope == k.scope) && (statistics == k.statistics) && query.equals(k.query)
+          && Objects.equals(baseURI, k.baseURI) && settings.equals(k.settings);
+    }
+
+    @Override
+    public int hashCode() {
+      int h = System.identityHashCode(scope) * 31 + query.hashCode();
+      h = h * 31 + Objects.hashCode(baseURI);
+      h = h * 31 + Boolean.hashCode(statistics);
+      return h * 31 + settings.hashCode();
+    }
+  }
+
+  private static final class Entry {
+    final Module module;
+    final StatisticsSnapshot statistics;
+
+    Entry(Module module, StatisticsSnapshot statistics) {
+      this.module = module;
+      this.statistics = statistics;
+    }
+
+    boolean isCurrent(StatisticsProvider provider) {
+      return (statistics == null) || statistics.isCurrent(provider);
+    }
+  }
+
+  private final int maxSize;
+
+  private final Map<Key, Entry> cache;
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong misses = new AtomicLong();
+
+  private final AtomicLong compileNanos = new AtomicLong();
+
+  public PlanCache(int maxSize) {
+    this.maxSize = maxSize;
+    this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+        return size() > PlanCache.this.maxSize;
+      }
+    };
+  }
+
+  /**
+   * Returns the shared plan cache or <code>null</code> if it is disabled.
+   */
+  public static PlanCache shared() {
+    PlanCache cache = SHARED;
+    if ((cache == null) && (SIZE > 0)) {
+      synchronized (PlanCache.class) {
+        cache = SHARED;
+        if (cache == null) {
+          cache = new PlanCache(SIZE);
+          SHARED = cache;
+        }
+      }
+    }
+    return cache;
+  }
+
+  /**
+   * Returns the cached module for the given query or compiles it with the
+   * given chain.
+   */
+  public Module compile(CompileChain chain, String query) throws QueryException {
+    StatisticsProvider statistics = chain.getStatistics();
+    Key key = new Key(chain.getPlanCacheScope(), chain.baseURI, query, (statistics != null), settings());
+    Entry entry;
+    synchronized (cache) {
+      entry = cache.get(key);
+    }
+    if ((entry != null) && (entry.isCurrent(statistics))) {
+      hits.incrementAndGet();
+      return entry.module;
+    }
+    misses.incrementAndGet();
+    long start = System.nanoTime();
+    StatisticsSnapshot snapshot = (statistics != null) ? new StatisticsSnapshot(statistics) : null;
+    Module module;
+    try {
+      module = chain.compile(query, snapshot);
+    } finally {
+      if (snapshot != null) {
+        snapshot.detach();
+      }
+    }
+    compileNanos.addAndGet(System.nanoTime() - start);
+    synchronized (cache) {
+      Entry cached = cache.get(key);
+      if ((cached != null) && (cached != entry)) {
+        return cached.module;
+      }
+      cache.put(key, new Entry(module, snapshot));
+      return module;
+    }
+  }
+
+  /**
+   * Returns the current values of all settings that affect compiled plans.
+   */
+  private static List<Object> settings() {
+    return List.of(TopDownTranslator.PARALLEL_DEFAULT, TopDownTranslator.SHARED_TUPLES_DEPTH, Compiler.PATH_STACK,
+                   DefaultOptimizer.UNNEST, DefaultOptimizer.JOIN_DETECTION, DefaultOptimizer.JOIN_ORDERING,
+                   DefaultOptimizer.TOP_K, DefaultOptimizer.JSON_PROJECTION, CostModel.DEFAULT_CARDINALITY);
+  }
+
+  public void clear() {
+    synchronized (cache) {
+      cache.clear();
+    }
+  }
+
+  public int size() {
+    synchronized (cache) {
+      return cache.size();
+    }
+  }
+
+  /**
+   * Returns the number of lookups answered from the cache.
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * Returns the number of lookups that required a compilation.
+   */
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * Returns the total time spent compiling queries after cache misses.
+   */
+  public long getCompileTime(TimeUnit unit) {
+    return unit.convert(compileNanos.get(), TimeUnit.NANOSECONDS);
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.compiler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.brackit.query.jdm.Statistics;
+import io.brackit.query.jdm.StatisticsProvider;
+
+/**
+ * Records the statistics the optimizer looks up while compiling a query, so
+ * that a cached plan can be recognized as stale when these statistics change
+ * significantly, i.e., by more than a factor of two. After compilation, the
+ * snapshot is detached from its provider and only keeps the recorded values.
+ */
+final class StatisticsSnapshot implements StatisticsProvider {
+
+  private static final int EXISTS = 0;
+  private static final int DOCUMENT_COUNT = 1;
+  private static final int PATH_FREQUENCY = 2;
+  private static final int DISTINCT_VALUE_COUNT = 3;
+
+  private record Lookup(String name, int kind, String path, long value) {
+  }
+
+  private StatisticsProvider provider;
+
+  private final List<Lookup> lookups = new ArrayList<>();
+
+  StatisticsSnapshot(StatisticsProvider provider) {
+    this.provider = provider;
+  }
+
+  @Override
+  public Statistics getStatistics(String name) {
+    Statistics statistics = provider.getStatistics(name);
+    record(name, EXISTS, null, (statistics != null) ? 1 : 0);
+    return (statistics != null) ? new Recording(name, statistics) : null;
+  }
+
+  /**
+   * Stops recording and releases the provider.
+   */
+  void detach() {
+    provider = null;
+  }
+
+  /**
+   * Returns <code>true</code> if the given provider reports approximately
+   * the recorded statistics.
+   */
+  synchronized boolean isCurrent(StatisticsProvider provider) {
+    for (Lookup lookup : lookups) {
+      Statistics statistics = provider.getStatistics(lookup.name);
+      long value = (lookup.kind == EXISTS) ? ((statistics != null) ? 1 : 0)
+          : (statistics != null) ? lookup(statistics, lookup.kind, lookup.path) : Statistics.UNKNOWN;
+      if (!similar(lookup.value, value)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean similar(long recorded, long current) {
+    if ((recorded < 0) || (current < 0)) {
+      return (recorded == current);
+    }
+    return (current <= 2 * recorded) && (recorded <= 2 * current);
+  }
+
+  private static long lookup(Statistics statistics, int kind, String path) {
+    switch (kind) {
+      case DOCUMENT_COUNT:
+        return statistics.getEstimatedDocumentCount();
+      case PATH_FREQUENCY:
+        return statistics.getPathFrequency(path);
+      default:
+        return statistics.getDistinctValueCount(path);
+    }
+  }
+
+  private synchronized void record(String name, int kind, String path, long value) {
+    lookups.add(new Lookup(name, kind, path, value));
+  }
+
+  private final class Recording implements Statistics {
+    private final String name;
+    private final Statistics statistics;
+
+    Recording(String name, Statistics statistics) {
+      this.name = name;
+      this.statistics = statistics;
+    }
+
+    @Override
+    public long getEstimatedDocumentCount() {
+      return recorded(DOCUMENT_COUNT, null);
+    }
+
+    @Override
+    public long getPathFrequency(String path) {
+      return recorded(PATH_FREQUENCY, path);
+    }
+
+    @Override
+    public long getDistinctValueCount(String path) {
+      return recorded(DISTINCT_VALUE_COUNT, path);
+    }
+
+    private long recorded(int kind, String path) {
+      long value = lookup(statistics, kind, path);
+      record(name, kind, path, value);
+      return value;
+    }
+  }
+}
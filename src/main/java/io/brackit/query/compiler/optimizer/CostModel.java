@@ -0,0 +1,333 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.compiler.optimizer;
+
+import java.util.Map;
+
+import io.brackit.query.atomic.IntNumeric;
+import io.brackit.query.atomic.QNm;
+import io.brackit.query.compiler.AST;
+import io.brackit.query.compiler.XQ;
+import io.brackit.query.function.json.JSONFun;
+import io.brackit.query.jdm.Statistics;
+import io.brackit.query.jdm.StatisticsProvider;
+import io.brackit.query.module.Namespaces;
+import io.brackit.query.util.Cfg;
+import io.brackit.query.util.Cmp;
+
+/**
+ * Simple cost model for FLWOR pipelines. Cardinalities are derived from
+ * literal sources, e.g., sequences and ranges, and from the statistics of
+ * the collections accessed by <code>fn:collection</code>,
+ * <code>fn:doc</code>, <code>jn:collection</code> and
+ * <code>jn:json-doc</code> with literal names, optionally followed by
+ * simple path steps and object lookups. Everything else is assumed to have
+ * a default cardinality.
+ * <p>
+ * Costs are measured in abstract units of work per processed item or tuple.
+ */
+public class CostModel {
+
+  public enum JoinAlgorithm {
+    /**
+     * Hash table on the right input, probed with the left input.
+     */
+    HASH,
+    /**
+     * Sorted table on the right input, probed with the left input.
+     */
+    SORT,
+    /**
+     * Re-evaluation of the right input for each left tuple.
+     */
+    NESTED_LOOP
+  }
+
+  public static final String DEFAULT_CARDINALITY_CFG = "org.brackit.xquery.cost.defaultCardinality";
+
+  /**
+   * Assumed cardinality of expressions without better estimates.
+   */
+  public static double DEFAULT_CARDINALITY = Cfg.asDouble(DEFAULT_CARDINALITY_CFG, 100);
+
+  /**
+   * Assumed selectivity of predicates without better estimates.
+   */
+  public static final double FILTER_SELECTIVITY = 1.0 / 3;
+
+  static final double EVAL = 1;
+
+  static final double COMPARE = 1;
+
+  static final double BUILD = 2;
+
+  static final double PROBE = 1;
+
+  private final StatisticsProvider statistics;
+
+  public CostModel(StatisticsProvider statistics) {
+    this.statistics = statistics;
+  }
+
+  /**
+   * Estimates the number of items returned by the given expression.
+   */
+  public double cardinality(AST expr) {
+    switch (expr.getType()) {
+      case XQ.Int, XQ.Str, XQ.Dbl, XQ.Dec, XQ.Bool, XQ.QNm, XQ.Null, XQ.ContextItemExpr:
+        return 1;
+      case XQ.ParenthesizedExpr:
+        return (expr.getChildCount() == 0) ? 0 : cardinality(expr.getChild(0));
+      case XQ.SequenceExpr: {
+        double card = 0;
+        for (int i = 0; i < expr.getChildCount(); i++) {
+          card += cardinality(expr.getChild(i));
+        }
+        return card;
+      }
+      case XQ.RangeExpr: {
+        AST lo = expr.getChild(0);
+        AST hi = expr.getChild(1);
+        if ((lo.getValue() instanceof IntNumeric l) && (hi.getValue() instanceof IntNumeric h)) {
+          return Math.max(0, h.doubleValue() - l.doubleValue() + 1);
+        }
+        return DEFAULT_CARDINALITY;
+      }
+      default: {
+        Source source = source(expr, null);
+        if (source != null) {
+          Statistics stats = source.statistics();
+          if (stats != null) {
+            long card = source.path.isEmpty() ? stats.getEstimatedDocumentCount() : stats.getPathFrequency(source.path);
+            if (card != Statistics.UNKNOWN) {
+              return card;
+            }
+          }
+          if (source.path.isEmpty() && source.document) {
+            return 1;
+          }
+        }
+        return DEFAULT_CARDINALITY;
+      }
+    }
+  }
+
+  /**
+   * Estimates the number of distinct values of the given expression, which
+   * may navigate from variables bound to the given source expressions.
+   * Returns {@link Statistics#UNKNOWN} if no statistics are available.
+   */
+  public double distinctValues(AST expr, Map<Object, AST> bindings) {
+    Source source = source(expr, bindings);
+    if (source == null) {
+      return Statistics.UNKNOWN;
+    }
+    Statistics stats = source.statistics();
+    return (stats == null) ? Statistics.UNKNOWN : stats.getDistinctValueCount(source.path);
+  }
+
+  /**
+   * Estimates the selectivity of an equality predicate between expressions
+   * over two inputs with the given cardinalities.
+   */
+  public double equiJoinSelectivity(AST left, double leftCard, AST right, double rightCard,
+      Map<Object, AST> bindings) {
+    double leftDistinct = distinctValues(left, bindings);
+    double rightDistinct = distinctValues(right, bindings);
+    if (leftDistinct == Statistics.UNKNOWN) {
+      leftDistinct = leftCard;
+    }
+    if (rightDistinct == Statistics.UNKNOWN) {
+      rightDistinct = rightCard;
+    }
+    return 1 / Math.max(1, Math.max(leftDistinct, rightDistinct));
+  }
+
+  /**
+   * Estimates the number of tuples produced by an operator pipeline.
+   */
+  public double pipelineCardinality(AST node) {
+    double card = 1;
+    while (node.getType() != XQ.End) {
+      switch (node.getType()) {
+        case XQ.Start:
+          if (node.getChildCount() == 0) {
+            return card;
+          }
+          break;
+        case XQ.ForBind:
+          card *= cardinality(node.getChild(node.getChildCount() - 2));
+          break;
+        case XQ.Selection:
+          card *= FILTER_SELECTIVITY;
+          break;
+        case XQ.Join:
+          double left = pipelineCardinality(node.getChild(0));
+          double right = pipelineCardinality(node.getChild(1));
+          card *= (node.checkProperty("leftJoin")) ? left : Math.max(left, right);
+          break;
+        case XQ.GroupBy:
+          card = Math.max(1, card * FILTER_SELECTIVITY);
+          break;
+        default:
+      }
+      node = node.getLastChild();
+    }
+    return card;
+  }
+
+  public double hashJoinCost(double left, double right) {
+    return right * (EVAL + BUILD) + left * PROBE;
+  }
+
+  public double sortJoinCost(double left, double right) {
+    double log = Math.log(Math.max(2, right)) / Math.log(2);
+    return right * (EVAL + BUILD * log) + left * PROBE * log;
+  }
+
+  public double nestedLoopJoinCost(double left, double right) {
+    return left * right * (EVAL + COMPARE);
+  }
+
+  public double crossProductCost(double left, double right) {
+    return left * right * EVAL;
+  }
+
+  public double sortCost(double card) {
+    return card * COMPARE * Math.log(Math.max(2, card)) / Math.log(2);
+  }
+
+  /**
+   * Chooses the cheapest algorithm for joining inputs with the given
+   * cardinalities. Equality predicates are hashed, other comparisons use
+   * sorted tables.
+   */
+  public JoinAlgorithm joinAlgorithm(Cmp cmp, double left, double right) {
+    boolean hash = (cmp == Cmp.eq);
+    double tableCost = hash ? hashJoinCost(left, right) : sortJoinCost(left, right);
+    if (nestedLoopJoinCost(left, right) < tableCost) {
+      return JoinAlgorithm.NESTED_LOOP;
+    }
+    return hash ? JoinAlgorithm.HASH : JoinAlgorithm.SORT;
+  }
+
+  private Source source(AST expr, Map<Object, AST> bindings) {
+    switch (expr.getType()) {
+      case XQ.ParenthesizedExpr:
+        return (expr.getChildCount() == 1) ? source(expr.getChild(0), bindings) : null;
+      case XQ.VariableRef: {
+        AST bound = (bindings != null) ? bindings.get(expr.getValue()) : null;
+        return (bound != null) ? source(bound, null) : null;
+      }
+      case XQ.FunctionCall:
+        return functionSource(expr);
+      case XQ.PathExpr: {
+        Source source = source(expr.getChild(0), bindings);
+        for (int i = 1; (source != null) && (i < expr.getChildCount()); i++) {
+          source = step(source, expr.getChild(i));
+        }
+        return source;
+      }
+      case XQ.DerefExpr: {
+        Source source = source(expr.getChild(0), bindings);
+        AST field = expr.getChild(1);
+        if ((source == null) || ((field.getType() != XQ.QNm) && (field.getType() != XQ.Str))) {
+          return null;
+        }
+        String name = (field.getType() == XQ.QNm) ? ((QNm) field.getValue()).getLocalName() : field.getStringValue();
+        return source.append("." + name);
+      }
+      case XQ.ArrayAccess: {
+        Source source = source(expr.getChild(0), bindings);
+        AST index = expr.getChild(1);
+        if ((source == null) || (index.getType() != XQ.SequenceExpr) || (index.getChildCount() != 0)) {
+          return null;
+        }
+        return source.append("[]");
+      }
+      default:
+        return null;
+    }
+  }
+
+  private Source functionSource(AST call) {
+    if ((call.getChildCount() != 1) || (call.getChild(0).getType() != XQ.Str)) {
+      return null;
+    }
+    QNm name = (QNm) call.getValue();
+    String nsURI = name.getNamespaceURI();
+    if (!nsURI.equals(Namespaces.FN_NSURI) && !nsURI.equals(Namespaces.DEFAULT_FN_NSURI) && !nsURI.equals(
+        JSONFun.JSON_NSURI)) {
+      return null;
+    }
+    return switch (name.getLocalName()) {
+      case "collection" -> new Source(call.getChild(0).getStringValue(), "", false);
+      case "doc", "json-doc" -> new Source(call.getChild(0).getStringValue(), "", true);
+      default -> null;
+    };
+  }
+
+  private static Source step(Source source, AST step) {
+    // only name tests without predicates
+    if ((step.getType() != XQ.StepExpr) || (step.getChildCount() != 2) || (step.getChild(1).getType()
+        != XQ.NameTest)) {
+      return null;
+    }
+    AST test = step.getChild(1);
+    if (test.getChildCount() != 1) {
+      return null;
+    }
+    String name = ((QNm) test.getChild(0).getValue()).getLocalName();
+    return switch (step.getChild(0).getChild(0).getType()) {
+      case XQ.CHILD -> source.append("/" + name);
+      case XQ.DESCENDANT -> source.append("//" + name);
+      case XQ.ATTRIBUTE -> source.append("/@" + name);
+      default -> null;
+    };
+  }
+
+  private final class Source {
+    final String name;
+    final String path;
+    final boolean document;
+
+    Source(String name, String path, boolean document) {
+      this.name = name;
+      this.path = path;
+      this.document = document;
+    }
+
+    Source append(String step) {
+      return new Source(name, path + step, document);
+    }
+
+    Statistics statistics() {
+      return (statistics != null) ? statistics.getStatistics(name) : null;
+    }
+  }
+}
@@ -30,6 +30,7 @@ package io.brackit.query.compiler.optimizer;
 import io.brackit.query.atomic.QNm;
 import io.brackit.query.atomic.Str;
 import io.brackit.query.compiler.optimizer.walker.DoSNStepMerger;
+import io.brackit.query.compiler.optimizer.walker.JsonProjectionAnalysis;
 import io.brackit.query.compiler.optimizer.walker.OrderForGroupBy;
 import io.brackit.query.compiler.optimizer.walker.PathDDOElimination;
 import io.brackit.query.module.StaticContext;
@@ -56,6 +57,18 @@ public class DefaultOptimizer implements Optimizer {
 
   public static boolean JOIN_DETECTION = Cfg.asBool(JOIN_DETECTION_CFG, true);
 
+  public static final String JOIN_ORDERING_CFG = "org.brackit.xquery.joinOrdering";
+
+  public static boolean JOIN_ORDERING = Cfg.asBool(JOIN_ORDERING_CFG, true);
+
+  public static final String TOP_K_CFG = "org.brackit.xquery.topK";
+
+  public static boolean TOP_K = Cfg.asBool(TOP_K_CFG, true);
+
+  public static final String JSON_PROJECTION_CFG = "org.brackit.xquery.jsonProjection";
+
+  public static boolean JSON_PROJECTION = Cfg.asBool(JSON_PROJECTION_CFG, true);
+
   protected final List<Stage> stages;
   protected final Map<QNm, Str> options;
 
@@ -97,6 +110,9 @@ public class DefaultOptimizer implements Optimizer {
   protected static class Finalize implements Stage {
     public AST rewrite(StaticContext sctx, AST ast) {
       ast = new PathDDOElimination(sctx).walk(ast);
+      if (JSON_PROJECTION) {
+        ast = new JsonProjectionAnalysis().walk(ast);
+      }
       return ast;
     }
   }
@@ -35,8 +35,10 @@ import io.brackit.query.atomic.QNm;
 import io.brackit.query.atomic.Str;
 import io.brackit.query.module.StaticContext;
 import io.brackit.query.compiler.AST;
+import io.brackit.query.compiler.optimizer.walker.topdown.JoinAlgorithmSelection;
 import io.brackit.query.compiler.optimizer.walker.topdown.GroupByAggregates;
 import io.brackit.query.compiler.optimizer.walker.topdown.JoinGroupDemarcation;
+import io.brackit.query.compiler.optimizer.walker.topdown.JoinOrdering;
 import io.brackit.query.compiler.optimizer.walker.topdown.JoinRewriter;
 import io.brackit.query.compiler.optimizer.walker.topdown.JoinToSelectConversion;
 import io.brackit.query.compiler.optimizer.walker.topdown.LeftJoinLifting;
@@ -48,7 +50,9 @@ import io.brackit.query.compiler.optimizer.walker.topdown.PredicateSplit;
 import io.brackit.query.compiler.optimizer.walker.topdown.PullEvaluation;
 import io.brackit.query.compiler.optimizer.walker.topdown.SelectPullup;
 import io.brackit.query.compiler.optimizer.walker.topdown.TopDownPipeline;
+import io.brackit.query.compiler.optimizer.walker.topdown.TopKDetection;
 import io.brackit.query.compiler.optimizer.walker.topdown.TrivialLeftJoinRemoval;
+import io.brackit.query.jdm.StatisticsProvider;
 
 /**
  * @author Sebastian Baechle
@@ -56,9 +60,21 @@ import io.brackit.query.compiler.optimizer.walker.topdown.TrivialLeftJoinRemoval
 public class TopDownOptimizer extends DefaultOptimizer {
 
   public TopDownOptimizer(Map<QNm, Str> options) {
+    this(options, null);
+  }
+
+  /**
+   * Creates an optimizer that estimates costs with the given statistics,
+   * which may be <code>null</code>.
+   */
+  public TopDownOptimizer(Map<QNm, Str> options, StatisticsProvider statistics) {
     super(options, new ArrayList<>());
+    CostModel costs = new CostModel(statistics);
     stages.add(new Simplification());
     stages.add(new Pipelining());
+    if (JOIN_DETECTION && JOIN_ORDERING) {
+      stages.add(new JoinOrder(costs));
+    }
     stages.add(new Reordering());
     if (JOIN_DETECTION) {
       stages.add(new JoinRecognition());
@@ -66,7 +82,7 @@ public class TopDownOptimizer extends DefaultOptimizer {
     if (UNNEST) {
       stages.add(new Unnest());
     }
-    stages.add(new FinalizePipeline());
+    stages.add(new FinalizePipeline(costs));
     stages.add(new Finalize());
   }
 
@@ -77,6 +93,19 @@ public class TopDownOptimizer extends DefaultOptimizer {
     }
   }
 
+  private static class JoinOrder implements Stage {
+    private final CostModel costs;
+
+    JoinOrder(CostModel costs) {
+      this.costs = costs;
+    }
+
+    public AST rewrite(StaticContext sctx, AST ast) throws QueryException {
+      ast = new JoinOrdering(sctx, costs).walk(ast);
+      return ast;
+    }
+  }
+
   private static class Reordering implements Stage {
     public AST rewrite(StaticContext sctx, AST ast) throws QueryException {
       ast = new PredicateSplit().walk(ast);
@@ -104,12 +133,22 @@ public class TopDownOptimizer extends DefaultOptimizer {
   }
 
   private static class FinalizePipeline implements Stage {
+    private final CostModel costs;
+
+    FinalizePipeline(CostModel costs) {
+      this.costs = costs;
+    }
+
     public AST rewrite(StaticContext sctx, AST ast) throws QueryException {
       ast = new PredicateMerge().walk(ast);
       ast = new TrivialLeftJoinRemoval().walk(ast);
       ast = new GroupByAggregates().walk(ast);
       ast = new JoinGroupDemarcation().walk(ast);
       ast = new PullEvaluation().walk(ast);
+      if (TOP_K) {
+        ast = new TopKDetection().walk(ast);
+      }
+      ast = new JoinAlgorithmSelection(costs).walk(ast);
       return ast;
     }
   }
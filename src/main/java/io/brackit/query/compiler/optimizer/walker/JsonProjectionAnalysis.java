@@ -0,0 +1,165 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.compiler.optimizer.walker;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.brackit.query.atomic.QNm;
+import io.brackit.query.compiler.AST;
+import io.brackit.query.compiler.XQ;
+import io.brackit.query.function.json.JSONFun;
+import io.brackit.query.function.json.JsonProjection;
+import io.brackit.query.module.Namespaces;
+
+/**
+ * Derives the parts of JSON documents that a query actually needs. For each
+ * call of <code>jn:json-doc</code> and <code>jn:collection</code>, all uses
+ * of the result are traced through variable bindings, object lookups with
+ * literal field names and array accesses. If every use ends in such a
+ * lookup path, the call is annotated with the property
+ * <code>projection</code>, which holds a {@link JsonProjection} of the
+ * dereferenced paths. Any other use, e.g., returning or comparing a
+ * document, requires complete documents and suppresses the annotation.
+ */
+public class JsonProjectionAnalysis extends Walker {
+
+  private static final int MAX_DEPTH = 64;
+
+  private final Map<Object, List<AST>> varRefs = new HashMap<>();
+
+  @Override
+  protected AST prepare(AST root) {
+    collectVarRefs(root);
+    return root;
+  }
+
+  private void collectVarRefs(AST node) {
+    if (node.getType() == XQ.VariableRef) {
+      varRefs.computeIfAbsent(node.getValue(), v -> new ArrayList<>()).add(node);
+    }
+    for (int i = 0; i < node.getChildCount(); i++) {
+      collectVarRefs(node.getChild(i));
+    }
+  }
+
+  @Override
+  protected AST visit(AST node) {
+    if ((node.getType() == XQ.FunctionCall) && (node.getProperty("projection") == null) && isSource(
+        (QNm) node.getValue())) {
+      JsonProjection projection = usage(node, 0);
+      if (!projection.keepsAll()) {
+        node.setProperty("projection", projection);
+      }
+    }
+    return node;
+  }
+
+  private static boolean isSource(QNm name) {
+    String nsURI = name.getNamespaceURI();
+    if (!nsURI.equals(JSONFun.JSON_NSURI) && !nsURI.equals(Namespaces.DEFAULT_FN_NSURI)) {
+      return false;
+    }
+    String localName = name.getLocalName();
+    return localName.equals("json-doc") || localName.equals("collection");
+  }
+
+  /**
+   * Computes the projection needed by the consumers of the value of
+   * <code>node</code>.
+   */
+  private JsonProjection usage(AST node, int depth) {
+    AST parent = node.getParent();
+    if ((parent == null) || (depth > MAX_DEPTH)) {
+      return JsonProjection.ALL;
+    }
+    int index = node.getChildIndex();
+    switch (parent.getType()) {
+      case XQ.DerefExpr:
+        if (index == 0) {
+          String field = fieldName(parent.getChild(1));
+          if (field != null) {
+            return JsonProjection.of(field, usage(parent, depth + 1));
+          }
+        }
+        return JsonProjection.ALL;
+      case XQ.ArrayAccess:
+        // array members are projected individually
+        return (index == 0) ? usage(parent, depth + 1) : JsonProjection.ALL;
+      case XQ.SequenceExpr:
+        return usage(parent, depth + 1);
+      case XQ.ForBind:
+      case XQ.LetBind:
+        return (index == parent.getChildCount() - 2) ? bindingUsage(parent, depth) : JsonProjection.ALL;
+      case XQ.ForClause:
+      case XQ.LetClause:
+        return (index == parent.getChildCount() - 1) ? bindingUsage(parent, depth) : JsonProjection.ALL;
+      case XQ.FunctionCall:
+        // functions that only look at the number of items
+        return isCardinalityFunction((QNm) parent.getValue()) ? JsonProjection.none() : JsonProjection.ALL;
+      default:
+        return JsonProjection.ALL;
+    }
+  }
+
+  private JsonProjection bindingUsage(AST binding, int depth) {
+    Object var = binding.getChild(0).getChild(0).getValue();
+    List<AST> refs = varRefs.get(var);
+    JsonProjection projection = JsonProjection.none();
+    if (refs != null) {
+      for (AST ref : refs) {
+        projection = projection.merge(usage(ref, depth + 1));
+        if (projection.keepsAll()) {
+          break;
+        }
+      }
+    }
+    return projection;
+  }
+
+  private static String fieldName(AST field) {
+    if (field.getType() == XQ.Str) {
+      return field.getStringValue();
+    }
+    if ((field.getType() == XQ.QNm) && ((QNm) field.getValue()).getNamespaceURI().isEmpty()) {
+      return ((QNm) field.getValue()).getLocalName();
+    }
+    return null;
+  }
+
+  private static boolean isCardinalityFunction(QNm name) {
+    String nsURI = name.getNamespaceURI();
+    if (!nsURI.equals(Namespaces.FN_NSURI) && !nsURI.equals(Namespaces.DEFAULT_FN_NSURI)) {
+      return false;
+    }
+    String localName = name.getLocalName();
+    return localName.equals("count") || localName.equals("exists") || localName.equals("empty");
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.compiler.optimizer.walker.topdown;
+
+import io.brackit.query.compiler.AST;
+import io.brackit.query.compiler.XQ;
+import io.brackit.query.compiler.optimizer.CostModel;
+import io.brackit.query.compiler.optimizer.CostModel.JoinAlgorithm;
+import io.brackit.query.compiler.optimizer.walker.Walker;
+import io.brackit.query.util.Cmp;
+
+/**
+ * Annotates joins with the property <code>algorithm</code>, which holds
+ * the {@link JoinAlgorithm} that is estimated to be the cheapest for the
+ * cardinalities of the join inputs. Lifted joins, i.e., joins evaluated
+ * per iteration group or with check semantics, always use join tables.
+ */
+public class JoinAlgorithmSelection extends Walker {
+
+  private final CostModel costs;
+
+  public JoinAlgorithmSelection(CostModel costs) {
+    this.costs = costs;
+  }
+
+  @Override
+  protected AST visit(AST node) {
+    if ((node.getType() != XQ.Join) || (node.getProperty("algorithm") != null)) {
+      return node;
+    }
+    Cmp cmp = (Cmp) node.getProperty("cmp");
+    JoinAlgorithm algorithm = (cmp == Cmp.eq) ? JoinAlgorithm.HASH : JoinAlgorithm.SORT;
+    if ((node.getProperty("group") == null) && (node.getProperty("check") == null)) {
+      double left = costs.pipelineCardinality(node.getChild(0));
+      double right = costs.pipelineCardinality(node.getChild(1));
+      algorithm = costs.joinAlgorithm(cmp, left, right);
+    }
+    node.setProperty("algorithm", algorithm);
+    return node;
+  }
+}
@@ -0,0 +1,359 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.compiler.optimizer.walker.topdown;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.brackit.query.atomic.QNm;
+import io.brackit.query.compiler.AST;
+import io.brackit.query.compiler.XQ;
+import io.brackit.query.compiler.optimizer.CostModel;
+import io.brackit.query.compiler.optimizer.walker.Walker;
+import io.brackit.query.module.StaticContext;
+
+/**
+ * Cost-based reordering of independent for-clauses. A run of adjacent
+ * for-clauses, whose sources do not depend on each other, is reordered such
+ * that join predicates in the following where-clauses connect each clause
+ * to its predecessors and the smaller inputs end up on the build side of
+ * the joins recognized later on. In ordered mode, the clauses are annotated
+ * with positional variables and the original order is restored by an
+ * additional order by, which is only done if the estimated gain outweighs
+ * the sort.
+ * <p>
+ * Must run on pipelines before predicates are split and pulled up.
+ */
+public class JoinOrdering extends Walker {
+
+  /**
+   * Maximum number of clauses in a run for exhaustive greedy search.
+   */
+  private static final int MAX_RUN = 16;
+
+  /**
+   * Minimum factor by which a new order must be cheaper than the current.
+   */
+  private static final double MIN_GAIN = 2;
+
+  private final CostModel costs;
+
+  private int joinPosVar;
+
+  public JoinOrdering(StaticContext sctx, CostModel costs) {
+    super(sctx);
+    this.costs = costs;
+  }
+
+  private QNm createPosVarName() {
+    return new QNm("_joinpos;" + (joinPosVar++));
+  }
+
+  @Override
+  protected AST visit(AST node) {
+    if (!isCandidate(node) || continuesRun(node)) {
+      return node;
+    }
+    List<AST> run = run(node);
+    if ((run.size() < 2) || (run.size() > MAX_RUN)) {
+      return node;
+    }
+    List<AST> selections = new ArrayList<>();
+    for (AST s = run.get(run.size() - 1).getLastChild(); s.getType() == XQ.Selection; s = s.getLastChild()) {
+      selections.add(s);
+    }
+    if (selections.isEmpty()) {
+      return node;
+    }
+
+    Graph graph = new Graph(run, selections);
+    boolean ordered = sctx.isOrderingModeOrdered();
+    int[] current = new int[run.size()];
+    for (int i = 0; i < current.length; i++) {
+      current[i] = i;
+    }
+    double currentCost = graph.cost(current);
+    int[] best = null;
+    double bestCost = Double.MAX_VALUE;
+    for (int start = 0; start < run.size(); start++) {
+      int[] order = graph.greedy(start);
+      double cost = graph.cost(order);
+      if (cost < bestCost) {
+        best = order;
+        bestCost = cost;
+      }
+    }
+    if (ordered) {
+      bestCost += costs.sortCost(graph.result);
+    }
+    if ((bestCost * MIN_GAIN >= currentCost) || (best == null)) {
+      return node;
+    }
+    return reorder(run, best, selections.get(selections.size() - 1), ordered);
+  }
+
+  private AST reorder(List<AST> run, int[] order, AST lastSelection, boolean ordered) {
+    AST head = run.get(0);
+    AST parent = head.getParent();
+    int index = head.getChildIndex();
+    AST tail = run.get(run.size() - 1).getLastChild();
+
+    QNm[] posVars = new QNm[run.size()];
+    AST orderBy = null;
+    if (ordered) {
+      // restore original order of the tuples
+      orderBy = new AST(XQ.OrderBy);
+      for (int i = 0; i < run.size(); i++) {
+        posVars[i] = createPosVarName();
+        AST spec = new AST(XQ.OrderBySpec);
+        spec.addChild(new AST(XQ.VariableRef, posVars[i]));
+        orderBy.addChild(spec);
+      }
+      orderBy.addChild(lastSelection.getLastChild());
+      lastSelection.replaceChild(lastSelection.getChildCount() - 1, orderBy);
+    }
+
+    AST first = null;
+    AST prev = null;
+    for (int i : order) {
+      AST forBind = run.get(i);
+      AST clause = forBind.copy();
+      clause.addChild(forBind.getChild(0).copyTree());
+      if (ordered) {
+        AST posBinding = new AST(XQ.TypedVariableBinding);
+        posBinding.addChild(new AST(XQ.Variable, posVars[i]));
+        clause.addChild(posBinding);
+      }
+      clause.addChild(forBind.getChild(1).copyTree());
+      if (prev == null) {
+        first = clause;
+      } else {
+        prev.addChild(clause);
+      }
+      prev = clause;
+    }
+    prev.addChild(tail);
+    parent.replaceChild(index, first);
+    snapshot();
+    return parent;
+  }
+
+  private static boolean isCandidate(AST node) {
+    // no positional variable or "allowing empty"
+    return (node.getType() == XQ.ForBind) && (node.getChildCount() == 3);
+  }
+
+  private boolean continuesRun(AST node) {
+    AST head = node;
+    while (isCandidate(head.getParent()) && (head.getChildIndex() == 2)) {
+      head = head.getParent();
+    }
+    return (head != node) && run(head).contains(node);
+  }
+
+  private static List<AST> run(AST head) {
+    List<AST> run = new ArrayList<>();
+    Set<Object> vars = new HashSet<>();
+    for (AST node = head; isCandidate(node); node = node.getLastChild()) {
+      if (references(node.getChild(1), vars)) {
+        break;
+      }
+      run.add(node);
+      vars.add(node.getChild(0).getChild(0).getValue());
+    }
+    return run;
+  }
+
+  private static boolean references(AST expr, Set<Object> vars) {
+    if ((expr.getType() == XQ.VariableRef) && vars.contains(expr.getValue())) {
+      return true;
+    }
+    for (int i = 0; i < expr.getChildCount(); i++) {
+      if (references(expr.getChild(i), vars)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Join graph of the clauses in a run and the predicates following it.
+   */
+  private final class Graph {
+    final int size;
+    final double[] cards;
+    final List<Predicate> predicates = new ArrayList<>();
+    double result;
+
+    Graph(List<AST> run, List<AST> selections) {
+      size = run.size();
+      cards = new double[size];
+      Map<Object, Integer> vars = new HashMap<>();
+      Map<Object, AST> bindings = new HashMap<>();
+      for (int i = 0; i < size; i++) {
+        AST clause = run.get(i);
+        Object var = clause.getChild(0).getChild(0).getValue();
+        vars.put(var, i);
+        bindings.put(var, clause.getChild(1));
+        cards[i] = Math.max(1, costs.cardinality(clause.getChild(1)));
+      }
+      double[] base = cards.clone();
+      for (AST selection : selections) {
+        addPredicates(selection.getChild(0), vars, bindings, base);
+      }
+    }
+
+    private void addPredicates(AST predicate, Map<Object, Integer> vars, Map<Object, AST> bindings, double[] base) {
+      if (predicate.getType() == XQ.AndExpr) {
+        addPredicates(predicate.getChild(0), vars, bindings, base);
+        addPredicates(predicate.getChild(1), vars, bindings, base);
+        return;
+      }
+      long mask = mask(predicate, vars);
+      int count = Long.bitCount(mask);
+      if (count == 0) {
+        return;
+      }
+      if (count == 1) {
+        // local filter
+        int i = Long.numberOfTrailingZeros(mask);
+        cards[i] = Math.max(1, cards[i] * CostModel.FILTER_SELECTIVITY);
+        return;
+      }
+      double selectivity = CostModel.FILTER_SELECTIVITY;
+      if ((count == 2) && isEquiJoin(predicate)) {
+        AST left = predicate.getChild(1);
+        AST right = predicate.getChild(2);
+        long leftMask = mask(left, vars);
+        long rightMask = mask(right, vars);
+        if ((Long.bitCount(leftMask) == 1) && (Long.bitCount(rightMask) == 1)) {
+          double leftCard = base[Long.numberOfTrailingZeros(leftMask)];
+          double rightCard = base[Long.numberOfTrailingZeros(rightMask)];
+          selectivity = costs.equiJoinSelectivity(left, leftCard, right, rightCard, bindings);
+        }
+      }
+      predicates.add(new Predicate(mask, selectivity));
+    }
+
+    private boolean isEquiJoin(AST predicate) {
+      if (predicate.getType() != XQ.ComparisonExpr) {
+        return false;
+      }
+      int cmp = predicate.getChild(0).getType();
+      return (cmp == XQ.ValueCompEQ) || (cmp == XQ.GeneralCompEQ);
+    }
+
+    private long mask(AST expr, Map<Object, Integer> vars) {
+      long mask = 0;
+      if (expr.getType() == XQ.VariableRef) {
+        Integer i = vars.get(expr.getValue());
+        if (i != null) {
+          mask |= (1L << i);
+        }
+      }
+      for (int i = 0; i < expr.getChildCount(); i++) {
+        mask |= mask(expr.getChild(i), vars);
+      }
+      return mask;
+    }
+
+    /**
+     * Returns the product of the selectivities of all predicates that
+     * become applicable when adding the given clause.
+     */
+    double selectivity(long bound, int clause) {
+      long now = bound | (1L << clause);
+      double selectivity = 1;
+      for (Predicate p : predicates) {
+        if (((p.mask & (1L << clause)) != 0) && ((p.mask & ~now) == 0)) {
+          selectivity *= p.selectivity;
+        }
+      }
+      return selectivity;
+    }
+
+    double cost(int[] order) {
+      double tuples = cards[order[0]];
+      double cost = tuples;
+      long bound = 1L << order[0];
+      for (int k = 1; k < order.length; k++) {
+        int clause = order[k];
+        double selectivity = selectivity(bound, clause);
+        if (selectivity < 1) {
+          cost += costs.hashJoinCost(tuples, cards[clause]);
+        } else {
+          cost += costs.crossProductCost(tuples, cards[clause]);
+        }
+        tuples = tuples * cards[clause] * selectivity;
+        cost += tuples;
+        bound |= 1L << clause;
+      }
+      result = tuples;
+      return cost;
+    }
+
+    /**
+     * Starts with the given clause and repeatedly adds the clause that
+     * yields the smallest intermediate result, preferring clauses connected
+     * by a predicate over cross products.
+     */
+    int[] greedy(int start) {
+      int[] order = new int[size];
+      order[0] = start;
+      long bound = 1L << start;
+      for (int k = 1; k < size; k++) {
+        int next = -1;
+        boolean nextConnected = false;
+        double nextCard = Double.MAX_VALUE;
+        for (int clause = 0; clause < size; clause++) {
+          if ((bound & (1L << clause)) != 0) {
+            continue;
+          }
+          double selectivity = selectivity(bound, clause);
+          boolean connected = (selectivity < 1);
+          double card = cards[clause] * selectivity;
+          if ((next < 0) || (connected && !nextConnected) || ((connected == nextConnected) && (card < nextCard))) {
+            next = clause;
+            nextConnected = connected;
+            nextCard = card;
+          }
+        }
+        order[k] = next;
+        bound |= 1L << next;
+      }
+      return order;
+    }
+  }
+
+  private record Predicate(long mask, double selectivity) {
+  }
+}
@@ -0,0 +1,222 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.compiler.optimizer.walker.topdown;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.brackit.query.atomic.IntNumeric;
+import io.brackit.query.atomic.QNm;
+import io.brackit.query.compiler.AST;
+import io.brackit.query.compiler.Bits;
+import io.brackit.query.compiler.XQ;
+import io.brackit.query.compiler.optimizer.walker.Walker;
+import io.brackit.query.module.Namespaces;
+
+/**
+ * Detects order by clauses whose consumer takes only a bounded prefix of the
+ * sorted result and annotates them with the property <code>limit</code>, so
+ * that they can be evaluated with a bounded top-k sort. The consumer itself
+ * is left unchanged. Recognized consumers are
+ * <ul>
+ * <li><code>fn:subsequence(flwor, start, length)</code> with literal
+ * arguments</li>
+ * <li><code>(flwor)[position() le k]</code> and <code>(flwor)[k]</code></li>
+ * <li><code>order by ... count $c where $c le k</code></li>
+ * </ul>
+ * The first two only apply if the return expression delivers exactly one
+ * item per tuple, because they count items and not tuples.
+ */
+public class TopKDetection extends Walker {
+
+  private static final QNm FN_SUBSEQUENCE = new QNm(Namespaces.FN_NSURI, Namespaces.FN_PREFIX, "subsequence");
+
+  @Override
+  protected AST visit(AST node) {
+    switch (node.getType()) {
+      case XQ.FunctionCall -> {
+        if ((node.getChildCount() == 3) && isSubsequence((QNm) node.getValue())) {
+          Long start = intValue(node.getChild(1));
+          Long length = intValue(node.getChild(2));
+          if ((start != null) && (length != null)) {
+            limitPipe(unwrap(node.getChild(0)), start + length - 1);
+          }
+        }
+      }
+      case XQ.FilterExpr -> {
+        if (node.getChildCount() < 2) {
+          return node;
+        }
+        AST predicate = node.getChild(1).getChild(0);
+        Long limit = intValue(predicate);
+        if (limit == null) {
+          limit = limit(predicate, Bits.FS_POSITION);
+        }
+        if (limit != null) {
+          limitPipe(unwrap(node.getChild(0)), limit);
+        }
+      }
+      case XQ.OrderBy -> {
+        AST count = node.getLastChild();
+        if ((count.getType() == XQ.Count) && (count.getProperty("check") == null)) {
+          AST select = count.getLastChild();
+          if ((select.getType() == XQ.Selection) && (select.getProperty("check") == null)) {
+            QNm countVar = (QNm) count.getChild(0).getChild(0).getValue();
+            Long limit = limit(select.getChild(0), countVar);
+            if (limit != null) {
+              setLimit(node, limit);
+            }
+          }
+        }
+      }
+      default -> {
+      }
+    }
+    return node;
+  }
+
+  private void limitPipe(AST pipe, long limit) {
+    if (pipe.getType() != XQ.PipeExpr) {
+      return;
+    }
+    AST orderBy = null;
+    List<QNm> forVars = new ArrayList<>();
+    AST clause = pipe.getChild(0).getChild(0);
+    while (clause.getType() != XQ.End) {
+      switch (clause.getType()) {
+        case XQ.ForBind -> {
+          forVars.add((QNm) clause.getChild(0).getChild(0).getValue());
+          orderBy = null;
+        }
+        case XQ.OrderBy -> orderBy = clause;
+        case XQ.LetBind, XQ.Count -> {
+          // do not change the number of tuples
+        }
+        case XQ.GroupBy -> {
+          // non-grouping variables are rebound to sequences
+          forVars.clear();
+          orderBy = null;
+        }
+        default -> orderBy = null;
+      }
+      clause = clause.getLastChild();
+    }
+    if ((orderBy != null) && singleItem(clause.getChild(0), forVars)) {
+      setLimit(orderBy, limit);
+    }
+  }
+
+  private void setLimit(AST orderBy, long limit) {
+    if ((limit < 1) || (limit > Integer.MAX_VALUE) || (orderBy.getProperty("check") != null)) {
+      return;
+    }
+    Integer current = (Integer) orderBy.getProperty("limit");
+    if ((current == null) || (limit < current)) {
+      orderBy.setProperty("limit", (int) limit);
+      snapshot();
+    }
+  }
+
+  /*
+   * Checks if the return expression is guaranteed to deliver exactly one
+   * item for every tuple.
+   */
+  private boolean singleItem(AST expr, List<QNm> forVars) {
+    return switch (expr.getType()) {
+      case XQ.Int, XQ.Str, XQ.Dbl, XQ.Dec, XQ.ObjectConstructor, XQ.ArrayConstructor, XQ.DirElementConstructor,
+          XQ.CompElementConstructor -> true;
+      case XQ.VariableRef -> {
+        QNm var = (QNm) expr.getValue();
+        for (QNm forVar : forVars) {
+          if (forVar.atomicCmp(var) == 0) {
+            yield true;
+          }
+        }
+        yield false;
+      }
+      default -> false;
+    };
+  }
+
+  /*
+   * Returns the limit k if the predicate only holds for values of the
+   * given integer variable in the range [1, k].
+   */
+  private Long limit(AST predicate, QNm var) {
+    if (predicate.getType() == XQ.AndExpr) {
+      Long l = limit(predicate.getChild(0), var);
+      Long r = limit(predicate.getChild(1), var);
+      return (l == null) ? r : (r == null) ? l : Long.valueOf(Math.min(l, r));
+    }
+    if (predicate.getType() != XQ.ComparisonExpr) {
+      return null;
+    }
+    int cmp = predicate.getChild(0).getType();
+    AST left = predicate.getChild(1);
+    AST right = predicate.getChild(2);
+    Long k;
+    if (isVar(left, var) && ((k = intValue(right)) != null)) {
+      return switch (cmp) {
+        case XQ.ValueCompLE, XQ.GeneralCompLE, XQ.ValueCompEQ, XQ.GeneralCompEQ -> k;
+        case XQ.ValueCompLT, XQ.GeneralCompLT -> k - 1;
+        default -> null;
+      };
+    }
+    if (isVar(right, var) && ((k = intValue(left)) != null)) {
+      return switch (cmp) {
+        case XQ.ValueCompGE, XQ.GeneralCompGE, XQ.ValueCompEQ, XQ.GeneralCompEQ -> k;
+        case XQ.ValueCompGT, XQ.GeneralCompGT -> k - 1;
+        default -> null;
+      };
+    }
+    return null;
+  }
+
+  private boolean isSubsequence(QNm name) {
+    if (name.getNamespaceURI().equals(Namespaces.DEFAULT_FN_NSURI)) {
+      // the default function namespace resolves to fn first
+      name = new QNm(Namespaces.FN_NSURI, Namespaces.FN_PREFIX, name.getLocalName());
+    }
+    return name.atomicCmp(FN_SUBSEQUENCE) == 0;
+  }
+
+  private boolean isVar(AST node, QNm var) {
+    return (node.getType() == XQ.VariableRef) && (((QNm) node.getValue()).atomicCmp(var) == 0);
+  }
+
+  private Long intValue(AST node) {
+    return (node.getType() == XQ.Int) ? Long.valueOf(((IntNumeric) node.getValue()).longValue()) : null;
+  }
+
+  private AST unwrap(AST node) {
+    while ((node.getType() == XQ.ParenthesizedExpr) && (node.getChildCount() == 1)) {
+      node = node.getChild(0);
+    }
+    return node;
+  }
+}
@@ -35,7 +35,11 @@ import io.brackit.query.function.FunctionExpr;
 import io.brackit.query.function.InlineFunctionExpr;
 import io.brackit.query.function.UDF;
 import io.brackit.query.function.bit.BitFun;
+import io.brackit.query.function.fn.RegEx;
+import io.brackit.query.function.json.Collection;
+import io.brackit.query.function.json.Doc;
 import io.brackit.query.function.json.JSONFun;
+import io.brackit.query.function.json.JsonProjection;
 import io.brackit.query.jdm.*;
 import io.brackit.query.jdm.type.*;
 import io.brackit.query.module.Module;
@@ -43,9 +47,11 @@ import io.brackit.query.module.StaticContext;
 import io.brackit.query.operator.*;
 import io.brackit.query.update.*;
 import io.brackit.query.update.json.*;
+import io.brackit.query.util.Cfg;
 import io.brackit.query.util.Cmp;
 import io.brackit.query.util.Whitespace;
 import io.brackit.query.util.aggregator.Aggregate;
+import io.brackit.query.util.path.Path;
 import io.brackit.query.util.sort.Ordering;
 import io.brackit.query.QueryException;
 import io.brackit.query.compiler.AST;
@@ -94,6 +100,15 @@ public class Compiler implements Translator {
     }
   }
 
+  public static final String PATH_STACK_CFG = "org.brackit.xquery.pathStack";
+
+  /**
+   * Evaluate trailing child and descendant steps of a path that starts with a
+   * descendant step, e.g., <code>//a//b/c</code>, in a single subtree scan
+   * instead of step by step.
+   */
+  public static boolean PATH_STACK = Cfg.asBool(PATH_STACK_CFG, true);
+
   protected VariableTable table;
   protected StaticContext ctx;
   protected final Map<QNm, Str> options;
@@ -704,6 +719,17 @@ public class Compiler implements Translator {
     }
 
     if (argumentPlaceHolderExprs.isEmpty()) {
+      if (function instanceof RegEx regEx) {
+        function = regEx.precompile(args);
+      }
+      JsonProjection projection = (JsonProjection) node.getProperty("projection");
+      if (projection != null) {
+        if (function instanceof Doc doc) {
+          function = doc.project(projection);
+        } else if (function instanceof Collection collection) {
+          function = collection.project(projection);
+        }
+      }
       return new FunctionExpr(node.getStaticContext(), function, args);
     } else {
       final UDF udf = new UDF(name,
@@ -943,7 +969,8 @@ public class Compiler implements Translator {
    */
   protected Expr pathExpr(AST node) throws QueryException {
     Expr e1 = expr(node.getChild(0), true);
-    for (int i = 1; i < node.getChildCount(); i++) {
+    int pathStackStart = (PATH_STACK) ? pathStackStart(node) : node.getChildCount();
+    for (int i = 1; i < pathStackStart; i++) {
       Binding itemBinding = table.bind(Bits.FS_DOT, SequenceType.NODE);
       Binding posBinding = table.bind(Bits.FS_POSITION, SequenceType.INTEGER);
       Binding sizeBinding = table.bind(Bits.FS_LAST, SequenceType.INTEGER);
@@ -962,9 +989,60 @@ public class Compiler implements Translator {
       boolean checkInput = step.checkProperty("checkInput");
       e1 = new PathStepExpr(e1, e2, bindItem, bindPos, bindSize, lastStep, skipDDO, checkInput);
     }
+    if (pathStackStart < node.getChildCount()) {
+      e1 = pathStackExpr(e1, node, pathStackStart);
+    }
     return e1;
   }
 
+  /*
+   * Returns the position of the first step of the longest suffix of a path
+   * that consists of at least two child and descendant steps with name tests
+   * and without predicates and starts with a descendant step. The whole
+   * subtree of the context node must be scanned for such a suffix anyway.
+   */
+  private int pathStackStart(AST node) {
+    int start = node.getChildCount();
+    while ((start > 1) && (pathStackAxis(node.getChild(start - 1)) != -1)) {
+      start--;
+    }
+    while ((start < node.getChildCount()) && (pathStackAxis(node.getChild(start)) != XQ.DESCENDANT)) {
+      start++;
+    }
+    int length = node.getChildCount() - start;
+    return ((length >= 2) && (length < Long.SIZE)) ? start : node.getChildCount();
+  }
+
+  private int pathStackAxis(AST step) {
+    if ((step.getType() != XQ.StepExpr) || (step.getChildCount() != 2)) {
+      return -1;
+    }
+    AST axis = step.getChild(0);
+    if ((axis.getType() != XQ.AxisSpec) || (step.getChild(1).getType() != XQ.NameTest)) {
+      return -1;
+    }
+    int type = axis.getChild(0).getType();
+    return ((type == XQ.CHILD) || (type == XQ.DESCENDANT)) ? type : -1;
+  }
+
+  protected Expr pathStackExpr(Expr input, AST node, int start) throws QueryException {
+    Path<String> path = new Path<>();
+    NodeType[] tests = new NodeType[node.getChildCount() - start];
+    for (int i = start; i < node.getChildCount(); i++) {
+      AST step = node.getChild(i);
+      AST nameTest = step.getChild(1);
+      AST name = nameTest.getChild(0);
+      String value = (name.getType() == XQ.Wildcard) ? null : name.getStringValue();
+      if (step.getChild(0).getChild(0).getType() == XQ.DESCENDANT) {
+        path.descendant(value);
+      } else {
+        path.child(value);
+      }
+      tests[i - start] = nameTest(nameTest, Axis.CHILD);
+    }
+    return new PathStackExpr(input, path, tests);
+  }
+
   protected Expr stepExpr(AST node) throws QueryException {
     AST child = node.getChild(0);
     Accessor axis;
@@ -1467,6 +1545,10 @@ public class Compiler implements Translator {
   protected Expr derefExpr(AST node) throws QueryException {
     Expr object = expr(node.getChild(0), true);
     Expr field = expr(node.getChild(1), true);
+    FieldRef ref = FieldRef.of(field);
+    if (ref != null) {
+      return new FieldDerefExpr(object, field, ref);
+    }
     return new DerefExpr(object, field);
   }
 
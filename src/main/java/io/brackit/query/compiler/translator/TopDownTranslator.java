@@ -33,11 +33,16 @@ import java.util.Map;
 
 import io.brackit.query.atomic.QNm;
 import io.brackit.query.atomic.Str;
+import io.brackit.query.block.Block;
+import io.brackit.query.block.BlockChain;
+import io.brackit.query.compiler.Bits;
+import io.brackit.query.expr.BlockExpr;
 import io.brackit.query.expr.PipeExpr;
 import io.brackit.query.operator.Count;
 import io.brackit.query.operator.ForBind;
 import io.brackit.query.operator.GroupBy;
 import io.brackit.query.operator.NLJoin;
+import io.brackit.query.util.Cfg;
 import io.brackit.query.util.Cmp;
 import io.brackit.query.util.aggregator.Aggregate;
 import io.brackit.query.util.sort.Ordering;
@@ -46,6 +51,7 @@ import io.brackit.query.QueryContext;
 import io.brackit.query.QueryException;
 import io.brackit.query.compiler.AST;
 import io.brackit.query.compiler.XQ;
+import io.brackit.query.compiler.optimizer.CostModel.JoinAlgorithm;
 import io.brackit.query.operator.Check;
 import io.brackit.query.operator.LetBind;
 import io.brackit.query.operator.Operator;
@@ -54,6 +60,7 @@ import io.brackit.query.operator.Print;
 import io.brackit.query.operator.Select;
 import io.brackit.query.operator.Start;
 import io.brackit.query.operator.TableJoin;
+import io.brackit.query.operator.TopK;
 import io.brackit.query.jdm.DocumentException;
 import io.brackit.query.jdm.Expr;
 import io.brackit.query.jdm.Item;
@@ -69,6 +76,36 @@ import io.brackit.query.jdm.type.SequenceType;
  */
 public class TopDownTranslator extends Compiler {
 
+  /**
+   * Query option to compile FLWOR pipelines to parallel block chains instead
+   * of pull-based operators, e.g.,
+   * <code>declare option bit:parallel "true";</code>
+   */
+  public static final QNm PARALLEL = new QNm(Bits.BIT_NSURI, Bits.BIT_PREFIX, "parallel");
+
+  public static final String PARALLEL_CFG = "org.brackit.xquery.parallel";
+
+  /**
+   * Default for queries that do not set the {@link #PARALLEL} option.
+   */
+  public static boolean PARALLEL_DEFAULT = Cfg.asBool(PARALLEL_CFG, false);
+
+  /**
+   * Query option to evaluate FLWOR pipelines on tuples that share their
+   * prefixes instead of copying all bindings per clause, e.g.,
+   * <code>declare option bit:shared-tuples "true";</code>
+   */
+  public static final QNm SHARED_TUPLES = new QNm(Bits.BIT_NSURI, Bits.BIT_PREFIX, "shared-tuples");
+
+  public static final String SHARED_TUPLES_DEPTH_CFG = "org.brackit.xquery.sharedTuples.depth";
+
+  /**
+   * Minimum number of variables bound in a pipeline to use shared tuples for
+   * queries that do not set the {@link #SHARED_TUPLES} option. A value less
+   * than or equal to zero disables shared tuples by default.
+   */
+  public static int SHARED_TUPLES_DEPTH = Cfg.asInt(SHARED_TUPLES_DEPTH_CFG, 4);
+
   public TopDownTranslator(Map<QNm, Str> options) {
     super(options);
   }
@@ -77,11 +114,97 @@ public class TopDownTranslator extends Compiler {
   protected Expr anyExpr(AST node) throws QueryException {
     if (node.getType() == XQ.PipeExpr) {
       // switch to bottom up compilation
+      if (parallel() && supportsBlocks(node.getChild(0))) {
+        return blockExpr(node);
+      }
       return pipeExpr(node);
     }
     return super.anyExpr(node);
   }
 
+  protected boolean parallel() {
+    Str opt = (options != null) ? options.get(PARALLEL) : null;
+    return (opt != null) ? Boolean.parseBoolean(opt.stringValue()) : PARALLEL_DEFAULT;
+  }
+
+  protected boolean sharedTuples(AST start) {
+    Str opt = (options != null) ? options.get(SHARED_TUPLES) : null;
+    if (opt != null) {
+      return Boolean.parseBoolean(opt.stringValue());
+    }
+    if (SHARED_TUPLES_DEPTH <= 0) {
+      return false;
+    }
+    int bound = 0;
+    for (AST node = start; node.getType() != XQ.End; node = node.getLastChild()) {
+      switch (node.getType()) {
+        case XQ.ForBind:
+          bound += node.getChildCount() - 2;
+          break;
+        case XQ.LetBind:
+        case XQ.Count:
+          bound++;
+          break;
+        default:
+          if (node.getChildCount() == 0) {
+            return false;
+          }
+      }
+    }
+    return (bound >= SHARED_TUPLES_DEPTH);
+  }
+
+  /**
+   * Checks if all clauses of a pipeline can be evaluated by blocks. Blocks
+   * do not support positional variables, the iteration checks of
+   * unnested pipelines, and joins whose right branch depends on the output
+   * of the left branch.
+   */
+  protected boolean supportsBlocks(AST node) {
+    if (node.getProperty("check") != null) {
+      return false;
+    }
+    switch (node.getType()) {
+      case XQ.Start:
+        return (node.getChildCount() == 0) || supportsBlocks(node.getLastChild());
+      case XQ.End:
+        return true;
+      case XQ.ForBind:
+        if (node.getChild(1).getType() == XQ.TypedVariableBinding) {
+          return false;
+        }
+        return supportsBlocks(node.getLastChild());
+      case XQ.LetBind:
+      case XQ.Selection:
+      case XQ.OrderBy:
+      case XQ.GroupBy:
+      case XQ.Count:
+        return supportsBlocks(node.getLastChild());
+      default:
+        return false;
+    }
+  }
+
+  protected Expr blockExpr(AST node) throws QueryException {
+    int initialBindSize = table.bound().length;
+    List<Block> blocks = new ArrayList<>();
+    anyBlock(blocks, node.getChild(0));
+
+    AST returnExpr = node.getChild(0);
+    while (returnExpr.getType() != XQ.End) {
+      returnExpr = returnExpr.getLastChild();
+    }
+    Expr expr = anyExpr(returnExpr.getChild(0));
+
+    // clear block bindings
+    int unbind = table.bound().length - initialBindSize;
+    for (int i = 0; i < unbind; i++) {
+      table.unbind();
+    }
+
+    return new BlockExpr(new BlockChain(blocks), expr, true);
+  }
+
   protected Expr pipeExpr(AST node) throws QueryException {
     int initialBindSize = table.bound().length;
     Operator root = anyOp(null, node.getChild(0));
@@ -114,7 +237,7 @@ public class TopDownTranslator extends Compiler {
         if (node.getChildCount() == 0) {
           return new Start();
         } else {
-          return anyOp(new Start(), node.getLastChild());
+          return anyOp(new Start(sharedTuples(node)), node.getLastChild());
         }
       }
       case XQ.End -> {
@@ -139,6 +262,9 @@ public class TopDownTranslator extends Compiler {
         return count(in, node);
       }
       case XQ.Join -> {
+        if (node.getProperty("algorithm") == JoinAlgorithm.NESTED_LOOP) {
+          return nljoin(in, node);
+        }
         return join(in, node);
       }
       default -> throw new QueryException(ErrorCode.BIT_DYN_RT_ILLEGAL_STATE_ERROR,
@@ -265,14 +391,14 @@ public class TopDownTranslator extends Compiler {
     Expr rightExpr = anyExpr(tmp.getChild(0));
 
     boolean leftJoin = node.checkProperty("leftJoin");
-    boolean skipSort = node.checkProperty("skipSort");
     Operator join = new NLJoin(leftIn, rightIn, leftExpr, rightExpr, cmp, isGcmp, leftJoin);
 
     Operator op = join;
-    // if (node.getParent().getParent().getType() == XQ.Join) {
-    // return new Print(anyOp(op, node.getLastChild()), System.out);
-    // }
-    //
+    AST post = node.getChild(2).getChild(0);
+    if ((post.getType() != XQ.End)) {
+      op = anyOp(join, post);
+    }
+
     return anyOp(op, node.getLastChild());
   }
 
@@ -371,11 +497,150 @@ public class TopDownTranslator extends Compiler {
       orderByExprs[i] = expr(orderBy.getChild(0), true);
       orderBySpec[i] = orderModifier(orderBy);
     }
-    OrderBy orderBy = new OrderBy(in, orderByExprs, orderBySpec);
+    Integer limit = (Integer) node.getProperty("limit");
+    OrderBy orderBy = (limit != null) ? new TopK(in, orderByExprs, orderBySpec, limit)
+        : new OrderBy(in, orderByExprs, orderBySpec);
     addChecks(orderBy, (List<QNm>) node.getProperty("check"));
     return anyOp(orderBy, node.getLastChild());
   }
 
+  protected void anyBlock(List<Block> blocks, AST node) throws QueryException {
+    switch (node.getType()) {
+      case XQ.Start -> {
+        if (node.getChildCount() > 0) {
+          anyBlock(blocks, node.getLastChild());
+        }
+      }
+      case XQ.End -> {
+      }
+      case XQ.ForBind -> forBindBlock(blocks, node);
+      case XQ.LetBind -> letBindBlock(blocks, node);
+      case XQ.Selection -> selectBlock(blocks, node);
+      case XQ.OrderBy -> orderByBlock(blocks, node);
+      case XQ.GroupBy -> groupByBlock(blocks, node);
+      case XQ.Count -> countBlock(blocks, node);
+      default -> throw new QueryException(ErrorCode.BIT_DYN_RT_ILLEGAL_STATE_ERROR,
+                                          "Unexpected AST operator node '%s' of type: %s",
+                                          node,
+                                          node.getType());
+    }
+  }
+
+  protected void forBindBlock(List<Block> blocks, AST node) throws QueryException {
+    AST runVarDecl = node.getChild(0);
+    QNm runVarName = (QNm) runVarDecl.getChild(0).getValue();
+    SequenceType runVarType = SequenceType.ITEM_SEQUENCE;
+    if (runVarDecl.getChildCount() == 2) {
+      runVarType = sequenceType(runVarDecl.getChild(1));
+    }
+    Expr sourceExpr = expr(node.getChild(1), true);
+    table.bind(runVarName, runVarType);
+    // Fake binding of run variable because set-oriented processing requires
+    // the variable anyway
+    table.resolve(runVarName);
+    blocks.add(new io.brackit.query.block.ForBind(sourceExpr, false));
+    anyBlock(blocks, node.getLastChild());
+  }
+
+  protected void letBindBlock(List<Block> blocks, AST node) throws QueryException {
+    AST letVarDecl = node.getChild(0);
+    QNm letVarName = (QNm) letVarDecl.getChild(0).getValue();
+    SequenceType letVarType = SequenceType.ITEM_SEQUENCE;
+    if (letVarDecl.getChildCount() == 2) {
+      letVarType = sequenceType(letVarDecl.getChild(1));
+    }
+    Expr sourceExpr = expr(node.getChild(1), true);
+    table.bind(letVarName, letVarType);
+    // Fake binding of let variable because set-oriented processing requires
+    // the variable anyway
+    table.resolve(letVarName);
+    blocks.add(new io.brackit.query.block.LetBind(sourceExpr));
+    anyBlock(blocks, node.getLastChild());
+  }
+
+  protected void selectBlock(List<Block> blocks, AST node) throws QueryException {
+    Expr expr = anyExpr(node.getChild(0));
+    blocks.add(new io.brackit.query.block.Select(expr));
+    anyBlock(blocks, node.getLastChild());
+  }
+
+  protected void orderByBlock(List<Block> blocks, AST node) throws QueryException {
+    int orderBySpecCount = node.getChildCount() - 1;
+    Expr[] orderByExprs = new Expr[orderBySpecCount];
+    Ordering.OrderModifier[] orderBySpec = new Ordering.OrderModifier[orderBySpecCount];
+    for (int i = 0; i < orderBySpecCount; i++) {
+      AST orderBy = node.getChild(i);
+      orderByExprs[i] = expr(orderBy.getChild(0), true);
+      orderBySpec[i] = orderModifier(orderBy);
+    }
+    blocks.add(new io.brackit.query.block.OrderBy(orderByExprs, orderBySpec));
+    anyBlock(blocks, node.getLastChild());
+  }
+
+  protected void groupByBlock(List<Block> blocks, AST node) throws QueryException {
+    int pos = 0;
+    while (node.getChild(pos).getType() == XQ.GroupBySpec) {
+      pos++;
+    }
+    int grpSpecCnt = pos;
+    List<AggregateBinding> bnds = new ArrayList<>();
+    while (node.getChild(pos).getType() == XQ.AggregateSpec) {
+      AST aggSpec = node.getChild(pos);
+      QNm var = (QNm) aggSpec.getChild(0).getValue();
+      for (int j = 1; j < aggSpec.getChildCount(); j++) {
+        AST aggBinding = aggSpec.getChild(j);
+        AST typedVarBnd = aggBinding.getChild(0);
+        Aggregate agg = aggregate(aggBinding.getChild(1));
+        QNm aggVar = (QNm) typedVarBnd.getChild(0).getValue();
+        SequenceType aggType = SequenceType.ITEM_SEQUENCE;
+        if (typedVarBnd.getChildCount() == 2) {
+          aggType = sequenceType(typedVarBnd.getChild(1));
+        }
+        bnds.add(new AggregateBinding(var, aggVar, aggType, agg));
+      }
+      pos++;
+    }
+    Aggregate dftAgg = aggregate(node.getChild(pos).getChild(0));
+    Aggregate[] addAggs = new Aggregate[bnds.size()];
+    for (int i = 0; i < bnds.size(); i++) {
+      addAggs[i] = bnds.get(i).agg;
+    }
+    boolean sequential = node.checkProperty("sequential");
+    io.brackit.query.block.GroupBy groupBy = new io.brackit.query.block.GroupBy(dftAgg,
+                                                                              addAggs,
+                                                                              grpSpecCnt,
+                                                                              sequential);
+    for (int i = 0; i < grpSpecCnt; i++) {
+      QNm grpVarName = (QNm) node.getChild(i).getChild(0).getValue();
+      table.resolve(grpVarName, groupBy.group(i));
+    }
+    for (int i = 0; i < bnds.size(); i++) {
+      table.resolve(bnds.get(i).srcVar, groupBy.aggregate(i));
+    }
+    for (AggregateBinding bnd : bnds) {
+      table.bind(bnd.aggVar, bnd.aggVarType);
+      // fake binding
+      table.resolve(bnd.aggVar);
+    }
+    blocks.add(groupBy);
+    anyBlock(blocks, node.getLastChild());
+  }
+
+  protected void countBlock(List<Block> blocks, AST node) throws QueryException {
+    AST posVarDecl = node.getChild(0);
+    QNm posVarName = (QNm) posVarDecl.getChild(0).getValue();
+    SequenceType posVarType = SequenceType.ITEM_SEQUENCE;
+    if (posVarDecl.getChildCount() == 2) {
+      posVarType = sequenceType(posVarDecl.getChild(1));
+    }
+    table.bind(posVarName, posVarType);
+    // Fake binding of count variable because set-oriented processing
+    // requires the variable anyway
+    table.resolve(posVarName);
+    blocks.add(new io.brackit.query.block.Count());
+    anyBlock(blocks, node.getLastChild());
+  }
+
   protected void addChecks(Check op, List<QNm> check) throws QueryException {
     if (check != null) {
       for (QNm checkVar : check) {
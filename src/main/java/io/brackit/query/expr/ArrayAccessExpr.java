@@ -174,8 +174,7 @@ public final class ArrayAccessExpr implements Expr {
 
           @Override
           public Split split(int min, int max) throws QueryException {
-            // TODO Auto-generated method stub
-            return null;
+            return super.split(min, max);
           }
         };
       }
@@ -31,6 +31,7 @@ import io.brackit.query.util.ExprUtil;
 import io.brackit.query.util.forkjoin.Task;
 import io.brackit.query.util.join.FastList;
 import io.brackit.query.util.serialize.SerializationHandler;
+import io.brackit.query.ErrorCode;
 import io.brackit.query.QueryContext;
 import io.brackit.query.QueryException;
 import io.brackit.query.Tuple;
@@ -62,23 +63,54 @@ public class BlockExpr implements Expr {
 
   @Override
   public Sequence evaluate(QueryContext ctx, Tuple t) throws QueryException {
-    Return rs = new Return(ctx, expr);
-    Sink end = ordered ? new SerialValve(FJControl.PERMITS, rs) : rs;
-    Sink start = block.create(ctx, end);
+    FJControl control = acquire(ctx);
+    try {
+      Return rs = new Return(ctx, expr);
+      Sink end = ordered ? new SerialValve(control.getPermits(), rs) : rs;
+      Sink start = block.create(ctx, control, end);
 
-    EvalBlock task = new EvalBlock(t, start);
-    FJControl.POOL.submit(task).join();
+      run(control, new EvalBlock(t, start));
 
-    return rs.asSequence();
+      return rs.asSequence();
+    } finally {
+      control.release();
+    }
   }
 
   public void serialize(QueryContext ctx, Tuple t, SerializationHandler handler) throws QueryException {
-    SerializerReturn rs = new SerializerReturn(ctx, expr, handler);
-    Sink end = ordered ? new SerialValve(FJControl.PERMITS, rs) : rs;
-    Sink start = block.create(ctx, end);
+    FJControl control = acquire(ctx);
+    try {
+      SerializerReturn rs = new SerializerReturn(ctx, expr, handler);
+      Sink end = ordered ? new SerialValve(control.getPermits(), rs) : rs;
+      Sink start = block.create(ctx, control, end);
+
+      run(control, new EvalBlock(t, start));
+    } finally {
+      control.release();
+    }
+  }
 
-    EvalBlock task = new EvalBlock(t, start);
-    FJControl.POOL.submit(task).join();
+  private static void run(FJControl control, EvalBlock task) throws QueryException {
+    control.getPool().submit(task).join();
+    Throwable e = task.getError();
+    if (e instanceof QueryException) {
+      throw (QueryException) e;
+    }
+    if (e != null) {
+      throw new QueryException(e, ErrorCode.BIT_DYN_INT_ERROR);
+    }
+  }
+
+  private static FJControl acquire(QueryContext ctx) throws QueryException {
+    FJControl control = ctx.getFJControl().lease();
+    if (control == null) {
+      // the default resources may have been replaced concurrently
+      control = ctx.getFJControl().lease();
+      if (control == null) {
+        throw new QueryException(ErrorCode.BIT_DYN_INT_ERROR, "Fork/join pool has been shut down");
+      }
+    }
+    return control;
   }
 
   @Override
@@ -88,14 +120,12 @@ public class BlockExpr implements Expr {
 
   @Override
   public boolean isUpdating() {
-    // TODO
-    return false;
+    return expr.isUpdating();
   }
 
   @Override
   public boolean isVacuous() {
-    // TODO
-    return false;
+    return expr.isVacuous();
   }
 
   private static final class EvalBlock extends Task {
@@ -52,7 +52,6 @@ public class DefaultCtxItem extends Variable implements Unit {
   private Expr expr;
   private ItemType type = AnyItemType.ANY;
   private boolean external = true;
-  private Item item;
 
   public DefaultCtxItem() {
     super(Bits.FS_DOT);
@@ -78,22 +77,26 @@ public class DefaultCtxItem extends Variable implements Unit {
 
   @Override
   public Item evaluateToItem(QueryContext ctx, Tuple tuple) {
-    if (item != null) {
-      return item;
-    }
-    Item i = null;
     if (external) {
-      i = ctx.getContextItem();
+      Item i = ctx.getContextItem();
+      if (i != null) {
+        return TypedSequence.toTypedItem(new SequenceType(type, Cardinality.One), i);
+      }
     }
-    if (i == null && expr != null) {
-      i = expr.evaluateToItem(ctx, tuple);
+    // the compiled module may be shared between executions, so the
+    // initial value must be kept in the dynamic context
+    Sequence s = ctx.resolve(name);
+    if (s != null) {
+      return (Item) s;
     }
+    Item i = (expr != null) ? expr.evaluateToItem(ctx, tuple) : null;
     if (i == null) {
       throw new QueryException(ErrorCode.ERR_DYNAMIC_CONTEXT_VARIABLE_NOT_DEFINED,
                                "Dynamic context variable %s is not assigned a value",
                                name);
     }
-    item = TypedSequence.toTypedItem(new SequenceType(type, Cardinality.One), i);
-    return i;
+    Item item = TypedSequence.toTypedItem(new SequenceType(type, Cardinality.One), i);
+    ctx.bind(name, item);
+    return item;
   }
 }
\ No newline at end of file
@@ -55,10 +55,15 @@ public class DerefDescendantExpr implements Expr {
 
   final Expr object;
   final Expr[] fields;
+  final FieldRef[] refs;
 
   public DerefDescendantExpr(Expr record, Expr[] fields) {
     this.object = record;
     this.fields = fields;
+    this.refs = new FieldRef[fields.length];
+    for (int i = 0; i < fields.length; i++) {
+      refs[i] = FieldRef.of(fields[i]);
+    }
   }
 
   @Override
@@ -111,7 +116,7 @@ public class DerefDescendantExpr implements Expr {
 
   private Sequence processSequence(QueryContext ctx, Tuple tuple, Sequence sequence, int index) {
     if (sequence instanceof Array) {
-      return processArray(ctx, tuple, getSequenceValues(ctx, tuple, (Array) sequence, fields[index]));
+      return processArray(ctx, tuple, getSequenceValues(ctx, tuple, (Array) sequence, fields[index], refs[index]));
     } else if (sequence instanceof Object) {
       return processObject(sequence, index, ctx, tuple);
     } else if (sequence instanceof LazySequence) {
@@ -211,6 +216,9 @@ public class DerefDescendantExpr implements Expr {
 
   private Sequence processObject(Sequence sequence, int index, QueryContext ctx, Tuple tuple) {
     final Object object = (Object) sequence;
+    if (refs[index] != null) {
+      return refs[index].get(object);
+    }
     final Item field = fields[index].evaluateToItem(ctx, tuple);
 
     if (field == null) {
@@ -220,7 +228,7 @@ public class DerefDescendantExpr implements Expr {
     return getSequenceByRecordField(object, field);
   }
 
-  private List<Sequence> getSequenceValues(QueryContext ctx, Tuple t, Array sequence, Expr field1) {
+  private List<Sequence> getSequenceValues(QueryContext ctx, Tuple t, Array sequence, Expr field1, FieldRef ref) {
     // TODO: Think about if it makes sense to get the result sequence with an
     // iterator instead of materialize everything
 
@@ -228,12 +236,19 @@ public class DerefDescendantExpr implements Expr {
     for (Sequence value : sequence.values()) {
       Sequence val = value.evaluate(ctx, t);
       if (val instanceof Array) {
-        vals.addAll(getSequenceValues(ctx, t, (Array) val, field1));
+        vals.addAll(getSequenceValues(ctx, t, (Array) val, field1, ref));
         continue;
       }
       if (!(val instanceof Object obj)) {
         continue;
       }
+      if (ref != null) {
+        final var sequenceByRecordField = ref.get(obj);
+        if (sequenceByRecordField != null) {
+          vals.add(sequenceByRecordField);
+        }
+        continue;
+      }
       Item field = field1.evaluateToItem(ctx, t);
       if (field == null) {
         continue;
@@ -36,7 +36,6 @@ import io.brackit.query.QueryException;
 import io.brackit.query.Tuple;
 import io.brackit.query.compiler.Bits;
 import io.brackit.query.sequence.BaseIter;
-import io.brackit.query.sequence.ItemSequence;
 import io.brackit.query.sequence.LazySequence;
 import io.brackit.query.jdm.Expr;
 import io.brackit.query.jdm.Item;
@@ -61,12 +60,8 @@ public class DerefExpr implements Expr {
   public Sequence evaluate(QueryContext ctx, Tuple tuple) {
     Sequence sequence = object.evaluate(ctx, tuple);
 
-    if (sequence instanceof ItemSequence itemSequence) {
-      return getLazySequence(ctx, tuple, itemSequence.iterate());
-    }
-
-    if (sequence instanceof LazySequence lazySequence) {
-      return getLazySequence(ctx, tuple, lazySequence.iterate());
+    if ((sequence != null) && !(sequence instanceof Item)) {
+      return getLazySequence(ctx, tuple, sequence.iterate());
     }
 
     if (!(sequence instanceof Object obj)) {
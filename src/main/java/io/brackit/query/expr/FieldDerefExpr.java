@@ -0,0 +1,96 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.expr;
+
+import io.brackit.query.QueryContext;
+import io.brackit.query.Tuple;
+import io.brackit.query.atomic.QNm;
+import io.brackit.query.jdm.Expr;
+import io.brackit.query.jdm.Item;
+import io.brackit.query.jdm.Iter;
+import io.brackit.query.jdm.Sequence;
+import io.brackit.query.jdm.json.Object;
+import io.brackit.query.sequence.BaseIter;
+import io.brackit.query.sequence.LazySequence;
+
+/**
+ * Specialization of {@link DerefExpr} for field names that are known at
+ * compile time. The field is resolved once and looked up through a
+ * {@link FieldRef} for each object of the input.
+ */
+public class FieldDerefExpr extends DerefExpr {
+
+  final FieldRef ref;
+
+  public FieldDerefExpr(Expr object, Expr field, FieldRef ref) {
+    super(object, field);
+    this.ref = ref;
+  }
+
+  public QNm fieldName() {
+    return ref.name();
+  }
+
+  @Override
+  public Sequence evaluate(QueryContext ctx, Tuple tuple) {
+    Sequence sequence = object.evaluate(ctx, tuple);
+
+    if (sequence instanceof Object obj) {
+      return ref.get(obj);
+    }
+    if ((sequence == null) || (sequence instanceof Item)) {
+      return null;
+    }
+    return new LazySequence() {
+      @Override
+      public Iter iterate() {
+        final Iter iter = sequence.iterate();
+        return new BaseIter() {
+          @Override
+          public Item next() {
+            Item item;
+            while ((item = iter.next()) != null) {
+              if (item instanceof Object obj) {
+                Sequence value = ref.get(obj);
+                if (value != null) {
+                  return (value instanceof Item) ? (Item) value : value.evaluateToItem(ctx, tuple);
+                }
+              }
+            }
+            return null;
+          }
+
+          @Override
+          public void close() {
+            iter.close();
+          }
+        };
+      }
+    };
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.expr;
+
+import io.brackit.query.atomic.Atomic;
+import io.brackit.query.atomic.IntNumeric;
+import io.brackit.query.atomic.QNm;
+import io.brackit.query.jdm.Expr;
+import io.brackit.query.jdm.Sequence;
+import io.brackit.query.jdm.json.Object;
+import io.brackit.query.jsonitem.object.Shape;
+import io.brackit.query.jsonitem.object.ShapedObject;
+
+/**
+ * A field name that is known at compile time. Lookups in
+ * {@link ShapedObject}s cache the slot of the field in the last seen shape.
+ */
+public final class FieldRef {
+  private record SlotCache(Shape shape, int slot) {
+  }
+
+  private final QNm name;
+
+  private SlotCache cache;
+
+  public FieldRef(QNm name) {
+    this.name = name;
+  }
+
+  /**
+   * Returns a field reference if the given field expression is a constant
+   * field name and <code>null</code> otherwise.
+   */
+  public static FieldRef of(Expr field) {
+    if (field instanceof QNm qNmField) {
+      return new FieldRef(qNmField);
+    }
+    if (field instanceof Atomic atomicField && !(field instanceof IntNumeric)) {
+      return new FieldRef(new QNm(atomicField.stringValue()));
+    }
+    return null;
+  }
+
+  public QNm name() {
+    return name;
+  }
+
+  public Sequence get(Object object) {
+    if (object instanceof ShapedObject shapedObject) {
+      Shape shape = shapedObject.shape();
+      SlotCache c = cache;
+      if ((c == null) || (c.shape() != shape)) {
+        cache = c = new SlotCache(shape, shape.slot(name));
+      }
+      return (c.slot() >= 0) ? shapedObject.value(c.slot()) : null;
+    }
+    return object.get(name);
+  }
+
+  @Override
+  public String toString() {
+    return name.toString();
+  }
+}
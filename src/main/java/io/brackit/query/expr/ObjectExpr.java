@@ -39,6 +39,7 @@ import io.brackit.query.Tuple;
 import io.brackit.query.Query;
 import io.brackit.query.compiler.Bits;
 import io.brackit.query.jsonitem.object.ArrayObject;
+import io.brackit.query.jsonitem.object.ShapedObject;
 import io.brackit.query.jdm.Expr;
 import io.brackit.query.jdm.Item;
 import io.brackit.query.jdm.Sequence;
@@ -165,7 +166,7 @@ public class ObjectExpr implements Expr {
       names = Arrays.copyOfRange(names, 0, pos);
       vals = Arrays.copyOfRange(vals, 0, pos);
     }
-    return new ArrayObject(names, vals);
+    return ShapedObject.create(names, vals);
   }
 
   @Override
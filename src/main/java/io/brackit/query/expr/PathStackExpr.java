@@ -0,0 +1,269 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.expr;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.brackit.query.ErrorCode;
+import io.brackit.query.QueryContext;
+import io.brackit.query.QueryException;
+import io.brackit.query.Tuple;
+import io.brackit.query.jdm.Axis;
+import io.brackit.query.jdm.Expr;
+import io.brackit.query.jdm.Item;
+import io.brackit.query.jdm.Iter;
+import io.brackit.query.jdm.Sequence;
+import io.brackit.query.jdm.Stream;
+import io.brackit.query.jdm.node.Node;
+import io.brackit.query.jdm.type.NodeType;
+import io.brackit.query.node.PathStackStream;
+import io.brackit.query.sequence.BaseIter;
+import io.brackit.query.sequence.ItemSequence;
+import io.brackit.query.sequence.LazySequence;
+import io.brackit.query.util.ExprUtil;
+import io.brackit.query.util.path.Path;
+
+/**
+ * Evaluates a sequence of child and descendant steps without predicates, e.g.,
+ * <code>E//a//b/c</code>, in a single scan of the subtree of each context node
+ * with a {@link PathStackStream}.
+ * <p>
+ * In contrast to a chain of {@link PathStepExpr}s, nested matches of
+ * intermediate steps do not scan the same subtrees repeatedly and the result
+ * for a single context node is produced in document order and free of
+ * duplicates right away. If the context node answers the name tests from an
+ * index, only the candidates for the individual steps are merged and scanned.
+ * </p>
+ */
+public class PathStackExpr implements Expr {
+  final Expr input;
+  final Path<String> path;
+  final NodeType[] tests;
+
+  public PathStackExpr(Expr input, Path<String> path, NodeType[] tests) {
+    this.input = input;
+    this.path = path;
+    this.tests = tests;
+  }
+
+  @Override
+  public Sequence evaluate(QueryContext ctx, Tuple tuple) {
+    Sequence in = input.evaluate(ctx, tuple);
+    if (in == null) {
+      return null;
+    }
+    if (in instanceof Item) {
+      Node<?> node = contextNode((Item) in);
+      return new LazySequence() {
+        @Override
+        public Iter iterate() {
+          return new PathStackIter(node);
+        }
+      };
+    }
+    return new LazySequence() {
+      volatile Sequence result;
+
+      @Override
+      public Iter iterate() {
+        Sequence s = result; // volatile read
+        if (s == null) {
+          s = match(in);
+          result = s;
+        }
+        return s.iterate();
+      }
+    };
+  }
+
+  private Sequence match(Sequence in) {
+    // the subtrees of the context nodes may overlap:
+    // combine the matches and restore document order
+    List<Node<?>> matches = new ArrayList<>();
+    try (Iter it = in.iterate()) {
+      Item item;
+      while ((item = it.next()) != null) {
+        try (Stream<? extends Node<?>> s = stream(contextNode(item))) {
+          Node<?> match;
+          while ((match = s.next()) != null) {
+            matches.add(match);
+          }
+        }
+      }
+    }
+    matches.sort(Node::cmp);
+    List<Item> ddo = new ArrayList<>(matches.size());
+    Node<?> prev = null;
+    for (Node<?> match : matches) {
+      if ((prev == null) || (!prev.isSelfOf(match))) {
+        ddo.add(match);
+      }
+      prev = match;
+    }
+    return new ItemSequence(ddo.toArray(new Item[0]));
+  }
+
+  private Node<?> contextNode(Item item) {
+    if (!(item instanceof Node<?>)) {
+      throw new QueryException(ErrorCode.ERR_PATH_STEP_RETURNED_NON_NODE_VALUE,
+                               "Intermediate step in path expression returned a non-node: %s",
+                               item.itemType());
+    }
+    return (Node<?>) item;
+  }
+
+  private Stream<? extends Node<?>> stream(Node<?> node) {
+    return new PathStackStream<Node<?>>(input(node), path) {
+      @Override
+      protected Node<?> match(Node<?>[] matchingNodes) {
+        return matchingNodes[matchingNodes.length - 1];
+      }
+
+      @Override
+      protected boolean matches(Node<?> node, int i) {
+        return tests[i].matches(node);
+      }
+    };
+  }
+
+  private Stream<? extends Node<?>> input(Node<?> node) {
+    // scan only the candidates for the individual steps
+    // if the node can answer all name tests from an index
+    List<NodeType> distinct = new ArrayList<>(tests.length);
+    List<Stream<? extends Node<?>>> candidates = new ArrayList<>(tests.length);
+    for (NodeType test : tests) {
+      if (distinct.contains(test)) {
+        continue;
+      }
+      Stream<? extends Node<?>> s = node.performStep(Axis.DESCENDANT, test);
+      if (s == null) {
+        for (Stream<? extends Node<?>> candidate : candidates) {
+          candidate.close();
+        }
+        return node.getDescendantOrSelf();
+      }
+      distinct.add(test);
+      candidates.add(s);
+    }
+    return new MergeStream(node, candidates);
+  }
+
+  /**
+   * Merges the context node and streams of its descendants in document order.
+   */
+  private static class MergeStream implements Stream<Node<?>> {
+    final List<Stream<? extends Node<?>>> in;
+    final Node<?>[] heads;
+    Node<?> context;
+
+    MergeStream(Node<?> context, List<Stream<? extends Node<?>>> in) {
+      this.context = context;
+      this.in = in;
+      this.heads = new Node<?>[in.size()];
+      for (int i = 0; i < heads.length; i++) {
+        heads[i] = in.get(i).next();
+      }
+    }
+
+    @Override
+    public Node<?> next() {
+      if (context != null) {
+        Node<?> next = context;
+        context = null;
+        return next;
+      }
+      int min = -1;
+      for (int i = 0; i < heads.length; i++) {
+        if ((heads[i] != null) && ((min == -1) || (heads[i].cmp(heads[min]) < 0))) {
+          min = i;
+        }
+      }
+      if (min == -1) {
+        return null;
+      }
+      Node<?> next = heads[min];
+      for (int i = 0; i < heads.length; i++) {
+        if ((heads[i] != null) && (heads[i].isSelfOf(next))) {
+          heads[i] = in.get(i).next();
+        }
+      }
+      return next;
+    }
+
+    @Override
+    public void close() {
+      for (Stream<? extends Node<?>> s : in) {
+        s.close();
+      }
+    }
+  }
+
+  private class PathStackIter extends BaseIter {
+    final Node<?> node;
+    Stream<? extends Node<?>> s;
+
+    PathStackIter(Node<?> node) {
+      this.node = node;
+    }
+
+    @Override
+    public Item next() {
+      if (s == null) {
+        s = stream(node);
+      }
+      return s.next();
+    }
+
+    @Override
+    public void close() {
+      if (s != null) {
+        s.close();
+      }
+    }
+  }
+
+  @Override
+  public Item evaluateToItem(QueryContext ctx, Tuple tuple) {
+    return ExprUtil.asItem(evaluate(ctx, tuple));
+  }
+
+  @Override
+  public boolean isUpdating() {
+    return input.isUpdating();
+  }
+
+  @Override
+  public boolean isVacuous() {
+    return false;
+  }
+
+  public String toString() {
+    return input + path.toString();
+  }
+}
@@ -228,8 +228,7 @@ public class PathStepExpr implements Expr {
 
     @Override
     public Split split(int min, int max) throws QueryException {
-      // TODO Auto-generated method stub
-      return null;
+      return super.split(min, max);
     }
   }
 
@@ -310,8 +309,7 @@ public class PathStepExpr implements Expr {
 
     @Override
     public Split split(int min, int max) throws QueryException {
-      // TODO Auto-generated method stub
-      return null;
+      return super.split(min, max);
     }
   }
 
@@ -365,7 +363,8 @@ public class PathStepExpr implements Expr {
             }
 
             try {
-              // TODO -1 means no external sort
+              // nodes are spilled by reference only and the sorted
+              // result is streamed repeatedly: sort in main memory
               sort = new TupleSort(cmp, -1);
               do {
                 sort.add(next);
@@ -0,0 +1,177 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.expr;
+
+import io.brackit.query.util.Cfg;
+import io.brackit.query.util.ExprUtil;
+import io.brackit.query.QueryContext;
+import io.brackit.query.Tuple;
+import io.brackit.query.operator.Cursor;
+import io.brackit.query.operator.Operator;
+import io.brackit.query.sequence.BaseIter;
+import io.brackit.query.sequence.LazySequence;
+import io.brackit.query.jdm.Expr;
+import io.brackit.query.jdm.Item;
+import io.brackit.query.jdm.Iter;
+import io.brackit.query.jdm.Sequence;
+
+/**
+ * @author Sebastian Baechle
+ */
+public class PipeExpr implements Expr {
+  /**
+   * Number of tuples pulled from the operator pipeline at once; a value of
+   * 1 falls back to tuple-at-a-time evaluation.
+   */
+  public static final String BATCH_SIZE_CFG = "org.brackit.xquery.pipe.batchSize";
+  public static int BATCH_SIZE = Cfg.asInt(BATCH_SIZE_CFG, 64);
+
+  private final Operator op;
+  private final Expr expr;
+
+  public PipeExpr(Operator op, Expr expr) {
+    this.op = op;
+    this.expr = expr;
+  }
+
+  public static class PipeSequence extends LazySequence {
+    final QueryContext ctx;
+    final Operator op;
+    final Expr expr;
+    final Tuple tuple;
+
+    public PipeSequence(QueryContext ctx, Operator op, Expr expr, Tuple tuple) {
+      this.ctx = ctx;
+      this.op = op;
+      this.expr = expr;
+      this.tuple = tuple;
+    }
+
+    @Override
+    public Iter iterate() {
+      return new BaseIter() {
+        Cursor cursor;
+        Iter it;
+        Tuple[] buf;
+        int pos;
+        int len;
+
+        @Override
+        public Item next() {
+          while (true) {
+            if (it != null) {
+              Item i = it.next();
+              if (i != null) {
+                return i;
+              }
+              it.close();
+              it = null;
+            } else if (cursor == null) {
+              cursor = op.create(ctx, tuple);
+              cursor.open(ctx);
+              if (BATCH_SIZE > 1) {
+                buf = new Tuple[BATCH_SIZE];
+              }
+            }
+
+            Tuple t = nextTuple();
+
+            if (t == null) {
+              return null;
+            }
+
+            Sequence s = expr.evaluate(ctx, t);
+
+            if (s == null) {
+              continue;
+            }
+
+            if (s instanceof Item) {
+              return (Item) s;
+            }
+
+            it = s.iterate();
+          }
+        }
+
+        private Tuple nextTuple() {
+          if (buf == null) {
+            return cursor.next(ctx);
+          }
+          if (pos == len) {
+            pos = 0;
+            if ((len = cursor.next(ctx, buf)) == 0) {
+              return null;
+            }
+          }
+          Tuple t = buf[pos];
+          buf[pos++] = null; // allow gc
+          return t;
+        }
+
+        @Override
+        public void close() {
+          if (it != null) {
+            it.close();
+          }
+          if (cursor != null) {
+            cursor.close(ctx);
+          }
+          buf = null;
+        }
+      };
+    }
+  }
+
+  @Override
+  public Sequence evaluate(QueryContext ctx, Tuple tuple) {
+    return new PipeSequence(ctx, op, expr, tuple);
+  }
+
+  @Override
+  public Item evaluateToItem(QueryContext ctx, Tuple tuple) {
+    return ExprUtil.asItem(evaluate(ctx, tuple));
+  }
+
+  @Override
+  public boolean isUpdating() {
+    // TODO
+    return expr.isUpdating();
+    // return false;
+  }
+
+  @Override
+  public boolean isVacuous() {
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    return PipeExpr.class.getSimpleName();
+  }
+}
\ No newline at end of file
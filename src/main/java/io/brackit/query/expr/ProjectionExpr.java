@@ -37,7 +37,7 @@ import io.brackit.query.QueryException;
 import io.brackit.query.Tuple;
 import io.brackit.query.Query;
 import io.brackit.query.compiler.Bits;
-import io.brackit.query.jsonitem.object.ArrayObject;
+import io.brackit.query.jsonitem.object.ShapedObject;
 import io.brackit.query.jdm.Expr;
 import io.brackit.query.jdm.Item;
 import io.brackit.query.jdm.Sequence;
@@ -92,7 +92,7 @@ public final class ProjectionExpr implements Expr {
         throw new QueryException(Bits.BIT_ILLEGAL_OBJECT_FIELD, "Illegal record field reference: %s", f);
       }
     }
-    return new ArrayObject(names, vals);
+    return ShapedObject.create(names, vals);
   }
 
   @Override
@@ -27,29 +27,82 @@
  */
 package io.brackit.query.function.fn;
 
-import java.util.Iterator;
-import java.util.LinkedHashSet;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.HashSet;
 import java.util.Set;
 
 import io.brackit.query.ErrorCode;
 import io.brackit.query.atomic.Atomic;
+import io.brackit.query.atomic.DblNumeric;
+import io.brackit.query.atomic.FltNumeric;
+import io.brackit.query.atomic.LonNumeric;
+import io.brackit.query.atomic.Null;
+import io.brackit.query.atomic.Numeric;
 import io.brackit.query.atomic.QNm;
 import io.brackit.query.atomic.Str;
 import io.brackit.query.jdm.Item;
 import io.brackit.query.jdm.Iter;
 import io.brackit.query.jdm.Sequence;
 import io.brackit.query.jdm.Signature;
+import io.brackit.query.jdm.Type;
 import io.brackit.query.module.StaticContext;
 import io.brackit.query.sequence.BaseIter;
 import io.brackit.query.sequence.LazySequence;
 import io.brackit.query.QueryContext;
 import io.brackit.query.QueryException;
 import io.brackit.query.function.AbstractFunction;
+import io.brackit.query.util.Cfg;
+import io.brackit.query.util.LongHashSet;
+import io.brackit.query.util.io.TupleCodec;
 
 /**
+ * Implementation of fn:distinct-values(). The result is streamed, i.e., each
+ * value is delivered as soon as its first occurrence is read from the input.
+ * <p>
+ * Numeric values are kept per type: integral values as longs in a primitive
+ * hash set, other decimals as big decimals, and doubles and floats as bits
+ * in primitive hash sets. Values of different numeric types are compared
+ * after type promotion, e.g., <code>0.1</code> and <code>0.1e0</code> are
+ * the same value. Strings are kept as plain Java strings. Once {@link #MAX_SIZE} distinct values are kept in memory,
+ * values which were not seen before are spilled to hash partitions on disk
+ * and deduplicated partition-wise at the end of the input.
+ *
  * @author Sebastian Baechle
  */
 public class Distinct extends AbstractFunction {
+
+  public static final String MAX_SIZE_CFG = "org.brackit.xquery.distinct.maxSize";
+
+  public static final String PARTITIONS_CFG = "org.brackit.xquery.distinct.partitions";
+
+  /**
+   * Maximum number of distinct values kept in memory.
+   */
+  public static int MAX_SIZE = Cfg.asInt(MAX_SIZE_CFG, 1 << 22);
+
+  /**
+   * Number of spill partitions.
+   */
+  public static int PARTITIONS = Cfg.asInt(PARTITIONS_CFG, 16);
+
+  private static final int MAX_LEVEL = 4;
+
+  private static final int IO_BUFFER_SIZE = 64 * 1024;
+
+  private static final File SPILL_DIR = new File(Cfg.asString("java.io.tmpdir"));
+
+  private static final BigDecimal MIN_LONG = BigDecimal.valueOf(Long.MIN_VALUE);
+
+  private static final BigDecimal MAX_LONG = BigDecimal.valueOf(Long.MAX_VALUE);
+
   public Distinct(QNm name, Signature signature) {
     super(name, signature, true);
   }
@@ -71,45 +124,318 @@ public class Distinct extends AbstractFunction {
     }
 
     return new LazySequence() {
-      final Sequence inSeq = s;
-      // volatile because it is computed
-      // on demand
-      volatile Set<Atomic> set;
-
       @Override
       public Iter iterate() {
-        return new BaseIter() {
-          Iterator<Atomic> it;
-
-          @Override
-          public Item next() throws QueryException {
-            Set<Atomic> distinct = set; // volatile read
-            if (distinct == null) {
-              distinct = new LinkedHashSet<Atomic>();
-              Iter it = inSeq.iterate();
-              try {
-                Item runVar;
-                while ((runVar = it.next()) != null) {
-                  distinct.add((Atomic) runVar);
-                }
-              } finally {
-                it.close();
-              }
-              set = distinct;
-            }
-            if (it == null) {
-              it = distinct.iterator();
-            }
-
-            return it.hasNext() ? it.next() : null;
+        return new DistinctIter(s.iterate(), 0);
+      }
+    };
+  }
+
+  private static final class DistinctIter extends BaseIter {
+    private final Iter in;
+    private final int level;
+    private final LongHashSet longs = new LongHashSet();
+    private final Set<BigDecimal> decimals = new HashSet<>();
+    private final LongHashSet doubles = new LongHashSet();
+    private final LongHashSet floats = new LongHashSet();
+    private final Set<String> strings = new HashSet<>();
+    private final Set<Atomic> others = new HashSet<>();
+    private LongHashSet promotedDoubles;
+    private LongHashSet promotedFloats;
+    private int size;
+    private boolean drained;
+
+    // spill partitions of values seen after the memory budget was exhausted
+    private TupleCodec codec;
+    private File[] files;
+    private DataOutputStream[] outs;
+    private int next;
+    private DistinctIter partition;
+
+    DistinctIter(Iter in, int level) {
+      this.in = in;
+      this.level = level;
+    }
+
+    @Override
+    public Item next() throws QueryException {
+      if (!drained) {
+        Item item;
+        while ((item = in.next()) != null) {
+          if (offer((Atomic) item)) {
+            return item;
+          }
+        }
+        drained = true;
+        in.close();
+        closeOutputs();
+      }
+      while (true) {
+        if (partition != null) {
+          Item item = partition.next();
+          if (item != null) {
+            return item;
+          }
+          partition.close();
+          partition = null;
+        }
+        if ((files == null) || (next == files.length)) {
+          return null;
+        }
+        File file = files[next];
+        files[next++] = null;
+        if (file != null) {
+          partition = new DistinctIter(new PartitionIter(codec, file), level + 1);
+        }
+      }
+    }
+
+    /*
+     * Returns true if the value is delivered now, i.e., it is a first
+     * occurrence and it fits into memory.
+     */
+    private boolean offer(Atomic atomic) throws QueryException {
+      int code = atomic.atomicCode();
+      if ((code == Type.STRING_CODE) && !(atomic instanceof Null)) {
+        String s = atomic.stringValue();
+        return offer(strings, s, s.hashCode(), atomic);
+      }
+      if (code == Type.NUMERIC_CODE) {
+        return offer((Numeric) atomic);
+      }
+      return offer(others, atomic, atomic.hashCode(), atomic);
+    }
+
+    /*
+     * Values of the same type are compared on their exact value. Values of
+     * different types are compared after promotion to xs:float or xs:double,
+     * i.e., on the promoted keys of the values seen so far.
+     */
+    private boolean offer(Numeric numeric) throws QueryException {
+      double d = numeric.doubleValue();
+      if (numeric instanceof DblNumeric) {
+        long key = doubleKey(d);
+        if (doubles.contains(key) || promotedDoubles().contains(key) || !reserve(d, numeric)) {
+          return false;
+        }
+        doubles.add(key);
+        return true;
+      }
+      if (numeric instanceof FltNumeric) {
+        long key = floatKey(d);
+        if (floats.contains(key) || promotedFloats().contains(key) || doubles.contains(doubleKey(d))
+            || !reserve(d, numeric)) {
+          return false;
+        }
+        floats.add(key);
+        if (promotedDoubles != null) {
+          promotedDoubles.add(doubleKey(d));
+        }
+        return true;
+      }
+      // xs:integer and xs:decimal
+      long l = 0;
+      BigDecimal dec = null;
+      if (numeric instanceof LonNumeric) {
+        l = ((LonNumeric) numeric).longValue();
+      } else {
+        dec = numeric.decimalValue();
+        if (((dec.signum() == 0) || (dec.stripTrailingZeros().scale() <= 0)) && (dec.compareTo(MIN_LONG) >= 0)
+            && (dec.compareTo(MAX_LONG) <= 0)) {
+          l = dec.longValue();
+          dec = null;
+        } else {
+          dec = dec.stripTrailingZeros();
+        }
+      }
+      if (((dec == null) ? longs.contains(l) : decimals.contains(dec))
+          || ((doubles.size() > 0) && doubles.contains(doubleKey(d)))
+          || ((floats.size() > 0) && floats.contains(floatKey(d))) || !reserve(d, numeric)) {
+        return false;
+      }
+      if (dec == null) {
+        longs.add(l);
+      } else {
+        decimals.add(dec);
+      }
+      if (promotedDoubles != null) {
+        promotedDoubles.add(doubleKey(d));
+      }
+      if (promotedFloats != null) {
+        promotedFloats.add(floatKey(d));
+      }
+      return true;
+    }
+
+    /*
+     * Keys of all seen xs:integer, xs:decimal and xs:float values promoted
+     * to xs:double. The set is built when the first xs:double is offered.
+     */
+    private LongHashSet promotedDoubles() {
+      if (promotedDoubles == null) {
+        LongHashSet set = new LongHashSet();
+        longs.forEach(l -> set.add(doubleKey(l)));
+        for (BigDecimal dec : decimals) {
+          set.add(doubleKey(dec.doubleValue()));
+        }
+        floats.forEach(f -> set.add(doubleKey(Float.intBitsToFloat((int) f))));
+        promotedDoubles = set;
+      }
+      return promotedDoubles;
+    }
+
+    /*
+     * Keys of all seen xs:integer and xs:decimal values promoted to
+     * xs:float. The set is built when the first xs:float is offered.
+     */
+    private LongHashSet promotedFloats() {
+      if (promotedFloats == null) {
+        LongHashSet set = new LongHashSet();
+        longs.forEach(l -> set.add(floatKey(l)));
+        for (BigDecimal dec : decimals) {
+          set.add(floatKey(dec.doubleValue()));
+        }
+        promotedFloats = set;
+      }
+      return promotedFloats;
+    }
+
+    // -0e0 eq 0, so both zeros have the same key
+    private static long doubleKey(double d) {
+      return Double.doubleToLongBits((d == 0) ? 0.0d : d);
+    }
+
+    private static long floatKey(double d) {
+      return Float.floatToIntBits((d == 0) ? 0.0f : (float) d);
+    }
+
+    /*
+     * Counts a numeric value which was not seen before if it fits into
+     * memory and spills it otherwise. Spilled numerics are partitioned on
+     * their value promoted to xs:float, so that values, which are equal
+     * after any promotion, meet in the same partition.
+     */
+    private boolean reserve(double d, Atomic atomic) throws QueryException {
+      if (full()) {
+        spill((int) floatKey(d), atomic);
+        return false;
+      }
+      size++;
+      return true;
+    }
+
+    private <K> boolean offer(Set<K> set, K key, int hash, Atomic atomic) throws QueryException {
+      if (!full()) {
+        if (set.add(key)) {
+          size++;
+          return true;
+        }
+        return false;
+      }
+      if (!set.contains(key)) {
+        spill(hash, atomic);
+      }
+      return false;
+    }
+
+    private boolean full() {
+      return (size >= MAX_SIZE) && (level < MAX_LEVEL);
+    }
+
+    private void spill(int hash, Atomic atomic) throws QueryException {
+      if (outs == null) {
+        int partitions = Math.max(PARTITIONS, 2);
+        codec = new TupleCodec();
+        files = new File[partitions];
+        outs = new DataOutputStream[partitions];
+      }
+      // re-hash with the level to split a partition differently
+      // when it is spilled again
+      int p = ((LongHashSet.hash(hash + 0x9e3779b97f4a7c15L * (level + 1))) & Integer.MAX_VALUE) % outs.length;
+      try {
+        if (outs[p] == null) {
+          files[p] = File.createTempFile("distinct", ".spill", SPILL_DIR);
+          files[p].deleteOnExit();
+          outs[p] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(files[p]), IO_BUFFER_SIZE));
+        }
+        codec.write(outs[p], atomic);
+      } catch (IOException e) {
+        throw new QueryException(e, ErrorCode.BIT_DYN_INT_ERROR);
+      }
+    }
+
+    private void closeOutputs() throws QueryException {
+      if (outs == null) {
+        return;
+      }
+      try {
+        for (int i = 0; i < outs.length; i++) {
+          if (outs[i] != null) {
+            outs[i].close();
+            outs[i] = null;
           }
+        }
+      } catch (IOException e) {
+        throw new QueryException(e, ErrorCode.BIT_DYN_INT_ERROR);
+      }
+    }
 
-          @Override
-          public void close() {
-            it = null;
+    @Override
+    public void close() {
+      in.close();
+      if (partition != null) {
+        partition.close();
+        partition = null;
+      }
+      if (files != null) {
+        try {
+          closeOutputs();
+        } catch (QueryException ignored) {
+          // files are deleted anyway
+        }
+        for (int i = 0; i < files.length; i++) {
+          if (files[i] != null) {
+            files[i].delete();
+            files[i] = null;
           }
-        };
+        }
       }
-    };
+    }
+  }
+
+  private static final class PartitionIter extends BaseIter {
+    private final TupleCodec codec;
+    private final File file;
+    private DataInputStream in;
+
+    PartitionIter(TupleCodec codec, File file) {
+      this.codec = codec;
+      this.file = file;
+    }
+
+    @Override
+    public Item next() throws QueryException {
+      try {
+        if (in == null) {
+          in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), IO_BUFFER_SIZE));
+        }
+        return (Item) codec.read(in);
+      } catch (IOException e) {
+        throw new QueryException(e, ErrorCode.BIT_DYN_INT_ERROR);
+      }
+    }
+
+    @Override
+    public void close() {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException ignored) {
+          // nothing to do
+        }
+        in = null;
+      }
+      file.delete();
+    }
   }
 }
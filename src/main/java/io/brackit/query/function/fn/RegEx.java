@@ -27,8 +27,11 @@
  */
 package io.brackit.query.function.fn;
 
+import java.util.regex.Pattern;
+
 import io.brackit.query.atomic.Atomic;
 import io.brackit.query.atomic.QNm;
+import io.brackit.query.jdm.Expr;
 import io.brackit.query.jdm.Sequence;
 import io.brackit.query.jdm.Signature;
 import io.brackit.query.module.StaticContext;
@@ -53,16 +56,46 @@ public class RegEx extends AbstractFunction {
 
   private Regex.Mode mode;
 
+  private final Pattern pattern;
+
   public RegEx(QNm name, Regex.Mode mode, Signature signature) {
+    this(name, mode, signature, null);
+  }
+
+  private RegEx(QNm name, Regex.Mode mode, Signature signature, Pattern pattern) {
     super(name, signature, true);
     this.mode = mode;
+    this.pattern = pattern;
+  }
+
+  /**
+   * Returns a variant of this function with a pre-compiled pattern if the
+   * pattern and flags arguments are literals. Invalid literals are reported
+   * at runtime as usual.
+   */
+  public RegEx precompile(Expr[] args) {
+    int flagsPos = (mode == Regex.Mode.REPLACE) ? 3 : 2;
+    if ((args.length < 2) || !(args[1] instanceof Atomic)
+        || ((args.length > flagsPos) && !(args[flagsPos] instanceof Atomic))) {
+      return this;
+    }
+    String flags = (args.length > flagsPos) ? ((Atomic) args[flagsPos]).stringValue() : null;
+    try {
+      Pattern cpattern = Regex.compile(mode, ((Atomic) args[1]).stringValue(), flags);
+      return new RegEx(getName(), mode, getSignature(), cpattern);
+    } catch (QueryException e) {
+      return this;
+    }
   }
 
   @Override
   public Sequence execute(StaticContext sctx, QueryContext ctx, Sequence[] args) throws QueryException {
     String input = (args[0] != null ? ((Atomic) args[0]).stringValue() : "");
-    String pattern = ((Atomic) args[1]).stringValue();
     String replacement = (mode == Regex.Mode.REPLACE) ? ((Atomic) args[2]).stringValue() : null;
+    if (pattern != null) {
+      return Regex.match(mode, input, pattern, replacement);
+    }
+    String pattern = ((Atomic) args[1]).stringValue();
     String flags = (mode == Regex.Mode.REPLACE)
         ? (args.length > 3 ? ((Atomic) args[3]).stringValue() : null)
         : (args.length > 2 ? ((Atomic) args[2]).stringValue() : null);
@@ -30,6 +30,9 @@ package io.brackit.query.function.io;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import io.brackit.query.atomic.Atomic;
 import io.brackit.query.atomic.QNm;
@@ -44,6 +47,7 @@ import io.brackit.query.jdm.type.SequenceType;
 import io.brackit.query.module.StaticContext;
 import io.brackit.query.sequence.BaseIter;
 import io.brackit.query.sequence.LazySequence;
+import io.brackit.query.util.io.MappedLineIter;
 import io.brackit.query.util.io.URIHandler;
 import io.brackit.query.QueryContext;
 import io.brackit.query.QueryException;
@@ -72,6 +76,11 @@ public class Readline extends AbstractFunction {
     return new LazySequence() {
       @Override
       public Iter iterate() {
+        Path file = URIHandler.getLocalPath(uri);
+        if ((file != null) && Files.isRegularFile(file)) {
+          // local files are mapped and can be split at line boundaries
+          return new MappedLineIter(file);
+        }
         return new BaseIter() {
           BufferedReader in;
 
@@ -79,7 +88,7 @@ public class Readline extends AbstractFunction {
           public Item next() throws QueryException {
             try {
               if (in == null) {
-                in = new BufferedReader(new InputStreamReader(URIHandler.getInputStream(uri)));
+                in = new BufferedReader(new InputStreamReader(URIHandler.getInputStream(uri), StandardCharsets.UTF_8));
               }
               String line = in.readLine();
               return (line != null) ? new Str(line) : null;
@@ -34,6 +34,7 @@ import io.brackit.query.jdm.DocumentException;
 import io.brackit.query.jdm.Sequence;
 import io.brackit.query.jdm.Signature;
 import io.brackit.query.jdm.json.JsonCollection;
+import io.brackit.query.jsonitem.StreamingJsonCollection;
 import io.brackit.query.module.StaticContext;
 import io.brackit.query.ErrorCode;
 import io.brackit.query.QueryContext;
@@ -44,8 +45,23 @@ import io.brackit.query.function.AbstractFunction;
  * @author Johannes Lichtenberger
  */
 public final class Collection extends AbstractFunction {
+  private final JsonProjection projection;
+
   public Collection(QNm name, Signature signature) {
+    this(name, signature, null);
+  }
+
+  private Collection(QNm name, Signature signature, JsonProjection projection) {
     super(name, signature, true);
+    this.projection = projection;
+  }
+
+  /**
+   * Returns a variant of this function that may load only the given parts of
+   * the documents.
+   */
+  public Collection project(JsonProjection projection) {
+    return new Collection(getName(), getSignature(), projection);
   }
 
   @Override
@@ -63,7 +79,11 @@ public final class Collection extends AbstractFunction {
         return collection;
       } else {
         AnyURI uri = Doc.resolve(sctx, name);
-        return ctx.getJsonItemStore().lookup(uri.stringValue());
+        collection = ctx.getJsonItemStore().lookup(uri.stringValue());
+        if ((projection != null) && (collection instanceof StreamingJsonCollection streamingCollection)) {
+          return streamingCollection.project(projection);
+        }
+        return collection;
       }
     } catch (DocumentException e) {
       throw new QueryException(e, ErrorCode.ERR_COLLECTION_NOT_FOUND, "Collection '%s' not found.", name);
@@ -7,6 +7,7 @@ import io.brackit.query.jdm.Signature;
 import io.brackit.query.jdm.json.JsonCollection;
 import io.brackit.query.jdm.json.JsonItem;
 import io.brackit.query.jdm.json.TemporalJsonCollection;
+import io.brackit.query.jsonitem.StreamingJsonCollection;
 import io.brackit.query.module.StaticContext;
 import io.brackit.query.ErrorCode;
 import io.brackit.query.QueryContext;
@@ -15,10 +16,24 @@ import io.brackit.query.function.AbstractFunction;
 
 public final class Doc extends AbstractFunction {
   private final boolean retrieve;
+  private final JsonProjection projection;
 
   public Doc(final QNm name, final boolean retrieve, final Signature signature) {
+    this(name, retrieve, signature, null);
+  }
+
+  private Doc(final QNm name, final boolean retrieve, final Signature signature, final JsonProjection projection) {
     super(name, signature, true);
     this.retrieve = retrieve;
+    this.projection = projection;
+  }
+
+  /**
+   * Returns a variant of this function that may load only the given parts of
+   * the document.
+   */
+  public Doc project(final JsonProjection projection) {
+    return new Doc(getName(), retrieve, getSignature(), projection);
   }
 
   @Override
@@ -41,7 +56,10 @@ public final class Doc extends AbstractFunction {
         }
       } else {
         final AnyURI uri = resolve(sctx, name);
-        final JsonCollection<?> collection = ctx.getJsonItemStore().lookup(uri.stringValue());
+        JsonCollection<?> collection = ctx.getJsonItemStore().lookup(uri.stringValue());
+        if ((projection != null) && (collection instanceof StreamingJsonCollection streamingCollection)) {
+          collection = streamingCollection.project(projection);
+        }
         final long documents = collection.getDocumentCount();
 
         if (documents == 0) {
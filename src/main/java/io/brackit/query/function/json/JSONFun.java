@@ -87,6 +87,10 @@ public final class JSONFun {
 
   public static final Load LOAD_2 = new Load(false);
 
+  public static final Store STORE = new Store(true);
+
+  public static final Store STORE_2 = new Store(false);
+
   public static void register() {
     // dummy function to cause static block
     // to be executed exactly once
@@ -102,5 +106,7 @@ public final class JSONFun {
     Functions.predefine(SIZE_FUNC);
     Functions.predefine(LOAD);
     Functions.predefine(LOAD_2);
+    Functions.predefine(STORE);
+    Functions.predefine(STORE_2);
   }
 }
@@ -32,8 +32,9 @@ import java.util.List;
 
 import io.brackit.query.atomic.*;
 import io.brackit.query.jdm.Item;
+import io.brackit.query.jdm.Sequence;
 import io.brackit.query.jsonitem.array.DArray;
-import io.brackit.query.jsonitem.object.ArrayObject;
+import io.brackit.query.jsonitem.object.ShapedObject;
 import io.brackit.query.util.serialize.StringSerializer;
 import io.brackit.query.QueryException;
 import io.brackit.query.compiler.parser.Tokenizer;
@@ -126,7 +127,7 @@ public final class JSONParser extends Tokenizer {
       return null;
     }
     if (attemptSkipS("}")) {
-      return new ArrayObject(new QNm[0], new Item[0]);
+      return ShapedObject.create(new QNm[0], new Sequence[0]);
     }
     int len = 0;
     final var fields = new ArrayList<QNm>();
@@ -141,7 +142,7 @@ public final class JSONParser extends Tokenizer {
     } while (attemptSkipS(","));
     consumeSkipS("}");
 
-    return new ArrayObject(fields.toArray(new QNm[len]), values.toArray(new Item[len]));
+    return ShapedObject.create(fields.toArray(new QNm[len]), values.toArray(new Sequence[len]));
   }
 
   private Numeric number() throws QueryException, TokenizerException {
@@ -0,0 +1,450 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.function.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.brackit.query.QueryException;
+import io.brackit.query.atomic.Bool;
+import io.brackit.query.atomic.Dbl;
+import io.brackit.query.atomic.Dec;
+import io.brackit.query.atomic.Int32;
+import io.brackit.query.atomic.Null;
+import io.brackit.query.atomic.QNm;
+import io.brackit.query.atomic.Str;
+import io.brackit.query.jdm.DocumentException;
+import io.brackit.query.jdm.Item;
+import io.brackit.query.jdm.Sequence;
+import io.brackit.query.jdm.Stream;
+import io.brackit.query.jsonitem.array.DArray;
+import io.brackit.query.jsonitem.object.ShapedObject;
+
+/**
+ * <p>
+ * Streaming parser for a sequence of JSON values in UTF-8 encoded input.
+ * </p>
+ * <p>
+ * The input is read in chunks directly from a byte channel, so that only the
+ * value currently parsed is held in memory. Each call to {@link #next()}
+ * returns the next top-level value. Values may be separated by arbitrary
+ * whitespace, which covers both JSON Lines and concatenated JSON documents.
+ * </p>
+ * <p>
+ * The parser builds the same items as {@link JSONParser}. In particular, escape
+ * sequences in strings are validated but kept in their escaped form.
+ * </p>
+ * <p>
+ * If a {@link JsonProjection} is given, fields that are not part of the
+ * projection are skipped without building items for them.
+ * </p>
+ */
+public final class JSONStreamParser implements Stream<Item> {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private static final QNm[] NO_FIELDS = new QNm[0];
+
+  private static final Sequence[] NO_VALUES = new Sequence[0];
+
+  private final ReadableByteChannel in;
+
+  private final ByteBuffer buffer;
+
+  private final byte[] buf;
+
+  private final StringBuilder sb = new StringBuilder();
+
+  private final JsonProjection projection;
+
+  private int pos;
+
+  private int limit;
+
+  // number of bytes consumed before the current buffer content
+  private long offset;
+
+  private boolean eof;
+
+  public JSONStreamParser(InputStream in) {
+    this(Channels.newChannel(in), JsonProjection.ALL);
+  }
+
+  public JSONStreamParser(InputStream in, JsonProjection projection) {
+    this(Channels.newChannel(in), projection);
+  }
+
+  public JSONStreamParser(ReadableByteChannel in) {
+    this(in, JsonProjection.ALL);
+  }
+
+  public JSONStreamParser(ReadableByteChannel in, JsonProjection projection) {
+    this.in = in;
+    this.projection = projection;
+    this.buf = new byte[BUFFER_SIZE];
+    this.buffer = ByteBuffer.wrap(buf);
+  }
+
+  @Override
+  public Item next() throws DocumentException {
+    int c = skipWhitespace();
+    if (c < 0) {
+      return null;
+    }
+    return value(c, projection);
+  }
+
+  @Override
+  public void close() {
+    try {
+      in.close();
+    } catch (IOException e) {
+      // ignore
+    }
+  }
+
+  private boolean fill() {
+    if (eof) {
+      return false;
+    }
+    try {
+      offset += limit;
+      buffer.clear();
+      int n;
+      do {
+        n = in.read(buffer);
+      } while (n == 0);
+      pos = 0;
+      limit = Math.max(n, 0);
+      eof = (n < 0);
+      return !eof;
+    } catch (IOException e) {
+      throw new DocumentException(e, "Error reading JSON input");
+    }
+  }
+
+  private int read() {
+    if ((pos == limit) && (!fill())) {
+      return -1;
+    }
+    return buf[pos++] & 0xFF;
+  }
+
+  private int peek() {
+    if ((pos == limit) && (!fill())) {
+      return -1;
+    }
+    return buf[pos] & 0xFF;
+  }
+
+  private int skipWhitespace() {
+    int c;
+    do {
+      c = read();
+    } while ((c == ' ') || (c == '\n') || (c == '\r') || (c == '\t'));
+    return c;
+  }
+
+  private QueryException error(String message, Object... args) {
+    return new QueryException(JSONFun.ERR_PARSING_ERROR,
+                              "%s at byte offset %s",
+                              String.format(message, args),
+                              offset + pos);
+  }
+
+  private Item value(int c, JsonProjection p) {
+    switch (c) {
+      case '{':
+        return object(p);
+      case '[':
+        return array(p);
+      case '"':
+        return new Str(string());
+      case 't':
+        literal("rue");
+        return Bool.TRUE;
+      case 'f':
+        literal("alse");
+        return Bool.FALSE;
+      case 'n':
+        literal("ull");
+        return new Null();
+      default:
+        if ((c == '-') || ((c >= '0') && (c <= '9'))) {
+          return number(c);
+        }
+        throw (c < 0) ? error("Unexpected end of input") : error("JSON value expected but found '%c'", (char) c);
+    }
+  }
+
+  private void literal(String rest) {
+    for (int i = 0; i < rest.length(); i++) {
+      if (read() != rest.charAt(i)) {
+        throw error("Invalid literal");
+      }
+    }
+  }
+
+  private Item object(JsonProjection p) {
+    int c = skipWhitespace();
+    if (c == '}') {
+      return ShapedObject.create(NO_FIELDS, NO_VALUES);
+    }
+    List<QNm> fields = new ArrayList<>();
+    List<Item> values = new ArrayList<>();
+    while (true) {
+      if (c != '"') {
+        throw error("Field name expected");
+      }
+      String name = string();
+      if (skipWhitespace() != ':') {
+        throw error("Expected ':'");
+      }
+      JsonProjection fp = p.field(name);
+      if (fp != null) {
+        fields.add(new QNm(null, null, name));
+        values.add(value(skipWhitespace(), fp));
+      } else {
+        skipValue(skipWhitespace());
+      }
+      c = skipWhitespace();
+      if (c == '}') {
+        break;
+      }
+      if (c != ',') {
+        throw error("Expected ',' or '}'");
+      }
+      c = skipWhitespace();
+    }
+    return ShapedObject.create(fields.toArray(NO_FIELDS), values.toArray(NO_VALUES));
+  }
+
+  private Item array(JsonProjection p) {
+    int c = skipWhitespace();
+    if (c == ']') {
+      return new DArray(List.of());
+    }
+    List<Item> values = new ArrayList<>();
+    while (true) {
+      values.add(value(c, p));
+      c = skipWhitespace();
+      if (c == ']') {
+        break;
+      }
+      if (c != ',') {
+        throw error("Expected ',' or ']'");
+      }
+      c = skipWhitespace();
+    }
+    return new DArray(values);
+  }
+
+  /**
+   * Skips the value starting with <code>c</code> without building items.
+   * Nested values are only checked for balanced brackets.
+   */
+  private void skipValue(int c) {
+    if ((c != '{') && (c != '[')) {
+      if (c == '"') {
+        skipString();
+      } else if ((c == 't') || (c == 'f') || (c == 'n') || (c == '-') || ((c >= '0') && (c <= '9'))) {
+        skipScalar();
+      } else {
+        throw (c < 0) ? error("Unexpected end of input") : error("JSON value expected but found '%c'", (char) c);
+      }
+      return;
+    }
+    int depth = 1;
+    while (depth > 0) {
+      // fast path for structural characters in the current buffer
+      while ((pos < limit) && (buf[pos] != '"') && (buf[pos] != '{') && (buf[pos] != '[') && (buf[pos] != '}')
+          && (buf[pos] != ']')) {
+        pos++;
+      }
+      c = read();
+      if (c == '"') {
+        skipString();
+      } else if ((c == '{') || (c == '[')) {
+        depth++;
+      } else if ((c == '}') || (c == ']')) {
+        depth--;
+      } else if (c < 0) {
+        throw error("Unexpected end of input");
+      }
+    }
+  }
+
+  private void skipString() {
+    while (true) {
+      while ((pos < limit) && (buf[pos] != '"') && (buf[pos] != '\\')) {
+        pos++;
+      }
+      int c = read();
+      if (c == '"') {
+        return;
+      } else if (c == '\\') {
+        if (read() < 0) {
+          throw error("Unterminated string");
+        }
+      } else if (c < 0) {
+        throw error("Unterminated string");
+      }
+    }
+  }
+
+  private void skipScalar() {
+    int c;
+    while (((c = peek()) >= 0) && (c != ',') && (c != '}') && (c != ']') && (c != ' ') && (c != '\n')
+        && (c != '\r') && (c != '\t')) {
+      pos++;
+    }
+  }
+
+  private String string() {
+    sb.setLength(0);
+    while (true) {
+      // fast path for ASCII characters in the current buffer
+      int start = pos;
+      while ((pos < limit) && (buf[pos] >= 0x20) && (buf[pos] != '"') && (buf[pos] != '\\')) {
+        pos++;
+      }
+      for (int i = start; i < pos; i++) {
+        sb.append((char) buf[i]);
+      }
+      int c = read();
+      if (c == '"') {
+        return sb.toString();
+      } else if (c == '\\') {
+        escape();
+      } else if (c >= 0x80) {
+        sb.appendCodePoint(utf8(c));
+      } else if (c >= 0) {
+        // unescaped control character
+        sb.append((char) c);
+      } else {
+        throw error("Unterminated string");
+      }
+    }
+  }
+
+  private void escape() {
+    int c = read();
+    switch (c) {
+      case '"':
+      case '\\':
+      case '/':
+      case '\'':
+      case 'b':
+      case 'f':
+      case 'n':
+      case 'r':
+      case 't':
+        sb.append('\\').append((char) c);
+        return;
+      case 'u':
+        sb.append("\\u");
+        for (int i = 0; i < 4; i++) {
+          int h = read();
+          if (Character.digit(h, 16) < 0) {
+            throw error("Invalid unicode escape sequence");
+          }
+          sb.append((char) h);
+        }
+        return;
+      default:
+        throw error("Invalid escape sequence");
+    }
+  }
+
+  private int utf8(int c) {
+    int len;
+    int cp;
+    if ((c & 0xE0) == 0xC0) {
+      len = 1;
+      cp = c & 0x1F;
+    } else if ((c & 0xF0) == 0xE0) {
+      len = 2;
+      cp = c & 0x0F;
+    } else if ((c & 0xF8) == 0xF0) {
+      len = 3;
+      cp = c & 0x07;
+    } else {
+      throw error("Invalid UTF-8 sequence");
+    }
+    for (int i = 0; i < len; i++) {
+      int b = read();
+      if ((b & 0xC0) != 0x80) {
+        throw error("Invalid UTF-8 sequence");
+      }
+      cp = (cp << 6) | (b & 0x3F);
+    }
+    if (!Character.isValidCodePoint(cp)) {
+      throw error("Invalid UTF-8 sequence");
+    }
+    return cp;
+  }
+
+  private Item number(int c) {
+    sb.setLength(0);
+    sb.append((char) c);
+    boolean decimal = false;
+    boolean exponent = false;
+    while (true) {
+      c = peek();
+      if ((c >= '0') && (c <= '9')) {
+        sb.append((char) c);
+      } else if (c == '.') {
+        decimal = true;
+        sb.append((char) c);
+      } else if ((c == 'e') || (c == 'E') || (c == '+') || (c == '-')) {
+        exponent |= (c == 'e') || (c == 'E');
+        sb.append((char) c);
+      } else {
+        break;
+      }
+      pos++;
+    }
+    String s = sb.toString();
+    try {
+      if (exponent) {
+        return new Dbl(s);
+      } else if (decimal) {
+        return new Dec(s);
+      } else {
+        return Int32.parse(s);
+      }
+    } catch (QueryException | NumberFormatException e) {
+      throw error("Invalid number '%s'", s);
+    }
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.function.json;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Describes the parts of a JSON value that a query actually dereferences.
+ * A projection maps field names of objects to the projections of the field
+ * values. Arrays are transparent, i.e., the projection of an array applies to
+ * each of its members. Fields that are not part of a projection can be
+ * skipped by the parser, which yields partial objects.
+ */
+public final class JsonProjection {
+
+  /**
+   * Keeps complete values.
+   */
+  public static final JsonProjection ALL = new JsonProjection(null);
+
+  private final Map<String, JsonProjection> fields;
+
+  private JsonProjection(Map<String, JsonProjection> fields) {
+    this.fields = fields;
+  }
+
+  /**
+   * Creates a projection that keeps no fields of objects.
+   */
+  public static JsonProjection none() {
+    return new JsonProjection(new TreeMap<>());
+  }
+
+  /**
+   * Creates a projection that keeps only the given field of objects, which
+   * is projected with <code>child</code>.
+   */
+  public static JsonProjection of(String name, JsonProjection child) {
+    TreeMap<String, JsonProjection> fields = new TreeMap<>();
+    fields.put(name, child);
+    return new JsonProjection(fields);
+  }
+
+  /**
+   * Returns the projection for the given field or <code>null</code> if the
+   * field is not needed.
+   */
+  public JsonProjection field(String name) {
+    return (fields == null) ? this : fields.get(name);
+  }
+
+  public boolean keepsAll() {
+    return (fields == null);
+  }
+
+  /**
+   * Returns a projection that additionally keeps the complete value reached
+   * by the given path of field names.
+   */
+  public JsonProjection keep(List<String> path) {
+    return keep(path, 0);
+  }
+
+  private JsonProjection keep(List<String> path, int pos) {
+    if ((fields == null) || (pos == path.size())) {
+      return ALL;
+    }
+    TreeMap<String, JsonProjection> tmp = new TreeMap<>(fields);
+    JsonProjection child = tmp.get(path.get(pos));
+    tmp.put(path.get(pos), ((child != null) ? child : none()).keep(path, pos + 1));
+    return new JsonProjection(tmp);
+  }
+
+  /**
+   * Returns a projection that keeps everything kept by this or the given
+   * projection.
+   */
+  public JsonProjection merge(JsonProjection other) {
+    if ((fields == null) || (other.fields == null)) {
+      return ALL;
+    }
+    TreeMap<String, JsonProjection> tmp = new TreeMap<>(fields);
+    for (Map.Entry<String, JsonProjection> e : other.fields.entrySet()) {
+      JsonProjection mine = tmp.get(e.getKey());
+      tmp.put(e.getKey(), (mine != null) ? mine.merge(e.getValue()) : e.getValue());
+    }
+    return new JsonProjection(tmp);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof JsonProjection other)) {
+      return false;
+    }
+    return (fields == null) ? (other.fields == null) : fields.equals(other.fields);
+  }
+
+  @Override
+  public int hashCode() {
+    return (fields == null) ? 0 : fields.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    if (fields == null) {
+      return "*";
+    }
+    StringBuilder s = new StringBuilder("{");
+    for (Map.Entry<String, JsonProjection> e : fields.entrySet()) {
+      if (s.length() > 1) {
+        s.append(", ");
+      }
+      s.append(e.getKey());
+      if (!e.getValue().keepsAll()) {
+        s.append(": ").append(e.getValue());
+      }
+    }
+    return s.append("}").toString();
+  }
+}
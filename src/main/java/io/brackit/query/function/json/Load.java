@@ -29,6 +29,7 @@ package io.brackit.query.function.json;
 
 import io.brackit.query.atomic.Atomic;
 import io.brackit.query.atomic.QNm;
+import io.brackit.query.atomic.Str;
 import io.brackit.query.jdm.DocumentException;
 import io.brackit.query.jdm.Sequence;
 import io.brackit.query.jdm.Signature;
@@ -40,6 +41,7 @@ import io.brackit.query.jdm.type.Cardinality;
 import io.brackit.query.jdm.type.SequenceType;
 import io.brackit.query.jsonitem.ParserStream;
 import io.brackit.query.module.StaticContext;
+import io.brackit.query.node.stream.TransformerStream;
 import io.brackit.query.util.annotation.FunctionAnnotation;
 import io.brackit.query.util.io.URIHandler;
 import io.brackit.query.QueryContext;
@@ -131,12 +133,13 @@ public final class Load extends AbstractFunction {
         throw new UncheckedIOException(e);
       }
     } else {
-      try (final var parsers = new ParserStream(resources)) {
-        String json;
-        while ((json = parsers.next()) != null) {
-          store.create(name, json);
+      // all resources go into one collection
+      store.createFromJsonStrings(name, new TransformerStream<String, Str>(new ParserStream(resources)) {
+        @Override
+        protected Str transform(String json) {
+          return new Str(json);
         }
-      }
+      });
     }
   }
-}
\ No newline at end of file
+}
@@ -27,15 +27,27 @@
  */
 package io.brackit.query.function.json;
 
+import io.brackit.query.atomic.Atomic;
 import io.brackit.query.atomic.QNm;
+import io.brackit.query.jdm.DocumentException;
+import io.brackit.query.jdm.Item;
+import io.brackit.query.jdm.Iter;
 import io.brackit.query.jdm.Sequence;
 import io.brackit.query.jdm.Signature;
-import io.brackit.query.jdm.type.*;
+import io.brackit.query.jdm.json.JsonCollection;
+import io.brackit.query.jdm.json.JsonItem;
+import io.brackit.query.jdm.json.JsonStore;
+import io.brackit.query.jdm.type.AnyJsonItemType;
+import io.brackit.query.jdm.type.AtomicType;
+import io.brackit.query.jdm.type.Cardinality;
+import io.brackit.query.jdm.type.SequenceType;
 import io.brackit.query.module.StaticContext;
+import io.brackit.query.node.stream.EmptyStream;
 import io.brackit.query.util.annotation.FunctionAnnotation;
 import io.brackit.query.QueryContext;
 import io.brackit.query.QueryException;
 import io.brackit.query.function.AbstractFunction;
+import io.brackit.query.function.bit.BitFun;
 
 /**
  * @author Henrique Valer
@@ -55,182 +67,55 @@ public class Store extends AbstractFunction {
   public Store(QNm name, boolean createNew) {
     super(name,
           createNew
-              ? new Signature(new SequenceType(ElementType.ELEMENT, Cardinality.ZeroOrOne),
+              ? new Signature(new SequenceType(AnyJsonItemType.ANY_JSON_ITEM, Cardinality.ZeroOrOne),
                               new SequenceType(AtomicType.STR, Cardinality.One),
-                              new SequenceType(AnyNodeType.ANY_NODE, Cardinality.ZeroOrMany))
-              : new Signature(new SequenceType(ElementType.ELEMENT, Cardinality.ZeroOrOne),
+                              new SequenceType(AnyJsonItemType.ANY_JSON_ITEM, Cardinality.ZeroOrMany))
+              : new Signature(new SequenceType(AnyJsonItemType.ANY_JSON_ITEM, Cardinality.ZeroOrOne),
                               new SequenceType(AtomicType.STR, Cardinality.One),
-                              new SequenceType(AnyNodeType.ANY_NODE, Cardinality.ZeroOrMany),
+                              new SequenceType(AnyJsonItemType.ANY_JSON_ITEM, Cardinality.ZeroOrMany),
                               new SequenceType(AtomicType.BOOL, Cardinality.One)),
           true);
   }
 
   @Override
   public Sequence execute(StaticContext sctx, QueryContext ctx, Sequence[] args) throws QueryException {
-    return null;
+    try {
+      final boolean createNew = args.length != 3 || args[2].booleanValue();
+      final String name = ((Atomic) args[0]).stringValue();
+      final Sequence items = args[1];
+
+      JsonStore s = ctx.getJsonItemStore();
+      JsonCollection<?> coll;
+      if (createNew) {
+        coll = s.createFromJsonStrings(name, new EmptyStream<>());
+      } else {
+        try {
+          coll = s.lookup(name);
+        } catch (DocumentException e) {
+          // collection does not exist
+          coll = s.createFromJsonStrings(name, new EmptyStream<>());
+        }
+      }
+      add(coll, items);
+      return null;
+    } catch (Exception e) {
+      throw new QueryException(e, BitFun.BIT_ADDTOCOLLECTION_INT_ERROR, e.getMessage());
+    }
+  }
+
+  private void add(JsonCollection<?> coll, Sequence items) {
+    if (items == null) {
+      return;
+    }
+    if (items instanceof JsonItem item) {
+      coll.add(item);
+      return;
+    }
+    try (Iter it = items.iterate()) {
+      Item item;
+      while ((item = it.next()) != null) {
+        coll.add((JsonItem) item);
+      }
+    }
   }
-  //    try {
-  //      final boolean createNew = args.length != 3 || args[2].booleanValue();
-  //      final String name = ((Atomic) args[0]).stringValue();
-  //      final Sequence nodes = args[1];
-  //
-  //     JsonStore s = ctx.getJsonItemStore();
-  //      if (createNew) {
-  //        create(s, name, nodes);
-  //      } else {
-  //        try {
-  //          final JsonCollection<?> coll = s.lookup(name);
-  //          add(coll, nodes);
-  //        } catch (DocumentException e) {
-  //          // collection does not exist
-  //          create(s, name, nodes);
-  //        }
-  //      }
-  //      // TODO return statistics?
-  //      return null;
-  //    } catch (Exception e) {
-  //      throw new QueryException(e, BitFun.BIT_ADDTOCOLLECTION_INT_ERROR, e.getMessage());
-  //    }
-  //  }
-  //
-  //  private void add(JsonCollection<?> coll, Sequence sequence)
-  //      throws DocumentException {
-  //    if (sequence instanceof JsonItem jsonItem) {
-  //      coll.add(new StoreParser(n));
-  //    } else {
-  //      try (final var parsers = new org.brackit.xquery.jsonitem.ParserStream(sequence)) {
-  //        String json;
-  //        while ((json = parsers.next()) != null) {
-  //          coll.add(json);
-  //        }
-  //      }
-  //    }
-  //  }
-  //
-  //  private void create(JsonStore store, String name, Sequence sequence)
-  //      throws DocumentException {
-  //    if (sequence instanceof JsonItem jsonItem) {
-  //      store.create(name, new JsonStoreParser(jsonItem));
-  //    } else {
-  //      store.create(name, new ParserStream(sequence));
-  //    }
-  //  }
-  //
-  //  private static class JsonStoreParser extends NodeStreamSubtreeParser {
-  //    private final boolean intercept;
-  //
-  //    public StoreParser(JsonItem jsonItem) throws DocumentException {
-  //      super(node.getSubtree());
-  //    }
-  //
-  //    @Override
-  //    public void parse(SubtreeHandler handler) throws DocumentException {
-  //      if (intercept) {
-  //        handler = new InterceptorHandler(handler);
-  //      }
-  //      super.parse(handler);
-  //    }
-  //  }
-  //
-  //  private static class InterceptorHandler implements SubtreeHandler {
-  //    private final SubtreeHandler handler;
-  //
-  //    public InterceptorHandler(SubtreeHandler handler) {
-  //      this.handler = handler;
-  //    }
-  //
-  //    public void beginFragment() throws DocumentException {
-  //      handler.beginFragment();
-  //      handler.startDocument();
-  //    }
-  //
-  //    public void endFragment() throws DocumentException {
-  //      handler.endDocument();
-  //      handler.endFragment();
-  //    }
-  //
-  //    public void startDocument() throws DocumentException {
-  //      handler.startDocument();
-  //    }
-  //
-  //    public void endDocument() throws DocumentException {
-  //      handler.endDocument();
-  //    }
-  //
-  //    public void text(Atomic content) throws DocumentException {
-  //      handler.text(content);
-  //    }
-  //
-  //    public void comment(Atomic content) throws DocumentException {
-  //      handler.comment(content);
-  //    }
-  //
-  //    public void processingInstruction(QNm target, Atomic content) throws DocumentException {
-  //      handler.processingInstruction(target, content);
-  //    }
-  //
-  //    public void startMapping(String prefix, String uri) throws DocumentException {
-  //      handler.startMapping(prefix, uri);
-  //    }
-  //
-  //    public void endMapping(String prefix) throws DocumentException {
-  //      handler.endMapping(prefix);
-  //    }
-  //
-  //    public void startElement(QNm name) throws DocumentException {
-  //      handler.startElement(name);
-  //    }
-  //
-  //    public void endElement(QNm name) throws DocumentException {
-  //      handler.endElement(name);
-  //    }
-  //
-  //    public void attribute(QNm name, Atomic value) throws DocumentException {
-  //      handler.attribute(name, value);
-  //    }
-  //
-  //    public void begin() throws DocumentException {
-  //      handler.begin();
-  //    }
-  //
-  //    public void end() throws DocumentException {
-  //      handler.end();
-  //    }
-  //
-  //    public void fail() throws DocumentException {
-  //      handler.fail();
-  //    }
-  //  }
-  //
-  //  private static class ParserStream implements Stream<SubtreeParser> {
-  //    Iter it;
-  //
-  //    public ParserStream(Sequence locs) {
-  //      it = locs.iterate();
-  //    }
-  //
-  //    @Override
-  //    public SubtreeParser next() throws DocumentException {
-  //      try {
-  //        Item item = it.next();
-  //        if (item == null) {
-  //          return null;
-  //        }
-  //        if (item instanceof JsonItem jsonItem) {
-  //          return new JsonItemSubtreeParser(jsonItem);
-  //        } else {
-  //          throw new QueryException(ErrorCode.ERR_TYPE_INAPPROPRIATE_TYPE,
-  //                                   "Cannot create subtree parser for item of type: %s",
-  //                                   item.itemType());
-  //        }
-  //      } catch (QueryException e) {
-  //        throw new DocumentException(e);
-  //      }
-  //    }
-  //
-  //    @Override
-  //    public void close() {
-  //      it.close();
-  //    }
-  //  }
-}
\ No newline at end of file
+}
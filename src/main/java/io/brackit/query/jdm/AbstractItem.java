@@ -72,8 +72,7 @@ public abstract class AbstractItem extends AbstractSequence implements Item {
 
       @Override
       public Split split(int min, int max) throws QueryException {
-        // TODO Auto-generated method stub
-        return null;
+        return super.split(min, max);
       }
     };
   }
@@ -0,0 +1,65 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.jdm;
+
+/**
+ * Optional statistics about the contents of a collection, which the
+ * optimizer uses to estimate the cardinalities of query expressions.
+ * All values are estimates and may be stale. Paths follow the syntax of the
+ * data model, e.g., <code>/site/people/person</code> or
+ * <code>//person</code> for nodes and <code>.orders[].id</code> for JSON
+ * items.
+ */
+public interface Statistics {
+
+  /**
+   * Value of unknown statistics.
+   */
+  long UNKNOWN = -1;
+
+  /**
+   * Returns the estimated number of documents in the collection.
+   */
+  long getEstimatedDocumentCount();
+
+  /**
+   * Returns the estimated number of items reached by the given path in all
+   * documents of the collection.
+   */
+  default long getPathFrequency(String path) {
+    return UNKNOWN;
+  }
+
+  /**
+   * Returns the estimated number of distinct values of the items reached by
+   * the given path in all documents of the collection.
+   */
+  default long getDistinctValueCount(String path) {
+    return UNKNOWN;
+  }
+}
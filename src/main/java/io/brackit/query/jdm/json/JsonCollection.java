@@ -29,6 +29,8 @@ package io.brackit.query.jdm.json;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
@@ -38,6 +40,7 @@ import io.brackit.query.jdm.OperationNotSupportedException;
 import io.brackit.query.jdm.Stream;
 import io.brackit.query.jdm.StructuredItem;
 import io.brackit.query.jdm.StructuredItemCollection;
+import io.brackit.query.util.serialize.StringSerializer;
 
 /**
  * @param <E>
@@ -96,6 +99,20 @@ public interface JsonCollection<E extends StructuredItem> extends StructuredItem
     }
   }
 
+  /**
+   * Add a JSON item to the JSON collection.
+   *
+   * @param item the JSON item to add to the collection
+   * @return the JSON root
+   * @throws OperationNotSupportedException if the operation is not supported
+   * @throws DocumentException              if anything else went wrong.
+   */
+  default E add(JsonItem item) {
+    final var writer = new StringWriter();
+    new StringSerializer(new PrintWriter(writer)).serialize(item);
+    return add(writer.toString());
+  }
+
   @Override
   long getDocumentCount();
 }
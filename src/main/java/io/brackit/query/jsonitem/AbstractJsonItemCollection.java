@@ -84,8 +84,7 @@ public abstract class AbstractJsonItemCollection<E extends JsonItem> extends Laz
 
       @Override
       public Iter.Split split(int min, int max) throws QueryException {
-        // TODO Auto-generated method stub
-        return null;
+        return super.split(min, max);
       }
     };
   }
@@ -0,0 +1,326 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.jsonitem;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import io.brackit.query.ErrorCode;
+import io.brackit.query.QueryException;
+import io.brackit.query.atomic.Atomic;
+import io.brackit.query.atomic.Bool;
+import io.brackit.query.atomic.Dbl;
+import io.brackit.query.atomic.Dec;
+import io.brackit.query.atomic.Flt;
+import io.brackit.query.atomic.Int;
+import io.brackit.query.atomic.Int32;
+import io.brackit.query.atomic.Int64;
+import io.brackit.query.atomic.Null;
+import io.brackit.query.atomic.Numeric;
+import io.brackit.query.atomic.QNm;
+import io.brackit.query.atomic.Str;
+import io.brackit.query.jdm.Item;
+import io.brackit.query.jdm.Iter;
+import io.brackit.query.jdm.Sequence;
+import io.brackit.query.jdm.json.Array;
+import io.brackit.query.jdm.json.Object;
+import io.brackit.query.jsonitem.array.DArray;
+import io.brackit.query.jsonitem.object.ShapedObject;
+import io.brackit.query.sequence.ItemSequence;
+
+/**
+ * Compact binary encoding of JSON items. Every value starts with a one byte
+ * tag; lengths, counts and integers are stored as variable-length integers
+ * and strings as UTF-8. Atomic values without a JSON counterpart are stored
+ * with their string value, as in their JSON serialization.
+ */
+final class BinaryJson {
+  private static final byte EMPTY = 0;
+  private static final byte NULL = 1;
+  private static final byte FALSE = 2;
+  private static final byte TRUE = 3;
+  private static final byte INT = 4;
+  private static final byte BIG_INT = 5;
+  private static final byte DBL = 6;
+  private static final byte FLT = 7;
+  private static final byte DEC = 8;
+  private static final byte STR = 9;
+  private static final byte OBJECT = 10;
+  private static final byte ARRAY = 11;
+  private static final byte SEQUENCE = 12;
+
+  private BinaryJson() {
+  }
+
+  /**
+   * Growable output buffer for the encoding of a single document.
+   */
+  static final class Encoder {
+    private byte[] buf = new byte[256];
+    private int len;
+
+    byte[] buffer() {
+      return buf;
+    }
+
+    int length() {
+      return len;
+    }
+
+    void reset() {
+      len = 0;
+    }
+
+    void encode(Sequence value) {
+      if (value == null) {
+        write(EMPTY);
+      } else if (value instanceof Item item) {
+        item(item);
+      } else {
+        ArrayList<Item> items = new ArrayList<>();
+        try (Iter it = value.iterate()) {
+          Item item;
+          while ((item = it.next()) != null) {
+            items.add(item);
+          }
+        }
+        write(SEQUENCE);
+        writeVarLong(items.size());
+        for (Item item : items) {
+          item(item);
+        }
+      }
+    }
+
+    private void item(Item item) {
+      if (item instanceof Object object) {
+        int len = object.len();
+        write(OBJECT);
+        writeVarLong(len);
+        for (int i = 0; i < len; i++) {
+          writeString(object.name(i).stringValue());
+          encode(object.value(i));
+        }
+      } else if (item instanceof Array array) {
+        int len = array.len();
+        write(ARRAY);
+        writeVarLong(len);
+        for (int i = 0; i < len; i++) {
+          encode(array.at(i));
+        }
+      } else if (item instanceof Atomic atomic) {
+        atomic(atomic);
+      } else {
+        throw new QueryException(ErrorCode.ERR_TYPE_INAPPROPRIATE_TYPE,
+                                 "Cannot store item of type: %s",
+                                 item.itemType());
+      }
+    }
+
+    private void atomic(Atomic atomic) {
+      if (atomic instanceof Null) {
+        write(NULL);
+      } else if (atomic instanceof Bool) {
+        write(atomic.booleanValue() ? TRUE : FALSE);
+      } else if ((atomic instanceof Int32) || (atomic instanceof Int64)) {
+        write(INT);
+        writeVarLong(zigZag(((Numeric) atomic).longValue()));
+      } else if (atomic instanceof Int) {
+        write(BIG_INT);
+        writeString(atomic.stringValue());
+      } else if (atomic instanceof Dbl dbl) {
+        write(DBL);
+        writeLong(Double.doubleToRawLongBits(dbl.doubleValue()));
+      } else if (atomic instanceof Flt flt) {
+        write(FLT);
+        writeInt(Float.floatToRawIntBits(flt.floatValue()));
+      } else if (atomic instanceof Dec) {
+        write(DEC);
+        writeString(atomic.stringValue());
+      } else {
+        write(STR);
+        writeString(atomic.stringValue());
+      }
+    }
+
+    private static long zigZag(long v) {
+      return (v << 1) ^ (v >> 63);
+    }
+
+    private void ensure(int n) {
+      if (len + n > buf.length) {
+        buf = Arrays.copyOf(buf, Math.max(len + n, buf.length * 2));
+      }
+    }
+
+    private void write(byte b) {
+      ensure(1);
+      buf[len++] = b;
+    }
+
+    private void writeVarLong(long v) {
+      ensure(10);
+      while ((v & ~0x7FL) != 0) {
+        buf[len++] = (byte) ((v & 0x7F) | 0x80);
+        v >>>= 7;
+      }
+      buf[len++] = (byte) v;
+    }
+
+    private void writeInt(int v) {
+      ensure(4);
+      for (int i = 0; i < 4; i++) {
+        buf[len++] = (byte) (v >>> (i * 8));
+      }
+    }
+
+    private void writeLong(long v) {
+      ensure(8);
+      for (int i = 0; i < 8; i++) {
+        buf[len++] = (byte) (v >>> (i * 8));
+      }
+    }
+
+    private void writeString(String s) {
+      byte[] b = s.getBytes(StandardCharsets.UTF_8);
+      writeVarLong(b.length);
+      ensure(b.length);
+      System.arraycopy(b, 0, buf, len, b.length);
+      len += b.length;
+    }
+  }
+
+  /**
+   * Decodes a single document directly from a (memory-mapped) buffer.
+   */
+  static final class Decoder {
+    private final ByteBuffer buf;
+    // field names are shared by all decoded objects
+    private final Map<String, QNm> names;
+    private int pos;
+
+    Decoder(ByteBuffer buf, int pos, Map<String, QNm> names) {
+      this.buf = buf.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+      this.pos = pos;
+      this.names = names;
+    }
+
+    Sequence decode() {
+      byte tag = buf.get(pos++);
+      switch (tag) {
+        case EMPTY:
+          return null;
+        case NULL:
+          return new Null();
+        case FALSE:
+          return Bool.FALSE;
+        case TRUE:
+          return Bool.TRUE;
+        case INT: {
+          long v = readVarLong();
+          v = (v >>> 1) ^ -(v & 1);
+          return ((v >= Integer.MIN_VALUE) && (v <= Integer.MAX_VALUE)) ? new Int32((int) v) : new Int64(v);
+        }
+        case BIG_INT:
+          return new Int(readString());
+        case DBL: {
+          double v = buf.getDouble(pos);
+          pos += 8;
+          return new Dbl(v);
+        }
+        case FLT: {
+          float v = buf.getFloat(pos);
+          pos += 4;
+          return new Flt(v);
+        }
+        case DEC:
+          return new Dec(readString());
+        case STR:
+          return new Str(readString());
+        case OBJECT: {
+          int len = (int) readVarLong();
+          QNm[] fields = new QNm[len];
+          Sequence[] values = new Sequence[len];
+          for (int i = 0; i < len; i++) {
+            fields[i] = names.computeIfAbsent(readString(), name -> new QNm(null, null, name));
+            values[i] = decode();
+          }
+          return ShapedObject.create(fields, values);
+        }
+        case ARRAY: {
+          int len = (int) readVarLong();
+          ArrayList<Sequence> values = new ArrayList<>(len);
+          for (int i = 0; i < len; i++) {
+            values.add(decode());
+          }
+          return new DArray(values);
+        }
+        case SEQUENCE: {
+          int len = (int) readVarLong();
+          Item[] items = new Item[len];
+          for (int i = 0; i < len; i++) {
+            items[i] = (Item) decode();
+          }
+          return new ItemSequence(items);
+        }
+        default:
+          throw new QueryException(ErrorCode.BIT_DYN_DOCUMENT_ACCESS_ERROR, "Invalid binary JSON tag: %s", tag);
+      }
+    }
+
+    private long readVarLong() {
+      long v = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = buf.get(pos++);
+        v |= (long) (b & 0x7F) << shift;
+        shift += 7;
+      } while ((b & 0x80) != 0);
+      return v;
+    }
+
+    private String readString() {
+      int len = (int) readVarLong();
+      String s;
+      if (buf.hasArray()) {
+        s = new String(buf.array(), buf.arrayOffset() + pos, len, StandardCharsets.UTF_8);
+      } else {
+        byte[] b = new byte[len];
+        buf.get(pos, b);
+        s = new String(b, StandardCharsets.UTF_8);
+      }
+      pos += len;
+      return s;
+    }
+  }
+}
@@ -0,0 +1,380 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.jsonitem;
+
+import io.brackit.query.atomic.QNm;
+import io.brackit.query.function.json.JSONParser;
+import io.brackit.query.function.json.JSONStreamParser;
+import io.brackit.query.jdm.DocumentException;
+import io.brackit.query.jdm.Item;
+import io.brackit.query.jdm.OperationNotSupportedException;
+import io.brackit.query.jdm.Statistics;
+import io.brackit.query.jdm.Stream;
+import io.brackit.query.jdm.json.JsonItem;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A persistent JSON collection. The documents are stored in the compact
+ * binary encoding of {@link BinaryJson} in a data file, which is accompanied
+ * by an index file with the end offset of every document. A document is
+ * always written to the data file before its index entry, so that a
+ * collection interrupted while adding a document is still readable on the
+ * next start.
+ * <p>
+ * The data file is memory-mapped for reading and documents are decoded only
+ * when they are requested. Both files stay open until the collection is
+ * closed. Added documents are forced to disk by {@link #sync()} and when
+ * the collection is closed, so documents added after the last sync may be
+ * lost in a crash. A collection is never truncated while it is open, because
+ * mapped regions of a truncated file must not be accessed anymore.
+ */
+public final class BinaryJsonCollection extends AbstractJsonItemCollection<JsonItem> implements Statistics {
+  static final String DATA_SUFFIX = ".bjd";
+
+  static final String INDEX_SUFFIX = ".bji";
+
+  private static final int MAGIC = 0x424A534E;
+
+  private static final int VERSION = 2;
+
+  private static final int HEADER_SIZE = 8;
+
+  // size of the regions in which the data file is mapped
+  private static final long CHUNK_SIZE = 1L << 30;
+
+  private final Path data;
+
+  private final Path index;
+
+  private final FileChannel dataChannel;
+
+  private final FileChannel indexChannel;
+
+  private boolean closed;
+
+  // end offsets of all documents in the data file
+  private long[] ends;
+
+  private int count;
+
+  private volatile MappedByteBuffer[] chunks;
+
+  private final BinaryJson.Encoder encoder = new BinaryJson.Encoder();
+
+  private final Map<String, QNm> names = new ConcurrentHashMap<>();
+
+  private BinaryJsonCollection(String name, Path data, Path index, long[] ends, int count) throws IOException {
+    super(name);
+    this.data = data;
+    this.index = index;
+    this.ends = ends;
+    this.count = count;
+    this.chunks = new MappedByteBuffer[0];
+    this.dataChannel = FileChannel.open(data, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      this.indexChannel = FileChannel.open(index, StandardOpenOption.WRITE);
+    } catch (IOException e) {
+      dataChannel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Creates a new empty collection, replacing an existing one. The files of
+   * an existing collection are removed instead of truncated, so that regions
+   * of the old data file, which are still mapped, remain valid.
+   */
+  static BinaryJsonCollection create(String name, Path data, Path index) {
+    try {
+      Files.deleteIfExists(data);
+      Files.deleteIfExists(index);
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).flip();
+      try (FileChannel out = FileChannel.open(data, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+        out.write(header);
+      }
+      Files.write(index, new byte[0]);
+      return new BinaryJsonCollection(name, data, index, new long[16], 0);
+    } catch (IOException e) {
+      throw new DocumentException(e, "Could not create collection %s", name);
+    }
+  }
+
+  /**
+   * Opens an existing collection. Index entries of documents, which are not
+   * completely contained in the data file, are ignored.
+   */
+  static BinaryJsonCollection open(String name, Path data, Path index) {
+    try {
+      long size = Files.size(data);
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      try (FileChannel in = FileChannel.open(data, StandardOpenOption.READ)) {
+        in.read(header, 0);
+      }
+      if (size < HEADER_SIZE || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+        throw new DocumentException("Invalid data file of collection %s: %s", name, data);
+      }
+      ByteBuffer entries = ByteBuffer.wrap(Files.readAllBytes(index)).order(ByteOrder.LITTLE_ENDIAN);
+      int count = entries.remaining() / Long.BYTES;
+      long[] ends = new long[Math.max(16, count)];
+      for (int i = 0; i < count; i++) {
+        ends[i] = entries.getLong();
+      }
+      int valid = count;
+      while (valid > 0 && ends[valid - 1] > size) {
+        valid--;
+      }
+      if (valid < count) {
+        try (FileChannel out = FileChannel.open(index, StandardOpenOption.WRITE)) {
+          out.truncate((long) valid * Long.BYTES);
+        }
+        count = valid;
+      }
+      return new BinaryJsonCollection(name, data, index, ends, count);
+    } catch (IOException e) {
+      throw new DocumentException(e, "Could not open collection %s", name);
+    }
+  }
+
+  @Override
+  public synchronized void delete() throws DocumentException {
+    close();
+    try {
+      Files.deleteIfExists(data);
+      Files.deleteIfExists(index);
+    } catch (IOException e) {
+      throw new DocumentException(e, "Could not delete collection %s", name);
+    }
+    count = 0;
+    chunks = new MappedByteBuffer[0];
+  }
+
+  /**
+   * Forces all added documents to disk. The data file is forced before the
+   * index file, so that the index never refers to missing documents.
+   */
+  public synchronized void sync() {
+    ensureOpen();
+    try {
+      dataChannel.force(true);
+      indexChannel.force(true);
+    } catch (IOException e) {
+      throw new DocumentException(e, "Could not sync collection %s", name);
+    }
+  }
+
+  /**
+   * Forces all added documents to disk and closes the files of this
+   * collection. Documents, which are already mapped, can still be read.
+   */
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+    try {
+      sync();
+    } finally {
+      closed = true;
+      try {
+        dataChannel.close();
+        indexChannel.close();
+      } catch (IOException e) {
+        throw new DocumentException(e, "Could not close collection %s", name);
+      }
+    }
+  }
+
+  private void ensureOpen() {
+    if (closed) {
+      throw new DocumentException("Collection %s is closed", name);
+    }
+  }
+
+  @Override
+  public void remove(long documentID) {
+    throw new OperationNotSupportedException();
+  }
+
+  @Override
+  public JsonItem getDocument() {
+    long[] ends;
+    int count;
+    synchronized (this) {
+      ends = this.ends;
+      count = this.count;
+    }
+    if (count == 1) {
+      return read(ends, 0);
+    }
+    throw new DocumentException("Illegal access to non-singular collection");
+  }
+
+  @Override
+  public Stream<? extends JsonItem> getDocuments() {
+    final long[] ends;
+    final int count;
+    synchronized (this) {
+      ends = this.ends;
+      count = this.count;
+    }
+    return new Stream<>() {
+      int next;
+
+      @Override
+      public JsonItem next() {
+        return (next < count) ? read(ends, next++) : null;
+      }
+
+      @Override
+      public void close() {
+        next = count;
+      }
+    };
+  }
+
+  /**
+   * Adds all documents of the given file, which may contain a single JSON
+   * document, JSON Lines or a sequence of concatenated JSON documents.
+   */
+  @Override
+  public JsonItem add(Path file) {
+    JsonItem first = null;
+    try (var parser = new JSONStreamParser(Files.newInputStream(file))) {
+      Item item;
+      while ((item = parser.next()) != null) {
+        if (!(item instanceof JsonItem doc)) {
+          throw new DocumentException("File %s does not contain a JSON item", file);
+        }
+        add(doc);
+        first = (first == null) ? doc : first;
+      }
+    } catch (IOException e) {
+      throw new DocumentException(e, "Could not read %s", file);
+    }
+    return first;
+  }
+
+  @Override
+  public JsonItem add(String json) {
+    return add((JsonItem) new JSONParser(json).parse());
+  }
+
+  @Override
+  public synchronized JsonItem add(JsonItem item) {
+    ensureOpen();
+    encoder.reset();
+    encoder.encode(item);
+    long start = (count == 0) ? HEADER_SIZE : ends[count - 1];
+    long end = start + encoder.length();
+    try {
+      write(dataChannel, ByteBuffer.wrap(encoder.buffer(), 0, encoder.length()), start);
+      ByteBuffer entry = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).putLong(0, end);
+      write(indexChannel, entry, (long) count * Long.BYTES);
+    } catch (IOException e) {
+      throw new DocumentException(e, "Could not add document to collection %s", name);
+    }
+    // readers keep the offsets they started with
+    long[] ends = (count == this.ends.length) ? Arrays.copyOf(this.ends, count * 2) : this.ends;
+    ends[count] = end;
+    this.ends = ends;
+    count++;
+    return item;
+  }
+
+  private static void write(FileChannel out, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      position += out.write(buffer, position);
+    }
+  }
+
+  private JsonItem read(long[] ends, int doc) {
+    long start = (doc == 0) ? HEADER_SIZE : ends[doc - 1];
+    long end = ends[doc];
+    int chunk = (int) (start / CHUNK_SIZE);
+    ByteBuffer buffer;
+    int pos;
+    if (chunk == (int) ((end - 1) / CHUNK_SIZE)) {
+      buffer = chunk(chunk, end);
+      pos = (int) (start - chunk * CHUNK_SIZE);
+    } else {
+      // documents spanning two regions are mapped on their own
+      buffer = map(start, end - start);
+      pos = 0;
+    }
+    return (JsonItem) new BinaryJson.Decoder(buffer, pos, names).decode();
+  }
+
+  private ByteBuffer chunk(int chunk, long end) {
+    MappedByteBuffer[] chunks = this.chunks;
+    long offset = chunk * CHUNK_SIZE;
+    if (chunk < chunks.length && chunks[chunk] != null && offset + chunks[chunk].capacity() >= end) {
+      return chunks[chunk];
+    }
+    // map the region up to the current end of the collection
+    long size;
+    synchronized (this) {
+      size = Math.min(CHUNK_SIZE, ends[count - 1] - offset);
+    }
+    MappedByteBuffer buffer = map(offset, Math.max(size, end - offset));
+    chunks = Arrays.copyOf(chunks, Math.max(chunks.length, chunk + 1));
+    chunks[chunk] = buffer;
+    this.chunks = chunks;
+    return buffer;
+  }
+
+  private MappedByteBuffer map(long position, long size) {
+    synchronized (this) {
+      ensureOpen();
+    }
+    try {
+      return dataChannel.map(FileChannel.MapMode.READ_ONLY, position, size);
+    } catch (IOException e) {
+      throw new DocumentException(e, "Could not read collection %s", name);
+    }
+  }
+
+  @Override
+  public synchronized long getDocumentCount() {
+    return count;
+  }
+
+  @Override
+  public long getEstimatedDocumentCount() {
+    return getDocumentCount();
+  }
+}
@@ -0,0 +1,194 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.jsonitem;
+
+import io.brackit.query.atomic.Str;
+import io.brackit.query.jdm.DocumentException;
+import io.brackit.query.jdm.OperationNotSupportedException;
+import io.brackit.query.jdm.Statistics;
+import io.brackit.query.jdm.StatisticsProvider;
+import io.brackit.query.jdm.Stream;
+import io.brackit.query.jdm.json.JsonCollection;
+import io.brackit.query.jdm.json.JsonStore;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A JSON store, which keeps its collections as {@link BinaryJsonCollection}s
+ * in a directory, so that they survive a restart. Names of collections that
+ * are not in the directory are resolved as URIs like in
+ * {@link SimpleJsonStore}.
+ * <p>
+ * Opened collections keep their files open until the store is closed.
+ * Collections created from a complete input are synced when the input is
+ * consumed.
+ */
+public final class BinaryJsonStore implements JsonStore, StatisticsProvider, AutoCloseable {
+  private final Path directory;
+
+  private final Map<String, BinaryJsonCollection> collections = new HashMap<>();
+
+  private final SimpleJsonStore uris = new SimpleJsonStore();
+
+  public BinaryJsonStore(Path directory) {
+    try {
+      this.directory = Files.createDirectories(directory);
+    } catch (IOException e) {
+      throw new DocumentException(e, "Could not create store directory %s", directory);
+    }
+  }
+
+  @Override
+  public synchronized JsonCollection<?> lookup(String name) {
+    BinaryJsonCollection coll = collections.get(name);
+    if (coll != null) {
+      return coll;
+    }
+    Path data = data(name);
+    if (Files.exists(data)) {
+      coll = BinaryJsonCollection.open(name, data, index(name));
+      collections.put(name, coll);
+      return coll;
+    }
+    return uris.lookup(name);
+  }
+
+  /**
+   * Creates a new empty collection. An open collection with the same name is
+   * closed first.
+   */
+  @Override
+  public synchronized BinaryJsonCollection create(String name) {
+    BinaryJsonCollection old = collections.remove(name);
+    if (old != null) {
+      old.close();
+    }
+    BinaryJsonCollection coll = BinaryJsonCollection.create(name, data(name), index(name));
+    collections.put(name, coll);
+    return coll;
+  }
+
+  @Override
+  public JsonCollection<?> create(String name, Path path) {
+    BinaryJsonCollection coll = create(name);
+    coll.add(path);
+    coll.sync();
+    return coll;
+  }
+
+  @Override
+  public JsonCollection<?> createFromPaths(String name, Stream<Path> paths) {
+    BinaryJsonCollection coll = create(name);
+    try (paths) {
+      Path path;
+      while ((path = paths.next()) != null) {
+        coll.add(path);
+      }
+    }
+    coll.sync();
+    return coll;
+  }
+
+  @Override
+  public JsonCollection<?> create(String name, String json) {
+    BinaryJsonCollection coll = create(name);
+    coll.add(json);
+    coll.sync();
+    return coll;
+  }
+
+  @Override
+  public JsonCollection<?> createFromJsonStrings(String name, Stream<Str> jsons) {
+    BinaryJsonCollection coll = create(name);
+    try (jsons) {
+      Str json;
+      while ((json = jsons.next()) != null) {
+        coll.add(json.stringValue());
+      }
+    }
+    coll.sync();
+    return coll;
+  }
+
+  @Override
+  public synchronized void drop(String name) {
+    BinaryJsonCollection coll = collections.remove(name);
+    if (coll != null) {
+      coll.delete();
+      return;
+    }
+    try {
+      if (Files.deleteIfExists(data(name))) {
+        Files.deleteIfExists(index(name));
+        return;
+      }
+    } catch (IOException e) {
+      throw new DocumentException(e, "Could not drop collection %s", name);
+    }
+    uris.drop(name);
+  }
+
+  @Override
+  public void makeDir(String path) {
+    throw new OperationNotSupportedException();
+  }
+
+  /**
+   * Syncs and closes all opened collections.
+   */
+  @Override
+  public synchronized void close() {
+    for (BinaryJsonCollection coll : collections.values()) {
+      coll.close();
+    }
+    collections.clear();
+  }
+
+  /**
+   * Returns the statistics of a collection of this store without opening it.
+   */
+  @Override
+  public synchronized Statistics getStatistics(String name) {
+    BinaryJsonCollection coll = collections.get(name);
+    return (coll != null) ? coll : uris.getStatistics(name);
+  }
+
+  private Path data(String name) {
+    return directory.resolve(URLEncoder.encode(name, StandardCharsets.UTF_8) + BinaryJsonCollection.DATA_SUFFIX);
+  }
+
+  private Path index(String name) {
+    return directory.resolve(URLEncoder.encode(name, StandardCharsets.UTF_8) + BinaryJsonCollection.INDEX_SUFFIX);
+  }
+}
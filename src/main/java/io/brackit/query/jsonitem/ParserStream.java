@@ -63,8 +63,8 @@ public final class ParserStream implements Stream<String> {
         String str = ((Atomic) item).stringValue();
         return new String(URIHandler.getInputStream(str).readAllBytes(), StandardCharsets.UTF_8);
       } else if (item instanceof JsonItem jsonItem) {
-        final var writer = new PrintWriter(new StringWriter());
-        new StringSerializer(writer).serialize(jsonItem);
+        final var writer = new StringWriter();
+        new StringSerializer(new PrintWriter(writer)).serialize(jsonItem);
         return writer.toString();
       } else {
         throw new QueryException(ErrorCode.ERR_TYPE_INAPPROPRIATE_TYPE,
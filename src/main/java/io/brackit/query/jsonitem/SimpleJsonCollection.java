@@ -30,6 +30,7 @@ package io.brackit.query.jsonitem;
 
 import io.brackit.query.jdm.DocumentException;
 import io.brackit.query.jdm.OperationNotSupportedException;
+import io.brackit.query.jdm.Statistics;
 import io.brackit.query.jdm.Stream;
 import io.brackit.query.jdm.json.JsonItem;
 import io.brackit.query.node.stream.ArrayStream;
@@ -45,7 +46,7 @@ import java.util.Arrays;
  * @author Johannes Lichtenberger
  */
 // TODO: Implement methods
-public final class SimpleJsonCollection extends AbstractJsonItemCollection<JsonItem> {
+public final class SimpleJsonCollection extends AbstractJsonItemCollection<JsonItem> implements Statistics {
   private JsonItem[] docs;
 
   public SimpleJsonCollection(String name, JsonItem doc) {
@@ -102,8 +103,20 @@ public final class SimpleJsonCollection extends AbstractJsonItemCollection<JsonI
     return doc;
   }
 
+  @Override
+  public JsonItem add(JsonItem doc) {
+    this.docs = Arrays.copyOf(docs, docs.length + 1);
+    this.docs[docs.length - 1] = doc;
+    return doc;
+  }
+
   @Override
   public long getDocumentCount() {
     return docs.length;
   }
+
+  @Override
+  public long getEstimatedDocumentCount() {
+    return docs.length;
+  }
 }
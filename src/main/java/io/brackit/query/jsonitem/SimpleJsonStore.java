@@ -31,6 +31,8 @@ package io.brackit.query.jsonitem;
 import io.brackit.query.atomic.Str;
 import io.brackit.query.jdm.DocumentException;
 import io.brackit.query.jdm.OperationNotSupportedException;
+import io.brackit.query.jdm.Statistics;
+import io.brackit.query.jdm.StatisticsProvider;
 import io.brackit.query.jdm.Stream;
 import io.brackit.query.jdm.json.JsonCollection;
 import io.brackit.query.jdm.json.JsonItem;
@@ -39,9 +41,8 @@ import io.brackit.query.util.io.URIHandler;
 import io.brackit.query.function.json.JSONParser;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URI;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -50,7 +51,7 @@ import java.util.Map;
 /**
  * @author Johannes Lichtenberger
  */
-public final class SimpleJsonStore implements JsonStore {
+public final class SimpleJsonStore implements JsonStore, StatisticsProvider {
   private final Map<String, JsonCollection<?>> docs = new HashMap<>();
 
   @Override
@@ -60,8 +61,20 @@ public final class SimpleJsonStore implements JsonStore {
       return coll;
     }
     try {
-      InputStream in = URIHandler.getInputStream(URI.create(name));
-      coll = create(name, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+      URI uri = URI.create(name);
+      Path path = URIHandler.getLocalPath(name);
+      if (path != null) {
+        // local files are opened when the collection is read first
+        if (!Files.isRegularFile(path)) {
+          throw new DocumentException("Collection %s not found", name);
+        }
+        var local = new StreamingJsonCollection(name);
+        local.addSource(uri);
+        coll = local;
+      } else {
+        coll = new StreamingJsonCollection(name, uri, URIHandler.getInputStream(uri));
+      }
+      docs.put(name, coll);
       return coll;
     } catch (IOException e) {
       throw new DocumentException(e, "Collection %s not found", name);
@@ -80,19 +93,13 @@ public final class SimpleJsonStore implements JsonStore {
 
   @Override
   public JsonCollection<?> createFromPaths(String name, Stream<Path> paths) {
-    ArrayList<JsonItem> jsonDocs = new ArrayList<>();
+    var coll = new StreamingJsonCollection(name);
     try (paths) {
       Path path;
       while ((path = paths.next()) != null) {
-        try {
-          InputStream in = URIHandler.getInputStream(path.toUri());
-          jsonDocs.add((JsonItem) new JSONParser(new String(in.readAllBytes(), StandardCharsets.UTF_8)).parse());
-        } catch (IOException e) {
-          throw new DocumentException(e, "Collection %s not found", name);
-        }
+        coll.addSource(path.toUri());
       }
     }
-    var coll = new SimpleJsonCollection(name, jsonDocs.toArray(new JsonItem[0]));
     docs.put(name, coll);
     return coll;
   }
@@ -128,4 +135,12 @@ public final class SimpleJsonStore implements JsonStore {
   public void makeDir(String path) {
     throw new OperationNotSupportedException();
   }
+
+  /**
+   * Returns the statistics of a known collection without loading it.
+   */
+  @Override
+  public Statistics getStatistics(String name) {
+    return (docs.get(name) instanceof Statistics statistics) ? statistics : null;
+  }
 }
@@ -0,0 +1,396 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.jsonitem;
+
+import io.brackit.query.function.json.JSONParser;
+import io.brackit.query.function.json.JSONStreamParser;
+import io.brackit.query.function.json.JsonProjection;
+import io.brackit.query.jdm.DocumentException;
+import io.brackit.query.jdm.Item;
+import io.brackit.query.jdm.OperationNotSupportedException;
+import io.brackit.query.jdm.Statistics;
+import io.brackit.query.jdm.Stream;
+import io.brackit.query.jdm.json.JsonItem;
+import io.brackit.query.util.Cfg;
+import io.brackit.query.util.io.URIHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.SoftReference;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A JSON collection backed by a list of sources, which are parsed
+ * incrementally when the documents of the collection are requested first.
+ * Each source may contain a single JSON document, JSON Lines or a sequence of
+ * concatenated JSON documents.
+ * <p>
+ * Parsed documents are cached softly in chunks, so that repeated accesses
+ * return the same documents without keeping a large collection resident.
+ * A document that was reclaimed is parsed again from its source on the next
+ * access, which loses updates made to it. If {@link #RETAIN} is set, all
+ * parsed documents are kept instead, so each source is read only once and
+ * updates persist for the lifetime of the collection. A source that is only
+ * partially consumed stays open until the next access continues it.
+ */
+public final class StreamingJsonCollection extends AbstractJsonItemCollection<JsonItem> implements Statistics {
+  public static final String RETAIN_CFG = "org.brackit.xquery.json.collection.retain";
+
+  /**
+   * Keep all parsed documents of streamed collections in memory.
+   */
+  public static boolean RETAIN = Cfg.asBool(RETAIN_CFG, false);
+
+  /**
+   * Number of documents that are cached and reclaimed together.
+   */
+  private static final int CHUNK_SIZE = 1024;
+
+  private final List<URI> sources;
+
+  private final List<JsonItem> added;
+
+  private final JsonProjection projection;
+
+  // views of this collection that only load projected parts of the documents
+  private Map<JsonProjection, StreamingJsonCollection> views;
+
+  private final StreamingJsonCollection base;
+
+  private final boolean retain;
+
+  // chunks of the documents parsed so far
+  private final List<SoftReference<JsonItem[]>> chunks = new ArrayList<>();
+
+  // strong references to all chunks if documents are retained
+  private final List<JsonItem[]> retained;
+
+  // number of documents parsed so far
+  private int count;
+
+  // position of the first document of each parsed source
+  private final List<Integer> starts = new ArrayList<>();
+
+  // next source to parse
+  private int source;
+
+  // parser of the current source
+  private JSONStreamParser parser;
+
+  // parser that reads reclaimed documents again
+  private JSONStreamParser reparser;
+
+  // source and position of the next document of the reparser
+  private int reparseSource;
+  private int reparsePos;
+
+  public StreamingJsonCollection(String name) {
+    super(name);
+    this.sources = new ArrayList<>();
+    this.added = new ArrayList<>();
+    this.projection = JsonProjection.ALL;
+    this.base = null;
+    this.retain = RETAIN;
+    this.retained = retain ? new ArrayList<>() : null;
+  }
+
+  /**
+   * Creates a collection from an already opened source, which is parsed on
+   * demand and closed once it is consumed.
+   */
+  public StreamingJsonCollection(String name, URI source, InputStream in) {
+    this(name);
+    this.sources.add(source);
+    this.starts.add(0);
+    this.source = 1;
+    this.parser = new JSONStreamParser(in, projection);
+  }
+
+  private StreamingJsonCollection(StreamingJsonCollection base, JsonProjection projection) {
+    super(base.name);
+    this.sources = base.sources;
+    this.added = base.added;
+    this.projection = projection;
+    this.base = base;
+    this.retain = base.retain;
+    this.retained = retain ? new ArrayList<>() : null;
+  }
+
+  /**
+   * Returns a view of this collection that parses only the given parts of
+   * the documents and skips everything else.
+   */
+  public synchronized StreamingJsonCollection project(JsonProjection projection) {
+    if ((base != null) || projection.keepsAll()) {
+      return this;
+    }
+    if (views == null) {
+      views = new HashMap<>();
+    }
+    return views.computeIfAbsent(projection, p -> new StreamingJsonCollection(this, p));
+  }
+
+  public synchronized void addSource(URI source) {
+    sources.add(source);
+    views = null;
+  }
+
+  @Override
+  public void delete() throws DocumentException {
+    throw new OperationNotSupportedException();
+  }
+
+  @Override
+  public void remove(long documentID) {
+    throw new OperationNotSupportedException();
+  }
+
+  @Override
+  public JsonItem getDocument() {
+    try (Stream<? extends JsonItem> docs = getDocuments()) {
+      JsonItem doc = docs.next();
+      if ((doc != null) && (docs.next() == null)) {
+        return doc;
+      }
+    }
+    throw new DocumentException("Illegal access to non-singular collection");
+  }
+
+  @Override
+  public Stream<? extends JsonItem> getDocuments() {
+    if ((base != null) && (base.isLoaded())) {
+      // prefer the complete documents, which may have been updated
+      return base.getDocuments();
+    }
+    return new Stream<>() {
+      int pos;
+
+      @Override
+      public JsonItem next() throws DocumentException {
+        return load(pos++);
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+  }
+
+  private synchronized boolean isLoaded() {
+    return (parser == null) && (source == sources.size());
+  }
+
+  /**
+   * Returns the document at the given position, parsing the sources until
+   * it is available, or <code>null</code> if there are fewer documents.
+   */
+  private synchronized JsonItem load(int pos) {
+    if (pos < count) {
+      JsonItem[] chunk = chunks.get(pos / CHUNK_SIZE).get();
+      JsonItem doc = (chunk != null) ? chunk[pos % CHUNK_SIZE] : null;
+      return (doc != null) ? doc : reload(pos);
+    }
+    JsonItem doc = null;
+    while (count <= pos) {
+      if (parser == null) {
+        if (source == sources.size()) {
+          int i = pos - count;
+          return (i < added.size()) ? added.get(i) : null;
+        }
+        starts.add(count);
+        parser = new JSONStreamParser(open(sources.get(source++)), projection);
+      }
+      Item item;
+      try {
+        item = parser.next();
+      } catch (DocumentException e) {
+        parser.close();
+        parser = null;
+        throw e;
+      }
+      if (item == null) {
+        parser.close();
+        parser = null;
+      } else if (item instanceof JsonItem parsed) {
+        chunk(count)[count % CHUNK_SIZE] = parsed;
+        count++;
+        doc = parsed;
+      } else {
+        parser.close();
+        parser = null;
+        throw new DocumentException("Top-level value in collection %s is not a JSON item", name);
+      }
+    }
+    return doc;
+  }
+
+  /**
+   * Parses the reclaimed document at the given position again. The parser
+   * stays open, so a scan over reclaimed documents reads each source once.
+   */
+  private JsonItem reload(int pos) {
+    JsonItem[] chunk = chunk(pos);
+    int s = sourceOf(pos);
+    if ((reparser == null) || (reparseSource != s) || (reparsePos > pos)) {
+      closeReparser();
+      reparser = new JSONStreamParser(open(sources.get(s)), projection);
+      reparseSource = s;
+      reparsePos = starts.get(s);
+    }
+    int end = (s + 1 < starts.size()) ? starts.get(s + 1) : count;
+    while (true) {
+      Item item;
+      try {
+        item = reparser.next();
+      } catch (DocumentException e) {
+        closeReparser();
+        throw e;
+      }
+      if (!(item instanceof JsonItem parsed)) {
+        closeReparser();
+        throw new DocumentException("Source %s of collection %s has changed", sources.get(s), name);
+      }
+      int p = reparsePos++;
+      if ((p / CHUNK_SIZE == pos / CHUNK_SIZE) && (chunk[p % CHUNK_SIZE] == null)) {
+        chunk[p % CHUNK_SIZE] = parsed;
+      }
+      if (reparsePos == end) {
+        closeReparser();
+      }
+      if (p == pos) {
+        return chunk[p % CHUNK_SIZE];
+      }
+    }
+  }
+
+  /**
+   * Returns the chunk of the given position, replacing it with an empty one
+   * if it was reclaimed.
+   */
+  private JsonItem[] chunk(int pos) {
+    int c = pos / CHUNK_SIZE;
+    JsonItem[] chunk = (c < chunks.size()) ? chunks.get(c).get() : null;
+    if (chunk == null) {
+      chunk = new JsonItem[CHUNK_SIZE];
+      if (c < chunks.size()) {
+        chunks.set(c, new SoftReference<>(chunk));
+      } else {
+        chunks.add(new SoftReference<>(chunk));
+      }
+      if (retain) {
+        retained.add(chunk);
+      }
+    }
+    return chunk;
+  }
+
+  private int sourceOf(int pos) {
+    int s = starts.size() - 1;
+    while (starts.get(s) > pos) {
+      s--;
+    }
+    return s;
+  }
+
+  private void closeReparser() {
+    if (reparser != null) {
+      reparser.close();
+      reparser = null;
+    }
+  }
+
+  /**
+   * Drops all cached documents that are not retained, e.g., to release
+   * memory. They are parsed again on the next access.
+   */
+  synchronized void evict() {
+    if (retain) {
+      return;
+    }
+    for (SoftReference<JsonItem[]> chunk : chunks) {
+      chunk.clear();
+    }
+  }
+
+  private InputStream open(URI source) {
+    try {
+      return URIHandler.getInputStream(source);
+    } catch (IOException e) {
+      throw new DocumentException(e, "Collection %s not found", name);
+    }
+  }
+
+  @Override
+  public synchronized JsonItem add(Path file) {
+    // parse all previous sources, so that the new source follows them
+    load(Integer.MAX_VALUE);
+    int pos = count;
+    addSource(file.toUri());
+    load(Integer.MAX_VALUE);
+    if (count == pos) {
+      throw new DocumentException("File %s does not contain a JSON item", file);
+    }
+    return load(pos);
+  }
+
+  @Override
+  public synchronized JsonItem add(String json) {
+    final var doc = (JsonItem) new JSONParser(json).parse();
+    added.add(doc);
+    views = null;
+    return doc;
+  }
+
+  @Override
+  public synchronized long getDocumentCount() {
+    load(Integer.MAX_VALUE);
+    return count + added.size();
+  }
+
+  /**
+   * Returns the exact number of documents once all sources are parsed.
+   * Before, the number of documents in the remaining sources is extrapolated
+   * from the sources parsed so far, because a source may contain any number
+   * of documents. Without any parsed source, the count is unknown.
+   */
+  @Override
+  public synchronized long getEstimatedDocumentCount() {
+    if (isLoaded()) {
+      return count + added.size();
+    }
+    if (source == 0) {
+      return UNKNOWN;
+    }
+    return Math.round((double) count * sources.size() / source) + added.size();
+  }
+}
@@ -104,8 +104,7 @@ public abstract class AbstractArray extends AbstractItem implements Array {
 
       @Override
       public Split split(int min, int max) throws QueryException {
-        // TODO Auto-generated method stub
-        return null;
+        return super.split(min, max);
       }
     };
   }
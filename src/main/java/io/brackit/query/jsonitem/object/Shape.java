@@ -0,0 +1,190 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.jsonitem.object;
+
+import io.brackit.query.atomic.QNm;
+import io.brackit.query.util.Cfg;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The key layout of a {@link ShapedObject}. Shapes are interned in a
+ * transition tree rooted at {@link #EMPTY}, i.e., all objects with the same
+ * field names in the same order share a single shape and only store their
+ * values.
+ * <p>
+ * To protect against objects that are used as maps with arbitrary keys,
+ * wide objects and all shapes created after {@link #MAX_SHAPES} interned
+ * shapes exist are private to a single object.
+ */
+public final class Shape {
+  public static final String MAX_FIELDS_CFG = "org.brackit.xquery.json.shape.maxFields";
+  public static int MAX_FIELDS = Cfg.asInt(MAX_FIELDS_CFG, 64);
+
+  public static final String MAX_SHAPES_CFG = "org.brackit.xquery.json.shape.maxShapes";
+  public static int MAX_SHAPES = Cfg.asInt(MAX_SHAPES_CFG, 1 << 16);
+
+  /**
+   * Shapes with more fields look up slots through a hash index.
+   */
+  private static final int SCAN_THRESHOLD = 8;
+
+  private static final AtomicInteger SHAPES = new AtomicInteger();
+
+  public static final Shape EMPTY = new Shape(new QNm[0], true);
+
+  private final QNm[] fields;
+
+  private final boolean interned;
+
+  private final Map<QNm, Integer> index;
+
+  private volatile Map<QNm, Shape> transitions;
+
+  private Shape(QNm[] fields, boolean interned) {
+    this.fields = fields;
+    this.interned = interned;
+    if (fields.length > SCAN_THRESHOLD) {
+      index = new HashMap<>();
+      for (int i = 0; i < fields.length; i++) {
+        index.put(fields[i], i);
+      }
+    } else {
+      index = null;
+    }
+  }
+
+  /**
+   * Returns the shape for the given field names or <code>null</code> if the
+   * names contain duplicates.
+   */
+  public static Shape of(QNm[] fields) {
+    Shape shape = EMPTY;
+    for (QNm field : fields) {
+      if (!shape.interned) {
+        // build the remainder at once instead of copying per field
+        shape = new Shape(fields.clone(), false);
+        return shape.distinct() ? shape : null;
+      }
+      if (shape.slot(field) >= 0) {
+        return null;
+      }
+      shape = shape.with(field);
+    }
+    return shape;
+  }
+
+  private boolean distinct() {
+    if (index != null) {
+      return (index.size() == fields.length);
+    }
+    for (int i = 1; i < fields.length; i++) {
+      for (int j = 0; j < i; j++) {
+        if (fields[i].equals(fields[j])) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the shape resulting from appending the given field, which must
+   * not be part of this shape.
+   */
+  public Shape with(QNm field) {
+    if (!interned || (fields.length >= MAX_FIELDS)) {
+      return new Shape(append(field), false);
+    }
+    Map<QNm, Shape> t = transitions;
+    if (t == null) {
+      synchronized (this) {
+        if ((t = transitions) == null) {
+          transitions = t = new ConcurrentHashMap<>(4);
+        }
+      }
+    }
+    Shape shape = t.get(field);
+    if (shape != null) {
+      return shape;
+    }
+    if (SHAPES.get() >= MAX_SHAPES) {
+      return new Shape(append(field), false);
+    }
+    return t.computeIfAbsent(field, f -> {
+      SHAPES.incrementAndGet();
+      return new Shape(append(f), true);
+    });
+  }
+
+  private QNm[] append(QNm field) {
+    QNm[] tmp = Arrays.copyOf(fields, fields.length + 1);
+    tmp[fields.length] = field;
+    return tmp;
+  }
+
+  /**
+   * Returns the slot of the given field or <code>-1</code> if the field is
+   * not part of this shape.
+   */
+  public int slot(QNm field) {
+    if (index != null) {
+      Integer slot = index.get(field);
+      return (slot != null) ? slot : -1;
+    }
+    for (int i = 0; i < fields.length; i++) {
+      QNm f = fields[i];
+      if ((f == field) || (f.getLocalName().equals(field.getLocalName()) && f.getNamespaceURI()
+                                                                            .equals(field.getNamespaceURI()))) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  public QNm field(int slot) {
+    return fields[slot];
+  }
+
+  public int size() {
+    return fields.length;
+  }
+
+  QNm[] fields() {
+    return fields;
+  }
+
+  @Override
+  public String toString() {
+    return Arrays.toString(fields);
+  }
+}
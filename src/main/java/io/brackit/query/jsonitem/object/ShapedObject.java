@@ -0,0 +1,196 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.jsonitem.object;
+
+import io.brackit.query.ErrorCode;
+import io.brackit.query.QueryException;
+import io.brackit.query.atomic.Int32;
+import io.brackit.query.atomic.IntNumeric;
+import io.brackit.query.atomic.QNm;
+import io.brackit.query.jdm.Sequence;
+import io.brackit.query.jdm.json.Array;
+import io.brackit.query.jdm.json.Object;
+import io.brackit.query.jsonitem.array.DArray;
+
+import java.util.Arrays;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An object that shares its field names with all objects of the same
+ * {@link Shape} and only stores an array of values indexed by slot.
+ */
+public final class ShapedObject extends AbstractObject {
+  private Shape shape;
+  private Sequence[] vals;
+
+  private ShapedObject(Shape shape, Sequence[] values) {
+    this.shape = shape;
+    this.vals = values;
+  }
+
+  /**
+   * Creates a shaped object for the given fields or falls back to an
+   * {@link ArrayObject} if the fields contain duplicates. The value array
+   * is taken over by the new object.
+   */
+  public static Object create(QNm[] fields, Sequence[] values) {
+    Shape shape = Shape.of(fields);
+    if (shape == null) {
+      return new ArrayObject(fields, values);
+    }
+    if (values.getClass() != Sequence[].class) {
+      // covariant arrays, e.g., Item[], must accept any sequence on replace
+      values = Arrays.copyOf(values, values.length, Sequence[].class);
+    }
+    return new ShapedObject(shape, values);
+  }
+
+  public Shape shape() {
+    return shape;
+  }
+
+  @Override
+  public Object replace(QNm field, Sequence value) {
+    requireNonNull(field);
+    int slot = shape.slot(field);
+    if (slot >= 0) {
+      vals[slot] = value;
+    }
+    return this;
+  }
+
+  @Override
+  public Object rename(QNm field, QNm newFieldName) {
+    requireNonNull(field);
+    requireNonNull(newFieldName);
+    int slot = shape.slot(field);
+    if (slot >= 0) {
+      QNm[] fields = shape.fields().clone();
+      fields[slot] = newFieldName;
+      Shape renamed = Shape.of(fields);
+      if (renamed == null) {
+        throw new QueryException(new QNm("Field already defined."));
+      }
+      shape = renamed;
+    }
+    return this;
+  }
+
+  @Override
+  public Object insert(QNm field, Sequence value) {
+    if (shape.slot(field) >= 0) {
+      throw new QueryException(new QNm("Field already defined."));
+    }
+    shape = shape.with(field);
+    vals = Arrays.copyOf(vals, vals.length + 1);
+    vals[vals.length - 1] = value;
+    return this;
+  }
+
+  @Override
+  public Object remove(QNm field) {
+    int slot = shape.slot(field);
+    return (slot >= 0) ? remove(slot) : this;
+  }
+
+  @Override
+  public Object remove(IntNumeric index) {
+    return remove(index.intValue());
+  }
+
+  @Override
+  public Object remove(int index) {
+    if (index < 0 || index > vals.length - 1) {
+      throw new QueryException(ErrorCode.ERR_INVALID_ARGUMENT_TYPE, "Invalid array index: %s", index);
+    }
+    QNm[] fields = shape.fields();
+    QNm[] remainingFields = new QNm[fields.length - 1];
+    System.arraycopy(fields, 0, remainingFields, 0, index);
+    System.arraycopy(fields, index + 1, remainingFields, index, remainingFields.length - index);
+    Sequence[] remainingVals = new Sequence[vals.length - 1];
+    System.arraycopy(vals, 0, remainingVals, 0, index);
+    System.arraycopy(vals, index + 1, remainingVals, index, remainingVals.length - index);
+    shape = Shape.of(remainingFields);
+    vals = remainingVals;
+    return this;
+  }
+
+  @Override
+  public Sequence get(QNm field) {
+    int slot = shape.slot(field);
+    return (slot >= 0) ? vals[slot] : null;
+  }
+
+  @Override
+  public Sequence value(IntNumeric i) {
+    return value(i.intValue());
+  }
+
+  @Override
+  public Sequence value(int i) {
+    if (i < 0 || i >= vals.length) {
+      throw new QueryException(ErrorCode.ERR_INVALID_ARGUMENT_TYPE, "Invalid field index: %s", i);
+    }
+    return vals[i];
+  }
+
+  @Override
+  public Array names() {
+    return new DArray(Arrays.asList(shape.fields()));
+  }
+
+  @Override
+  public Array values() {
+    return new DArray(Arrays.asList(vals));
+  }
+
+  @Override
+  public QNm name(IntNumeric i) {
+    return name(i.intValue());
+  }
+
+  @Override
+  public QNm name(int i) {
+    if (i < 0 || i >= vals.length) {
+      throw new QueryException(ErrorCode.ERR_INVALID_ARGUMENT_TYPE, "Invalid field index: %s", i);
+    }
+    return shape.field(i);
+  }
+
+  @Override
+  public IntNumeric length() {
+    int length = vals.length;
+    return length <= 20 ? Int32.ZERO_TO_TWENTY[length] : new Int32(length);
+  }
+
+  @Override
+  public int len() {
+    return vals.length;
+  }
+}
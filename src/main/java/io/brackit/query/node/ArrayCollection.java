@@ -33,13 +33,14 @@ import io.brackit.query.node.stream.ArrayStream;
 import io.brackit.query.node.parser.NodeSubtreeParser;
 import io.brackit.query.jdm.DocumentException;
 import io.brackit.query.jdm.OperationNotSupportedException;
+import io.brackit.query.jdm.Statistics;
 import io.brackit.query.jdm.Stream;
 import io.brackit.query.jdm.node.Node;
 
 /**
  * @author Sebastian Baechle
  */
-public class ArrayCollection<E extends Node<E>> extends AbstractNodeCollection<E> {
+public class ArrayCollection<E extends Node<E>> extends AbstractNodeCollection<E> implements Statistics {
   protected Node[] docs;
 
   public ArrayCollection(String name, E doc) {
@@ -93,4 +94,9 @@ public class ArrayCollection<E extends Node<E>> extends AbstractNodeCollection<E
     return docs.length;
   }
 
+  @Override
+  public long getEstimatedDocumentCount() {
+    return docs.length;
+  }
+
 }
@@ -27,12 +27,35 @@
  */
 package io.brackit.query.node;
 
-import io.brackit.query.util.path.Path;
+import java.util.ArrayList;
+import java.util.List;
+
 import io.brackit.query.jdm.DocumentException;
+import io.brackit.query.jdm.Kind;
 import io.brackit.query.jdm.Stream;
 import io.brackit.query.jdm.node.Node;
+import io.brackit.query.util.path.Path;
+import io.brackit.query.util.path.Path.Axis;
 
 /**
+ * Holistic matching of a path pattern with child and descendant steps in a
+ * single scan of a node stream (PathStack).
+ * <p>
+ * The first node of the input stream is the context node of the path. All
+ * other nodes are matched against all steps at once: an entry on the stack
+ * of open ancestors records which steps the node itself matched and which
+ * steps were matched by the node or any of its ancestors. A node matches a
+ * child step if its parent matched the preceding step, and a descendant step
+ * if any of its ancestors did. Every node that matches the last step is
+ * reported exactly once and in document order, i.e., the result needs no
+ * further duplicate elimination or sorting.
+ * </p>
+ * <p>
+ * The ancestor relationship is checked with {@link Node#isAncestorOf(Node)}
+ * and {@link Node#isParentOf(Node)} only, so the input may also skip nodes
+ * that can never match, e.g., when it is the merged result of index scans.
+ * </p>
+ *
  * @param <E>
  * @author Sebastian Baechle
  */
@@ -49,7 +72,27 @@ public abstract class PathStackStream<E> implements Stream<E> {
    */
   protected final Path<String> path;
 
-  private E next;
+  private final Path.Step<String>[] steps;
+
+  private final long last;
+
+  private final List<Entry> stack = new ArrayList<>();
+
+  private boolean done;
+
+  private static final class Entry {
+    final Node<?> node;
+    // bit i + 1 is set if the node matched step i
+    final long matched;
+    // matched steps of the node and all its ancestors
+    final long cumulative;
+
+    Entry(Node<?> node, long matched, long cumulative) {
+      this.node = node;
+      this.matched = matched;
+      this.cumulative = cumulative;
+    }
+  }
 
   public static class Default extends PathStackStream<Node<?>> {
     public Default(Stream<? extends Node<?>> in, Path<String> path) {
@@ -58,13 +101,27 @@ public abstract class PathStackStream<E> implements Stream<E> {
 
     @Override
     protected Node<?> match(Node<?>[] matchingNodes) {
-      return matchingNodes[matchingNodes.length];
+      return matchingNodes[matchingNodes.length - 1];
     }
   }
 
+  @SuppressWarnings({ "unchecked", "rawtypes" })
   public PathStackStream(Stream<? extends Node<?>> in, Path<String> path) {
     this.in = in;
     this.path = path;
+    List<Path.Step<String>> pathSteps = path.steps();
+    if ((pathSteps.isEmpty()) || (pathSteps.size() >= Long.SIZE)) {
+      throw new IllegalArgumentException("Unsupported path length: " + path);
+    }
+    for (Path.Step<String> step : pathSteps) {
+      Axis axis = step.getAxis();
+      if ((axis != Axis.CHILD) && (axis != Axis.DESC) && (axis != Axis.CHILD_ATTRIBUTE)
+          && (axis != Axis.DESC_ATTRIBUTE)) {
+        throw new IllegalArgumentException("Unsupported path step: " + step);
+      }
+    }
+    this.steps = pathSteps.toArray(new Path.Step[0]);
+    this.last = 1L << steps.length;
   }
 
   /**
@@ -75,17 +132,88 @@ public abstract class PathStackStream<E> implements Stream<E> {
    */
   protected abstract E match(Node<?>[] matchingNodes);
 
+  /**
+   * Checks if the given node passes the node test of the i-th step. By
+   * default, the step value is compared with the local name of the node and
+   * a <code>null</code> value matches any name.
+   */
+  protected boolean matches(Node<?> node, int i) throws DocumentException {
+    Path.Step<String> step = steps[i];
+    Axis axis = step.getAxis();
+    boolean attribute = (axis == Axis.CHILD_ATTRIBUTE) || (axis == Axis.DESC_ATTRIBUTE);
+    if (node.getKind() != (attribute ? Kind.ATTRIBUTE : Kind.ELEMENT)) {
+      return false;
+    }
+    String value = step.getValue();
+    return (value == null) || (value.equals(node.getName().stringValue()));
+  }
+
   @Override
   public E next() throws DocumentException {
-    // TODO consume input and look for next match(es)
-    // for each match, the result output (stored in 'next')
-    // is generated by a call of 'match'
-
+    if (done) {
+      return null;
+    }
+    Node<?> node;
+    while ((node = in.next()) != null) {
+      if (stack.isEmpty()) {
+        // context node of the path
+        stack.add(new Entry(node, 1L, 1L));
+        continue;
+      }
+      Entry top = stack.get(stack.size() - 1);
+      while (!top.node.isAncestorOf(node)) {
+        stack.remove(stack.size() - 1);
+        if (stack.isEmpty()) {
+          // left the subtree of the context node
+          done = true;
+          return null;
+        }
+        top = stack.get(stack.size() - 1);
+      }
+      boolean child = top.node.isParentOf(node);
+      long matched = 0;
+      for (int i = 0; i < steps.length; i++) {
+        long prev = 1L << i;
+        Axis axis = steps[i].getAxis();
+        boolean candidate = ((axis == Axis.CHILD) || (axis == Axis.CHILD_ATTRIBUTE))
+            ? (child && ((top.matched & prev) != 0))
+            : ((top.cumulative & prev) != 0);
+        if ((candidate) && (matches(node, i))) {
+          matched |= (prev << 1);
+        }
+      }
+      stack.add(new Entry(node, matched, top.cumulative | matched));
+      if ((matched & last) != 0) {
+        return match(matchingNodes(node));
+      }
+    }
+    done = true;
     return null;
   }
 
+  private Node<?>[] matchingNodes(Node<?> node) {
+    // a node that matched step i - 1 is always the end of a complete
+    // match of the steps 0..i - 1, so any suitable ancestor will do
+    Node<?>[] matchingNodes = new Node<?>[steps.length];
+    matchingNodes[steps.length - 1] = node;
+    int pos = stack.size() - 1;
+    for (int i = steps.length - 1; i > 0; i--) {
+      Axis axis = steps[i].getAxis();
+      long prev = 1L << i;
+      pos--;
+      if ((axis == Axis.DESC) || (axis == Axis.DESC_ATTRIBUTE)) {
+        while ((stack.get(pos).matched & prev) == 0) {
+          pos--;
+        }
+      }
+      matchingNodes[i - 1] = stack.get(pos).node;
+    }
+    return matchingNodes;
+  }
+
   @Override
   public void close() {
+    stack.clear();
     in.close();
   }
 }
@@ -33,6 +33,8 @@ import io.brackit.query.util.io.URIHandler;
 import io.brackit.query.node.parser.NodeSubtreeParser;
 import io.brackit.query.jdm.DocumentException;
 import io.brackit.query.jdm.OperationNotSupportedException;
+import io.brackit.query.jdm.Statistics;
+import io.brackit.query.jdm.StatisticsProvider;
 import io.brackit.query.jdm.Stream;
 import io.brackit.query.jdm.node.Node;
 import io.brackit.query.jdm.node.NodeCollection;
@@ -48,7 +50,7 @@ import java.util.Map;
 /**
  * @author Sebastian Baechle
  */
-public class SimpleNodeStore implements NodeStore {
+public class SimpleNodeStore implements NodeStore, StatisticsProvider {
   private final Map<String, NodeCollection<?>> docs = new HashMap<>();
 
   @Override
@@ -105,4 +107,12 @@ public class SimpleNodeStore implements NodeStore {
   public void makeDir(String path) throws DocumentException {
     throw new OperationNotSupportedException();
   }
+
+  /**
+   * Returns the statistics of a known collection without loading it.
+   */
+  @Override
+  public Statistics getStatistics(String name) {
+    return (docs.get(name) instanceof Statistics statistics) ? statistics : null;
+  }
 }
@@ -94,6 +94,16 @@ public abstract class D2Node extends AbstractNode<D2Node> {
     return parent;
   }
 
+  NameIndex nameIndex() throws DocumentException {
+    return (getRoot() instanceof DocumentD2Node document) ? document.getNameIndex() : null;
+  }
+
+  void invalidateNameIndex() {
+    if (getRoot() instanceof DocumentD2Node document) {
+      document.nameIndex = null;
+    }
+  }
+
   @Override
   public D2NodeCollection getCollection() {
     return parent == null ? null : getRoot().getCollection();
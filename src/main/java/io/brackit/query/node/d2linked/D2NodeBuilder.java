@@ -44,6 +44,10 @@ public class D2NodeBuilder extends AbstractBuilder<D2Node> {
   private final boolean right;
   private final D2NodeCollection coll;
 
+  private DocumentD2Node document;
+
+  private NameIndex.Builder nameIndex;
+
   public D2NodeBuilder(String name) throws DocumentException {
     this(new D2NodeCollection(name));
   }
@@ -69,7 +73,21 @@ public class D2NodeBuilder extends AbstractBuilder<D2Node> {
 
   @Override
   protected D2Node buildDocument() throws DocumentException {
-    return coll == null ? new DocumentD2Node() : new DocumentD2Node(coll);
+    document = coll == null ? new DocumentD2Node() : new DocumentD2Node(coll);
+    if (NameIndex.NAME_INDEX) {
+      // elements are built in document order
+      nameIndex = new NameIndex.Builder();
+    }
+    return document;
+  }
+
+  @Override
+  public void endDocument() throws DocumentException {
+    super.endDocument();
+    if (nameIndex != null) {
+      document.nameIndex = nameIndex.build();
+      nameIndex = null;
+    }
   }
 
   @Override
@@ -104,6 +122,9 @@ public class D2NodeBuilder extends AbstractBuilder<D2Node> {
       e = (ElementD2Node) first(Kind.ELEMENT, name, null);
     }
     e.nsMappings = nsMappings;
+    if (nameIndex != null) {
+      nameIndex.add(e);
+    }
     return e;
   }
 
@@ -40,6 +40,8 @@ public class DocumentD2Node extends ParentD2Node {
 
   private final D2NodeCollection collection;
 
+  volatile NameIndex nameIndex;
+
   public DocumentD2Node(String name) {
     super(null, FIRST);
     this.collection = new D2NodeCollection(name, this);
@@ -59,6 +61,15 @@ public class DocumentD2Node extends ParentD2Node {
                                                          System.currentTimeMillis()), this);
   }
 
+  NameIndex getNameIndex() throws DocumentException {
+    NameIndex index = nameIndex; // volatile read
+    if ((index == null) && (NameIndex.NAME_INDEX)) {
+      index = NameIndex.build(this);
+      nameIndex = index;
+    }
+    return index;
+  }
+
   @Override
   public D2NodeCollection getCollection() {
     return collection;
@@ -206,10 +206,12 @@ public final class ElementD2Node extends ParentD2Node implements Scope {
   @Override
   public void setName(QNm name) throws DocumentException {
     this.name = checkName(name);
+    invalidateNameIndex();
   }
 
   @Override
   public void setValue(Atomic value) throws DocumentException {
+    invalidateNameIndex();
     firstChild = null;
     append(Kind.TEXT, null, value);
   }
@@ -0,0 +1,127 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.node.d2linked;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.brackit.query.atomic.QNm;
+import io.brackit.query.jdm.DocumentException;
+import io.brackit.query.jdm.Kind;
+import io.brackit.query.jdm.Stream;
+import io.brackit.query.node.stream.ArrayStream;
+import io.brackit.query.node.stream.EmptyStream;
+import io.brackit.query.util.Cfg;
+
+/**
+ * Name index of a document that maps element names to the elements with this
+ * name in document order. Descendant steps with a name test are answered by
+ * two binary searches for the subtree of the context node instead of a scan
+ * of the whole subtree.
+ * <p>
+ * The index is built while a document is parsed and dropped by the document
+ * on any structural change. It is rebuilt with a single document scan when it
+ * is needed again.
+ * </p>
+ */
+final class NameIndex {
+  public static final String NAME_INDEX_CFG = "org.brackit.xquery.d2linked.nameIndex";
+
+  public static boolean NAME_INDEX = Cfg.asBool(NAME_INDEX_CFG, true);
+
+  private static final D2Node[] NONE = new D2Node[0];
+
+  private final Map<QNm, D2Node[]> elements;
+
+  static final class Builder {
+    private final Map<QNm, ArrayList<D2Node>> elements = new HashMap<>();
+
+    void add(D2Node element) throws DocumentException {
+      elements.computeIfAbsent(element.getName(), name -> new ArrayList<>()).add(element);
+    }
+
+    NameIndex build() {
+      Map<QNm, D2Node[]> index = new HashMap<>(elements.size() * 4 / 3 + 1);
+      for (Map.Entry<QNm, ArrayList<D2Node>> entry : elements.entrySet()) {
+        index.put(entry.getKey(), entry.getValue().toArray(NONE));
+      }
+      return new NameIndex(index);
+    }
+  }
+
+  private NameIndex(Map<QNm, D2Node[]> elements) {
+    this.elements = elements;
+  }
+
+  static NameIndex build(DocumentD2Node document) throws DocumentException {
+    Builder builder = new Builder();
+    try (Stream<? extends D2Node> scanner = document.getDescendantOrSelf()) {
+      D2Node node;
+      while ((node = scanner.next()) != null) {
+        if (node.getKind() == Kind.ELEMENT) {
+          builder.add(node);
+        }
+      }
+    }
+    return builder.build();
+  }
+
+  /**
+   * Returns the elements with the given name in the subtree of the given node
+   * in document order.
+   */
+  Stream<D2Node> descendants(D2Node node, QNm name, boolean self) {
+    D2Node[] candidates = elements.getOrDefault(name, NONE);
+    // first candidate after (or at) the context node
+    int from = 0;
+    int to = candidates.length;
+    while (from < to) {
+      int mid = (from + to) >>> 1;
+      int cmp = candidates[mid].cmpInternal(node);
+      if ((cmp < 0) || ((cmp == 0) && (!self))) {
+        from = mid + 1;
+      } else {
+        to = mid;
+      }
+    }
+    // first candidate after the subtree of the context node
+    int end = from;
+    to = candidates.length;
+    while (end < to) {
+      int mid = (end + to) >>> 1;
+      D2Node candidate = candidates[mid];
+      if ((candidate == node) || (candidate.isInSubtreeOf(node))) {
+        end = mid + 1;
+      } else {
+        to = mid;
+      }
+    }
+    return (from < end) ? new ArrayStream<>(candidates, from, end) : new EmptyStream<>();
+  }
+}
@@ -32,10 +32,13 @@ import io.brackit.query.atomic.QNm;
 import io.brackit.query.atomic.Una;
 import io.brackit.query.node.parser.NodeSubtreeParser;
 import io.brackit.query.node.stream.EmptyStream;
+import io.brackit.query.jdm.Axis;
 import io.brackit.query.jdm.DocumentException;
 import io.brackit.query.jdm.Kind;
 import io.brackit.query.jdm.Stream;
 import io.brackit.query.jdm.node.Node;
+import io.brackit.query.jdm.type.ElementType;
+import io.brackit.query.jdm.type.NodeType;
 
 /**
  * Abstract base for all constructed nodes that may have children.
@@ -179,6 +182,18 @@ abstract class ParentD2Node extends D2Node {
     return new FragmentScanner(this);
   }
 
+  @Override
+  public Stream<? extends Node<?>> performStep(Axis axis, NodeType test) throws DocumentException {
+    if (((axis == Axis.DESCENDANT) || (axis == Axis.DESCENDANT_OR_SELF)) && (test instanceof ElementType type)
+        && (type.getQName() != null) && (type.getType() == null)) {
+      NameIndex index = nameIndex();
+      if (index != null) {
+        return index.descendants(this, type.getQName(), (axis == Axis.DESCENDANT_OR_SELF));
+      }
+    }
+    return null;
+  }
+
   protected ParentD2Node(ParentD2Node parent, int[] division) {
     super(parent, division);
   }
@@ -222,6 +237,9 @@ abstract class ParentD2Node extends D2Node {
     if (getKind() == Kind.DOCUMENT && node.getKind() == Kind.ELEMENT) {
       throw new DocumentException("The root element must not be deleted");
     }
+    if (node.getKind() == Kind.ELEMENT) {
+      invalidateNameIndex();
+    }
 
     D2Node prev = previousSiblingOf(node);
     if (prev == null)
@@ -239,6 +257,9 @@ abstract class ParentD2Node extends D2Node {
       }
     }
 
+    if (kind == Kind.ELEMENT) {
+      invalidateNameIndex();
+    }
     if (firstChild == null) {
       return firstChild = buildChild(null, null, kind, name, value);
     }
@@ -303,6 +324,7 @@ abstract class ParentD2Node extends D2Node {
       throw new DocumentException("Cannot replace root element with of kind: %s", kind);
     }
 
+    invalidateNameIndex();
     D2Node previous = firstChild;
     while (previous.sibling != null && previous.sibling != sibling)
       previous = previous.sibling;
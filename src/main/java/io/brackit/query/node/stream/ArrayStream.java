@@ -36,10 +36,18 @@ import io.brackit.query.jdm.Stream;
 public class ArrayStream<E> implements Stream<E> {
 
   private final E[] v;
+  private final int end;
   private int pos;
 
   public ArrayStream(E[] v) {
     this.v = v;
+    this.end = v.length;
+  }
+
+  public ArrayStream(E[] v, int from, int to) {
+    this.v = v;
+    this.pos = from;
+    this.end = to;
   }
 
   @Override
@@ -48,6 +56,6 @@ public class ArrayStream<E> implements Stream<E> {
 
   @Override
   public E next() throws DocumentException {
-    return pos < v.length ? v[pos++] : null;
+    return pos < end ? v[pos++] : null;
   }
 }
@@ -27,90 +27,63 @@
  */
 package io.brackit.query.node.stream;
 
-import java.util.concurrent.ConcurrentLinkedQueue;
-
+import io.brackit.query.block.FJControl;
 import io.brackit.query.jdm.DocumentException;
 import io.brackit.query.jdm.Stream;
+import io.brackit.query.util.BatchHandoff;
 
 /**
+ * Reads the wrapped stream ahead on the shared {@link FJControl#PIPELINE}
+ * executor and hands over its elements in batches through a bounded
+ * {@link BatchHandoff}.
+ *
  * @param <E>
  * @author Sebastian Baechle
  */
 public class ParallelCLQStream<E> implements Stream<E> {
 
-  private final Stream<? extends E> stream;
-
-  private final ConcurrentLinkedQueue<E> queue;
-
-  private volatile boolean finished;
+  private static final int BATCH_SIZE = 256;
 
-  private volatile DocumentException error;
+  private static final int BUFFERS = 4;
 
-  private int outerRetry;
-
-  private int innerRetry;
-
-  private int takes;
+  private final BatchHandoff<E> handoff;
 
   public ParallelCLQStream(Stream<? extends E> stream) {
-    super();
-    this.stream = stream;
-    this.queue = new ConcurrentLinkedQueue<E>();
-    this.finished = false;
-
-    final Stream<? extends E> s = stream;
-
-    new Thread() {
-      public void run() {
-        System.out.println("internal starting");
-        try {
-          E next;
-          while ((next = s.next()) != null) {
-            do {
-              if (queue.offer(next)) {
-                break;
-              }
-              innerRetry++;
-            } while (!finished);
+    this.handoff = new BatchHandoff<>(BATCH_SIZE, BUFFERS);
+    final BatchHandoff<E> h = handoff;
+    FJControl.PIPELINE.execute(() -> {
+      try (stream) {
+        E next;
+        while ((next = stream.next()) != null) {
+          if (!h.put(next)) {
+            return;
           }
-          finished = true;
-          s.close();
-        } catch (DocumentException e) {
-          error = e;
-          finished = true;
         }
-        System.out.println("internal stopping");
+        h.finish();
+      } catch (InterruptedException e) {
+        h.cancel();
+      } catch (Throwable e) {
+        h.fail(e);
       }
-    }.start();
+    });
   }
 
   @Override
   public void close() {
-    finished = true;
-    System.out.println("Inner retry " + innerRetry);
-    System.out.println("Outer retry " + outerRetry);
-    System.out.println("Takes: " + takes);
+    handoff.cancel();
   }
 
   @Override
   public E next() throws DocumentException {
-    DocumentException deliverError = error; // volatile read
-
-    if (deliverError != null) {
-      error = null;
-      throw deliverError;
+    if (handoff.isCancelled()) {
+      return null;
+    }
+    try {
+      return handoff.take();
+    } catch (DocumentException e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new DocumentException(e);
     }
-
-    E current;
-    do {
-      current = queue.poll();
-      if (current != null) {
-        break;
-      }
-      outerRetry++;
-    } while (!finished);
-
-    takes++;
-    return current;
   }
 }
@@ -76,6 +76,18 @@ public class Count extends Check implements Operator {
       return t.concat(pos = pos.inc());
     }
 
+    @Override
+    public int next(QueryContext ctx, Tuple[] buf) {
+      if (check) {
+        return Cursor.super.next(ctx, buf);
+      }
+      int n = c.next(ctx, buf);
+      for (int i = 0; i < n; i++) {
+        buf[i] = buf[i].concat(pos = pos.inc());
+      }
+      return n;
+    }
+
     @Override
     public void open(QueryContext ctx) {
       c.open(ctx);
@@ -39,5 +39,23 @@ public interface Cursor {
 
   Tuple next(QueryContext ctx) throws QueryException;
 
+  /**
+   * Fills <code>buf</code> with up to <code>buf.length</code> tuples and
+   * returns the number of tuples delivered. A return value of zero signals
+   * that the cursor is exhausted.
+   * <p>
+   * The default implementation adapts tuple-at-a-time cursors. Operators
+   * on the hot path of a FLWOR pipeline override it to process a whole batch
+   * of their input in a tight loop.
+   */
+  default int next(QueryContext ctx, Tuple[] buf) throws QueryException {
+    int n = 0;
+    Tuple t;
+    while ((n < buf.length) && ((t = next(ctx)) != null)) {
+      buf[n++] = t;
+    }
+    return n;
+  }
+
   void close(QueryContext ctx);
 }
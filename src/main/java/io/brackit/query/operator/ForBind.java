@@ -54,6 +54,9 @@ public class ForBind extends Check implements Operator {
     private IntNumeric pos;
     private Tuple t;
     private Iter it;
+    private Tuple[] in;
+    private int inPos;
+    private int inLen;
 
     public ForBindCursor(Cursor c) {
       this.c = c;
@@ -65,6 +68,9 @@ public class ForBind extends Check implements Operator {
         it.close();
       }
       it = null;
+      in = null;
+      inPos = 0;
+      inLen = 0;
       c.close(ctx);
     }
 
@@ -79,7 +85,7 @@ public class ForBind extends Check implements Operator {
           it.close();
           it = null;
         }
-        if ((t = c.next(ctx)) == null) {
+        if ((t = nextInput(ctx)) == null) {
           return null;
         }
         if (check && dead(t)) {
@@ -116,6 +122,52 @@ public class ForBind extends Check implements Operator {
       }
     }
 
+    @Override
+    public int next(QueryContext ctx, Tuple[] buf) {
+      int n = 0;
+      while (n < buf.length) {
+        if (it != null) {
+          Item item;
+          while ((item = it.next()) != null) {
+            buf[n++] = emit(t, item);
+            if (n == buf.length) {
+              return n;
+            }
+          }
+          it.close();
+          it = null;
+        }
+        if ((inPos == inLen) && (!fill(ctx, buf.length))) {
+          break;
+        }
+        // bind the next input tuple and emit its first item
+        Tuple o = next(ctx);
+        if (o == null) {
+          break;
+        }
+        buf[n++] = o;
+      }
+      return n;
+    }
+
+    private Tuple nextInput(QueryContext ctx) {
+      if (inPos < inLen) {
+        Tuple tmp = in[inPos];
+        in[inPos++] = null; // allow gc
+        return tmp;
+      }
+      return c.next(ctx);
+    }
+
+    private boolean fill(QueryContext ctx, int size) {
+      if ((in == null) || (in.length < size)) {
+        in = new Tuple[size];
+      }
+      inPos = 0;
+      inLen = c.next(ctx, in);
+      return (inLen > 0);
+    }
+
     private Tuple emit(Tuple t, Sequence item) {
       if (bindVar) {
         if (bindPos) {
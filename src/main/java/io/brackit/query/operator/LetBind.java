@@ -68,6 +68,20 @@ public class LetBind extends Check implements Operator {
       return t.concat(sequence);
     }
 
+    @Override
+    public int next(QueryContext ctx, Tuple[] buf) throws QueryException {
+      int n = c.next(ctx, buf);
+      for (int i = 0; i < n; i++) {
+        Tuple t = buf[i];
+        if (check && dead(t)) {
+          buf[i] = t.concat((Sequence) null);
+        } else {
+          buf[i] = t.concat(source.evaluate(ctx, t));
+        }
+      }
+      return n;
+    }
+
     @Override
     public void open(QueryContext ctx) throws QueryException {
       c.open(ctx);
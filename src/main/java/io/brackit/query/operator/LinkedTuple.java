@@ -0,0 +1,224 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.operator;
+
+import java.util.Arrays;
+
+import io.brackit.query.ErrorCode;
+import io.brackit.query.QueryException;
+import io.brackit.query.Tuple;
+import io.brackit.query.jdm.Sequence;
+import io.brackit.query.util.Cfg;
+
+/**
+ * A tuple that shares its prefix with the tuple it was derived from.
+ * Appending bindings only allocates the appended columns instead of copying
+ * the whole tuple like {@link TupleImpl}, which saves allocations in deep
+ * pipelines with many nested for and let clauses.
+ * <p>
+ * To bound the cost of column lookups, a tuple is flattened into a single
+ * chunk as soon as its chain of shared prefixes exceeds {@link #MAX_DEPTH}.
+ */
+public final class LinkedTuple implements Tuple {
+  public static final String MAX_DEPTH_CFG = "org.brackit.xquery.tuple.maxDepth";
+  public static int MAX_DEPTH = Math.max(Cfg.asInt(MAX_DEPTH_CFG, 8), 1);
+
+  private static final Sequence[] NONE = new Sequence[0];
+
+  private final Tuple prefix;
+
+  private final int offset;
+
+  private final Sequence[] local;
+
+  private final int depth;
+
+  private Sequence[] flat;
+
+  private LinkedTuple(Tuple prefix, int offset, Sequence[] local, int depth) {
+    this.prefix = prefix;
+    this.offset = offset;
+    this.local = local;
+    this.depth = depth;
+  }
+
+  /**
+   * Wraps the given tuple as shared prefix for all tuples derived from the
+   * returned one.
+   */
+  public static Tuple wrap(Tuple tuple) {
+    if (tuple instanceof LinkedTuple) {
+      return tuple;
+    }
+    return new LinkedTuple(tuple, tuple.getSize(), NONE, 1);
+  }
+
+  private Tuple append(Sequence[] s) {
+    if (depth < MAX_DEPTH) {
+      return new LinkedTuple(this, getSize(), s, depth + 1);
+    }
+    Sequence[] tmp = Arrays.copyOf(array(), getSize() + s.length);
+    System.arraycopy(s, 0, tmp, getSize(), s.length);
+    return new LinkedTuple(null, 0, tmp, 0);
+  }
+
+  @Override
+  public Tuple project(int... positions) {
+    Sequence[] projected = new Sequence[positions.length];
+    int targetPos = 0;
+    for (int pos : positions) {
+      projected[targetPos++] = get(pos);
+    }
+    return new LinkedTuple(null, 0, projected, 0);
+  }
+
+  @Override
+  public Tuple project(int start, int end) {
+    int size = getSize();
+    if ((start < 0) || (start >= size)) {
+      throw new QueryException(ErrorCode.BIT_DYN_RT_OUT_OF_BOUNDS_ERROR, start);
+    }
+    if ((end < start) || (end > size)) {
+      throw new QueryException(ErrorCode.BIT_DYN_RT_OUT_OF_BOUNDS_ERROR, end);
+    }
+    if (start == 0) {
+      // stripping appended columns, e.g., sort keys, yields a shared prefix
+      LinkedTuple t = this;
+      while (true) {
+        if (t.getSize() == end) {
+          return t;
+        }
+        if (end > t.offset) {
+          break;
+        }
+        if (!(t.prefix instanceof LinkedTuple)) {
+          if ((t.prefix != null) && (t.offset == end)) {
+            return wrap(t.prefix);
+          }
+          break;
+        }
+        t = (LinkedTuple) t.prefix;
+      }
+    }
+    Sequence[] projected = new Sequence[end - start];
+    for (int i = start; i < end; i++) {
+      projected[i - start] = get(i);
+    }
+    return new LinkedTuple(null, 0, projected, 0);
+  }
+
+  @Override
+  public Tuple replace(int position, Sequence s) {
+    if ((position < 0) || (position >= getSize())) {
+      throw new QueryException(ErrorCode.BIT_DYN_RT_OUT_OF_BOUNDS_ERROR, position);
+    }
+    if (position >= offset) {
+      Sequence[] tmp = Arrays.copyOf(local, local.length);
+      tmp[position - offset] = s;
+      return new LinkedTuple(prefix, offset, tmp, depth);
+    }
+    return new LinkedTuple(prefix.replace(position, s), offset, local, depth);
+  }
+
+  @Override
+  public Tuple concat(Sequence s) {
+    return append(new Sequence[] { s });
+  }
+
+  @Override
+  public Tuple concat(Sequence[] s) {
+    return append(Arrays.copyOf(s, s.length));
+  }
+
+  @Override
+  public Tuple conreplace(Sequence con, int position, Sequence s) {
+    int nLen = getSize() + 1;
+    if ((position < 0) || (position >= nLen)) {
+      throw new QueryException(ErrorCode.BIT_DYN_RT_OUT_OF_BOUNDS_ERROR, position);
+    }
+    return concat(con).replace(position, s);
+  }
+
+  @Override
+  public Tuple conreplace(Sequence[] con, int position, Sequence s) {
+    int nLen = getSize() + con.length;
+    if ((position < 0) || (position >= nLen)) {
+      throw new QueryException(ErrorCode.BIT_DYN_RT_OUT_OF_BOUNDS_ERROR, position);
+    }
+    return concat(con).replace(position, s);
+  }
+
+  @Override
+  public Sequence[] array() {
+    Sequence[] a = flat;
+    if (a != null) {
+      return a;
+    }
+    if (prefix == null) {
+      return (flat = local);
+    }
+    a = new Sequence[getSize()];
+    LinkedTuple t = this;
+    while (true) {
+      System.arraycopy(t.local, 0, a, t.offset, t.local.length);
+      if (t.prefix instanceof LinkedTuple) {
+        t = (LinkedTuple) t.prefix;
+      } else {
+        if (t.prefix != null) {
+          System.arraycopy(t.prefix.array(), 0, a, 0, t.offset);
+        }
+        break;
+      }
+    }
+    return (flat = a);
+  }
+
+  @Override
+  public Sequence get(int position) {
+    if ((position < 0) || (position >= getSize())) {
+      throw new QueryException(ErrorCode.BIT_DYN_RT_OUT_OF_BOUNDS_ERROR, position);
+    }
+    LinkedTuple t = this;
+    while (position < t.offset) {
+      if (!(t.prefix instanceof LinkedTuple)) {
+        return t.prefix.get(position);
+      }
+      t = (LinkedTuple) t.prefix;
+    }
+    return t.local[position - t.offset];
+  }
+
+  @Override
+  public int getSize() {
+    return offset + local.length;
+  }
+
+  public String toString() {
+    return Arrays.toString(array());
+  }
+}
@@ -75,7 +75,7 @@ public class OrderBy extends Check implements Operator {
       }
 
       // sort current tuple and all following in same group
-      Ordering sort = new Ordering(orderByExprs, modifier);
+      Ordering sort = ordering();
       sort.add(ctx, t);
       while ((next = c.next(ctx)) != null) {
         if (check && separate(t, next)) {
@@ -104,6 +104,10 @@ public class OrderBy extends Check implements Operator {
     this.modifier = orderBySpec;
   }
 
+  protected Ordering ordering() {
+    return new Ordering(orderByExprs, modifier);
+  }
+
   @Override
   public Cursor create(QueryContext ctx, Tuple tuple) {
     return new OrderByCursor(in.create(ctx, tuple));
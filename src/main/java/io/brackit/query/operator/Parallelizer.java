@@ -27,40 +27,34 @@
  */
 package io.brackit.query.operator;
 
+import io.brackit.query.ErrorCode;
 import io.brackit.query.QueryContext;
 import io.brackit.query.QueryException;
 import io.brackit.query.Tuple;
+import io.brackit.query.block.FJControl;
+import io.brackit.query.util.BatchHandoff;
+import io.brackit.query.util.Cfg;
 
 /**
+ * Decouples the evaluation of the input from its consumer. The input cursor
+ * is evaluated on the shared {@link FJControl#PIPELINE} executor and hands
+ * over its tuples in batches through a bounded {@link BatchHandoff}.
+ *
  * @author Sebastian Baechle
  */
 public class Parallelizer implements Operator {
+  public static final String BATCH_SIZE_CFG = "org.brackit.xquery.parallelizer.batchSize";
+  public static int BATCH_SIZE = Cfg.asInt(BATCH_SIZE_CFG, 2000);
+
+  public static final String BUFFERS_CFG = "org.brackit.xquery.parallelizer.buffers";
+  public static int BUFFERS = Cfg.asInt(BUFFERS_CFG, 3);
+
   private static class ParallelizerCursor implements Cursor {
     private final Cursor c;
 
     private final QueryContext ctx;
 
-    private volatile boolean finished;
-
-    private volatile QueryException error;
-
-    // private int takes;
-    //
-    // private int enqueueRetries;
-    //
-    // private int dequeueRetries;
-
-    private Tuple current;
-
-    private Tuple[] currentBuffer;
-
-    private Tuple[][] freeQueue;
-
-    private volatile int freeQueueStart;
-
-    private volatile int freeQueueEnd;
-
-    private int pos = 0;
+    private BatchHandoff<Tuple> handoff;
 
     ParallelizerCursor(Cursor c, QueryContext ctx) {
       this.c = c;
@@ -69,121 +63,54 @@ public class Parallelizer implements Operator {
 
     @Override
     public void open(QueryContext ctx) throws QueryException {
-      int noOfBuffers = 3;
-      this.freeQueue = new Tuple[noOfBuffers][2000];
-      this.finished = false;
-      freeQueueStart = noOfBuffers - 1;
-      freeQueueEnd = 0;
-
-      new Thread(() -> {
-        // System.out.println("internal starting");
-        fill();
-        // System.out.println("internal stopping");
-      }).start();
+      handoff = new BatchHandoff<>(BATCH_SIZE, BUFFERS);
+      BatchHandoff<Tuple> h = handoff;
+      FJControl.PIPELINE.execute(() -> fill(h));
     }
 
-    private void fill() {
+    private void fill(BatchHandoff<Tuple> handoff) {
       try {
         c.open(ctx);
-        int pos = 0;
-        Object[] buffer = freeQueue[0];
-        int length = buffer.length;
-        Tuple t;
-
-        while ((t = c.next(ctx)) != null) {
-          buffer[pos++] = t;
-
-          if (pos == length) {
-            if (finished) {
-              break;
+        try {
+          Tuple t;
+          while ((t = c.next(ctx)) != null) {
+            if (!handoff.put(t)) {
+              return;
             }
-
-            // offer filled and take next
-            buffer = enqueue();
-            length = buffer.length;
-            pos = 0;
           }
+          handoff.finish();
+        } finally {
+          c.close(ctx);
         }
-        enqueue();
-        finished = true;
-      } catch (QueryException e) {
-        error = e;
-        finished = true;
-      } finally {
-        c.close(ctx);
-      }
-    }
-
-    private Tuple[] enqueue() {
-      int queueStart = freeQueueStart; // volatile read
-      int queueEnd = freeQueueEnd; // volatile read
-
-      int newQueueEnd = (queueEnd + 1) % freeQueue.length;
-
-      while (newQueueEnd == queueStart) {
-        // spin until one more free
-        queueStart = freeQueueStart; // volatile read
-        // enqueueRetries++;
-      }
-
-      // take one from queue
-      freeQueueEnd = newQueueEnd;
-      return freeQueue[newQueueEnd];
-    }
-
-    private Tuple[] dequeue() {
-      int queueStart = freeQueueStart; // volatile read
-      int queueEnd = freeQueueEnd; // volatile read
-
-      int newQueueStart = (queueStart + 1) % freeQueue.length;
-
-      while (newQueueStart == queueEnd) {
-        // spin until one more free
-        queueEnd = freeQueueEnd; // volatile read
-        // dequeueRetries++;
+      } catch (InterruptedException e) {
+        handoff.cancel();
+      } catch (Throwable e) {
+        handoff.fail(e);
       }
-
-      // take one from queue
-      freeQueueStart = newQueueStart;
-      return freeQueue[newQueueStart];
     }
 
     @Override
     public void close(QueryContext ctx) {
-      finished = true;
-      // System.out.println("Takes: " + takes);
-      // System.out.println("EnqueueRetries: " + enqueueRetries);
-      // System.out.println("DequeueRetries: " + dequeueRetries);
+      if (handoff != null) {
+        handoff.cancel();
+        handoff = null;
+      }
     }
 
     @Override
     public Tuple next(QueryContext ctx) throws QueryException {
-      QueryException deliverError = error; // volatile read
-
-      if (deliverError != null) {
-        error = null;
-        throw deliverError;
-      }
-
-      if (currentBuffer == null || pos == currentBuffer.length) {
-        currentBuffer = dequeue();
-        pos = 0;
-      }
-
-      current = currentBuffer[pos];
-      currentBuffer[pos++] = null;
-
-      if (current == null) {
+      if (handoff == null) {
         return null;
       }
-
-      // takes++;
-      Tuple deliver = current;
-      current = null;
-      return deliver;
+      try {
+        return handoff.take();
+      } catch (QueryException e) {
+        throw e;
+      } catch (Throwable e) {
+        throw new QueryException(e, ErrorCode.BIT_DYN_INT_ERROR);
+      }
     }
   }
-
   private final Operator in;
 
   public Parallelizer(Operator in) {
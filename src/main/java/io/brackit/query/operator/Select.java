@@ -27,6 +27,8 @@
  */
 package io.brackit.query.operator;
 
+import java.util.Arrays;
+
 import io.brackit.query.jdm.Expr;
 import io.brackit.query.jdm.Sequence;
 import io.brackit.query.QueryContext;
@@ -87,6 +89,30 @@ public class Select extends Check implements Operator {
       return t;
     }
 
+    @Override
+    public int next(QueryContext ctx, Tuple[] buf) {
+      if (check) {
+        // lifted iteration groups need the look-ahead of the single-step path
+        return Cursor.super.next(ctx, buf);
+      }
+      int n;
+      while ((n = c.next(ctx, buf)) > 0) {
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+          Tuple t = buf[i];
+          Sequence p = predicate.evaluate(ctx, t);
+          if ((p != null) && (p.booleanValue())) {
+            buf[k++] = t;
+          }
+        }
+        if (k > 0) {
+          Arrays.fill(buf, k, n, null);
+          return k;
+        }
+      }
+      return 0;
+    }
+
     @Override
     public void open(QueryContext ctx) {
       c.open(ctx);
@@ -27,6 +27,8 @@
  */
 package io.brackit.query.operator;
 
+import java.util.Arrays;
+
 import io.brackit.query.ErrorCode;
 import io.brackit.query.QueryContext;
 import io.brackit.query.QueryException;
@@ -36,6 +38,21 @@ import io.brackit.query.Tuple;
  * @author Sebastian Baechle
  */
 public class Start implements Operator {
+  private final boolean link;
+
+  public Start() {
+    this(false);
+  }
+
+  /**
+   * Creates a start operator that wraps its input as {@link LinkedTuple}
+   * if <code>link</code> is set, so that all downstream operators share
+   * tuple prefixes instead of copying them.
+   */
+  public Start(boolean link) {
+    this.link = link;
+  }
+
   public static class StartCursor implements Cursor {
     final Tuple start;
     boolean open = false;
@@ -64,6 +81,16 @@ public class Start implements Operator {
       return start;
     }
 
+    @Override
+    public int next(QueryContext ctx, Tuple[] buf) throws QueryException {
+      Tuple t = next(ctx);
+      if (t == null) {
+        return 0;
+      }
+      buf[0] = t;
+      return 1;
+    }
+
     @Override
     public void open(QueryContext ctx) throws QueryException {
       open = true;
@@ -101,6 +128,21 @@ public class Start implements Operator {
       }
     }
 
+    @Override
+    public int next(QueryContext ctx, Tuple[] buf) throws QueryException {
+      if (pos < 0) {
+        throw new QueryException(ErrorCode.BIT_DYN_RT_ILLEGAL_STATE_ERROR);
+      }
+      int n = Math.min(buf.length, len - pos);
+      if (n <= 0) {
+        return 0;
+      }
+      System.arraycopy(this.buf, pos, buf, 0, n);
+      Arrays.fill(this.buf, pos, pos + n, null); // allow gc
+      pos += n;
+      return n;
+    }
+
     @Override
     public void open(QueryContext ctx) throws QueryException {
       pos = 0;
@@ -109,11 +151,16 @@ public class Start implements Operator {
 
   @Override
   public Cursor create(QueryContext ctx, Tuple tuple) throws QueryException {
-    return new StartCursor(tuple);
+    return new StartCursor(link ? LinkedTuple.wrap(tuple) : tuple);
   }
 
   @Override
   public Cursor create(QueryContext ctx, Tuple[] buf, int len) throws QueryException {
+    if (link) {
+      for (int i = 0; i < len; i++) {
+        buf[i] = LinkedTuple.wrap(buf[i]);
+      }
+    }
     return new BufferStartCursor(buf, len);
   }
 
@@ -36,9 +36,11 @@ import io.brackit.query.QueryException;
 import io.brackit.query.Tuple;
 import io.brackit.query.compiler.translator.Reference;
 import io.brackit.query.util.join.FastList;
+import io.brackit.query.util.join.HybridJoinTable;
 import io.brackit.query.util.join.MultiTypeJoinTable;
 import io.brackit.query.jdm.Expr;
 import io.brackit.query.jdm.Sequence;
+import io.brackit.query.jdm.Stream;
 
 /**
  * @author Sebastian Baechle
@@ -51,6 +53,8 @@ public final class TableJoin extends Check implements Operator {
     private Tuple prev;
     private Tuple next;
     MultiTypeJoinTable table;
+    HybridJoinTable hybrid; // spilled table of current group
+    Stream<Tuple> deferred; // remaining results of spilled table
     Atomic tgk; // grouping key of current table
     Tuple tuple;
     FastList<Sequence[]> it;
@@ -73,6 +77,14 @@ public final class TableJoin extends Check implements Operator {
     public void close(QueryContext ctx) {
       cursor.close(ctx);
       it = null;
+      if (deferred != null) {
+        deferred.close();
+        deferred = null;
+      }
+      if (hybrid != null) {
+        hybrid.clear();
+        hybrid = null;
+      }
     }
 
     @Override
@@ -80,6 +92,12 @@ public final class TableJoin extends Check implements Operator {
       if (it != null && itPos < itSize) {
         return tuple.concat(it.get(itPos++));
       }
+      if (deferred != null) {
+        Tuple t = nextDeferred();
+        if (t != null) {
+          return t;
+        }
+      }
 
       while ((tuple = next) != null || (tuple = cursor.next(ctx)) != null) {
         next = null;
@@ -91,13 +109,23 @@ public final class TableJoin extends Check implements Operator {
           Atomic gk = (Atomic) tuple.get(groupVar);
           if (tgk != null && tgk.atomicCmp(gk) != 0) {
             table = null;
+            if (hybrid != null) {
+              // deliver pending results of previous group first
+              next = tuple;
+              deferred = hybrid.endDeferred();
+              Tuple t = nextDeferred();
+              if (t != null) {
+                return t;
+              }
+              continue;
+            }
           }
         }
-        if (table == null) {
+        if (table == null && hybrid == null) {
           buildTable(ctx, tuple);
         }
         final Sequence keys = isGCmp ? leftExpr.evaluate(ctx, tuple) : leftExpr.evaluateToItem(ctx, tuple);
-        final FastList<Sequence[]> matches = table.probe(keys);
+        final FastList<Sequence[]> matches = (hybrid != null) ? hybrid.probeDeferred(tuple, keys) : table.probe(keys);
 
         it = matches;
         itPos = 0;
@@ -106,7 +134,7 @@ public final class TableJoin extends Check implements Operator {
         if (itPos < itSize) {
           prev = tuple.concat(matches.get(itPos++));
           return prev;
-        } else if (leftJoin) {
+        } else if (leftJoin && hybrid == null) {
           if (check) {
             // predicate is not fulfilled, but we must keep
             // lifted iteration group alive for "left-join"
@@ -131,11 +159,28 @@ public final class TableJoin extends Check implements Operator {
         }
       }
       table = null;
+      if (hybrid != null) {
+        deferred = hybrid.endDeferred();
+        return nextDeferred();
+      }
       return null;
     }
 
+    private Tuple nextDeferred() throws QueryException {
+      Tuple t = deferred.next();
+      if (t == null) {
+        deferred.close();
+        deferred = null;
+        hybrid.clear();
+        hybrid = null;
+      }
+      return t;
+    }
+
     protected void buildTable(QueryContext ctx, Tuple tuple) throws QueryException {
-      table = new MultiTypeJoinTable(cmp, isGCmp, skipSort);
+      // lifted joins need the match state of whole iteration
+      // groups and are therefore always evaluated in memory
+      HybridJoinTable table = new HybridJoinTable(cmp, isGCmp, skipSort, (check) ? -1 : HybridJoinTable.MAX_SIZE);
       if (groupVar >= 0) {
         tgk = (Atomic) tuple.get(groupVar);
       }
@@ -160,9 +205,19 @@ public final class TableJoin extends Check implements Operator {
             table.add(keys, bindings, pos++);
           }
         }
+        table.build();
+      } catch (QueryException e) {
+        table.clear();
+        throw e;
       } finally {
         cursor1.close(ctx);
       }
+      if (table.isSpilled()) {
+        hybrid = table;
+        hybrid.beginDeferred(leftJoin, padding.length);
+      } else {
+        this.table = table.getTable();
+      }
     }
   }
 
@@ -56,7 +56,7 @@ public class SortedNodeSequence extends LazySequence {
   @Override
   public Iter iterate() {
     return new BaseIter() {
-      // TODO -1 means no external sort
+      // nodes are spilled by reference only: sort in main memory
       final TupleSort sort = new TupleSort(cmp, -1);
       final Sequence source = in;
 
@@ -27,6 +27,9 @@
  */
 package io.brackit.query.update;
 
+import io.brackit.query.jdm.StructuredItem;
+import io.brackit.query.jdm.node.Node;
+import io.brackit.query.update.op.BatchUpdatable;
 import io.brackit.query.update.op.OpType;
 import io.brackit.query.update.op.UpdateOp;
 import io.brackit.query.ErrorCode;
@@ -35,8 +38,12 @@ import io.brackit.query.util.log.Logger;
 
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Set;
 
 /**
  * @author Sebastian Baechle
@@ -69,73 +76,80 @@ public final class UpdateList {
     final var orderByTypeCmp = Comparator.comparing(UpdateOp::getType);
     ops.sort(orderByTypeCmp);
 
-    for (int i = 0, size = ops.size(); i < size; i++) {
-      final var firstOperator = ops.get(i);
-      if (checkOps.contains(firstOperator.getType())) {
-        for (int j = i + 1; j < ops.size(); j++) {
-          final var secondOperator = ops.get(j);
-
-          if (secondOperator.getType() != firstOperator.getType()) {
-            break;
-          }
-          checkCompatibility(firstOperator, secondOperator);
-        }
+    final var targets = new EnumMap<OpType, Set<StructuredItem>>(OpType.class);
+    for (final var op : ops) {
+      if (checkOps.contains(op.getType())) {
+        checkCompatibility(op, targets.computeIfAbsent(op.getType(), type -> new HashSet<>()));
       }
     }
 
-    // finally apply all updates
-    ops.forEach(op -> {
-      if (log.isDebugEnabled()) {
-        log.debug(String.format("Applying pending update %s", op));
+    // finally apply all updates of a type grouped by
+    // the collection of their targets
+    for (int i = 0, size = ops.size(); i < size; ) {
+      final var type = ops.get(i).getType();
+      final var batches = new LinkedHashMap<Object, List<UpdateOp>>();
+      for (; (i < size) && (ops.get(i).getType() == type); i++) {
+        final var op = ops.get(i);
+        batches.computeIfAbsent(batchKey(op), key -> new ArrayList<>()).add(op);
       }
-      op.apply();
-    });
+      batches.forEach(this::apply);
+    }
+  }
+
+  private static Object batchKey(final UpdateOp op) {
+    // ops on targets without a collection are applied one by one
+    final var collection = (op.getTarget() instanceof Node<?> node) ? node.getCollection() : null;
+    return (collection instanceof BatchUpdatable) ? collection : op;
   }
 
-  private void checkCompatibility(final UpdateOp op1, final UpdateOp op2) throws QueryException {
-    switch (op1.getType()) {
+  private void apply(final Object batchKey, final List<UpdateOp> batch) {
+    if (log.isDebugEnabled()) {
+      batch.forEach(op -> log.debug(String.format("Applying pending update %s", op)));
+    }
+    if (batchKey instanceof BatchUpdatable collection) {
+      collection.applyBatch(batch);
+    } else {
+      batch.forEach(UpdateOp::apply);
+    }
+  }
+
+  private void checkCompatibility(final UpdateOp op, final Set<StructuredItem> targets) throws QueryException {
+    final var target = op.getTarget();
+    switch (op.getType()) {
       case RENAME:
-        if (op1.getTarget().equals(op2.getTarget())) {
+        if (!targets.add(target)) {
           throw new QueryException(ErrorCode.ERR_UPDATE_DUPLICATE_RENAME_TARGET,
                                    "Node %s is target of more than one replace operation.",
-                                   op2.getTarget());
+                                   target);
         }
         break;
       case REPLACE_NODE:
-        if (op1.getTarget().itemType().isObject() && op2.getTarget().itemType().isObject()) {
-          return;
-        }
-
-        if (op1.getTarget().itemType().isArray() && op2.getTarget().itemType().isArray()) {
+        if (target.itemType().isObject() || target.itemType().isArray()) {
           return;
         }
 
-        if (op1.getTarget().equals(op2.getTarget())) {
+        if (!targets.add(target)) {
           throw new QueryException(ErrorCode.ERR_UPDATE_DUPLICATE_REPLACE_NODE_TARGET,
                                    "Node %s is target of more than one replace node operation.",
-                                   op2.getTarget());
+                                   target);
         }
         break;
       case REPLACE_VALUE:
-        if (op1.getTarget().itemType().isObject() && op2.getTarget().itemType().isObject()) {
-          return;
-        }
-
-        if (op1.getTarget().itemType().isArray() && op2.getTarget().itemType().isArray()) {
+        if (target.itemType().isObject() || target.itemType().isArray()) {
           return;
         }
 
-        if (op1.getTarget().equals(op2.getTarget())) {
+        if (!targets.add(target)) {
           throw new QueryException(ErrorCode.ERR_UPDATE_DUPLICATE_REPLACE_VALUE_TARGET,
                                    "Node %s is target of more than one replace value operation.",
-                                   op2.getTarget());
+                                   target);
         }
         break;
       case REPLACE_ELEMENT_CONTENT:
-        if (op1.getTarget().equals(op2.getTarget())) {
+        if (!targets.add(target)) {
           throw new QueryException(ErrorCode.ERR_UPDATE_DUPLICATE_REPLACE_VALUE_TARGET,
                                    "Node %s is target of more than one replace element content operation.",
-                                   op2.getTarget());
+                                   target);
         }
         break;
       default:
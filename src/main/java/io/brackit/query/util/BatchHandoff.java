@@ -0,0 +1,301 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.util;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded single-producer/single-consumer queue, which hands over elements in
+ * batches. The producer blocks when the configured number of batches is
+ * pending, and the consumer blocks when no batch is available. Either side
+ * may terminate the exchange: the producer with {@link #finish()} or
+ * {@link #fail(Throwable)}, the consumer with {@link #cancel()}.
+ * <p>
+ * The time both sides spent waiting for each other is recorded per instance
+ * and accumulated in global counters to help identify unbalanced pipelines.
+ *
+ * @param <E> the element type
+ */
+public final class BatchHandoff<E> {
+
+  private static final AtomicLong PRODUCER_STALLS = new AtomicLong();
+
+  private static final AtomicLong PRODUCER_STALL_NANOS = new AtomicLong();
+
+  private static final AtomicLong CONSUMER_STALLS = new AtomicLong();
+
+  private static final AtomicLong CONSUMER_STALL_NANOS = new AtomicLong();
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final Condition notFull = lock.newCondition();
+
+  private final Condition notEmpty = lock.newCondition();
+
+  private final ArrayDeque<Object[]> queue;
+
+  private final int batchSize;
+
+  private final int capacity;
+
+  private boolean done;
+
+  private volatile boolean cancelled;
+
+  private Throwable error;
+
+  // producer-side state
+  private Object[] in;
+
+  private int inPos;
+
+  private volatile long producerStalls;
+
+  private volatile long producerStallNanos;
+
+  // consumer-side state
+  private Object[] out;
+
+  private int outPos;
+
+  private int outLen;
+
+  private volatile long consumerStalls;
+
+  private volatile long consumerStallNanos;
+
+  public BatchHandoff(int batchSize, int capacity) {
+    if ((batchSize <= 0) || (capacity <= 0)) {
+      throw new IllegalArgumentException("Illegal batch size or capacity: " + batchSize + ", " + capacity);
+    }
+    this.batchSize = batchSize;
+    this.capacity = capacity;
+    this.queue = new ArrayDeque<>(capacity);
+  }
+
+  /**
+   * Appends an element. Must only be called by the producer.
+   *
+   * @return <code>false</code> if the consumer cancelled the exchange and
+   * the producer should stop
+   */
+  public boolean put(E e) throws InterruptedException {
+    if (cancelled) {
+      return false;
+    }
+    if (in == null) {
+      in = new Object[batchSize];
+    }
+    in[inPos++] = e;
+    if (inPos == batchSize) {
+      return publish(false);
+    }
+    return true;
+  }
+
+  /**
+   * Signals the regular end of the input. Must only be called by the
+   * producer.
+   */
+  public void finish() throws InterruptedException {
+    publish(true);
+  }
+
+  /**
+   * Signals an abnormal end of the input. The error is rethrown to the
+   * consumer. Must only be called by the producer.
+   */
+  public void fail(Throwable e) {
+    lock.lock();
+    try {
+      if ((in != null) && (!cancelled)) {
+        // deliver the elements produced before the error
+        if (inPos < batchSize) {
+          in[inPos] = null;
+        }
+        queue.add(in);
+      }
+      in = null;
+      inPos = 0;
+      error = e;
+      done = true;
+      notEmpty.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private boolean publish(boolean last) throws InterruptedException {
+    Object[] batch = in;
+    if (batch != null && inPos < batchSize) {
+      // mark end of a partial batch
+      batch[inPos] = null;
+    }
+    in = null;
+    inPos = 0;
+    lock.lock();
+    try {
+      if ((batch != null) && (queue.size() == capacity) && (!cancelled)) {
+        long start = System.nanoTime();
+        do {
+          notFull.await();
+        } while ((queue.size() == capacity) && (!cancelled));
+        long stalled = System.nanoTime() - start;
+        producerStalls++;
+        producerStallNanos += stalled;
+        PRODUCER_STALLS.incrementAndGet();
+        PRODUCER_STALL_NANOS.addAndGet(stalled);
+      }
+      if (cancelled) {
+        return false;
+      }
+      if (batch != null) {
+        queue.add(batch);
+      }
+      done = last;
+      notEmpty.signal();
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the next element or <code>null</code> at the end of the input.
+   * Must only be called by the consumer.
+   *
+   * @throws Throwable the error passed to {@link #fail(Throwable)} by the
+   *                   producer
+   */
+  @SuppressWarnings("unchecked")
+  public E take() throws Throwable {
+    if ((out == null) || (outPos == outLen)) {
+      if (!fetch()) {
+        return null;
+      }
+    }
+    E e = (E) out[outPos];
+    out[outPos++] = null;
+    if (e == null) {
+      // end of a partial batch
+      outPos = outLen;
+      return take();
+    }
+    return e;
+  }
+
+  private boolean fetch() throws Throwable {
+    lock.lock();
+    try {
+      if (queue.isEmpty() && (!done) && (!cancelled)) {
+        long start = System.nanoTime();
+        do {
+          notEmpty.await();
+        } while (queue.isEmpty() && (!done) && (!cancelled));
+        long stalled = System.nanoTime() - start;
+        consumerStalls++;
+        consumerStallNanos += stalled;
+        CONSUMER_STALLS.incrementAndGet();
+        CONSUMER_STALL_NANOS.addAndGet(stalled);
+      }
+      out = queue.poll();
+      if (out == null) {
+        if (error != null) {
+          Throwable e = error;
+          error = null;
+          throw e;
+        }
+        return false;
+      }
+      outPos = 0;
+      outLen = out.length;
+      notFull.signal();
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Stops the exchange and releases all pending batches. A blocked producer
+   * is woken up and all subsequent calls of {@link #put(Object)} return
+   * <code>false</code>.
+   */
+  public void cancel() {
+    lock.lock();
+    try {
+      cancelled = true;
+      queue.clear();
+      out = null;
+      notFull.signalAll();
+      notEmpty.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  public long getProducerStalls() {
+    return producerStalls;
+  }
+
+  public long getProducerStallTime(TimeUnit unit) {
+    return unit.convert(producerStallNanos, TimeUnit.NANOSECONDS);
+  }
+
+  public long getConsumerStalls() {
+    return consumerStalls;
+  }
+
+  public long getConsumerStallTime(TimeUnit unit) {
+    return unit.convert(consumerStallNanos, TimeUnit.NANOSECONDS);
+  }
+
+  public static long getTotalProducerStalls() {
+    return PRODUCER_STALLS.get();
+  }
+
+  public static long getTotalProducerStallTime(TimeUnit unit) {
+    return unit.convert(PRODUCER_STALL_NANOS.get(), TimeUnit.NANOSECONDS);
+  }
+
+  public static long getTotalConsumerStalls() {
+    return CONSUMER_STALLS.get();
+  }
+
+  public static long getTotalConsumerStallTime(TimeUnit unit) {
+    return unit.convert(CONSUMER_STALL_NANOS.get(), TimeUnit.NANOSECONDS);
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.util;
+
+import java.util.function.LongConsumer;
+
+/**
+ * Open-addressing hash set of primitive longs. Compared to a
+ * <code>java.util.HashSet&lt;Long&gt;</code>, it needs neither boxed keys nor
+ * entry objects.
+ */
+public final class LongHashSet {
+
+  private static final float LOAD_FACTOR = 0.6f;
+
+  private long[] keys;
+  private boolean[] used;
+  private int size;
+  private int threshold;
+
+  public LongHashSet() {
+    this(16);
+  }
+
+  public LongHashSet(int expected) {
+    int capacity = Integer.highestOneBit(Math.max((int) (expected / LOAD_FACTOR), 8) - 1) << 1;
+    keys = new long[capacity];
+    used = new boolean[capacity];
+    threshold = (int) (capacity * LOAD_FACTOR);
+  }
+
+  /**
+   * Adds the given key and returns <code>true</code> if it was not contained
+   * before.
+   */
+  public boolean add(long key) {
+    int mask = keys.length - 1;
+    int pos = hash(key) & mask;
+    while (used[pos]) {
+      if (keys[pos] == key) {
+        return false;
+      }
+      pos = (pos + 1) & mask;
+    }
+    keys[pos] = key;
+    used[pos] = true;
+    if (++size > threshold) {
+      rehash();
+    }
+    return true;
+  }
+
+  public boolean contains(long key) {
+    int mask = keys.length - 1;
+    int pos = hash(key) & mask;
+    while (used[pos]) {
+      if (keys[pos] == key) {
+        return true;
+      }
+      pos = (pos + 1) & mask;
+    }
+    return false;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public void forEach(LongConsumer action) {
+    for (int i = 0; i < keys.length; i++) {
+      if (used[i]) {
+        action.accept(keys[i]);
+      }
+    }
+  }
+
+  public void clear() {
+    keys = new long[8];
+    used = new boolean[8];
+    threshold = (int) (8 * LOAD_FACTOR);
+    size = 0;
+  }
+
+  /**
+   * Spreads the bits of the key (finalizer of MurmurHash3).
+   */
+  public static int hash(long key) {
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    key *= 0xc4ceb9fe1a85ec53L;
+    key ^= key >>> 33;
+    return (int) key;
+  }
+
+  private void rehash() {
+    long[] oldKeys = keys;
+    boolean[] oldUsed = used;
+    int capacity = oldKeys.length * 2;
+    keys = new long[capacity];
+    used = new boolean[capacity];
+    threshold = (int) (capacity * LOAD_FACTOR);
+    int mask = capacity - 1;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldUsed[i]) {
+        int pos = hash(oldKeys[i]) & mask;
+        while (used[pos]) {
+          pos = (pos + 1) & mask;
+        }
+        keys[pos] = oldKeys[i];
+        used[pos] = true;
+      }
+    }
+  }
+}
@@ -28,7 +28,10 @@
 package io.brackit.query.util;
 
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -65,9 +68,110 @@ public class Regex {
 
   ;
 
+  public static final String CACHE_SIZE_CFG = "org.brackit.xquery.regex.cacheSize";
+
+  /**
+   * Maximum number of compiled patterns kept in the pattern cache.
+   */
+  public static int CACHE_SIZE = Cfg.asInt(CACHE_SIZE_CFG, 256);
+
+  // Disallowed in replacement string: backslash or dollar sign as
+  // only character in string, or dollar sign not preceded by
+  // backslash and not followed by a digit, or backslash not
+  // preceded by backslash and not followed by a dollar sign
+  private static final Pattern ILLEGAL_REPLACEMENT = Pattern.compile("(\\$|\\\\|.*[^\\\\]\\$\\D.*|.*[^\\\\]\\\\[^\\$].*)");
+
+  private static final class Key {
+    final Mode mode;
+    final String pattern;
+    final String flags;
+
+    Key(Mode mode, String pattern, String flags) {
+      this.mode = mode;
+      this.pattern = pattern;
+      this.flags = flags;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key k = (Key) obj;
+      return (mode == k.mode) && pattern.equals(k.pattern)
+          && ((flags == null) ? (k.flags == null) : flags.equals(k.flags));
+    }
+
+    @Override
+    public int hashCode() {
+      return (mode.hashCode() * 31 + pattern.hashCode()) * 31 + ((flags == null) ? 0 : flags.hashCode());
+    }
+  }
+
+  /**
+   * LRU cache of compiled patterns.
+   */
+  private static final Map<Key, Pattern> CACHE = new LinkedHashMap<>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Key, Pattern> eldest) {
+      return size() > CACHE_SIZE;
+    }
+  };
+
+  private static final AtomicLong HITS = new AtomicLong();
+
+  private static final AtomicLong MISSES = new AtomicLong();
+
+  /**
+   * Returns the number of pattern lookups answered by the pattern cache.
+   */
+  public static long getCacheHits() {
+    return HITS.get();
+  }
+
+  /**
+   * Returns the number of pattern lookups that required a compilation.
+   */
+  public static long getCacheMisses() {
+    return MISSES.get();
+  }
+
+  public static void clearCache() {
+    synchronized (CACHE) {
+      CACHE.clear();
+    }
+    HITS.set(0);
+    MISSES.set(0);
+  }
+
   public static Sequence match(Mode mode, String input, String pattern, String replace, String flags)
       throws QueryException {
+    return match(mode, input, compile(mode, pattern, flags), replace);
+  }
 
+  /**
+   * Returns the compiled pattern for the given XQuery regular expression and
+   * flags. Compiled patterns are cached.
+   */
+  public static Pattern compile(Mode mode, String pattern, String flags) throws QueryException {
+    Key key = new Key(mode, pattern, flags);
+    Pattern cpattern;
+    synchronized (CACHE) {
+      cpattern = CACHE.get(key);
+    }
+    if (cpattern != null) {
+      HITS.incrementAndGet();
+      return cpattern;
+    }
+    MISSES.incrementAndGet();
+    cpattern = compilePattern(mode, pattern, flags);
+    synchronized (CACHE) {
+      CACHE.put(key, cpattern);
+    }
+    return cpattern;
+  }
+
+  private static Pattern compilePattern(Mode mode, String pattern, String flags) throws QueryException {
     // parse flags
     boolean removeWhitespace = false;
     int flagMask = Pattern.UNIX_LINES;
@@ -97,33 +201,32 @@ public class Regex {
       }
     }
 
-    if (mode != Mode.MATCH && Pattern.matches(pattern, "")) {
-      throw (new QueryException(ErrorCode.ERR_REGULAR_EXPRESSION_EMPTY_STRING, "Pattern matches empty string."));
+    try {
+      if (mode != Mode.MATCH && Pattern.matches(pattern, "")) {
+        throw (new QueryException(ErrorCode.ERR_REGULAR_EXPRESSION_EMPTY_STRING, "Pattern matches empty string."));
+      }
+      String regex = adaptRegEx(mode, pattern, flagMask, removeWhitespace);
+      return Pattern.compile(regex, flagMask);
+    } catch (PatternSyntaxException e) {
+      throw (new QueryException(e, ErrorCode.ERR_INVALID_REGULAR_EXPRESSION));
     }
+  }
 
+  /**
+   * Evaluates a pattern obtained from {@link #compile(Mode, String, String)}.
+   */
+  public static Sequence match(Mode mode, String input, Pattern cpattern, String replace) throws QueryException {
     if (mode == Mode.TOKENIZE && input.isEmpty()) {
       return null;
     }
 
-    Pattern cpattern;
-    try {
-      String regex = adaptRegEx(mode, pattern, flagMask, removeWhitespace);
-      cpattern = Pattern.compile(regex, flagMask);
-    } catch (PatternSyntaxException e) {
-      throw (new QueryException(e, ErrorCode.ERR_INVALID_REGULAR_EXPRESSION));
-    }
     Matcher matcher = cpattern.matcher(input);
 
     switch (mode) {
       case MATCH:
         return new Bool(matcher.matches());
       case REPLACE:
-        // Disallowed in replacement string: backslash or dollar sign as
-        // only character in string, or dollar sign not preceded by
-        // backslash and not followed by a digit, or backslash not
-        // preceded by backslash and not followed by a dollar sign
-        String pat = "(\\$|\\\\|.*[^\\\\]\\$\\D.*|.*[^\\\\]\\\\[^\\$].*)";
-        if (Pattern.matches(pat, replace)) {
+        if (ILLEGAL_REPLACEMENT.matcher(replace).matches()) {
           throw (new QueryException(ErrorCode.ERR_INVALID_REPLACEMENT_STRING,
                                     "Replacement string matches makes illegal " + "use of chars '\\' or '$'."));
         }
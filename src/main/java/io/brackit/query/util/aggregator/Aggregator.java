@@ -38,5 +38,17 @@ public interface Aggregator {
 
   void add(Sequence seq) throws QueryException;
 
+  /**
+   * Returns the intermediate state of this aggregator, e.g., to spill a
+   * partially computed aggregate to disk.
+   */
+  Sequence getState() throws QueryException;
+
+  /**
+   * Combines this aggregator with an intermediate state obtained from an
+   * aggregator of the same kind.
+   */
+  void addState(Sequence state) throws QueryException;
+
   void clear();
 }
\ No newline at end of file
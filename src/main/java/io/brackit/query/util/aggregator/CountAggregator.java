@@ -59,6 +59,18 @@ public class CountAggregator implements Aggregator {
     }
   }
 
+  @Override
+  public Sequence getState() {
+    return count;
+  }
+
+  @Override
+  public void addState(Sequence state) throws QueryException {
+    if (state != null) {
+      count = (IntNumeric) count.add((IntNumeric) state);
+    }
+  }
+
   @Override
   public void clear() {
     count = Int32.ZERO;
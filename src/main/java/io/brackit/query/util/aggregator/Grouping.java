@@ -28,6 +28,8 @@
 package io.brackit.query.util.aggregator;
 
 import io.brackit.query.atomic.Atomic;
+import io.brackit.query.atomic.Int32;
+import io.brackit.query.atomic.IntNumeric;
 import io.brackit.query.operator.TupleImpl;
 import io.brackit.query.util.ExprUtil;
 import io.brackit.query.QueryException;
@@ -207,6 +209,40 @@ public class Grouping {
     return new TupleImpl(groupings);
   }
 
+  /**
+   * Returns the intermediate state of this grouping, i.e., the number of
+   * grouped tuples followed by the states of all aggregators.
+   */
+  public Sequence[] getState() throws QueryException {
+    Sequence[] state = new Sequence[aggs.length + 1];
+    state[0] = new Int32(size);
+    for (int i = 0; i < aggs.length; i++) {
+      state[i + 1] = aggs[i].getState();
+    }
+    return state;
+  }
+
+  /**
+   * Combines this grouping with the intermediate state of a grouping with the
+   * same grouping key.
+   */
+  public void addState(Atomic[] gk, Sequence[] state) throws QueryException {
+    this.gk = gk;
+    for (int i = 0; i < aggs.length; i++) {
+      if ((size > 0) && (onlyFirst[i])) {
+        continue;
+      }
+      Sequence s = state[i + 1];
+      if (s == null) {
+        continue;
+      }
+      synchronized (aggs[i]) {
+        aggs[i].addState(s);
+      }
+    }
+    size += ((IntNumeric) state[0]).intValue();
+  }
+
   public Tuple singleEmit(Tuple t) throws QueryException {
     //		if (additionalAggs.length == 0) {
     //			return t;
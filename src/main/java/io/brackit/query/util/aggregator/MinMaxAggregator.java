@@ -61,6 +61,16 @@ public class MinMaxAggregator implements Aggregator {
     return minmax;
   }
 
+  @Override
+  public Sequence getState() {
+    return minmax;
+  }
+
+  @Override
+  public void addState(Sequence state) throws QueryException {
+    add(state);
+  }
+
   @Override
   public void clear() {
     aggType = null;
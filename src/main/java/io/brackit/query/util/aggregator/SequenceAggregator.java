@@ -27,10 +27,14 @@
  */
 package io.brackit.query.util.aggregator;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 
 import io.brackit.query.QueryException;
+import io.brackit.query.sequence.ItemSequence;
 import io.brackit.query.sequence.NestedSequence;
+import io.brackit.query.jdm.Item;
+import io.brackit.query.jdm.Iter;
 import io.brackit.query.jdm.Sequence;
 
 /**
@@ -67,6 +71,33 @@ public class SequenceAggregator implements Aggregator {
     return new NestedSequence(buf);
   }
 
+  @Override
+  public Sequence getState() throws QueryException {
+    if (len == 0) {
+      return null;
+    }
+    // materialize the concatenation
+    ArrayList<Item> items = new ArrayList<>();
+    for (int i = 0; i < len; i++) {
+      if (buf[i] instanceof Item) {
+        items.add((Item) buf[i]);
+        continue;
+      }
+      try (Iter it = buf[i].iterate()) {
+        Item item;
+        while ((item = it.next()) != null) {
+          items.add(item);
+        }
+      }
+    }
+    return new ItemSequence(items.toArray(new Item[0]));
+  }
+
+  @Override
+  public void addState(Sequence state) throws QueryException {
+    add(state);
+  }
+
   @Override
   public void clear() {
     if (len > 1) {
@@ -49,6 +49,16 @@ public class SingleAggregator implements Aggregator {
     }
   }
 
+  @Override
+  public Sequence getState() {
+    return s;
+  }
+
+  @Override
+  public void addState(Sequence state) {
+    add(state);
+  }
+
   @Override
   public void clear() {
     s = null;
@@ -40,6 +40,7 @@ import io.brackit.query.jdm.Item;
 import io.brackit.query.jdm.Iter;
 import io.brackit.query.jdm.Sequence;
 import io.brackit.query.jdm.Type;
+import io.brackit.query.sequence.ItemSequence;
 
 /**
  * Aggregator for operations with fn:sum() and fn:avg() semantics.
@@ -77,6 +78,29 @@ public class SumAvgAggregator implements Aggregator {
     return sum;
   }
 
+  /**
+   * The state is the sequence of the running sum and the number of summands.
+   */
+  @Override
+  public Sequence getState() {
+    return (sum == null) ? null : new ItemSequence(sum, new Int64(count));
+  }
+
+  @Override
+  public void addState(Sequence state) throws QueryException {
+    if (state == null) {
+      return;
+    }
+    Item partialSum;
+    long partialCount;
+    try (Iter it = state.iterate()) {
+      partialSum = it.next();
+      partialCount = ((Numeric) it.next()).longValue();
+    }
+    addItem(partialSum, (sum == null));
+    count += partialCount - 1;
+  }
+
   @Override
   public void clear() {
     count = 0;
@@ -95,6 +95,10 @@ public class Worker extends Thread {
     return getName();
   }
 
+  public Pool getPool() {
+    return pool;
+  }
+
   public Deque<Task> getQueue() {
     return deque;
   }
@@ -0,0 +1,200 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.util.io;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import io.brackit.query.ErrorCode;
+import io.brackit.query.QueryException;
+import io.brackit.query.atomic.Str;
+import io.brackit.query.jdm.Item;
+import io.brackit.query.jdm.Iter;
+import io.brackit.query.sequence.BaseIter;
+import io.brackit.query.util.Cfg;
+
+/**
+ * Iterates over the lines of a byte range of a UTF-8 encoded file with the
+ * same line terminators as {@link java.io.BufferedReader#readLine()}. The
+ * file is memory-mapped in windows and lines are decoded directly from the
+ * mapped bytes.
+ * <p>
+ * {@link #split(int, int)} cuts the remaining range at a line boundary near
+ * its middle, so that the halves can be consumed independently in parallel.
+ */
+public final class MappedLineIter extends BaseIter {
+  public static final String WINDOW_SIZE_CFG = "org.brackit.xquery.mappedLines.windowSize";
+
+  public static int WINDOW_SIZE = Cfg.asInt(WINDOW_SIZE_CFG, 64 << 20);
+
+  public static final String SPLIT_SIZE_CFG = "org.brackit.xquery.mappedLines.splitSize";
+
+  public static int SPLIT_SIZE = Cfg.asInt(SPLIT_SIZE_CFG, 1 << 20);
+
+  private final Path file;
+
+  private long pos;
+
+  private long end;
+
+  private MappedByteBuffer window;
+
+  // file offset of the current window
+  private long windowStart;
+
+  private byte[] buf = new byte[256];
+
+  public MappedLineIter(Path file) throws QueryException {
+    this.file = file;
+    try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+      this.end = in.size();
+    } catch (IOException e) {
+      throw new QueryException(e, ErrorCode.BIT_DYN_DOCUMENT_ACCESS_ERROR, "Could not read file %s", file);
+    }
+  }
+
+  private MappedLineIter(Path file, long pos, long end) {
+    this.file = file;
+    this.pos = pos;
+    this.end = end;
+  }
+
+  @Override
+  public Item next() throws QueryException {
+    if (pos >= end) {
+      return null;
+    }
+    int len = 0;
+    while (true) {
+      int i = (int) (pos - windowStart);
+      if (window == null || i >= window.limit()) {
+        map();
+        i = 0;
+      }
+      int limit = window.limit();
+      int start = i;
+      while (i < limit) {
+        byte b = window.get(i);
+        if (b == '\n' || b == '\r') {
+          break;
+        }
+        i++;
+      }
+      len = copy(start, i, len);
+      pos = windowStart + i;
+      if (i < limit) {
+        // consume the line terminator
+        pos++;
+        if (window.get(i) == '\r' && pos < end && byteAt(pos) == '\n') {
+          pos++;
+        }
+        break;
+      }
+      if (pos >= end) {
+        break;
+      }
+    }
+    return new Str(new String(buf, 0, len, StandardCharsets.UTF_8));
+  }
+
+  private int copy(int from, int to, int len) {
+    int n = to - from;
+    if (len + n > buf.length) {
+      buf = Arrays.copyOf(buf, Math.max(len + n, buf.length * 2));
+    }
+    window.get(from, buf, len, n);
+    return len + n;
+  }
+
+  private byte byteAt(long offset) throws QueryException {
+    int i = (int) (offset - windowStart);
+    if (i >= window.limit()) {
+      map();
+      i = 0;
+    }
+    return window.get(i);
+  }
+
+  private void map() throws QueryException {
+    long size = Math.min(WINDOW_SIZE, end - pos);
+    try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+      window = in.map(FileChannel.MapMode.READ_ONLY, pos, size);
+      windowStart = pos;
+    } catch (IOException e) {
+      throw new QueryException(e, ErrorCode.BIT_DYN_DOCUMENT_ACCESS_ERROR, "Could not read file %s", file);
+    }
+  }
+
+  @Override
+  public Split split(int min, int max) throws QueryException {
+    if (end - pos < SPLIT_SIZE) {
+      return new Split(this, null, false);
+    }
+    long cut = lineStart(pos + (end - pos) / 2);
+    if (cut >= end) {
+      return new Split(this, null, false);
+    }
+    Iter head = new MappedLineIter(file, pos, cut);
+    pos = cut;
+    window = null;
+    return new Split(head, this, false);
+  }
+
+  /**
+   * Returns the offset of the first line starting at or after the given
+   * offset.
+   */
+  private long lineStart(long offset) throws QueryException {
+    try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+      long from = offset - 1;
+      while (from < end) {
+        MappedByteBuffer b = in.map(FileChannel.MapMode.READ_ONLY, from, Math.min(SPLIT_SIZE, end - from));
+        for (int i = 0; i < b.limit(); i++) {
+          if (b.get(i) == '\n') {
+            return from + i + 1;
+          }
+        }
+        from += b.limit();
+      }
+      return end;
+    } catch (IOException e) {
+      throw new QueryException(e, ErrorCode.BIT_DYN_DOCUMENT_ACCESS_ERROR, "Could not read file %s", file);
+    }
+  }
+
+  @Override
+  public void close() {
+    pos = end;
+    window = null;
+  }
+}
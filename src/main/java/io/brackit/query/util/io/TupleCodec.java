@@ -0,0 +1,442 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.util.io;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import io.brackit.query.Tuple;
+import io.brackit.query.atomic.Atomic;
+import io.brackit.query.atomic.Bool;
+import io.brackit.query.atomic.Dbl;
+import io.brackit.query.atomic.Dec;
+import io.brackit.query.atomic.Flt;
+import io.brackit.query.atomic.Int;
+import io.brackit.query.atomic.Int32;
+import io.brackit.query.atomic.Int64;
+import io.brackit.query.atomic.Null;
+import io.brackit.query.atomic.QNm;
+import io.brackit.query.atomic.Str;
+import io.brackit.query.atomic.Una;
+import io.brackit.query.jdm.Item;
+import io.brackit.query.jdm.Iter;
+import io.brackit.query.jdm.Sequence;
+import io.brackit.query.jsonitem.array.AbstractArray;
+import io.brackit.query.jsonitem.array.DArray;
+import io.brackit.query.jsonitem.object.AbstractObject;
+import io.brackit.query.jsonitem.object.ShapedObject;
+import io.brackit.query.operator.TupleImpl;
+import io.brackit.query.sequence.ItemSequence;
+
+/**
+ * Compact binary encoding of tuples for spilling intermediate results to
+ * disk.
+ * <p>
+ * Atomics of the common built-in types, in-memory JSON objects and arrays
+ * and materialized item sequences are written by value. JSON items are
+ * restored as equal copies. All other items, i.e., nodes, stored structured
+ * items, function items and lazy sequences, are owned by some store or carry
+ * identity. They are written as a reference into an in-memory table of this
+ * codec, so that they are restored as the very same object. Spilling them
+ * frees only the reference. Accordingly, a codec instance must be used for
+ * writing and reading the same spilled data.
+ * <p>
+ * The encoding of a tuple is self-delimiting, i.e., encoded tuples may be
+ * concatenated and copied between files as raw bytes.
+ */
+public class TupleCodec {
+
+  private static final byte TUPLE = 1;
+  private static final byte SEQUENCE_TUPLE = 2;
+
+  private static final byte EMPTY = 0;
+  private static final byte STR = 1;
+  private static final byte UNA = 2;
+  private static final byte INT32 = 3;
+  private static final byte INT64 = 4;
+  private static final byte INT = 5;
+  private static final byte DEC = 6;
+  private static final byte DBL = 7;
+  private static final byte FLT = 8;
+  private static final byte TRUE = 9;
+  private static final byte FALSE = 10;
+  private static final byte NULL = 11;
+  private static final byte ITEMS = 12;
+  private static final byte REF = 13;
+  private static final byte OBJECT = 14;
+  private static final byte ARRAY = 15;
+
+  /**
+   * Estimated heap size of an object header plus a reference to it.
+   */
+  private static final int OBJECT_OVERHEAD = 24;
+
+  private final ArrayList<Sequence> refs = new ArrayList<>();
+
+  private final IdentityHashMap<Sequence, Integer> refIds = new IdentityHashMap<>();
+
+  /**
+   * Writes the given tuple to the output.
+   */
+  public void write(DataOutput out, Tuple tuple) throws IOException {
+    if (tuple instanceof Sequence) {
+      out.writeByte(SEQUENCE_TUPLE);
+      writeSequence(out, (Sequence) tuple);
+      return;
+    }
+    int size = tuple.getSize();
+    out.writeByte(TUPLE);
+    writeVarInt(out, size);
+    for (int i = 0; i < size; i++) {
+      writeSequence(out, tuple.get(i));
+    }
+  }
+
+  /**
+   * Reads the next tuple from the input or returns <code>null</code> if the
+   * end of the input is reached.
+   */
+  public Tuple read(DataInput in) throws IOException {
+    byte kind;
+    try {
+      kind = in.readByte();
+    } catch (EOFException e) {
+      return null;
+    }
+    if (kind == SEQUENCE_TUPLE) {
+      return readSequence(in);
+    }
+    if (kind != TUPLE) {
+      throw new IOException("Invalid tuple encoding: " + kind);
+    }
+    int size = readVarInt(in);
+    Sequence[] bindings = new Sequence[size];
+    for (int i = 0; i < size; i++) {
+      bindings[i] = readSequence(in);
+    }
+    return new TupleImpl(bindings);
+  }
+
+  /**
+   * Writes the given sequence, which may be <code>null</code>, to the output.
+   */
+  public void writeSequence(DataOutput out, Sequence s) throws IOException {
+    if (s == null) {
+      out.writeByte(EMPTY);
+    } else if (s instanceof Item) {
+      writeItem(out, (Item) s);
+    } else if (s.getClass() == ItemSequence.class) {
+      ArrayList<Item> items = new ArrayList<>();
+      try (Iter it = s.iterate()) {
+        Item item;
+        while ((item = it.next()) != null) {
+          items.add(item);
+        }
+      }
+      out.writeByte(ITEMS);
+      writeVarInt(out, items.size());
+      for (Item item : items) {
+        writeItem(out, item);
+      }
+    } else {
+      writeRef(out, s);
+    }
+  }
+
+  /**
+   * Reads a sequence from the input.
+   */
+  public Sequence readSequence(DataInput in) throws IOException {
+    byte tag = in.readByte();
+    if (tag == EMPTY) {
+      return null;
+    }
+    if (tag == ITEMS) {
+      int count = readVarInt(in);
+      Item[] items = new Item[count];
+      for (int i = 0; i < count; i++) {
+        items[i] = (Item) readValue(in.readByte(), in);
+      }
+      return new ItemSequence(items);
+    }
+    return readValue(tag, in);
+  }
+
+  private void writeItem(DataOutput out, Item item) throws IOException {
+    Class<?> c = item.getClass();
+    if (c == Str.class) {
+      out.writeByte(STR);
+      writeString(out, ((Str) item).stringValue());
+    } else if (c == Una.class) {
+      out.writeByte(UNA);
+      writeString(out, ((Una) item).stringValue());
+    } else if (c == Int32.class) {
+      out.writeByte(INT32);
+      out.writeInt(((Int32) item).intValue());
+    } else if (c == Int64.class) {
+      out.writeByte(INT64);
+      out.writeLong(((Int64) item).longValue());
+    } else if (c == Int.class) {
+      out.writeByte(INT);
+      writeString(out, ((Int) item).integerValue().toString());
+    } else if (c == Dec.class) {
+      out.writeByte(DEC);
+      writeString(out, ((Dec) item).decimalValue().toString());
+    } else if (c == Dbl.class) {
+      out.writeByte(DBL);
+      out.writeDouble(((Dbl) item).doubleValue());
+    } else if (c == Flt.class) {
+      out.writeByte(FLT);
+      out.writeFloat(((Flt) item).floatValue());
+    } else if (c == Bool.class) {
+      out.writeByte(((Bool) item).bool ? TRUE : FALSE);
+    } else if (c == Null.class) {
+      out.writeByte(NULL);
+    } else if (item instanceof AbstractObject object) {
+      int len = object.len();
+      out.writeByte(OBJECT);
+      writeVarInt(out, len);
+      for (int i = 0; i < len; i++) {
+        writeName(out, object.name(i));
+        writeSequence(out, object.value(i));
+      }
+    } else if (item instanceof AbstractArray array) {
+      int len = array.len();
+      out.writeByte(ARRAY);
+      writeVarInt(out, len);
+      for (int i = 0; i < len; i++) {
+        writeSequence(out, array.at(i));
+      }
+    } else {
+      writeRef(out, item);
+    }
+  }
+
+  private Sequence readValue(byte tag, DataInput in) throws IOException {
+    switch (tag) {
+      case STR:
+        return new Str(readString(in));
+      case UNA:
+        return new Una(readString(in));
+      case INT32:
+        return new Int32(in.readInt());
+      case INT64:
+        return new Int64(in.readLong());
+      case INT:
+        return new Int(new BigDecimal(readString(in)));
+      case DEC:
+        return new Dec(new BigDecimal(readString(in)));
+      case DBL:
+        return new Dbl(in.readDouble());
+      case FLT:
+        return new Flt(in.readFloat());
+      case TRUE:
+        return Bool.TRUE;
+      case FALSE:
+        return Bool.FALSE;
+      case NULL:
+        return new Null();
+      case REF:
+        return refs.get(readVarInt(in));
+      case OBJECT: {
+        int len = readVarInt(in);
+        QNm[] names = new QNm[len];
+        Sequence[] values = new Sequence[len];
+        for (int i = 0; i < len; i++) {
+          names[i] = readName(in);
+          values[i] = readSequence(in);
+        }
+        return ShapedObject.create(names, values);
+      }
+      case ARRAY: {
+        int len = readVarInt(in);
+        ArrayList<Sequence> values = new ArrayList<>(len);
+        for (int i = 0; i < len; i++) {
+          values.add(readSequence(in));
+        }
+        return new DArray(values);
+      }
+      default:
+        throw new IOException("Invalid item encoding: " + tag);
+    }
+  }
+
+  private void writeRef(DataOutput out, Sequence s) throws IOException {
+    // re-use the slot of an already referenced object, e.g., when a tuple
+    // is read back and written again during a merge
+    Integer id = refIds.get(s);
+    if (id == null) {
+      id = refs.size();
+      refs.add(s);
+      refIds.put(s, id);
+    }
+    out.writeByte(REF);
+    writeVarInt(out, id);
+  }
+
+  /**
+   * Returns an estimate of the heap size occupied by the given tuple, which is
+   * the amount of memory that is freed when the tuple is spilled. JSON
+   * objects and arrays are accounted with their contents, referenced items
+   * only with the size of the reference.
+   */
+  public static long size(Tuple tuple) {
+    if (tuple instanceof Sequence) {
+      return sizeOf((Sequence) tuple);
+    }
+    int size = tuple.getSize();
+    long total = OBJECT_OVERHEAD + 16 + 8L * size;
+    for (int i = 0; i < size; i++) {
+      total += sizeOf(tuple.get(i));
+    }
+    return total;
+  }
+
+  /**
+   * Returns an estimate of the heap size occupied by the given bindings.
+   */
+  public static long size(Sequence[] bindings) {
+    long total = 16 + 8L * bindings.length;
+    for (Sequence s : bindings) {
+      total += sizeOf(s);
+    }
+    return total;
+  }
+
+  private static long sizeOf(Sequence s) {
+    if (s == null) {
+      return 0;
+    }
+    Class<?> c = s.getClass();
+    if ((c == Str.class) || (c == Una.class)) {
+      // string object plus backing array
+      return 2 * OBJECT_OVERHEAD + 16 + ((Atomic) s).stringValue().length();
+    }
+    if ((c == Int.class) || (c == Dec.class)) {
+      return 3 * OBJECT_OVERHEAD + 16;
+    }
+    if (s instanceof AbstractObject object) {
+      // object plus value array, field names are shared by shape
+      int len = object.len();
+      long total = 2 * OBJECT_OVERHEAD + 16;
+      for (int i = 0; i < len; i++) {
+        total += 8 + sizeOf(object.value(i));
+      }
+      return total;
+    }
+    if (s instanceof AbstractArray array) {
+      // array plus backing list
+      int len = array.len();
+      long total = 3 * OBJECT_OVERHEAD + 16;
+      for (int i = 0; i < len; i++) {
+        total += 8 + sizeOf(array.at(i));
+      }
+      return total;
+    }
+    if ((s instanceof Atomic) || (c != ItemSequence.class)) {
+      return OBJECT_OVERHEAD;
+    }
+    long total = 2 * OBJECT_OVERHEAD;
+    try (Iter it = s.iterate()) {
+      Item item;
+      while ((item = it.next()) != null) {
+        total += 8 + sizeOf(item);
+      }
+    }
+    return total;
+  }
+
+  private static void writeString(DataOutput out, String s) throws IOException {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    writeVarInt(out, bytes.length);
+    out.write(bytes);
+  }
+
+  private static void writeName(DataOutput out, QNm name) throws IOException {
+    String nsURI = name.getNamespaceURI();
+    String prefix = name.getPrefix();
+    int flags = ((nsURI != null) ? 1 : 0) | ((prefix != null) ? 2 : 0);
+    out.writeByte(flags);
+    writeString(out, name.getLocalName());
+    if (nsURI != null) {
+      writeString(out, nsURI);
+    }
+    if (prefix != null) {
+      writeString(out, prefix);
+    }
+  }
+
+  private static QNm readName(DataInput in) throws IOException {
+    int flags = in.readByte();
+    String localName = readString(in);
+    String nsURI = ((flags & 1) != 0) ? readString(in) : null;
+    String prefix = ((flags & 2) != 0) ? readString(in) : null;
+    return new QNm(nsURI, prefix, localName);
+  }
+
+  private static String readString(DataInput in) throws IOException {
+    byte[] bytes = new byte[readVarInt(in)];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  public static void writeVarInt(DataOutput out, int v) throws IOException {
+    while ((v & ~0x7F) != 0) {
+      out.writeByte((v & 0x7F) | 0x80);
+      v >>>= 7;
+    }
+    out.writeByte(v);
+  }
+
+  /**
+   * Drops all references, i.e., spilled data written with this codec becomes
+   * unreadable.
+   */
+  public void clear() {
+    refs.clear();
+    refIds.clear();
+  }
+
+  public static int readVarInt(DataInput in) throws IOException {
+    int v = 0;
+    int shift = 0;
+    int b;
+    do {
+      b = in.readByte();
+      v |= (b & 0x7F) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return v;
+  }
+}
@@ -37,6 +37,8 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 
 /**
@@ -112,6 +114,34 @@ public final class URIHandler {
     }
   }
 
+  /**
+   * Returns the path of the given URI if it refers to a local file and
+   * <code>null</code> otherwise.
+   */
+  public static Path getLocalPath(String uri) {
+    try {
+      URI u = new URI(uri);
+      String scheme = u.getScheme();
+      if ((scheme != null) && (!scheme.equals("file"))) {
+        return null;
+      }
+      String fullPath = u.getSchemeSpecificPart();
+      if (fullPath == null) {
+        return null;
+      }
+      if (fullPath.startsWith("//")) {
+        fullPath = fullPath.substring(1);
+      }
+      return Paths.get(fullPath);
+    } catch (URISyntaxException | InvalidPathException e) {
+      try {
+        return Paths.get(uri);
+      } catch (InvalidPathException ex) {
+        return null;
+      }
+    }
+  }
+
   public static URI getURIForFileName(String path) throws URISyntaxException {
     return new URI("file", null, path, null);
   }
@@ -0,0 +1,890 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.util.join;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import io.brackit.query.ErrorCode;
+import io.brackit.query.QueryException;
+import io.brackit.query.Tuple;
+import io.brackit.query.atomic.Atomic;
+import io.brackit.query.atomic.Int32;
+import io.brackit.query.atomic.Int64;
+import io.brackit.query.atomic.Numeric;
+import io.brackit.query.jdm.DocumentException;
+import io.brackit.query.jdm.Item;
+import io.brackit.query.jdm.Iter;
+import io.brackit.query.jdm.Sequence;
+import io.brackit.query.jdm.Stream;
+import io.brackit.query.jdm.Type;
+import io.brackit.query.operator.TupleImpl;
+import io.brackit.query.sequence.ItemSequence;
+import io.brackit.query.util.Cfg;
+import io.brackit.query.util.Cmp;
+import io.brackit.query.util.io.TupleCodec;
+import io.brackit.query.util.join.AbstractJoinTable.TEntry;
+import io.brackit.query.util.join.AbstractJoinTable.TValue;
+
+/**
+ * Join table for equi-joins with a build input that may exceed main memory.
+ * <p>
+ * As long as the estimated size of the build input stays within the memory
+ * budget, this is just a {@link MultiTypeJoinTable}. Otherwise, the table
+ * switches to hybrid hash join: all entries are hash partitioned on their join
+ * key and the largest partitions are spilled to temporary files until the
+ * remaining partitions fit into memory again. Subsequent build entries of a
+ * spilled partition go directly to its file.
+ * <p>
+ * The partitioning respects the type promotion rules of
+ * {@link MultiTypeJoinTable}: numeric keys are hashed by their double value,
+ * string-like keys by their string value, and untyped keys of general
+ * comparisons, which may match keys of any type, are assigned to all
+ * partitions.
+ * <p>
+ * Probes of a spilled table are partitioned with the same hash: probes of
+ * spilled partitions are appended to a probe file of the partition, and
+ * matches in resident partitions are answered directly. At the end, each
+ * spilled partition is loaded once and joined with its probe file.
+ * <ul>
+ * <li>{@link #probeDeferred(Tuple, Sequence)} returns matches immediately
+ * as long as the output order permits. For unordered inner joins, this
+ * holds for all matches in resident partitions. Otherwise, it holds only
+ * until the first probe hits a spilled partition, and all later results are
+ * deferred. {@link #endDeferred()} returns the deferred results.</li>
+ * <li>{@link #deferBatch(Tuple[], Sequence[], int)} defers a whole batch of
+ * probes and {@link #endDeferredRows()} returns the deferred results tagged
+ * with the sequence number of their probe, so that a caller can route them
+ * to the output of the batch.</li>
+ * </ul>
+ * Deferred results are written to runs, which are ordered by probe sequence
+ * and build position, and are merged at the end, so that the output equals
+ * the output of an in-memory join without sorting. Note that each spilled
+ * partition must fit into main memory when it is joined.
+ */
+public class HybridJoinTable {
+
+  public static final String MAX_SIZE_CFG = "org.brackit.xquery.join.maxSize";
+
+  public static final String PARTITIONS_CFG = "org.brackit.xquery.join.partitions";
+
+  /**
+   * Default memory budget in bytes for the build input of a join.
+   */
+  public static long MAX_SIZE = Cfg.asLong(MAX_SIZE_CFG, 64 * 1024 * 1024);
+
+  /**
+   * Number of hash partitions when the build input exceeds the budget.
+   */
+  public static int PARTITIONS = Cfg.asInt(PARTITIONS_CFG, 16);
+
+  private static final File SPILL_DIR = new File(Cfg.asString("java.io.tmpdir"));
+
+  private static final int IO_BUFFER_SIZE = 64 * 1024;
+
+  // rough estimate of the heap size of the key and value of a table entry
+  private static final int ENTRY_OVERHEAD = 64;
+
+  private static final int BROADCAST = -1;
+
+  private final Cmp cmp;
+
+  private final boolean isGCmp;
+
+  private final boolean skipSort;
+
+  private final long maxSize;
+
+  private final TupleCodec codec = new TupleCodec();
+
+  private MultiTypeJoinTable table;
+
+  private Partition[] partitions;
+
+  private long size;
+
+  // state of deferred probing
+  private Sequence[] padding;
+
+  private boolean streaming;
+
+  private boolean pending;
+
+  private long seq;
+
+  // results of deferred probes in resident partitions
+  private File residentFile;
+
+  private DataOutputStream residentOut;
+
+  private static final class Partition {
+    MultiTypeJoinTable table;
+    long size;
+    File buildFile;
+    DataOutputStream buildOut;
+    File probeFile;
+    DataOutputStream probeOut;
+    File resultFile;
+
+    boolean isSpilled() {
+      return (buildFile != null);
+    }
+  }
+
+  public HybridJoinTable(Cmp cmp, boolean isGCmp, boolean skipSort) {
+    this(cmp, isGCmp, skipSort, MAX_SIZE);
+  }
+
+  public HybridJoinTable(Cmp cmp, boolean isGCmp, boolean skipSort, long maxSize) {
+    this.cmp = cmp;
+    this.isGCmp = isGCmp;
+    this.skipSort = skipSort;
+    // only equality joins can be hash partitioned
+    this.maxSize = (cmp == Cmp.eq) ? maxSize : -1;
+    this.table = new MultiTypeJoinTable(cmp, isGCmp, skipSort);
+  }
+
+  /**
+   * Returns <code>true</code> if parts of the build input were spilled.
+   */
+  public boolean isSpilled() {
+    return (partitions != null);
+  }
+
+  /**
+   * Returns the in-memory join table if the table was not spilled.
+   */
+  public MultiTypeJoinTable getTable() {
+    return table;
+  }
+
+  public void add(Sequence keys, Sequence[] bindings, int pos) throws QueryException {
+    if (keys == null) {
+      return;
+    }
+    if (partitions == null) {
+      table.add(keys, bindings, pos);
+      if (maxSize > 0) {
+        size += ENTRY_OVERHEAD + TupleCodec.size(bindings);
+        if (size > maxSize) {
+          partition();
+        }
+      }
+      return;
+    }
+
+    if (keys instanceof Item item) {
+      Atomic key = item.atomize();
+      int p = partition(key);
+      if (p != BROADCAST) {
+        add(partitions[p], key, bindings, pos);
+      } else {
+        for (Partition partition : partitions) {
+          add(partition, key, bindings, pos);
+        }
+      }
+    } else {
+      Sequence[] routed = route(keys);
+      for (int i = 0; i < partitions.length; i++) {
+        if (routed[i] != null) {
+          add(partitions[i], routed[i], bindings, pos);
+        }
+      }
+    }
+    while (size > maxSize) {
+      if (!spillLargest()) {
+        break;
+      }
+    }
+  }
+
+  /**
+   * Finishes the build phase.
+   */
+  public void build() throws QueryException {
+    if (partitions == null) {
+      return;
+    }
+    try {
+      for (Partition p : partitions) {
+        if (p.buildOut != null) {
+          p.buildOut.close();
+          p.buildOut = null;
+        }
+      }
+    } catch (IOException e) {
+      clear();
+      throw new QueryException(e, ErrorCode.BIT_DYN_INT_ERROR);
+    }
+  }
+
+  private void add(Partition p, Sequence keys, Sequence[] bindings, int pos) throws QueryException {
+    if (p.isSpilled()) {
+      writeBuildEntry(p, pos, keys, bindings);
+    } else {
+      p.table.add(keys, bindings, pos);
+      long entrySize = ENTRY_OVERHEAD + TupleCodec.size(bindings);
+      p.size += entrySize;
+      size += entrySize;
+    }
+  }
+
+  /**
+   * Switch from a single table to hash partitions and spill partitions until
+   * the remaining ones fit into memory.
+   */
+  private void partition() throws QueryException {
+    partitions = new Partition[Math.max(PARTITIONS, 2)];
+    for (int i = 0; i < partitions.length; i++) {
+      partitions[i] = new Partition();
+      partitions[i].table = new MultiTypeJoinTable(cmp, isGCmp, skipSort);
+    }
+    size = 0;
+    for (TEntry entry : table.entries()) {
+      Atomic key = entry.key.atomic;
+      int p = partition(key);
+      if (p != BROADCAST) {
+        add(partitions[p], key, entry.value.bindings, entry.value.pos);
+      } else {
+        for (Partition partition : partitions) {
+          add(partition, key, entry.value.bindings, entry.value.pos);
+        }
+      }
+    }
+    table = null;
+    while (size > maxSize) {
+      if (!spillLargest()) {
+        break;
+      }
+    }
+  }
+
+  private boolean spillLargest() throws QueryException {
+    Partition victim = null;
+    for (Partition p : partitions) {
+      if ((!p.isSpilled()) && ((victim == null) || (p.size > victim.size))) {
+        victim = p;
+      }
+    }
+    if (victim == null) {
+      return false;
+    }
+    try {
+      victim.buildFile = File.createTempFile("join", ".build", SPILL_DIR);
+      victim.buildFile.deleteOnExit();
+      victim.buildOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(victim.buildFile),
+                                                                      IO_BUFFER_SIZE));
+    } catch (IOException e) {
+      clear();
+      throw new QueryException(e, ErrorCode.BIT_DYN_INT_ERROR);
+    }
+    for (TEntry entry : victim.table.entries()) {
+      writeBuildEntry(victim, entry.value.pos, entry.key.atomic, entry.value.bindings);
+    }
+    victim.table = null;
+    size -= victim.size;
+    victim.size = 0;
+    return true;
+  }
+
+  private void writeBuildEntry(Partition p, int pos, Sequence keys, Sequence[] bindings) throws QueryException {
+    Sequence[] record = new Sequence[bindings.length + 2];
+    record[0] = new Int32(pos);
+    record[1] = keys;
+    System.arraycopy(bindings, 0, record, 2, bindings.length);
+    try {
+      codec.write(p.buildOut, new TupleImpl(record));
+    } catch (IOException e) {
+      clear();
+      throw new QueryException(e, ErrorCode.BIT_DYN_INT_ERROR);
+    }
+  }
+
+  private MultiTypeJoinTable load(Partition p) throws QueryException {
+    MultiTypeJoinTable table = new MultiTypeJoinTable(cmp, isGCmp, skipSort);
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(p.buildFile),
+                                                                               IO_BUFFER_SIZE))) {
+      Tuple t;
+      while ((t = codec.read(in)) != null) {
+        Sequence[] record = t.array();
+        int pos = ((Numeric) record[0]).intValue();
+        table.add(record[1], Arrays.copyOfRange(record, 2, record.length), pos);
+      }
+    } catch (IOException e) {
+      clear();
+      throw new QueryException(e, ErrorCode.BIT_DYN_INT_ERROR);
+    }
+    return table;
+  }
+
+  /**
+   * Returns the partition of the given key or {@link #BROADCAST} if the key
+   * may match keys in any partition. Keys that compare equal after type
+   * promotion must be assigned to the same partition.
+   */
+  private int partition(Atomic key) {
+    Type type = key.type().getPrimitiveBase();
+    int hash;
+    if (type == Type.UNA) {
+      if (isGCmp) {
+        return BROADCAST;
+      }
+      // untyped keys of value comparisons are compared as strings
+      hash = key.stringValue().hashCode();
+    } else if (type.isNumeric()) {
+      double d = ((Numeric) key).doubleValue();
+      // normalize -0.0
+      hash = Double.hashCode(d == 0.0 ? 0.0 : d);
+    } else if ((type == Type.STR) || (type == Type.AURI)) {
+      hash = key.stringValue().hashCode();
+    } else {
+      // keep all other types together to be independent
+      // of their notion of equality
+      hash = type.hashCode();
+    }
+    hash ^= (hash >>> 16);
+    return Math.floorMod(hash, partitions.length);
+  }
+
+  /**
+   * Distributes the items of the given key sequence to their partitions.
+   */
+  private Sequence[] route(Sequence keys) throws QueryException {
+    Sequence[] routed = new Sequence[partitions.length];
+    if (keys instanceof Item item) {
+      Atomic key = item.atomize();
+      int p = partition(key);
+      if (p != BROADCAST) {
+        routed[p] = key;
+      } else {
+        Arrays.fill(routed, key);
+      }
+      return routed;
+    }
+    List<ArrayList<Item>> lists = new ArrayList<>(Collections.nCopies(partitions.length, null));
+    try (Iter it = keys.iterate()) {
+      Item item;
+      while ((item = it.next()) != null) {
+        Atomic key = item.atomize();
+        int p = partition(key);
+        for (int i = (p == BROADCAST) ? 0 : p; i < ((p == BROADCAST) ? partitions.length : p + 1); i++) {
+          if (lists.get(i) == null) {
+            lists.set(i, new ArrayList<>(1));
+          }
+          lists.get(i).add(key);
+        }
+      }
+    }
+    for (int i = 0; i < partitions.length; i++) {
+      ArrayList<Item> list = lists.get(i);
+      if (list != null) {
+        routed[i] = (list.size() == 1) ? list.get(0) : new ItemSequence(list.toArray(new Item[0]));
+      }
+    }
+    return routed;
+  }
+
+  /**
+   * Probes a table, which was not spilled. Spilled tables are probed with
+   * {@link #probeDeferred(Tuple, Sequence)} or
+   * {@link #deferBatch(Tuple[], Sequence[], int)}.
+   */
+  public FastList<Sequence[]> probe(Sequence keys) throws QueryException {
+    if (partitions != null) {
+      throw new IllegalStateException("Spilled join table must be probed deferred");
+    }
+    return table.probe(keys);
+  }
+
+  private boolean hitsSpilled(Sequence[] routed) {
+    if (routed != null) {
+      for (int i = 0; i < partitions.length; i++) {
+        if ((routed[i] != null) && partitions[i].isSpilled()) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static void addAll(FastList<TValue> to, FastList<TValue> from) {
+    for (int i = 0; i < from.getSize(); i++) {
+      to.add(from.get(i));
+    }
+  }
+
+  /**
+   * Sorts matches by build position and removes duplicates, which stem from
+   * key sequences that hit the same entry several times.
+   */
+  private static FastList<TValue> sortAndDeduplicate(FastList<TValue> in) {
+    int inSize = in.getSize();
+    if (inSize == 0) {
+      return in;
+    }
+    in.sort();
+    FastList<TValue> out = new FastList<>(inSize);
+    TValue p = null;
+    for (int i = 0; i < inSize; i++) {
+      TValue v = in.get(i);
+      if ((p == null) || (p.pos < v.pos)) {
+        out.add(v);
+      }
+      p = v;
+    }
+    return out;
+  }
+
+  private static FastList<Sequence[]> bindings(FastList<TValue> values) {
+    int size = values.getSize();
+    if (size == 0) {
+      return FastList.emptyList();
+    }
+    FastList<Sequence[]> out = new FastList<>(size);
+    for (int i = 0; i < size; i++) {
+      out.add(values.get(i).bindings);
+    }
+    return out;
+  }
+
+  /**
+   * Prepares the table for deferred probing.
+   *
+   * @param leftJoin  whether probes without matches are padded with
+   *                  <code>padWidth</code> empty bindings
+   */
+  public void beginDeferred(boolean leftJoin, int padWidth) {
+    padding = (leftJoin) ? new Sequence[padWidth] : null;
+    // only unordered inner joins of single keys can be emitted out of order
+    // without duplicate elimination
+    streaming = skipSort && !leftJoin && !isGCmp;
+    pending = false;
+    seq = 0;
+  }
+
+  /**
+   * Probes the given tuple. Matches are returned immediately if the tuple
+   * hits only resident partitions and no earlier probe was deferred, or if
+   * the join is an unordered inner join. All other results are delivered by
+   * {@link #endDeferred()}.
+   */
+  public synchronized FastList<Sequence[]> probeDeferred(Tuple t, Sequence keys) throws QueryException {
+    Sequence[] routed = (keys != null) ? route(keys) : null;
+    if (streaming) {
+      long s = seq++;
+      FastList<TValue> values = new FastList<>();
+      if (routed != null) {
+        for (int i = 0; i < partitions.length; i++) {
+          if (routed[i] == null) {
+            continue;
+          }
+          Partition p = partitions[i];
+          if (p.isSpilled()) {
+            writeProbe(p, s, routed[i], t);
+          } else {
+            addAll(values, p.table.probeValues(routed[i]));
+          }
+        }
+      }
+      return bindings(values);
+    }
+    if ((!pending) && (!hitsSpilled(routed))) {
+      seq++;
+      FastList<Sequence[]> matches = bindings(sortAndDeduplicate(resident(routed)));
+      if ((matches.getSize() == 0) && (padding != null)) {
+        matches = new FastList<>(1);
+        matches.add(padding);
+      }
+      return matches;
+    }
+    // all later results must follow the deferred ones
+    pending = true;
+    defer(seq++, t, routed);
+    return FastList.emptyList();
+  }
+
+  /**
+   * Defers probing of a whole batch of tuples and returns the sequence number
+   * of the first tuple. The results of tuple <code>i</code> of the batch are
+   * delivered by {@link #endDeferredRows()} with the sequence number
+   * <code>base + i</code>.
+   */
+  public synchronized long deferBatch(Tuple[] ts, Sequence[] keys, int len) throws QueryException {
+    long base = seq;
+    for (int i = 0; i < len; i++) {
+      defer(seq++, ts[i], (keys[i] != null) ? route(keys[i]) : null);
+    }
+    return base;
+  }
+
+  private FastList<TValue> resident(Sequence[] routed) throws QueryException {
+    FastList<TValue> values = new FastList<>();
+    if (routed != null) {
+      for (int i = 0; i < partitions.length; i++) {
+        if ((routed[i] != null) && !partitions[i].isSpilled()) {
+          addAll(values, partitions[i].table.probeValues(routed[i]));
+        }
+      }
+    }
+    return values;
+  }
+
+  /**
+   * Writes the matches of the given probe in resident partitions to the
+   * resident result run and the probe itself to the probe files of the
+   * spilled partitions it hits. Both are appended in sequence order, so that
+   * all result runs are sorted by sequence number and build position.
+   */
+  private void defer(long s, Tuple t, Sequence[] routed) throws QueryException {
+    try {
+      if (residentOut == null) {
+        residentFile = File.createTempFile("join", ".result", SPILL_DIR);
+        residentFile.deleteOnExit();
+        residentOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(residentFile),
+                                                                    IO_BUFFER_SIZE));
+      }
+      if (padding != null) {
+        codec.write(residentOut, row(s, 0, t, padding));
+      }
+      FastList<TValue> values = sortAndDeduplicate(resident(routed));
+      for (int i = 0; i < values.getSize(); i++) {
+        TValue v = values.get(i);
+        codec.write(residentOut, row(s, v.pos, t, v.bindings));
+      }
+    } catch (IOException e) {
+      clear();
+      throw new QueryException(e, ErrorCode.BIT_DYN_INT_ERROR);
+    }
+    if (routed != null) {
+      for (int i = 0; i < partitions.length; i++) {
+        if ((routed[i] != null) && partitions[i].isSpilled()) {
+          writeProbe(partitions[i], s, routed[i], t);
+        }
+      }
+    }
+  }
+
+  private void writeProbe(Partition p, long s, Sequence keys, Tuple t) throws QueryException {
+    try {
+      if (p.probeOut == null) {
+        p.probeFile = File.createTempFile("join", ".probe", SPILL_DIR);
+        p.probeFile.deleteOnExit();
+        p.probeOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(p.probeFile),
+                                                                   IO_BUFFER_SIZE));
+      }
+      Sequence[] bindings = t.array();
+      Sequence[] record = new Sequence[bindings.length + 2];
+      record[0] = new Int64(s);
+      record[1] = keys;
+      System.arraycopy(bindings, 0, record, 2, bindings.length);
+      codec.write(p.probeOut, new TupleImpl(record));
+    } catch (IOException e) {
+      clear();
+      throw new QueryException(e, ErrorCode.BIT_DYN_INT_ERROR);
+    }
+  }
+
+  private static Tuple row(long s, int pos, Tuple t, Sequence[] bindings) {
+    Sequence[] tb = t.array();
+    Sequence[] row = new Sequence[tb.length + bindings.length + 2];
+    row[0] = new Int64(s);
+    row[1] = new Int32(pos);
+    System.arraycopy(tb, 0, row, 2, tb.length);
+    System.arraycopy(bindings, 0, row, tb.length + 2, bindings.length);
+    return new TupleImpl(row);
+  }
+
+  /**
+   * Joins the spilled partitions with their deferred probes and returns the
+   * remaining join results.
+   */
+  public Stream<Tuple> endDeferred() throws QueryException {
+    final Stream<Tuple> rows = endDeferredRows();
+    return new Stream<>() {
+      @Override
+      public Tuple next() throws DocumentException {
+        Tuple row = rows.next();
+        return (row != null) ? strip(row) : null;
+      }
+
+      @Override
+      public void close() {
+        rows.close();
+      }
+    };
+  }
+
+  /**
+   * Joins each spilled partition once with its deferred probes and returns all
+   * deferred results as rows, which are ordered by the sequence number of
+   * their probe (see {@link #seq(Tuple)}) and stripped with
+   * {@link #strip(Tuple)}. Rows of probes of a left join without any match
+   * are padding rows (see {@link #isPadding(Tuple)}).
+   * <p>
+   * The results of each partition are already ordered by sequence number
+   * and build position, so they are merged and need not be sorted.
+   */
+  public synchronized Stream<Tuple> endDeferredRows() throws QueryException {
+    final ArrayList<File> runs = new ArrayList<>();
+    try {
+      if (residentOut != null) {
+        residentOut.close();
+        residentOut = null;
+        runs.add(residentFile);
+      }
+      for (Partition p : partitions) {
+        if (p.probeOut == null) {
+          continue;
+        }
+        p.probeOut.close();
+        p.probeOut = null;
+        p.resultFile = File.createTempFile("join", ".result", SPILL_DIR);
+        p.resultFile.deleteOnExit();
+        join(p);
+        p.probeFile.delete();
+        p.probeFile = null;
+        runs.add(p.resultFile);
+      }
+    } catch (IOException e) {
+      clear();
+      throw new QueryException(e, ErrorCode.BIT_DYN_INT_ERROR);
+    }
+    final RunMerge merge = new RunMerge(runs);
+    return new Stream<>() {
+      Tuple lookahead;
+      Tuple prev;
+
+      @Override
+      public Tuple next() throws DocumentException {
+        Tuple row;
+        while ((row = (lookahead != null) ? lookahead : merge.next()) != null) {
+          lookahead = null;
+          if (streaming) {
+            return row;
+          }
+          long s = seq(row);
+          int pos = ((Numeric) row.get(1)).intValue();
+          if ((prev != null) && (seq(prev) == s) && (((Numeric) prev.get(1)).intValue() == pos)) {
+            // duplicate match
+            continue;
+          }
+          if (pos == 0) {
+            // left join padding is only needed if there is no match
+            lookahead = merge.next();
+            if ((lookahead != null) && (seq(lookahead) == s)) {
+              continue;
+            }
+          }
+          prev = row;
+          return row;
+        }
+        return null;
+      }
+
+      @Override
+      public void close() {
+        merge.close();
+      }
+    };
+  }
+
+  private void join(Partition p) throws QueryException {
+    MultiTypeJoinTable spilled = load(p);
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(p.probeFile),
+                                                                               IO_BUFFER_SIZE));
+         DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(p.resultFile),
+                                                                              IO_BUFFER_SIZE))) {
+      Tuple probe;
+      while ((probe = codec.read(in)) != null) {
+        Sequence[] record = probe.array();
+        long s = ((Numeric) record[0]).longValue();
+        Tuple t = new TupleImpl(Arrays.copyOfRange(record, 2, record.length));
+        FastList<TValue> values = sortAndDeduplicate(spilled.probeValues(record[1]));
+        for (int j = 0; j < values.getSize(); j++) {
+          TValue v = values.get(j);
+          codec.write(out, row(s, v.pos, t, v.bindings));
+        }
+      }
+    } catch (IOException e) {
+      clear();
+      throw new QueryException(e, ErrorCode.BIT_DYN_INT_ERROR);
+    }
+  }
+
+  /**
+   * Merges result runs, which are sorted by sequence number and build
+   * position.
+   */
+  private final class RunMerge {
+    private final PriorityQueue<Run> queue = new PriorityQueue<>((r1, r2) -> {
+      int res = Long.compare(seq(r1.head), seq(r2.head));
+      return (res != 0) ? res : Integer.compare(((Numeric) r1.head.get(1)).intValue(),
+                                                ((Numeric) r2.head.get(1)).intValue());
+    });
+
+    private final ArrayList<Run> runs = new ArrayList<>();
+
+    RunMerge(List<File> files) throws QueryException {
+      try {
+        for (File file : files) {
+          Run run = new Run(file);
+          runs.add(run);
+          if (run.advance()) {
+            queue.add(run);
+          }
+        }
+      } catch (IOException e) {
+        close();
+        throw new QueryException(e, ErrorCode.BIT_DYN_INT_ERROR);
+      }
+    }
+
+    Tuple next() throws DocumentException {
+      Run run = queue.poll();
+      if (run == null) {
+        return null;
+      }
+      Tuple row = run.head;
+      try {
+        if (run.advance()) {
+          queue.add(run);
+        }
+      } catch (IOException e) {
+        throw new DocumentException(e);
+      }
+      return row;
+    }
+
+    void close() {
+      for (Run run : runs) {
+        try {
+          run.in.close();
+        } catch (IOException e) {
+          // ignore
+        }
+        run.file.delete();
+      }
+      runs.clear();
+      queue.clear();
+    }
+  }
+
+  private final class Run {
+    final File file;
+    final DataInputStream in;
+    Tuple head;
+
+    Run(File file) throws IOException {
+      this.file = file;
+      this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), IO_BUFFER_SIZE));
+    }
+
+    boolean advance() throws IOException {
+      head = codec.read(in);
+      return (head != null);
+    }
+  }
+
+  /**
+   * Returns the sequence number of the probe of a deferred result row.
+   */
+  public static long seq(Tuple row) {
+    return ((Numeric) row.get(0)).longValue();
+  }
+
+  /**
+   * Returns <code>true</code> if the given deferred result row is the padding
+   * of a probe of a left join without matches.
+   */
+  public static boolean isPadding(Tuple row) {
+    return ((Numeric) row.get(1)).intValue() == 0;
+  }
+
+  /**
+   * Returns the join result of a deferred result row.
+   */
+  public static Tuple strip(Tuple row) {
+    Sequence[] r = row.array();
+    return new TupleImpl(Arrays.copyOfRange(r, 2, r.length));
+  }
+
+  /**
+   * Releases all spilled data.
+   */
+  public void clear() {
+    if (partitions != null) {
+      for (Partition p : partitions) {
+        close(p.buildOut);
+        close(p.probeOut);
+        p.buildOut = null;
+        p.probeOut = null;
+        if (p.buildFile != null) {
+          p.buildFile.delete();
+          p.buildFile = null;
+        }
+        if (p.probeFile != null) {
+          p.probeFile.delete();
+          p.probeFile = null;
+        }
+        if (p.resultFile != null) {
+          p.resultFile.delete();
+          p.resultFile = null;
+        }
+        p.table = null;
+      }
+    }
+    close(residentOut);
+    residentOut = null;
+    if (residentFile != null) {
+      residentFile.delete();
+      residentFile = null;
+    }
+    codec.clear();
+  }
+
+  private static void close(DataOutputStream out) {
+    if (out != null) {
+      try {
+        out.close();
+      } catch (IOException e) {
+        // ignore
+      }
+    }
+  }
+}
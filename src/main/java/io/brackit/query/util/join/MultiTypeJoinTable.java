@@ -27,8 +27,10 @@
  */
 package io.brackit.query.util.join;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -76,8 +78,17 @@ public class MultiTypeJoinTable {
     this.skipSort = skipSort;
   }
 
-  private AbstractJoinTable createTable() {
-    return cmp == Cmp.eq ? new HashJoinTable() : new SortedJoinTable(cmp);
+  private AbstractJoinTable createTable(Type type) {
+    if (cmp != Cmp.eq) {
+      return new SortedJoinTable(cmp);
+    }
+    if ((type == Type.INR) || (type == Type.DBL) || (type == Type.FLO)) {
+      return new NumericHashJoinTable(type);
+    }
+    if ((type == Type.STR) || (type == Type.AURI)) {
+      return new StringHashJoinTable(type);
+    }
+    return new HashJoinTable();
   }
 
   private void addItem(Item key, Sequence[] bindings, int pos) throws QueryException {
@@ -91,7 +102,7 @@ public class MultiTypeJoinTable {
 
     AbstractJoinTable table = tables.get(type);
     if (table == null) {
-      table = createTable();
+      table = createTable(type);
       tables.put(type, table);
     }
     table.add(atomic, pos, bindings);
@@ -179,7 +190,7 @@ public class MultiTypeJoinTable {
 
     AbstractJoinTable table = tables.get(to);
     if (table == null) {
-      table = createTable();
+      table = createTable(to);
       tables.put(to, table);
     }
 
@@ -241,6 +252,19 @@ public class MultiTypeJoinTable {
   }
 
   public final FastList<Sequence[]> probe(Sequence keys) throws QueryException {
+    final var matches = probeValues(keys);
+
+    if (matches.isEmpty()) {
+      return FastList.emptyList();
+    }
+
+    return sortAndDeduplicate(matches);
+  }
+
+  /**
+   * Returns all unsorted matches for the given keys including duplicates.
+   */
+  final FastList<TValue> probeValues(Sequence keys) throws QueryException {
     if (keys == null) {
       return FastList.emptyList();
     }
@@ -258,10 +282,17 @@ public class MultiTypeJoinTable {
       }
     }
 
-    if (matches.isEmpty()) {
-      return FastList.emptyList();
-    }
+    return matches;
+  }
 
-    return sortAndDeduplicate(matches);
+  /**
+   * Returns all entries added to this table.
+   */
+  final List<TEntry> entries() {
+    final var entries = new ArrayList<TEntry>();
+    for (AbstractJoinTable table : tables.values()) {
+      entries.addAll(table.entries());
+    }
+    return entries;
   }
 }
\ No newline at end of file
@@ -0,0 +1,109 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.util.join;
+
+import java.util.Arrays;
+
+import io.brackit.query.atomic.Atomic;
+import io.brackit.query.atomic.Dbl;
+import io.brackit.query.atomic.Flt;
+import io.brackit.query.atomic.Int32;
+import io.brackit.query.atomic.Int64;
+import io.brackit.query.atomic.LonNumeric;
+import io.brackit.query.atomic.Numeric;
+import io.brackit.query.jdm.Type;
+
+/**
+ * Open addressing hash join table for keys of type xs:integer, xs:double or
+ * xs:float, which are compared by their value as primitive <code>long</code>.
+ * Doubles and floats are compared by their bit patterns, which is consistent
+ * with {@link Atomic#atomicCmp(Atomic)}. Integers exceeding the range of
+ * <code>long</code> are kept in an overflow table.
+ */
+public final class NumericHashJoinTable extends OpenHashJoinTable {
+  private final Type type;
+
+  private long[] keys;
+
+  public NumericHashJoinTable(Type type) {
+    if ((type != Type.INR) && (type != Type.DBL) && (type != Type.FLO)) {
+      throw new IllegalArgumentException(type.toString());
+    }
+    this.type = type;
+  }
+
+  private long bits(Atomic key) {
+    if (type == Type.INR) {
+      return ((Numeric) key).longValue();
+    } else if (type == Type.DBL) {
+      return Double.doubleToLongBits(((Numeric) key).doubleValue());
+    } else {
+      return Float.floatToIntBits(((Numeric) key).floatValue());
+    }
+  }
+
+  @Override
+  protected boolean accepts(Atomic key) {
+    if ((type != Type.INR) || (key instanceof LonNumeric)) {
+      return true;
+    }
+    return ((Numeric) key).integerValue().toBigInteger().bitLength() < 64;
+  }
+
+  @Override
+  protected int hash(Atomic key) {
+    return Long.hashCode(bits(key));
+  }
+
+  @Override
+  protected boolean matches(int row, Atomic key) {
+    return keys[row] == bits(key);
+  }
+
+  @Override
+  protected void setKey(int row, Atomic key) {
+    keys[row] = bits(key);
+  }
+
+  @Override
+  protected Atomic getKey(int row) {
+    long v = keys[row];
+    if (type == Type.INR) {
+      return ((int) v == v) ? new Int32((int) v) : new Int64(v);
+    } else if (type == Type.DBL) {
+      return new Dbl(Double.longBitsToDouble(v));
+    } else {
+      return new Flt(Float.intBitsToFloat((int) v));
+    }
+  }
+
+  @Override
+  protected void allocateKeys(int capacity) {
+    keys = (keys == null) ? new long[capacity] : Arrays.copyOf(keys, capacity);
+  }
+}
@@ -0,0 +1,241 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.util.join;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import io.brackit.query.QueryException;
+import io.brackit.query.atomic.Atomic;
+import io.brackit.query.jdm.Sequence;
+
+/**
+ * Hash join table with open addressing for keys that can be compared in a
+ * primitive representation.
+ * <p>
+ * Build entries are stored in flat row arrays. Rows with the same key are
+ * chained in insertion order via row ids, and the hash table maps each
+ * distinct key to the first and last row of its chain. A key itself is stored
+ * only once in the row array of the subclass at the position of the first row.
+ * Keys that cannot be represented in primitive form are delegated to a
+ * {@link HashJoinTable}.
+ */
+public abstract class OpenHashJoinTable extends AbstractJoinTable {
+  private static final int EMPTY = -1;
+
+  private int[] heads;
+
+  private int[] tails;
+
+  private int[] hashes;
+
+  private int mask;
+
+  private int keyCount;
+
+  private Sequence[][] bindings;
+
+  private int[] pos;
+
+  private int[] next;
+
+  private int rowCount;
+
+  private int maxPos;
+
+  private HashJoinTable overflow;
+
+  protected OpenHashJoinTable() {
+    allocateSlots(16);
+    bindings = new Sequence[16][];
+    pos = new int[16];
+    next = new int[16];
+    allocateKeys(16);
+  }
+
+  /**
+   * Returns <code>true</code> if the given key can be stored in primitive
+   * form.
+   */
+  protected abstract boolean accepts(Atomic key);
+
+  protected abstract int hash(Atomic key);
+
+  /**
+   * Returns <code>true</code> if the key stored at the given row equals the
+   * given key.
+   */
+  protected abstract boolean matches(int row, Atomic key);
+
+  protected abstract void setKey(int row, Atomic key);
+
+  protected abstract Atomic getKey(int row);
+
+  /**
+   * Allocates or grows the key array to the given capacity.
+   */
+  protected abstract void allocateKeys(int capacity);
+
+  private void allocateSlots(int capacity) {
+    heads = new int[capacity];
+    tails = new int[capacity];
+    hashes = new int[capacity];
+    Arrays.fill(heads, EMPTY);
+    mask = capacity - 1;
+  }
+
+  private static int mix(int h) {
+    h *= 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  @Override
+  protected void add(Atomic key, int pos, Sequence[] bindings) throws QueryException {
+    if (!accepts(key)) {
+      if (overflow == null) {
+        overflow = new HashJoinTable();
+      }
+      overflow.add(key, pos, bindings);
+      return;
+    }
+    int h = mix(hash(key));
+    int slot = h & mask;
+    int head;
+    while ((head = heads[slot]) != EMPTY) {
+      if ((hashes[slot] == h) && matches(head, key)) {
+        append(slot, pos, bindings);
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+    int row = newRow(pos, bindings);
+    setKey(row, key);
+    heads[slot] = row;
+    tails[slot] = row;
+    hashes[slot] = h;
+    if (++keyCount * 2 > heads.length) {
+      rehash();
+    }
+  }
+
+  private void append(int slot, int pos, Sequence[] bindings) {
+    int tail = tails[slot];
+    if (this.pos[tail] == pos) {
+      return;
+    }
+    if (pos < maxPos) {
+      // rows were not added in position order,
+      // so the chain may contain pos anywhere
+      for (int row = heads[slot]; row != EMPTY; row = next[row]) {
+        if (this.pos[row] == pos) {
+          return;
+        }
+      }
+    }
+    int row = newRow(pos, bindings);
+    next[tail] = row;
+    tails[slot] = row;
+  }
+
+  private int newRow(int pos, Sequence[] bindings) {
+    if (rowCount == this.pos.length) {
+      int capacity = (rowCount * 3) / 2 + 1;
+      this.bindings = Arrays.copyOf(this.bindings, capacity);
+      this.pos = Arrays.copyOf(this.pos, capacity);
+      this.next = Arrays.copyOf(this.next, capacity);
+      allocateKeys(capacity);
+    }
+    int row = rowCount++;
+    this.bindings[row] = bindings;
+    this.pos[row] = pos;
+    this.next[row] = EMPTY;
+    if (pos > maxPos) {
+      maxPos = pos;
+    }
+    return row;
+  }
+
+  private void rehash() {
+    int[] oHeads = heads;
+    int[] oTails = tails;
+    int[] oHashes = hashes;
+    allocateSlots(oHeads.length * 2);
+    for (int i = 0; i < oHeads.length; i++) {
+      if (oHeads[i] != EMPTY) {
+        int slot = oHashes[i] & mask;
+        while (heads[slot] != EMPTY) {
+          slot = (slot + 1) & mask;
+        }
+        heads[slot] = oHeads[i];
+        tails[slot] = oTails[i];
+        hashes[slot] = oHashes[i];
+      }
+    }
+  }
+
+  @Override
+  protected void lookup(FastList<TValue> matches, Atomic key) throws QueryException {
+    if (!accepts(key)) {
+      if (overflow != null) {
+        overflow.lookup(matches, key);
+      }
+      return;
+    }
+    int h = mix(hash(key));
+    int slot = h & mask;
+    int head;
+    while ((head = heads[slot]) != EMPTY) {
+      if ((hashes[slot] == h) && matches(head, key)) {
+        for (int row = head; row != EMPTY; row = next[row]) {
+          matches.add(new TValue(bindings[row], pos[row]));
+        }
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  @Override
+  protected List<TEntry> entries() {
+    final var entries = new ArrayList<TEntry>(rowCount);
+    for (int i = 0; i < heads.length; i++) {
+      int head = heads[i];
+      if (head != EMPTY) {
+        TKey key = new TKey(getKey(head));
+        for (int row = head; row != EMPTY; row = next[row]) {
+          entries.add(new TEntry(key, new TValue(bindings[row], pos[row])));
+        }
+      }
+    }
+    if (overflow != null) {
+      entries.addAll(overflow.entries());
+    }
+    return entries;
+  }
+}
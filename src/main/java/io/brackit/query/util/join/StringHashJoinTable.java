@@ -0,0 +1,82 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.util.join;
+
+import java.util.Arrays;
+
+import io.brackit.query.atomic.AnyURI;
+import io.brackit.query.atomic.Atomic;
+import io.brackit.query.atomic.Str;
+import io.brackit.query.jdm.Type;
+
+/**
+ * Open addressing hash join table for keys of type xs:string or xs:anyURI,
+ * which are compared by their string value.
+ */
+public final class StringHashJoinTable extends OpenHashJoinTable {
+  private final Type type;
+
+  private String[] keys;
+
+  public StringHashJoinTable(Type type) {
+    if ((type != Type.STR) && (type != Type.AURI)) {
+      throw new IllegalArgumentException(type.toString());
+    }
+    this.type = type;
+  }
+
+  @Override
+  protected boolean accepts(Atomic key) {
+    return true;
+  }
+
+  @Override
+  protected int hash(Atomic key) {
+    return key.stringValue().hashCode();
+  }
+
+  @Override
+  protected boolean matches(int row, Atomic key) {
+    return keys[row].equals(key.stringValue());
+  }
+
+  @Override
+  protected void setKey(int row, Atomic key) {
+    keys[row] = key.stringValue();
+  }
+
+  @Override
+  protected Atomic getKey(int row) {
+    return (type == Type.STR) ? new Str(keys[row]) : new AnyURI(keys[row]);
+  }
+
+  @Override
+  protected void allocateKeys(int capacity) {
+    keys = (keys == null) ? new String[capacity] : Arrays.copyOf(keys, capacity);
+  }
+}
@@ -27,15 +27,21 @@
  */
 package io.brackit.query.util.sort;
 
+import java.util.Arrays;
 import java.util.Comparator;
 
 import io.brackit.query.atomic.Atomic;
+import io.brackit.query.atomic.Dbl;
+import io.brackit.query.atomic.LonNumeric;
+import io.brackit.query.atomic.Str;
 import io.brackit.query.ErrorCode;
 import io.brackit.query.QueryContext;
 import io.brackit.query.QueryException;
 import io.brackit.query.Tuple;
+import io.brackit.query.block.FJControl;
 import io.brackit.query.expr.Cast;
 import io.brackit.query.node.stream.TransformerStream;
+import io.brackit.query.util.forkjoin.Pool;
 import io.brackit.query.jdm.DocumentException;
 import io.brackit.query.jdm.Expr;
 import io.brackit.query.jdm.Item;
@@ -48,32 +54,86 @@ import io.brackit.query.jdm.Type;
  */
 public class Ordering implements Comparator<Tuple> {
 
+  private static final int UNKNOWN = 0;
+  private static final int LONG = 1;
+  private static final int DOUBLE = 2;
+  private static final int STRING = 3;
+  private static final int GENERIC = 4;
+
   final Expr[] orderByExprs;
   final OrderModifier[] modifier;
   int offset;
+  int[] kinds;
   TupleSort sort;
+  FJControl control;
 
   public Ordering(Expr[] orderByExprs, OrderModifier[] modifier) {
+    this(orderByExprs, modifier, null);
+  }
+
+  /**
+   * Creates an ordering, which sorts on the pool of the given control.
+   * Without a control, tuples added with a query context are sorted on the
+   * pool of the query and all others sequentially.
+   */
+  public Ordering(Expr[] orderByExprs, OrderModifier[] modifier, FJControl control) {
     this.orderByExprs = orderByExprs;
     this.modifier = modifier;
+    this.control = control;
   }
 
   public void add(QueryContext ctx, Tuple t) throws QueryException {
     if (sort == null) {
       offset = t.getSize();
-      sort = new TupleSort(this, 1);
+      sort = new TupleSort(this, TupleSort.MAX_SIZE, (control != null) ? control : ctx.getFJControl());
     }
-    sort.add(t.concat(sortKeys(ctx, t)));
+    Sequence[] keys = sortKeys(ctx, t);
+    track(keys);
+    sort.add(t.concat(keys));
   }
 
   public void add(Sequence[] keys, Tuple t) throws QueryException {
     if (sort == null) {
       offset = t.getSize();
-      sort = new TupleSort(this, 1);
+      sort = new TupleSort(this, TupleSort.MAX_SIZE, control);
     }
+    track(keys);
     sort.add(t.concat(keys));
   }
 
+  /**
+   * Records the kind of each sort key. Columns whose keys are all of the
+   * same common kind are compared on primitive values.
+   */
+  void track(Sequence[] keys) {
+    if (kinds == null) {
+      kinds = new int[keys.length];
+    }
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] != null) {
+        int kind = kind((Atomic) keys[i]);
+        if (kinds[i] == UNKNOWN) {
+          kinds[i] = kind;
+        } else if (kinds[i] != kind) {
+          kinds[i] = GENERIC;
+        }
+      }
+    }
+  }
+
+  private static int kind(Atomic atomic) {
+    if (atomic instanceof LonNumeric) {
+      return LONG;
+    }
+    if (atomic instanceof Dbl) {
+      return DOUBLE;
+    }
+    if (atomic instanceof Str) {
+      return STRING;
+    }
+    return GENERIC;
+  }
+
   public Stream<Tuple> sorted() throws QueryException {
     sort.sort();
     Stream<Tuple> s = new TransformerStream<>(sort.stream()) {
@@ -123,16 +183,19 @@ public class Ordering implements Comparator<Tuple> {
         Atomic lAtomic = (Atomic) o1.get(pos);
         Atomic rAtomic = (Atomic) o2.get(pos);
 
-        if (lAtomic == null) {
-          if (rAtomic != null) {
-            return (modifier[i].EMPTY_LEAST) ? -1 : 1;
+        if ((lAtomic == null) || (rAtomic == null)) {
+          if (lAtomic != rAtomic) {
+            return ((lAtomic == null) == modifier[i].EMPTY_LEAST) ? -1 : 1;
           }
-        }
-        if (rAtomic == null) {
-          return (modifier[i].EMPTY_LEAST) ? 1 : -1;
+          continue;
         }
 
-        int res = lAtomic.cmp(rAtomic);
+        int res = switch ((kinds != null) ? kinds[i] : GENERIC) {
+          case LONG -> Long.compare(((LonNumeric) lAtomic).longValue(), ((LonNumeric) rAtomic).longValue());
+          case DOUBLE -> Double.compare(((Dbl) lAtomic).doubleValue(), ((Dbl) rAtomic).doubleValue());
+          case STRING -> lAtomic.stringValue().compareTo(rAtomic.stringValue());
+          default -> lAtomic.cmp(rAtomic);
+        };
         if (res != 0) {
           return (modifier[i].ASC) ? res : -res;
         }
@@ -147,7 +210,102 @@ public class Ordering implements Comparator<Tuple> {
     }
   }
 
+  /**
+   * Sorts the given buffer of tuples with appended sort keys on normalized
+   * keys, if all key columns are integers or doubles. The keys are
+   * extracted once per tuple as order-preserving primitive longs, so that
+   * comparisons need neither casts nor {@link Atomic#cmp(Atomic)}. String
+   * keys are not normalized because comparing them is not cheaper than
+   * comparing the original items.
+   *
+   * @param pool the pool for a parallel sort, or <code>null</code> for a
+   *             sequential sort
+   * @return <code>false</code> if the keys cannot be normalized
+   */
+  boolean sortNormalized(Tuple[] buffer, int count, Pool pool) throws QueryException {
+    if ((kinds == null) || (kinds.length > Long.SIZE)) {
+      return false;
+    }
+    for (int kind : kinds) {
+      if ((kind == STRING) || (kind == GENERIC)) {
+        return false;
+      }
+    }
+    NormalizedKey[] keys = new NormalizedKey[count];
+    for (int i = 0; i < count; i++) {
+      keys[i] = new NormalizedKey(buffer[i]);
+    }
+    if (pool != null) {
+      ParallelSort.sort(pool, keys, 0, count, this::compare);
+    } else {
+      Arrays.sort(keys, this::compare);
+    }
+    for (int i = 0; i < count; i++) {
+      buffer[i] = keys[i].tuple;
+    }
+    return true;
+  }
+
+  private int compare(NormalizedKey k1, NormalizedKey k2) {
+    for (int i = 0; i < kinds.length; i++) {
+      long bit = 1L << i;
+      boolean lEmpty = (k1.empty & bit) != 0;
+      boolean rEmpty = (k2.empty & bit) != 0;
+      if (lEmpty || rEmpty) {
+        if (lEmpty != rEmpty) {
+          return (lEmpty == modifier[i].EMPTY_LEAST) ? -1 : 1;
+        }
+        continue;
+      }
+      int res = (i == 0) ? Long.compare(k1.value, k2.value) : Long.compare(k1.values[i], k2.values[i]);
+      if (res != 0) {
+        return (modifier[i].ASC) ? res : -res;
+      }
+    }
+    return 0;
+  }
+
+  /*
+   * The first key is kept in a field to avoid an additional array for the
+   * common case of a single order spec.
+   */
+  private final class NormalizedKey {
+    final Tuple tuple;
+    long value;
+    long[] values;
+    long empty;
+
+    NormalizedKey(Tuple tuple) throws QueryException {
+      this.tuple = tuple;
+      for (int i = 0; i < kinds.length; i++) {
+        Atomic atomic = (Atomic) tuple.get(offset + i);
+        if (atomic == null) {
+          empty |= 1L << i;
+          continue;
+        }
+        long v = (kinds[i] == LONG) ? ((LonNumeric) atomic).longValue() : sortableBits(((Dbl) atomic).doubleValue());
+        if (i == 0) {
+          value = v;
+        } else {
+          if (values == null) {
+            values = new long[kinds.length];
+          }
+          values[i] = v;
+        }
+      }
+    }
+  }
+
+  /*
+   * Maps a double to a long with the same order as Double#compare().
+   */
+  private static long sortableBits(double d) {
+    long bits = Double.doubleToLongBits(d);
+    return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+  }
+
   public void clear() {
+    kinds = null;
     if (sort != null) {
       sort.clear();
       sort = null;
@@ -0,0 +1,151 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.util.sort;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import io.brackit.query.util.forkjoin.Pool;
+import io.brackit.query.util.forkjoin.Task;
+
+/**
+ * Stable parallel merge sort on a fork/join {@link Pool}. In contrast to
+ * {@link Arrays#parallelSort(Object[], Comparator)}, the work is done by the
+ * workers of the given pool and not by the common pool of the JVM, so that a
+ * sort competes only with the query that issued it.
+ */
+final class ParallelSort {
+
+  /**
+   * Ranges up to this size are sorted sequentially.
+   */
+  static final int LEAF_SIZE = 8192;
+
+  private ParallelSort() {
+  }
+
+  static <T> void sort(Pool pool, T[] a, int from, int to, Comparator<? super T> cmp) {
+    if (to - from <= LEAF_SIZE) {
+      Arrays.sort(a, from, to, cmp);
+      return;
+    }
+    Run<T> run = new Run<>(a, Arrays.copyOf(a, to), cmp);
+    pool.submit(new SortTask<>(run, from, to)).join();
+    Throwable failure = run.failure;
+    if (failure instanceof RuntimeException e) {
+      throw e;
+    }
+    if (failure instanceof Error e) {
+      throw e;
+    }
+  }
+
+  private static final class Run<T> {
+    final T[] a;
+    final T[] tmp;
+    final Comparator<? super T> cmp;
+    volatile Throwable failure;
+
+    Run(T[] a, T[] tmp, Comparator<? super T> cmp) {
+      this.a = a;
+      this.tmp = tmp;
+      this.cmp = cmp;
+    }
+
+    synchronized void fail(Throwable e) {
+      if (failure == null) {
+        failure = e;
+      }
+    }
+  }
+
+  private static final class SortTask<T> extends Task {
+    final Run<T> run;
+    final int lo;
+    final int hi;
+
+    SortTask(Run<T> run, int lo, int hi) {
+      this.run = run;
+      this.lo = lo;
+      this.hi = hi;
+    }
+
+    @Override
+    public void compute() {
+      // failures are recorded and rethrown by the caller
+      // because the pool would only log them
+      try {
+        sort();
+      } catch (Throwable e) {
+        run.fail(e);
+      }
+    }
+
+    private void sort() {
+      if (run.failure != null) {
+        return;
+      }
+      if (hi - lo <= LEAF_SIZE) {
+        Arrays.sort(run.a, lo, hi, run.cmp);
+        return;
+      }
+      int mid = (lo + hi) >>> 1;
+      SortTask<T> left = new SortTask<>(run, lo, mid);
+      left.fork();
+      new SortTask<>(run, mid, hi).compute();
+      left.join();
+      if (run.failure == null) {
+        merge(mid);
+      }
+    }
+
+    private void merge(int mid) {
+      T[] a = run.a;
+      T[] tmp = run.tmp;
+      Comparator<? super T> cmp = run.cmp;
+      if (cmp.compare(a[mid - 1], a[mid]) <= 0) {
+        // already in order
+        return;
+      }
+      System.arraycopy(a, lo, tmp, lo, hi - lo);
+      int i = lo;
+      int j = mid;
+      int k = lo;
+      while ((i < mid) && (j < hi)) {
+        // take from the left run on ties to keep the sort stable
+        a[k++] = (cmp.compare(tmp[j], tmp[i]) < 0) ? tmp[j++] : tmp[i++];
+      }
+      while (i < mid) {
+        a[k++] = tmp[i++];
+      }
+      while (j < hi) {
+        a[k++] = tmp[j++];
+      }
+    }
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.util.sort;
+
+import java.util.Arrays;
+
+import io.brackit.query.ErrorCode;
+import io.brackit.query.QueryContext;
+import io.brackit.query.QueryException;
+import io.brackit.query.Tuple;
+import io.brackit.query.jdm.Expr;
+import io.brackit.query.jdm.Sequence;
+import io.brackit.query.jdm.Stream;
+import io.brackit.query.node.stream.ArrayStream;
+
+/**
+ * Ordering which retains only the first <code>limit</code> tuples of the
+ * sort order. Tuples are kept in a bounded max-heap with the worst retained
+ * tuple at the root, so that n input tuples are processed in O(n log k)
+ * time and O(k) space. Ties are broken by arrival to yield the same order
+ * as a stable full sort.
+ */
+public class TopKOrdering extends Ordering {
+
+  final int limit;
+  private Tuple[] heap;
+  private long[] arrival;
+  private int size;
+  private long count;
+
+  public TopKOrdering(Expr[] orderByExprs, OrderModifier[] modifier, int limit) {
+    super(orderByExprs, modifier);
+    if (limit < 1) {
+      throw new IllegalArgumentException("limit must be >= 1");
+    }
+    this.limit = limit;
+  }
+
+  @Override
+  public void add(QueryContext ctx, Tuple t) throws QueryException {
+    add(sortKeys(ctx, t), t);
+  }
+
+  @Override
+  public void add(Sequence[] keys, Tuple t) throws QueryException {
+    if (heap == null) {
+      offset = t.getSize();
+      heap = new Tuple[Math.min(limit, 64)];
+      arrival = new long[heap.length];
+    }
+    track(keys);
+    Tuple entry = t.concat(keys);
+    long seq = count++;
+    if (size < limit) {
+      if (size == heap.length) {
+        grow();
+      }
+      heap[size] = entry;
+      arrival[size] = seq;
+      siftUp(size++);
+    } else if (cmp(entry, heap[0]) < 0) {
+      // a later arrival never displaces an equal tuple
+      heap[0] = entry;
+      arrival[0] = seq;
+      siftDown(0);
+    }
+  }
+
+  @Override
+  public Stream<Tuple> sorted() throws QueryException {
+    Tuple[] sorted = new Tuple[size];
+    while (size > 0) {
+      Tuple worst = heap[0];
+      size--;
+      heap[0] = heap[size];
+      arrival[0] = arrival[size];
+      heap[size] = null;
+      if (size > 0) {
+        siftDown(0);
+      }
+      sorted[size] = worst.project(0, offset);
+    }
+    heap = null;
+    arrival = null;
+    count = 0;
+    return new ArrayStream<>(sorted);
+  }
+
+  @Override
+  public void clear() {
+    super.clear();
+    heap = null;
+    arrival = null;
+    size = 0;
+    count = 0;
+  }
+
+  private void grow() {
+    int newLength = (int) Math.min(limit, (heap.length * 3L) / 2 + 1);
+    heap = Arrays.copyOf(heap, newLength);
+    arrival = Arrays.copyOf(arrival, newLength);
+  }
+
+  private void siftUp(int pos) throws QueryException {
+    while (pos > 0) {
+      int parent = (pos - 1) >>> 1;
+      if (worse(parent, pos)) {
+        break;
+      }
+      swap(parent, pos);
+      pos = parent;
+    }
+  }
+
+  private void siftDown(int pos) throws QueryException {
+    int half = size >>> 1;
+    while (pos < half) {
+      int child = 2 * pos + 1;
+      int right = child + 1;
+      if (right < size && worse(right, child)) {
+        child = right;
+      }
+      if (worse(pos, child)) {
+        break;
+      }
+      swap(pos, child);
+      pos = child;
+    }
+  }
+
+  private boolean worse(int a, int b) throws QueryException {
+    int res = cmp(heap[a], heap[b]);
+    return (res != 0) ? res > 0 : arrival[a] > arrival[b];
+  }
+
+  private void swap(int a, int b) {
+    Tuple t = heap[a];
+    heap[a] = heap[b];
+    heap[b] = t;
+    long s = arrival[a];
+    arrival[a] = arrival[b];
+    arrival[b] = s;
+  }
+
+  private int cmp(Tuple t1, Tuple t2) throws QueryException {
+    try {
+      return compare(t1, t2);
+    } catch (ClassCastException e) {
+      throw new QueryException(e, ErrorCode.ERR_TYPE_INAPPROPRIATE_TYPE);
+    } catch (RuntimeException e) {
+      throw new QueryException(e, ErrorCode.BIT_DYN_INT_ERROR);
+    }
+  }
+}
@@ -29,19 +29,24 @@ package io.brackit.query.util.sort;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.PriorityQueue;
 
 import io.brackit.query.ErrorCode;
 import io.brackit.query.QueryException;
 import io.brackit.query.Tuple;
+import io.brackit.query.block.FJControl;
 import io.brackit.query.util.Cfg;
+import io.brackit.query.util.forkjoin.Pool;
+import io.brackit.query.util.io.TupleCodec;
 import io.brackit.query.util.log.Logger;
 import io.brackit.query.jdm.DocumentException;
 import io.brackit.query.jdm.Stream;
@@ -50,55 +55,99 @@ import io.brackit.query.jdm.Stream;
  * Combination of main memory and external merge sort. The implementation is I/O
  * robust w.r.t. pre-sorted input, few inputs and performs well for large main
  * memory buffer sizes.
+ * <p>
+ * As long as the estimated size of the buffered tuples stays below
+ * <code>maxSize</code> bytes, the sort runs entirely in main memory. Otherwise,
+ * the buffer is sorted and spilled as a run to a temporary file. Finally, all
+ * runs and the remaining buffer are combined with a k-way merge. If there are
+ * more runs than {@link #FAN_IN}, runs are merged in intermediate passes first.
+ * A <code>maxSize</code> less or equal to zero disables spilling.
+ * <p>
+ * If a sort is created for a query, buffers of at least
+ * {@link #PARALLEL_THRESHOLD} tuples are sorted in parallel with a stable
+ * merge sort on the fork/join pool of the query.
  *
  * @author Sebastian Baechle
  */
 public class TupleSort {
   private static final Logger log = Logger.getLogger(TupleSort.class);
 
+  public static final String MAX_SIZE_CFG = "org.brackit.xquery.sort.maxSize";
+
+  public static final String FAN_IN_CFG = "org.brackit.xquery.sort.fanIn";
+
+  /**
+   * Default memory budget in bytes for a single sort.
+   */
+  public static long MAX_SIZE = Cfg.asLong(MAX_SIZE_CFG, 64 * 1024 * 1024);
+
+  /**
+   * Maximum number of runs merged at once.
+   */
+  public static int FAN_IN = Math.max(Cfg.asInt(FAN_IN_CFG, 64), 2);
+
+  public static final String PARALLEL_THRESHOLD_CFG = "org.brackit.xquery.sort.parallelThreshold";
+
+  /**
+   * Minimum number of buffered tuples for sorting the buffer in parallel.
+   * A value less or equal to zero disables parallel sorting.
+   */
+  public static int PARALLEL_THRESHOLD = Cfg.asInt(PARALLEL_THRESHOLD_CFG, 32768);
+
+  private static final int IO_BUFFER_SIZE = 64 * 1024;
+
   private final long maxSize;
 
   private final Comparator<Tuple> comparator;
 
+  private final FJControl control;
+
   private final File sortDir = new File(Cfg.asString("java.io.tmpdir"));
 
+  private final TupleCodec codec = new TupleCodec();
+
   private File[] runs;
 
   private Tuple[] buffer;
 
-  private byte[] mergeBuffer;
-
   private int count;
 
   private int runCount;
 
   private long size;
 
-  private OutputStream currentRun;
+  private DataOutputStream currentRun;
 
   private Tuple lastInRun;
 
   // statistics
-  long leftMergeItemCount;
-
-  long rightMergeItemCount;
+  long mergeItemCount;
 
   int mergeCount;
 
-  private long directMergeSize;
-
   private int initialRuns;
 
+  private int appendedRuns;
+
   public TupleSort(Comparator<Tuple> comparator, long maxSize) {
+    this(comparator, maxSize, null);
+  }
+
+  /**
+   * Creates a sort, which sorts large buffers in parallel on the pool of the
+   * given control. A <code>null</code> control sorts sequentially.
+   */
+  public TupleSort(Comparator<Tuple> comparator, long maxSize, FJControl control) {
     this.comparator = comparator;
     this.maxSize = maxSize;
+    this.control = control;
     this.runs = new File[2];
     buffer = new Tuple[10];
   }
 
   public void add(Tuple item) throws QueryException {
-    long itemSize = getSize(item);
-    if ((maxSize > 0) && (size + itemSize > maxSize)) {
+    long itemSize = (maxSize > 0) ? TupleCodec.size(item) : 0;
+    if ((maxSize > 0) && (count > 0) && (size + itemSize > maxSize)) {
       writeRun();
     }
 
@@ -110,16 +159,13 @@ public class TupleSort {
     size += itemSize;
   }
 
-  private long getSize(Tuple item) throws QueryException {
-    // TODO
-    return 0;
-  }
-
   private void writeRun() throws QueryException {
     sortBuffer();
 
-    if ((lastInRun != null) && (comparator.compare(lastInRun, buffer[0]) <= 0)) {
-      System.out.println("append to run");
+    if ((lastInRun != null) && (compare(lastInRun, buffer[0]) <= 0)) {
+      if (log.isDebugEnabled()) {
+        log.debug(String.format("Appending %s items to run '%s'", count, runs[runCount - 1]));
+      }
       appendToRun();
       return;
     }
@@ -132,27 +178,21 @@ public class TupleSort {
       File run = File.createTempFile("sort", ".run", sortDir);
       run.deleteOnExit();
 
+      if (runCount == runs.length) {
+        runs = Arrays.copyOf(runs, ((runs.length * 3) / 2) + 1);
+      }
+      runs[runCount++] = run;
+
       if (log.isDebugEnabled()) {
         log.debug(String.format("Writing new run '%s'", run));
       }
 
-      currentRun = new BufferedOutputStream(new FileOutputStream(run));
-
-      for (int i = 0; i < count; i++) {
-        lastInRun = buffer[i];
-        writeItem(currentRun, lastInRun);
-      }
+      currentRun = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), IO_BUFFER_SIZE));
+      writeBuffer();
 
       if (log.isDebugEnabled()) {
         log.debug(String.format("Wrote run '%s'", run));
       }
-
-      if (runCount == runs.length) {
-        runs = Arrays.copyOf(runs, ((runs.length * 3) / 2) + 1);
-      }
-      runs[runCount++] = run;
-      size = 0;
-      count = 0;
       initialRuns++;
     } catch (IOException e) {
       errorCleanup();
@@ -165,8 +205,17 @@ public class TupleSort {
       log.trace(String.format("Start main memory sort of %s items.'", count));
     }
 
+    FJControl lease = ((control != null) && (PARALLEL_THRESHOLD > 0) && (count >= PARALLEL_THRESHOLD)
+        && (control.getPool().getSize() > 1)) ? control.lease() : null;
+    Pool pool = (lease != null) ? lease.getPool() : null;
     try {
-      Arrays.sort(buffer, 0, count, comparator);
+      if ((comparator instanceof Ordering ordering) && ordering.sortNormalized(buffer, count, pool)) {
+        // sorted on normalized keys
+      } else if (pool != null) {
+        ParallelSort.sort(pool, buffer, 0, count, comparator);
+      } else {
+        Arrays.sort(buffer, 0, count, comparator);
+      }
     } catch (ClassCastException e) {
       // java.util.Comparator#compare() is expected to throw a
       // a ClassCastException when to items cannot be compared
@@ -174,6 +223,10 @@ public class TupleSort {
       throw new QueryException(e, ErrorCode.ERR_TYPE_INAPPROPRIATE_TYPE);
     } catch (RuntimeException e) {
       throw new QueryException(e, ErrorCode.BIT_DYN_INT_ERROR);
+    } finally {
+      if (lease != null) {
+        lease.release();
+      }
     }
 
     if (log.isTraceEnabled()) {
@@ -181,20 +234,39 @@ public class TupleSort {
     }
   }
 
+  private int compare(Tuple t1, Tuple t2) throws QueryException {
+    try {
+      return comparator.compare(t1, t2);
+    } catch (ClassCastException e) {
+      throw new QueryException(e, ErrorCode.ERR_TYPE_INAPPROPRIATE_TYPE);
+    } catch (QueryException e) {
+      throw e;
+    } catch (RuntimeException e) {
+      throw new QueryException(e, ErrorCode.BIT_DYN_INT_ERROR);
+    }
+  }
+
   private void appendToRun() throws QueryException {
     try {
-      for (int i = 0; i < count; i++) {
-        lastInRun = buffer[i];
-        writeItem(currentRun, lastInRun);
-      }
-      count = 0;
-      size = 0;
+      writeBuffer();
+      appendedRuns++;
     } catch (IOException e) {
       errorCleanup();
       throw new QueryException(e, ErrorCode.BIT_DYN_INT_ERROR);
     }
   }
 
+  private void writeBuffer() throws IOException {
+    for (int i = 0; i < count; i++) {
+      lastInRun = buffer[i];
+      codec.write(currentRun, lastInRun);
+      // release tuple for garbage collection
+      buffer[i] = null;
+    }
+    count = 0;
+    size = 0;
+  }
+
   private void errorCleanup() {
     if (currentRun != null) {
       try {
@@ -202,26 +274,20 @@ public class TupleSort {
       } catch (IOException e1) {
         log.error(e1);
       }
+      currentRun = null;
     }
 
-    for (File run : runs) {
-      if ((run != null) && (run.exists())) {
-        run.delete();
+    for (int i = 0; i < runCount; i++) {
+      if ((runs[i] != null) && (runs[i].exists())) {
+        runs[i].delete();
       }
     }
-  }
-
-  private Tuple readItem(InputStream in) throws IOException {
-    // TODO
-    return null;
-  }
-
-  private void writeItem(OutputStream out, Tuple item) throws IOException {
-    // TODO
+    runCount = 0;
+    codec.clear();
   }
 
   public Stream<Tuple> stream() {
-    return (runCount == 0) ? mainMemorySortOnly() : mergeFinalRunAndBuffer();
+    return (runCount == 0) ? mainMemorySortOnly() : mergeFinalRunsAndBuffer();
   }
 
   public void sort() throws QueryException {
@@ -234,14 +300,17 @@ public class TupleSort {
   }
 
   public void clear() {
-    if (runCount > 0) {
-      runs[0].delete();
+    for (int i = 0; i < runCount; i++) {
+      runs[i].delete();
     }
+    runCount = 0;
+    codec.clear();
   }
 
   private void closeLastRun() throws QueryException {
     try {
       currentRun.close();
+      currentRun = null;
       lastInRun = null;
     } catch (IOException e) {
       errorCleanup();
@@ -249,152 +318,127 @@ public class TupleSort {
     }
   }
 
-  private Stream<Tuple> mergeFinalRunAndBuffer() {
-    final Tuple[] sBuffer = buffer;
-
-    return new Stream<Tuple>() {
-      private final Comparator<Tuple> cmp = comparator;
-
-      private final Tuple[] sortedBuffer = sBuffer;
-
-      private InputStream sorted;
-
-      private Tuple left;
+  /**
+   * Reduces the number of runs with intermediate merges so that the final
+   * merge of all runs and the main memory buffer does not exceed the fan-in.
+   * Each pass merges just as many of the oldest runs as necessary. Runs stay in
+   * input order to keep the sort stable.
+   */
+  private void mergeRuns() throws QueryException {
+    int mergePhase = 0;
+    while (runCount + 1 > FAN_IN) {
+      int merge = Math.min(FAN_IN, runCount + 2 - FAN_IN);
 
-      private Tuple right;
+      if (log.isDebugEnabled()) {
+        log.debug(String.format("Starting merge phase %s: merging %s of %s runs", mergePhase, merge, runCount));
+      }
 
-      private int pos;
+      File run = merge(runs, merge);
+      runs[0] = run;
+      System.arraycopy(runs, merge, runs, 1, runCount - merge);
+      Arrays.fill(runs, runCount - merge + 1, runCount, null);
+      runCount -= merge - 1;
 
-      @Override
-      public void close() {
-        try {
-          sorted.close();
-          clear();
-        } catch (IOException e) {
-          log.error(e);
-        }
+      if (log.isDebugEnabled()) {
+        log.debug(String.format("Finished merge phase %s", mergePhase));
       }
+      mergePhase++;
+    }
+  }
 
-      @Override
-      public Tuple next() throws DocumentException {
-        try {
-          Tuple next;
-          if (sorted == null) {
-            sorted = new BufferedInputStream(new FileInputStream(runs[0]));
-            left = readItem(sorted);
-          }
-
-          if (pos == 0) {
-            right = (pos < count) ? sortedBuffer[pos++] : null;
-          }
+  private File merge(File[] in, int inCount) throws QueryException {
+    MergeQueue queue = new MergeQueue();
+    DataOutputStream out = null;
+    File run = null;
 
-          if (left == null) {
-            next = right;
-            right = (pos < count) ? sortedBuffer[pos++] : null;
-            return next;
-          }
+    try {
+      mergeCount++;
+      run = File.createTempFile("sort", ".run", sortDir);
+      run.deleteOnExit();
 
-          if (right == null) {
-            next = left;
-            left = readItem(sorted);
-            return next;
-          }
+      if (log.isDebugEnabled()) {
+        log.debug(String.format("Merging %s runs in new run '%s'", inCount, run));
+      }
 
-          if (cmp.compare(left, right) <= 0) {
-            next = left;
-            left = readItem(sorted);
-          } else {
-            next = right;
-            right = (pos < count) ? sortedBuffer[pos++] : null;
-          }
+      for (int i = 0; i < inCount; i++) {
+        queue.add(new RunInput(i, in[i]));
+      }
 
-          return next;
-        } catch (IOException e) {
-          throw new DocumentException(e);
-        }
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), IO_BUFFER_SIZE));
+      Tuple next;
+      while ((next = queue.next()) != null) {
+        codec.write(out, next);
+        mergeItemCount++;
       }
-    };
-  }
+      out.close();
+      out = null;
 
-  private void mergeRuns() throws QueryException {
-    File[] newRuns = null;
-    int mergePhase = 0;
-    boolean forward = true;
+      for (int i = 0; i < inCount; i++) {
+        in[i].delete();
+      }
 
-    while (runCount > 1) {
       if (log.isDebugEnabled()) {
-        log.debug(String.format("Starting merge phase %s type %s", mergePhase, forward));
+        log.debug(String.format("Wrote run '%s'", run));
       }
 
-      if (mergeBuffer == null) {
-        mergeBuffer = new byte[Math.max((int) maxSize / 20, 1024)];
+      return run;
+    } catch (IOException e) {
+      if (run != null) {
+        run.delete();
       }
-
-      if (log.isTraceEnabled()) {
-        log.trace("Merge table");
-        for (int i = 0; i < runCount; i++) {
-          log.trace(String.format("%3s: %s", i, runs[i]));
+      errorCleanup();
+      throw new DocumentException(e);
+    } catch (QueryException e) {
+      if (run != null) {
+        run.delete();
+      }
+      errorCleanup();
+      throw e;
+    } finally {
+      queue.close();
+      if (out != null) {
+        try {
+          out.close();
+        } catch (IOException e1) {
+          log.error(e1);
         }
       }
+    }
+  }
 
-      int merges = runCount / 2;
-      boolean singleRun = runCount % 2 == 1;
-      int newRunCount = merges + (singleRun ? 1 : 0);
-      newRuns = new File[newRunCount];
+  private Stream<Tuple> mergeFinalRunsAndBuffer() {
+    return new Stream<Tuple>() {
+      private MergeQueue queue;
 
-      if (log.isDebugEnabled()) {
-        log.debug(String.format("Merge %s -> %s (single run: %s)", runCount, newRunCount, singleRun));
+      @Override
+      public void close() {
+        if (queue != null) {
+          queue.close();
+        }
+        clear();
       }
 
-      try {
-        if (forward) // all merge pairs sorted forwards, hottest at the
-        // end
-        {
-          int pos = 0;
-
-          if (singleRun) {
-            for (int i = newRunCount - 1; i > 0; i--) {
-              newRuns[pos++] = merge(runs[2 * i - 1], runs[2 * i]);
-            }
-            newRuns[newRunCount - 1] = runs[0];
-          } else {
-            for (int i = newRunCount - 1; i >= 0; i--) {
-              newRuns[pos++] = merge(runs[2 * i], runs[2 * i + 1]);
-            }
-          }
-        } else // all merge pairs sorted backwards, hottest at the end
-        {
-          int pos = 0;
-
-          if (singleRun) {
-            for (int i = newRunCount - 1; i > 0; i--) {
-              newRuns[pos++] = merge(runs[2 * i], runs[2 * i - 1]);
-            }
-            newRuns[newRunCount - 1] = runs[0];
-          } else {
-            for (int i = newRunCount - 1; i >= 0; i--) {
-              newRuns[pos++] = merge(runs[2 * i + 1], runs[2 * i]);
+      @Override
+      public Tuple next() throws DocumentException {
+        try {
+          if (queue == null) {
+            queue = new MergeQueue();
+            for (int i = 0; i < runCount; i++) {
+              queue.add(new RunInput(i, runs[i]));
             }
+            // the buffer holds the most recent input
+            queue.add(new BufferInput(runCount, buffer, count));
           }
+          return queue.next();
+        } catch (IOException e) {
+          close();
+          throw new DocumentException(e);
+        } catch (QueryException e) {
+          close();
+          throw e;
         }
-      } catch (QueryException e) {
-        for (File newRun : newRuns) {
-          if ((newRun != null) && (newRun.exists())) {
-            newRun.delete();
-          }
-        }
-        throw e;
-      }
-
-      forward = !forward;
-      runCount = newRunCount;
-      runs = newRuns;
-
-      if (log.isDebugEnabled()) {
-        log.debug(String.format("Finished merge phase %s", mergePhase));
       }
-      mergePhase++;
-    }
+    };
   }
 
   private Stream<Tuple> mainMemorySortOnly() {
@@ -414,105 +458,123 @@ public class TupleSort {
     };
   }
 
-  private File merge(File run1, File run2) throws QueryException {
-    InputStream lIn = null;
-    InputStream rIn = null;
-    OutputStream out = null;
+  /**
+   * A sorted input of a k-way merge.
+   */
+  private abstract static class MergeInput {
+    final int index;
 
-    try {
-      mergeCount++;
-      File run = File.createTempFile("sort", ".run", sortDir);
-      run.deleteOnExit();
+    Tuple head;
 
-      if (log.isDebugEnabled()) {
-        log.debug(String.format("Merging run '%s' and '%s' in new run '%s'", run1, run2, run));
-      }
+    MergeInput(int index) {
+      this.index = index;
+    }
 
-      lIn = new BufferedInputStream(new FileInputStream(run1));
-      rIn = new BufferedInputStream(new FileInputStream(run2));
-      Tuple left = null;
-      Tuple right = null;
-
-      out = new BufferedOutputStream(new FileOutputStream(run));
-
-      left = readItem(lIn);
-      right = readItem(rIn);
-
-      while ((left != null) && (right != null)) {
-        if (comparator.compare(left, right) <= 0) {
-          writeItem(out, left);
-          left = readItem(lIn);
-          leftMergeItemCount++;
-        } else {
-          writeItem(out, right);
-          right = readItem(rIn);
-          rightMergeItemCount++;
-        }
-      }
+    abstract Tuple read() throws IOException;
+
+    void close() {
+    }
+  }
 
-      Tuple pending = (left == null) ? right : left;
-      InputStream pendingIn = (left == null) ? rIn : lIn;
+  private final class RunInput extends MergeInput {
+    private final DataInputStream in;
 
-      if (pending != null) {
-        writeItem(out, pending);
-      }
+    RunInput(int index, File run) throws IOException {
+      super(index);
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), IO_BUFFER_SIZE));
+    }
 
-      int read;
-      while ((read = pendingIn.read(mergeBuffer)) > 0) {
-        out.write(mergeBuffer, 0, read);
-        directMergeSize += read;
+    @Override
+    Tuple read() throws IOException {
+      return codec.read(in);
+    }
+
+    @Override
+    void close() {
+      try {
+        in.close();
+      } catch (IOException e) {
+        log.error(e);
       }
+    }
+  }
 
-      run1.delete();
-      run2.delete();
+  private static final class BufferInput extends MergeInput {
+    private final Tuple[] sorted;
 
-      if (log.isDebugEnabled()) {
-        log.debug(String.format("Wrote run '%s'", run));
+    private final int sortedCount;
+
+    private int pos;
+
+    BufferInput(int index, Tuple[] sorted, int sortedCount) {
+      super(index);
+      this.sorted = sorted;
+      this.sortedCount = sortedCount;
+    }
+
+    @Override
+    Tuple read() {
+      return (pos < sortedCount) ? sorted[pos++] : null;
+    }
+  }
+
+  /**
+   * Priority queue of merge inputs ordered by their current head tuple. Ties
+   * are broken by input order to keep the merge stable.
+   */
+  private final class MergeQueue {
+    private final PriorityQueue<MergeInput> queue = new PriorityQueue<>(FAN_IN + 1, (l, r) -> {
+      int res = compare(l.head, r.head);
+      return (res != 0) ? res : Integer.compare(l.index, r.index);
+    });
+
+    private final ArrayList<MergeInput> inputs = new ArrayList<>();
+
+    void add(MergeInput input) throws IOException {
+      inputs.add(input);
+      input.head = input.read();
+      if (input.head != null) {
+        queue.add(input);
+      } else {
+        input.close();
       }
+    }
 
-      return run;
-    } catch (IOException e) {
-      errorCleanup();
-      throw new DocumentException(e);
-    } finally {
-      if (out != null) {
-        try {
-          out.close();
-        } catch (IOException e1) {
-          log.error(e1);
-        }
+    Tuple next() throws IOException {
+      MergeInput input = queue.poll();
+      if (input == null) {
+        return null;
       }
-      if (lIn != null) {
-        try {
-          lIn.close();
-        } catch (IOException e1) {
-          log.error(e1);
-        }
+      Tuple next = input.head;
+      input.head = input.read();
+      if (input.head != null) {
+        queue.add(input);
+      } else {
+        input.close();
       }
-      if (rIn != null) {
-        try {
-          rIn.close();
-        } catch (IOException e1) {
-          log.error(e1);
-        }
+      return next;
+    }
+
+    void close() {
+      for (MergeInput input : inputs) {
+        input.close();
       }
+      inputs.clear();
+      queue.clear();
     }
   }
 
   public String printStats() {
     StringBuilder out = new StringBuilder();
-    out.append(String.format("# initial runs: %s # merges: %s", initialRuns, mergeCount));
-    out.append("\n");
-    out.append(String.format("Total left merge items: %10s Avg. left merge items per merge: %10.3f",
-                             leftMergeItemCount,
-                             (double) leftMergeItemCount / mergeCount));
-    out.append("\n");
-    out.append(String.format("Total right merge items: %10s Avg. right merge items per merge: %10.3f",
-                             rightMergeItemCount,
-                             (double) rightMergeItemCount / mergeCount));
+    out.append(String.format("# initial runs: %s # appended runs: %s # merges: %s",
+                             initialRuns,
+                             appendedRuns,
+                             mergeCount));
     out.append("\n");
-    out.append(String.format("Directly merged %10.2f MB", (double) directMergeSize / (1024 * 1024)));
+    out.append(String.format("Total merge items: %10s Avg. merge items per merge: %10.3f",
+                             mergeItemCount,
+                             (mergeCount > 0) ? (double) mergeItemCount / mergeCount : 0.0));
     out.append("\n");
     return out.toString();
   }
-}
\ No newline at end of file
+}
@@ -31,10 +31,15 @@ import io.brackit.query.atomic.Int32;
 import io.brackit.query.atomic.Null;
 import io.brackit.query.atomic.QNm;
 import io.brackit.query.compiler.CompileChain;
+import io.brackit.query.function.json.JsonProjection;
+import io.brackit.query.jsonitem.StreamingJsonCollection;
 import io.brackit.query.jsonitem.array.DArray;
 import io.brackit.query.jsonitem.object.ArrayObject;
 import io.brackit.query.sequence.ItemSequence;
 import io.brackit.query.jdm.Sequence;
+import io.brackit.query.jdm.Statistics;
+import io.brackit.query.jdm.json.Array;
+import io.brackit.query.jdm.json.JsonItem;
 import org.junit.Ignore;
 import org.junit.Test;
 
@@ -49,6 +54,9 @@ import java.nio.file.Paths;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 /**
  * @author Johannes Lichtenberger
@@ -987,6 +995,26 @@ public final class JsonTest extends XQueryBaseTest {
     assertEquals("null", result);
   }
 
+  @Test
+  public void derefOnMixedShapes() throws IOException {
+    final String query = """
+          for $o in ({"a": 1, "b": 2}, {"b": 3, "a": 4}, {"a": 5, "b": 6}, {"c": 7}, jn:parse('{"a": 8, "b": 9}'))
+          return $o.a
+        """;
+    final var result = query(query);
+    assertEquals("1 4 5 8", result);
+  }
+
+  @Test
+  public void derefConstantAndDynamicFieldOnSequence() throws IOException {
+    final String query = """
+          let $k := "a"
+          return (({"a": 1}, {"b": 2}, {"a": 3}).a, ({"a": 1}, {"b": 2}, {"a": 3}).($k))
+        """;
+    final var result = query(query);
+    assertEquals("1 3 1 3", result);
+  }
+
   @Test
   public void renameObjectField() throws IOException {
     final String query = """
@@ -1409,6 +1437,58 @@ public final class JsonTest extends XQueryBaseTest {
     assertEquals("{\"height\":5.2,\"eyes\":\"blue\"}", result);
   }
 
+  @Test
+  public void projectedJsonDocument() throws IOException {
+    final var file = Files.createTempFile("projection", ".json");
+    try {
+      Files.writeString(file, """
+          [{"name":"a","age":1,"misc":{"x":[1,2]}},{"name":"b","age":2,"misc":"zzz"}]
+          """);
+      final var uri = file.toUri().toString();
+      final var names = query("for $r in json-doc('%s')[] where $r.age gt 1 return $r.name".formatted(uri));
+      assertEquals("b", names);
+      final var count = query("count(jn:collection('%s')[])".formatted(uri));
+      assertEquals("2", count);
+      final var nested = query("json-doc('%s')[].misc.x".formatted(uri));
+      assertEquals("[1,2]", nested);
+
+      final var collection = (StreamingJsonCollection) ctx.getJsonItemStore().lookup(uri);
+      final var view = collection.project(JsonProjection.of("name", JsonProjection.ALL));
+      final var records = (Array) view.getDocument();
+      assertEquals(2, records.len());
+      assertEquals(1, ((io.brackit.query.jdm.json.Object) records.at(1)).len());
+      final var complete = query("json-doc('%s')[[1]]".formatted(uri));
+      assertEquals("{\"name\":\"b\",\"age\":2,\"misc\":\"zzz\"}", complete);
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  public void streamedCollectionKeepsDocuments() throws IOException {
+    final var file = Files.createTempFile("collection", ".jsonl");
+    Files.writeString(file, """
+        {"a":1}
+        {"a":2}
+        """);
+    final var uri = file.toUri().toString();
+    final var collection = (StreamingJsonCollection) ctx.getJsonItemStore().lookup(uri);
+    assertEquals(Statistics.UNKNOWN, collection.getEstimatedDocumentCount());
+    final JsonItem first;
+    try (final var docs = collection.getDocuments()) {
+      first = docs.next();
+    }
+    assertEquals(2, collection.getDocumentCount());
+    assertEquals(2, collection.getEstimatedDocumentCount());
+    try (final var docs = collection.getDocuments()) {
+      assertSame(first, docs.next());
+      assertNotNull(docs.next());
+      assertNull(docs.next());
+    } finally {
+      Files.delete(file);
+    }
+  }
+
   private String query(final String query) throws IOException {
     try (final var out = new ByteArrayOutputStream()) {
       new Query(query).serialize(ctx, new PrintStream(out));
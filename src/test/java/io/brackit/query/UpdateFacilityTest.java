@@ -27,6 +27,12 @@
  */
 package io.brackit.query;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
 import io.brackit.query.atomic.QNm;
 import io.brackit.query.atomic.Str;
 import io.brackit.query.atomic.Una;
@@ -34,8 +40,13 @@ import io.brackit.query.jdm.DocumentException;
 import io.brackit.query.jdm.Kind;
 import io.brackit.query.jdm.Sequence;
 import io.brackit.query.jdm.node.Node;
+import io.brackit.query.node.d2linked.D2NodeBuilder;
+import io.brackit.query.node.d2linked.D2NodeCollection;
 import io.brackit.query.node.parser.DocumentParser;
 import io.brackit.query.sequence.ItemSequence;
+import io.brackit.query.update.op.BatchUpdatable;
+import io.brackit.query.update.op.OpType;
+import io.brackit.query.update.op.UpdateOp;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -144,6 +155,46 @@ public class UpdateFacilityTest extends XQueryBaseTest {
     ResultChecker.dCheck(new ItemSequence(a1, a2), res, false);
   }
 
+  @Test
+  public void duplicateRenameTarget() {
+    ctx.setContextItem(doc);
+    try {
+      new Query("for $i in 1 to 2 return rename node $$/a/c as 'd'").execute(ctx);
+      fail("duplicate rename target not detected");
+    } catch (QueryException e) {
+      assertEquals(ErrorCode.ERR_UPDATE_DUPLICATE_RENAME_TARGET, e.getCode());
+    }
+  }
+
+  @Test
+  public void batchedUpdates() {
+    List<List<UpdateOp>> batches = new ArrayList<>();
+    class BatchCollection extends D2NodeCollection implements BatchUpdatable {
+      BatchCollection() {
+        super("batch.xml");
+      }
+
+      @Override
+      public void applyBatch(List<UpdateOp> ops) {
+        batches.add(ops);
+        ops.forEach(UpdateOp::apply);
+      }
+    }
+    D2NodeBuilder builder = new D2NodeBuilder(new BatchCollection());
+    new DocumentParser(DOCUMENT).parse(builder);
+    ctx.setContextItem(builder.root());
+    new Query("(for $b in $$//b return rename node $b as 'x', delete node $$/a/c)").execute(ctx);
+    assertEquals(2, batches.size());
+    assertEquals(2, batches.get(0).size());
+    assertEquals(OpType.RENAME, batches.get(0).get(0).getType());
+    assertEquals(OpType.DELETE, batches.get(1).get(0).getType());
+    Node<?> a = orig.getFirstChild();
+    a.getLastChild().delete();
+    a.getFirstChild().getLastChild().setName(new QNm("x"));
+    a.getFirstChild().setName(new QNm("x"));
+    ResultChecker.dCheck(orig, builder.root(), false);
+  }
+
   @Override
   @Before
   public void setUp() throws Exception {
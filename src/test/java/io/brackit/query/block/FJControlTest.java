@@ -0,0 +1,176 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.block;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import io.brackit.query.BrackitQueryContext;
+import io.brackit.query.QueryContext;
+import io.brackit.query.QueryException;
+import io.brackit.query.Tuple;
+import io.brackit.query.atomic.Int32;
+import io.brackit.query.atomic.QNm;
+import io.brackit.query.expr.BlockExpr;
+import io.brackit.query.expr.RangeExpr;
+import io.brackit.query.expr.BoundVariable;
+import io.brackit.query.jdm.Expr;
+import io.brackit.query.jdm.Item;
+import io.brackit.query.jdm.Sequence;
+import io.brackit.query.operator.TupleImpl;
+import org.junit.Test;
+
+public class FJControlTest {
+
+  @Test
+  public void resizeKeepsRunningQueriesAlive() {
+    FJControl old = FJControl.getDefault();
+    assertTrue(old.acquire());
+    FJControl.resizePool(FJControl.POOL_SIZE);
+    assertNotSame(old, FJControl.getDefault());
+    // still usable by the registered evaluation
+    assertTrue(old.acquire());
+    old.release();
+    old.release();
+    // shut down once the last evaluation finished
+    assertFalse(old.acquire());
+  }
+
+  @Test
+  public void dedicatedControl() {
+    FJControl control = new FJControl(2, FJControl.PERMITS);
+    try {
+      BrackitQueryContext ctx = new BrackitQueryContext();
+      ctx.setFJControl(control);
+      ForBind forBind = new ForBind(new RangeExpr(new Int32(1), new Int32(10000)), false);
+      forBind.bindVariable(true);
+      Sequence res = new BlockExpr(forBind, new BoundVariable(new QNm("x"), 0), true).evaluate(ctx, new TupleImpl());
+      assertEquals(10000, res.size().intValue());
+    } finally {
+      control.retire();
+    }
+    assertFalse(control.acquire());
+  }
+
+  @Test
+  public void blocksUseAcquiredControl() {
+    FJControl control = new FJControl(2, FJControl.PERMITS);
+    FJControl[] created = new FJControl[1];
+    try {
+      BrackitQueryContext ctx = new BrackitQueryContext();
+      ctx.setFJControl(control);
+      ForBind forBind = new ForBind(new RangeExpr(new Int32(1), new Int32(10000)), false);
+      forBind.bindVariable(true);
+      Block block = new Block() {
+        @Override
+        public Sink create(QueryContext ctx, FJControl control, Sink sink) throws QueryException {
+          created[0] = control;
+          // replacing the resources of the context must not affect the evaluation
+          ((BrackitQueryContext) ctx).setFJControl(null);
+          return forBind.create(ctx, control, sink);
+        }
+
+        @Override
+        public int outputWidth(int inputWidth) {
+          return forBind.outputWidth(inputWidth);
+        }
+      };
+      Sequence res = new BlockExpr(block, new BoundVariable(new QNm("x"), 0), true).evaluate(ctx, new TupleImpl());
+      assertEquals(10000, res.size().intValue());
+      assertSame(control, created[0]);
+    } finally {
+      control.retire();
+    }
+    assertFalse(control.acquire());
+  }
+
+  @Test
+  public void saturatingQueryDoesNotBlockConcurrentQuery() throws Exception {
+    FJControl control = new FJControl(2, FJControl.PERMITS, true, null);
+    CountDownLatch saturated = new CountDownLatch(2);
+    CountDownLatch done = new CountDownLatch(1);
+    // occupies every worker that evaluates it until the latch is released
+    Expr blocking = new Expr() {
+      @Override
+      public Sequence evaluate(QueryContext ctx, Tuple tuple) {
+        saturated.countDown();
+        try {
+          done.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return Int32.ONE;
+      }
+
+      @Override
+      public Item evaluateToItem(QueryContext ctx, Tuple tuple) {
+        return (Item) evaluate(ctx, tuple);
+      }
+
+      @Override
+      public boolean isUpdating() {
+        return false;
+      }
+
+      @Override
+      public boolean isVacuous() {
+        return false;
+      }
+    };
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<Sequence> heavy = executor.submit(() -> count(control, blocking));
+      assertTrue(saturated.await(10, TimeUnit.SECONDS));
+      Future<Sequence> light = executor.submit(() -> count(control, new BoundVariable(new QNm("x"), 0)));
+      assertEquals(10000, light.get(10, TimeUnit.SECONDS).size().intValue());
+      done.countDown();
+      assertEquals(10000, heavy.get(10, TimeUnit.SECONDS).size().intValue());
+    } finally {
+      done.countDown();
+      executor.shutdown();
+      control.retire();
+    }
+  }
+
+  private static Sequence count(FJControl control, Expr returnExpr) {
+    BrackitQueryContext ctx = new BrackitQueryContext();
+    ctx.setFJControl(control);
+    ForBind forBind = new ForBind(new RangeExpr(new Int32(1), new Int32(10000)), false);
+    forBind.bindVariable(true);
+    return new BlockExpr(forBind, returnExpr, false).evaluate(ctx, new TupleImpl());
+  }
+}
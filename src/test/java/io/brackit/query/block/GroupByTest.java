@@ -0,0 +1,136 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.block;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import io.brackit.query.BrackitQueryContext;
+import io.brackit.query.QueryContext;
+import io.brackit.query.QueryException;
+import io.brackit.query.Tuple;
+import io.brackit.query.atomic.Int32;
+import io.brackit.query.atomic.Str;
+import io.brackit.query.expr.BlockExpr;
+import io.brackit.query.expr.RangeExpr;
+import io.brackit.query.expr.SequenceExpr;
+import io.brackit.query.jdm.Expr;
+import io.brackit.query.jdm.Item;
+import io.brackit.query.jdm.Iter;
+import io.brackit.query.jdm.Sequence;
+import io.brackit.query.operator.TupleImpl;
+import io.brackit.query.util.ExprUtil;
+import io.brackit.query.util.aggregator.Aggregate;
+import org.junit.Test;
+
+public class GroupByTest {
+
+  private static final int GROUPS = 5000;
+
+  @Test
+  public void hashGroupBy() {
+    checkGroups(runGroupBy(Aggregate.SINGLE, -1), "3/1");
+  }
+
+  @Test
+  public void spillingHashGroupBy() {
+    checkGroups(runGroupBy(Aggregate.SINGLE, 16 * 1024), "3/1");
+  }
+
+  @Test
+  public void spillingHashGroupByWithSequences() {
+    checkGroups(runGroupBy(Aggregate.SEQUENCE, 16 * 1024), "3/3");
+  }
+
+  private static void checkGroups(Map<Integer, String> groups, String expected) {
+    assertEquals(GROUPS, groups.size());
+    for (int i = 1; i <= GROUPS; i++) {
+      assertEquals(expected, groups.get(i));
+    }
+  }
+
+  private static Map<Integer, String> runGroupBy(Aggregate defaultAgg, long maxSize) {
+    long oldMaxSize = GroupBy.MAX_SIZE;
+    int oldPartitions = GroupBy.PARTITIONS;
+    GroupBy.MAX_SIZE = maxSize;
+    GroupBy.PARTITIONS = 4;
+    try {
+      ForBind letters = new ForBind(new SequenceExpr(new Str("a"), new Str("b"), new Str("c")), false);
+      ForBind numbers = new ForBind(new RangeExpr(new Int32(1), new Int32(GROUPS)), false);
+      letters.bindVariable(true);
+      numbers.bindVariable(true);
+      GroupBy groupBy = new GroupBy(defaultAgg, new Aggregate[] { Aggregate.COUNT }, 1, false);
+      groupBy.group(0).setPos(1);
+      groupBy.aggregate(0).setPos(0);
+      Block block = new BlockChain(new Block[] { letters, numbers, groupBy });
+      Sequence res = new BlockExpr(block, new GroupExpr(), false).evaluate(new BrackitQueryContext(), new TupleImpl());
+
+      Map<Integer, String> groups = new HashMap<>();
+      try (Iter it = res.iterate()) {
+        Item item;
+        while ((item = it.next()) != null) {
+          String[] group = item.toString().split(":");
+          groups.put(Integer.valueOf(group[0]), group[1]);
+        }
+      }
+      return groups;
+    } finally {
+      GroupBy.MAX_SIZE = oldMaxSize;
+      GroupBy.PARTITIONS = oldPartitions;
+    }
+  }
+
+  /**
+   * Returns "key:count/letters" for each group, where letters is the size of
+   * the aggregated letter binding.
+   */
+  private static class GroupExpr implements Expr {
+    @Override
+    public Sequence evaluate(QueryContext ctx, Tuple t) throws QueryException {
+      Sequence letters = t.get(0);
+      return new Str(t.get(1) + ":" + t.get(2) + "/" + letters.size());
+    }
+
+    @Override
+    public Item evaluateToItem(QueryContext ctx, Tuple t) throws QueryException {
+      return ExprUtil.asItem(evaluate(ctx, t));
+    }
+
+    @Override
+    public boolean isUpdating() {
+      return false;
+    }
+
+    @Override
+    public boolean isVacuous() {
+      return false;
+    }
+  }
+}
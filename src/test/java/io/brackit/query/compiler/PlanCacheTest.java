@@ -0,0 +1,158 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import io.brackit.query.BrackitQueryContext;
+import io.brackit.query.Query;
+import io.brackit.query.atomic.Int32;
+import io.brackit.query.atomic.QNm;
+import io.brackit.query.atomic.Str;
+import io.brackit.query.compiler.optimizer.DefaultOptimizer;
+import io.brackit.query.jdm.StatisticsProvider;
+import io.brackit.query.jsonitem.SimpleJsonStore;
+import io.brackit.query.module.Module;
+import io.brackit.query.node.SimpleNodeStore;
+import org.junit.Test;
+
+public class PlanCacheTest {
+
+  @Test
+  public void reuseModule() {
+    PlanCache cache = new PlanCache(2);
+    Module m1 = cache.compile(new CompileChain(), "1 + 1");
+    Module m2 = cache.compile(new CompileChain(), "1 + 1");
+    assertSame(m1, m2);
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+    assertNotSame(m1, cache.compile(new CompileChain(new AnyURIResolver()), "1 + 1"));
+  }
+
+  @Test
+  public void evictLeastRecentlyUsed() {
+    PlanCache cache = new PlanCache(2);
+    Module a = cache.compile(new CompileChain(), "1");
+    cache.compile(new CompileChain(), "2");
+    cache.compile(new CompileChain(), "1");
+    cache.compile(new CompileChain(), "3");
+    assertEquals(2, cache.size());
+    assertSame(a, cache.compile(new CompileChain(), "1"));
+    cache.compile(new CompileChain(), "2");
+    assertEquals(4, cache.getMisses());
+  }
+
+  @Test
+  public void bindPerExecution() {
+    PlanCache cache = new PlanCache(2);
+    String query = "declare context item external := 10; declare variable $x external; concat($x, '/', string())";
+    for (int i = 0; i < 3; i++) {
+      BrackitQueryContext ctx = new BrackitQueryContext();
+      ctx.bind(new QNm("x"), new Int32(i));
+      Query q = new Query(cache, new CompileChain(), query);
+      assertEquals(new Str(i + "/10"), q.evaluate(ctx));
+    }
+    BrackitQueryContext ctx = new BrackitQueryContext();
+    ctx.bind(new QNm("x"), new Int32(1));
+    ctx.setContextItem(new Int32(5));
+    assertEquals(new Str("1/5"), new Query(cache, new CompileChain(), query).evaluate(ctx));
+    assertEquals(3, cache.getHits());
+  }
+
+  @Test
+  public void recompileOnChangedSettings() {
+    PlanCache cache = new PlanCache(2);
+    Module m1 = cache.compile(new CompileChain(), "1 + 1");
+    boolean topK = DefaultOptimizer.TOP_K;
+    DefaultOptimizer.TOP_K = !topK;
+    try {
+      assertNotSame(m1, cache.compile(new CompileChain(), "1 + 1"));
+    } finally {
+      DefaultOptimizer.TOP_K = topK;
+    }
+    assertSame(m1, cache.compile(new CompileChain(), "1 + 1"));
+  }
+
+  @Test
+  public void recompileOnChangedStatistics() {
+    long[] count = { 10 };
+    StatisticsProvider statistics = name -> () -> count[0];
+    CompileChain chain = new CompileChain() {
+      @Override
+      protected StatisticsProvider getStatistics() {
+        return statistics;
+      }
+    };
+    boolean unnest = DefaultOptimizer.UNNEST;
+    boolean joinDetection = DefaultOptimizer.JOIN_DETECTION;
+    boolean joinOrdering = DefaultOptimizer.JOIN_ORDERING;
+    // join ordering looks up the statistics
+    DefaultOptimizer.UNNEST = true;
+    DefaultOptimizer.JOIN_DETECTION = true;
+    DefaultOptimizer.JOIN_ORDERING = true;
+    try {
+      PlanCache cache = new PlanCache(2);
+      String query = "for $a in collection('a') for $b in collection('b') where $a/@id = $b/@id return $a";
+      Module m1 = cache.compile(chain, query);
+      count[0] = 15;
+      assertSame(m1, cache.compile(chain, query));
+      count[0] = 1000;
+      Module m2 = cache.compile(chain, query);
+      assertNotSame(m1, m2);
+      assertSame(m2, cache.compile(chain, query));
+    } finally {
+      DefaultOptimizer.UNNEST = unnest;
+      DefaultOptimizer.JOIN_DETECTION = joinDetection;
+      DefaultOptimizer.JOIN_ORDERING = joinOrdering;
+    }
+  }
+
+  @Test
+  public void reuseModuleForContextsOverSameStores() {
+    SimpleNodeStore nodeStore = new SimpleNodeStore();
+    SimpleJsonStore jsonStore = new SimpleJsonStore();
+    PlanCache cache = new PlanCache(2);
+    String query = "for $a in jn:collection('a') for $b in jn:collection('b') where $a.id eq $b.id return $a";
+    Module m1 = cache.compile(chain(new BrackitQueryContext(nodeStore, jsonStore)), query);
+    Module m2 = cache.compile(chain(new BrackitQueryContext(nodeStore, jsonStore)), query);
+    assertSame(m1, m2);
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.size());
+  }
+
+  private static CompileChain chain(BrackitQueryContext ctx) {
+    CompileChain chain = new CompileChain();
+    chain.setStatistics(ctx.getStatistics());
+    return chain;
+  }
+
+  private static class AnyURIResolver extends BaseResolver {
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.compiler.optimizer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Map;
+
+import io.brackit.query.atomic.Int32;
+import io.brackit.query.atomic.QNm;
+import io.brackit.query.atomic.Str;
+import io.brackit.query.compiler.AST;
+import io.brackit.query.compiler.XQ;
+import io.brackit.query.compiler.optimizer.CostModel.JoinAlgorithm;
+import io.brackit.query.jdm.Statistics;
+import io.brackit.query.module.Namespaces;
+import io.brackit.query.util.Cmp;
+import org.junit.Test;
+
+public class CostModelTest {
+
+  private static final Statistics PEOPLE = new Statistics() {
+    @Override
+    public long getEstimatedDocumentCount() {
+      return 5;
+    }
+
+    @Override
+    public long getPathFrequency(String path) {
+      return path.equals("//person") ? 2000 : UNKNOWN;
+    }
+
+    @Override
+    public long getDistinctValueCount(String path) {
+      return path.equals("//person/@id") ? 1000 : UNKNOWN;
+    }
+  };
+
+  private final CostModel costs = new CostModel(name -> name.equals("people") ? PEOPLE : null);
+
+  private static AST collection(String name) {
+    AST call = new AST(XQ.FunctionCall, new QNm(Namespaces.FN_NSURI, Namespaces.FN_PREFIX, "collection"));
+    call.addChild(new AST(XQ.Str, new Str(name)));
+    return call;
+  }
+
+  private static AST path(AST input, int axis, String name) {
+    AST path = new AST(XQ.PathExpr);
+    path.addChild(input);
+    AST step = new AST(XQ.StepExpr);
+    AST axisSpec = new AST(XQ.AxisSpec);
+    axisSpec.addChild(new AST(axis));
+    step.addChild(axisSpec);
+    AST test = new AST(XQ.NameTest);
+    test.addChild(new AST(XQ.QNm, new QNm(name)));
+    step.addChild(test);
+    path.addChild(step);
+    return path;
+  }
+
+  private static AST range(int from, int to) {
+    AST range = new AST(XQ.RangeExpr);
+    range.addChild(new AST(XQ.Int, new Int32(from)));
+    range.addChild(new AST(XQ.Int, new Int32(to)));
+    return range;
+  }
+
+  @Test
+  public void literalCardinalities() {
+    AST sequence = new AST(XQ.SequenceExpr);
+    sequence.addChild(new AST(XQ.Int, new Int32(1)));
+    sequence.addChild(range(1, 10));
+    assertEquals(11, costs.cardinality(sequence), 0);
+    assertEquals(100, costs.cardinality(range(1, 100)), 0);
+  }
+
+  @Test
+  public void collectionCardinalities() {
+    assertEquals(5, costs.cardinality(collection("people")), 0);
+    assertEquals(2000, costs.cardinality(path(collection("people"), XQ.DESCENDANT, "person")), 0);
+    assertEquals(CostModel.DEFAULT_CARDINALITY,
+                 costs.cardinality(path(collection("other"), XQ.DESCENDANT, "person")),
+                 0);
+  }
+
+  @Test
+  public void joinSelectivity() {
+    QNm p = new QNm("p");
+    Map<Object, AST> bindings = Map.of(p, path(collection("people"), XQ.DESCENDANT, "person"));
+    AST id = path(new AST(XQ.VariableRef, p), XQ.ATTRIBUTE, "id");
+    AST other = new AST(XQ.VariableRef, new QNm("q"));
+    assertEquals(1.0 / 1000, costs.equiJoinSelectivity(id, 2000, other, 10, bindings), 0);
+    assertEquals(1.0 / 2000, costs.equiJoinSelectivity(new AST(XQ.VariableRef, p), 2000, other, 10, bindings), 0);
+  }
+
+  @Test
+  public void joinAlgorithms() {
+    assertEquals(JoinAlgorithm.HASH, costs.joinAlgorithm(Cmp.eq, 1000, 1000));
+    assertEquals(JoinAlgorithm.SORT, costs.joinAlgorithm(Cmp.lt, 1000, 1000));
+    assertEquals(JoinAlgorithm.NESTED_LOOP, costs.joinAlgorithm(Cmp.eq, 1, 1000));
+  }
+}
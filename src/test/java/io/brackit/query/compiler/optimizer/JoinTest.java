@@ -27,11 +27,16 @@
  */
 package io.brackit.query.compiler.optimizer;
 
+import static org.junit.Assert.assertEquals;
+
 import io.brackit.query.XQueryBaseTest;
 import io.brackit.query.atomic.Int32;
+import io.brackit.query.atomic.Str;
+import io.brackit.query.jdm.Iter;
 import io.brackit.query.jdm.Sequence;
 import io.brackit.query.ResultChecker;
 import io.brackit.query.Query;
+import io.brackit.query.node.stream.ArrayStream;
 import io.brackit.query.sequence.ItemSequence;
 import org.junit.Before;
 import org.junit.Test;
@@ -124,6 +129,57 @@ public class JoinTest extends XQueryBaseTest {
     ResultChecker.dCheck(intSequence(3, 3, 4, 4, 6, 6), res);
   }
 
+  @Test
+  public void multiWayJoinInUnluckyOrder() {
+    // the clauses are reordered to avoid the cross product of $a and $c,
+    // but the result must keep the order of the query
+    Sequence res = new Query("for $a in (3,1,2,1) " + "for $c in (2,1,2) " + "for $b in (1,2,1,3) "
+        + "where $a eq $b and $b eq $c " + "return $c").execute(ctx);
+    ResultChecker.dCheck(intSequence(1, 1, 2, 2, 1, 1), res);
+  }
+
+  @Test
+  public void multiWayJoinInUnluckyOrderUnordered() {
+    Sequence res = new Query("declare ordering unordered; " + "count(for $a in (1 to 500) "
+        + "for $c in (1 to 500) " + "for $b in (1 to 500) " + "where $a eq $b and $b eq $c " + "return $a)").execute(
+        ctx);
+    ResultChecker.dCheck(new Int32(500), res);
+  }
+
+  @Test
+  public void joinOrderFollowsStoreStatistics() {
+    storeCollection("big", 200, 4, 0);
+    storeCollection("big2", 300, 5, 2000);
+    storeCollection("small", 2, 2, 1000);
+    String query = "declare ordering unordered; " + "for $a in jn:collection('big') "
+        + "for $b in jn:collection('big2') " + "for $c in jn:collection('small') "
+        + "where $a.k eq $c.k and $b.id eq $c.id + 1000 " + "return $c.id";
+    boolean joinOrdering = DefaultOptimizer.JOIN_ORDERING;
+    DefaultOptimizer.JOIN_ORDERING = true;
+    try {
+      // without statistics, the clauses keep their order
+      Iter it = new Query(query).execute(ctx).iterate();
+      assertEquals(new Int32(1000), it.next());
+      assertEquals(new Int32(1001), it.next());
+      it.close();
+      // with the statistics of the store, the small collection is joined first
+      it = new Query(ctx, query).execute(ctx).iterate();
+      assertEquals(new Int32(1000), it.next());
+      assertEquals(new Int32(1000), it.next());
+      it.close();
+    } finally {
+      DefaultOptimizer.JOIN_ORDERING = joinOrdering;
+    }
+  }
+
+  private void storeCollection(String name, int size, int keys, int firstId) {
+    Str[] docs = new Str[size];
+    for (int i = 0; i < size; i++) {
+      docs[i] = new Str("{\"k\": " + (i % keys) + ", \"id\": " + (firstId + i) + "}");
+    }
+    ctx.getJsonItemStore().createFromJsonStrings(name, new ArrayStream<>(docs));
+  }
+
   private Sequence intSequence(int... v) {
     Int32[] s = new Int32[v.length];
     for (int i = 0; i < v.length; i++) {
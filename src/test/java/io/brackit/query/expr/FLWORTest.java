@@ -28,6 +28,7 @@
 package io.brackit.query.expr;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import io.brackit.query.XQueryBaseTest;
@@ -212,6 +213,97 @@ public class FLWORTest extends XQueryBaseTest {
     ResultChecker.dCheck(ints, result);
   }
 
+  @Test
+  public void orderByWithSubsequence() throws Exception {
+    Sequence result = new Query(
+        "subsequence(for $a in (5, 3, 9, 1, 7) order by $a descending return $a, 2, 2)").execute(ctx);
+    ResultChecker.dCheck(intSequence(7, 5), result);
+  }
+
+  @Test
+  public void orderByWithPositionalFilter() throws Exception {
+    Sequence result = new Query("(for $a in (5, 3, 9, 1, 7) order by $a return $a)[position() le 3]").execute(ctx);
+    ResultChecker.dCheck(intSequence(1, 3, 5), result);
+  }
+
+  @Test
+  public void orderByWithCountLimit() throws Exception {
+    Sequence result = new Query(
+        "for $a in (5, 3, 9, 1, 7) order by $a count $c where $c lt 3 return $a").execute(ctx);
+    ResultChecker.dCheck(intSequence(1, 3), result);
+  }
+
+  @Test
+  public void orderByWithSubsequenceOfMultipleItems() throws Exception {
+    Sequence result = new Query(
+        "subsequence(for $a in (5, 3, 9) order by $a return ($a, $a), 1, 3)").execute(ctx);
+    ResultChecker.dCheck(intSequence(3, 3, 5), result);
+  }
+
+  @Test
+  public void parallelForExpr() throws Exception {
+    Sequence result = parallelQuery(
+        "declare option bit:parallel \"true\"; for $a in (1 to 5000) let $b := $a * 2 where $b > 9990 return $b").execute(
+        ctx);
+    ResultChecker.dCheck(intSequence(9992, 9994, 9996, 9998, 10000), result);
+  }
+
+  @Test
+  public void parallelGroupByWithOrderBy() throws Exception {
+    Sequence result = parallelQuery(
+        "declare option bit:parallel \"true\"; for $a in (1 to 3000) let $k := $a mod 3 group by $k order by $k descending return count($a)").execute(
+        ctx);
+    ResultChecker.dCheck(intSequence(1000, 1000, 1000), result);
+  }
+
+  @Test
+  public void parallelIllegalOrderByOnMixedData() throws Exception {
+    try {
+      parallelQuery("declare option bit:parallel \"true\"; for $a in ('1aha', 19, 4) order by $a return $a").execute(ctx);
+      fail("No error thrown despite illegal conversion.");
+    } catch (QueryException e) {
+      assertEquals(ErrorCode.ERR_TYPE_INAPPROPRIATE_TYPE, e.getCode());
+    }
+  }
+
+  @Test
+  public void parallelErrorInForBody() throws Exception {
+    try {
+      parallelQuery("declare option bit:parallel \"true\"; for $i in 1 to 3 return error()").execute(ctx);
+      fail("No error thrown despite call of fn:error().");
+    } catch (QueryException e) {
+      assertEquals(ErrorCode.ERR_UNIDENTIFIED_ERROR, e.getCode());
+    }
+  }
+
+  @Test
+  public void parallelDivisionByZeroInForBody() throws Exception {
+    try {
+      parallelQuery("declare option bit:parallel \"true\"; for $i in 1 to 3 let $x := 1 idiv 0 return $x").execute(ctx);
+      fail("No error thrown despite division by zero.");
+    } catch (QueryException e) {
+      assertEquals(ErrorCode.ERR_DIVISION_BY_ZERO, e.getCode());
+    }
+  }
+
+  @Test
+  public void parallelErrorInForkedForBody() throws Exception {
+    try {
+      parallelQuery(
+          "declare option bit:parallel \"true\"; for $i in 1 to 5000 let $x := 1 idiv ($i - 4000) return $x").execute(
+          ctx);
+      fail("No error thrown despite division by zero.");
+    } catch (QueryException e) {
+      assertEquals(ErrorCode.ERR_DIVISION_BY_ZERO, e.getCode());
+    }
+  }
+
+  private static Query parallelQuery(String query) {
+    Query q = new Query(query);
+    assertTrue(q.getModule().getBody() instanceof BlockExpr);
+    return q;
+  }
+
   @Test
   public void forWithIllegalOrderByOnMixedData() throws Exception {
     try {
@@ -81,6 +81,21 @@ public class PathExprTest extends XQueryBaseTest {
     ResultChecker.dCheck(documentNode.getFirstChild().getFirstChild(), result);
   }
 
+  @Test
+  public void nestedDescendantStepsPathExpr() {
+    Sequence result = new Query(
+        "let $d := <r><a><x><b><c i='1'/></b><a><b><c i='2'/></b></a></x></a><b><c i='3'/></b></r> "
+            + "return $d//a//b/c/@i/string()").execute(ctx);
+    ResultChecker.dCheck(new ItemSequence(new Str("1"), new Str("2")), result);
+  }
+
+  @Test
+  public void nestedDescendantStepsOverlappingContextPathExpr() {
+    Sequence result = new Query("let $d := <r><a><a><b/></a></a></r> return count(($d, $d/a, $d/a/a)//a//b)").execute(
+        ctx);
+    ResultChecker.dCheck(new Int32(1), result);
+  }
+
   // @Test
   // public void checkSingleDesc() throws Exception {
   // Sequence result = new XQuery("(<a><b/><b/><b/></a>)//b").execute(ctx);
@@ -35,10 +35,12 @@ import io.brackit.query.jdm.node.Node;
 import io.brackit.query.jdm.node.NodeCollection;
 import io.brackit.query.node.parser.DocumentParser;
 import io.brackit.query.sequence.ItemSequence;
+import io.brackit.query.util.Regex;
 import org.junit.Before;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public class FnTest extends XQueryBaseTest {
@@ -581,6 +583,25 @@ public class FnTest extends XQueryBaseTest {
     ResultChecker.dCheck(Bool.TRUE, result);
   }
 
+  @Test
+  public void fnMatchesLiteralPatternIsPrecompiled() {
+    long lookups = Regex.getCacheHits() + Regex.getCacheMisses();
+    Sequence result = new Query("for $s in ('a1', 'b2', 'x3') return fn:matches($s, '^[a-c]\\d$', 'i')").execute(ctx);
+    ResultChecker.dCheck(new ItemSequence(Bool.TRUE, Bool.TRUE, Bool.FALSE), result);
+    // pattern is compiled once by the compiler
+    assertEquals(lookups + 1, Regex.getCacheHits() + Regex.getCacheMisses());
+  }
+
+  @Test
+  public void fnMatchesDynamicPatternIsCached() {
+    long misses = Regex.getCacheMisses();
+    Sequence result = new Query("for $s in ('a1', 'b2', 'x3') "
+                                    + "return fn:matches($s, concat('^[a-c]', substring($s, 3), '\\d$'))").execute(ctx);
+    ResultChecker.dCheck(new ItemSequence(Bool.TRUE, Bool.TRUE, Bool.FALSE), result);
+    // the pattern is compiled at most once
+    assertTrue(Regex.getCacheMisses() <= misses + 1);
+  }
+
   @Test
   public void fnMatchesSimple2() {
     Sequence result = new Query("fn:matches('abracadabra', '^a.*a$')").execute(ctx);
@@ -1455,6 +1476,50 @@ public class FnTest extends XQueryBaseTest {
     ResultChecker.dCheck(Bool.FALSE, result);
   }
 
+  @Test
+  public void fnDistinctValuesMixedTypes() {
+    Sequence result = new Query(
+        "distinct-values((1, 2.0, 1e0, 'a', xs:untypedAtomic('a'), 0.5, 0.5e0, xs:decimal('3.0'), 3, 'b'))").execute(ctx);
+    ResultChecker.dCheck(new ItemSequence(new Int32(1), new Dec("2.0"), new Str("a"), new Dec("0.5"), new Dec("3.0"),
+                                          new Str("b")), result);
+  }
+
+  @Test
+  public void fnDistinctValuesPromotedNumerics() {
+    Sequence result = new Query(
+        "(count(distinct-values((0.1, 0.1e0))), count(distinct-values((100000000000000000000, 1e20))), "
+            + "count(distinct-values((-0e0, 0))), count(distinct-values((0.1, 0.10000000000000000001))))").execute(ctx);
+    ResultChecker.dCheck(new ItemSequence(new Int32(1), new Int32(1), new Int32(1), new Int32(2)), result);
+  }
+
+  @Test
+  public void fnDistinctValuesPromotedNumericsSpilled() {
+    int maxSize = Distinct.MAX_SIZE;
+    Distinct.MAX_SIZE = 10;
+    try {
+      Sequence result = new Query(
+          "count(distinct-values((for $i in 1 to 100 return $i div 10, for $i in 1 to 100 return xs:double($i div 10))))")
+          .execute(ctx);
+      ResultChecker.dCheck(new Int32(100), result);
+    } finally {
+      Distinct.MAX_SIZE = maxSize;
+    }
+  }
+
+  @Test
+  public void fnDistinctValuesSpilled() {
+    int maxSize = Distinct.MAX_SIZE;
+    Distinct.MAX_SIZE = 10;
+    try {
+      Sequence result = new Query(
+          "let $d := distinct-values(for $i in 1 to 5000 return ($i mod 700, string($i mod 300))) "
+              + "return (count($d), sum(for $v in $d where $v instance of xs:integer return $v))").execute(ctx);
+      ResultChecker.dCheck(new ItemSequence(new Int32(1000), new Int32(244650)), result);
+    } finally {
+      Distinct.MAX_SIZE = maxSize;
+    }
+  }
+
   @Override
   @Before
   public void setUp() throws Exception {
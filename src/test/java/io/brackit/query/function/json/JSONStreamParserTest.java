@@ -0,0 +1,132 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.function.json;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import io.brackit.query.QueryException;
+import io.brackit.query.atomic.QNm;
+import io.brackit.query.atomic.Str;
+import io.brackit.query.jdm.Item;
+import io.brackit.query.jdm.json.Object;
+import io.brackit.query.util.serialize.StringSerializer;
+import org.junit.Test;
+
+public class JSONStreamParserTest {
+
+  private static String serialize(Item item) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (StringSerializer serializer = new StringSerializer(new PrintStream(out, true, UTF_8))) {
+      serializer.setFormat(false);
+      serializer.serialize(item);
+    }
+    return out.toString(UTF_8);
+  }
+
+  private static JSONStreamParser parser(String json) {
+    return new JSONStreamParser(new ByteArrayInputStream(json.getBytes(UTF_8)));
+  }
+
+  @Test
+  public void jsonLines() {
+    try (JSONStreamParser parser = parser("{\"a\":1}\n{\"a\":[true,null,2.5]}\r\n\n[1e3]\n")) {
+      assertEquals(serialize(new JSONParser("{\"a\":1}").parse()), serialize(parser.next()));
+      assertEquals(serialize(new JSONParser("{\"a\":[true,null,2.5]}").parse()), serialize(parser.next()));
+      assertEquals(serialize(new JSONParser("[1e3]").parse()), serialize(parser.next()));
+      assertNull(parser.next());
+    }
+  }
+
+  @Test
+  public void concatenatedDocuments() {
+    try (JSONStreamParser parser = parser("{}[]\"x\"{\"b\":{\"c\":-7}} 42")) {
+      int count = 0;
+      while (parser.next() != null) {
+        count++;
+      }
+      assertEquals(5, count);
+    }
+  }
+
+  @Test
+  public void stringsMatchJSONParser() {
+    String json = "{\"k\\\"ey\":\"line\\nbreak \\/ ü€😀\"}";
+    try (JSONStreamParser parser = parser(json)) {
+      Object expected = (Object) new JSONParser(json).parse();
+      Object actual = (Object) parser.next();
+      assertEquals(expected.name(0), actual.name(0));
+      assertEquals(((Str) expected.value(0)).stringValue(), ((Str) actual.value(0)).stringValue());
+    }
+  }
+
+  @Test
+  public void largeInputSpansBuffers() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 20000; i++) {
+      sb.append("{\"id\":").append(i).append(",\"name\":\"näme").append(i).append("\"}\n");
+    }
+    try (JSONStreamParser parser = parser(sb.toString())) {
+      Item item = null;
+      int count = 0;
+      for (Item next; (next = parser.next()) != null; item = next) {
+        count++;
+      }
+      assertEquals(20000, count);
+      assertEquals("näme19999", ((Str) ((Object) item).get(new QNm("name"))).stringValue());
+    }
+  }
+
+  @Test
+  public void projectionSkipsUnusedFields() {
+    String json = "{\"id\":1,\"tags\":[\"a\",{\"x\":\"]}\\\"\"}],\"user\":{\"name\":\"n\",\"bio\":{\"long\":[1,2]}},"
+        + "\"items\":[{\"v\":1,\"w\":true},{\"w\":null}],\"n\":-1.5e3}";
+    JsonProjection projection = JsonProjection.none()
+                                              .keep(List.of("id"))
+                                              .keep(List.of("user", "name"))
+                                              .keep(List.of("items", "v"));
+    try (JSONStreamParser parser = new JSONStreamParser(new ByteArrayInputStream(json.getBytes(UTF_8)),
+                                                        projection)) {
+      assertEquals("{\"id\":1,\"user\":{\"name\":\"n\"},\"items\":[{\"v\":1},{}]}", serialize(parser.next()));
+      assertNull(parser.next());
+    }
+  }
+
+  @Test(expected = QueryException.class)
+  public void syntaxError() {
+    try (JSONStreamParser parser = parser("{\"a\" 1}")) {
+      parser.next();
+    }
+  }
+}
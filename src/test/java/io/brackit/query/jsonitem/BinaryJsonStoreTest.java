@@ -0,0 +1,157 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.jsonitem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+
+import io.brackit.query.BrackitQueryContext;
+import io.brackit.query.Query;
+import io.brackit.query.QueryContext;
+import io.brackit.query.atomic.Int32;
+import io.brackit.query.atomic.QNm;
+import io.brackit.query.jdm.DocumentException;
+import io.brackit.query.jdm.json.JsonItem;
+import io.brackit.query.jdm.json.Object;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BinaryJsonStoreTest {
+
+  private Path dir;
+
+  @Before
+  public void setUp() throws Exception {
+    dir = Files.createTempDirectory("bjs");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    try (var files = Files.walk(dir)) {
+      files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+    }
+  }
+
+  private static String query(BinaryJsonStore store, String query) {
+    QueryContext ctx = new BrackitQueryContext(store);
+    ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    try (PrintStream out = new PrintStream(buf, true, StandardCharsets.UTF_8)) {
+      new Query(query).serialize(ctx, out);
+    }
+    return buf.toString(StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void storeAndReopen() throws Exception {
+    query(new BinaryJsonStore(dir),
+          "jn:store('mycoll', ({\"a\": 1, \"b\": [true, null, 2.5, \"x\"]}, [-7, 12345678901, {}]))");
+    query(new BinaryJsonStore(dir), "jn:store('mycoll', {\"a\": 2, \"c\": \"\u00e4\"}, false())");
+
+    BinaryJsonStore store = new BinaryJsonStore(dir);
+    assertEquals(3, store.lookup("mycoll").getDocumentCount());
+    assertEquals("{\"a\":1,\"b\":[true,null,2.5,\"x\"]} [-7,12345678901,{}]",
+                 query(store, "jn:collection('mycoll')[position() < 3]"));
+    assertEquals("true", query(store, "jn:collection('mycoll')[3].c eq '\u00e4'"));
+    assertEquals("3", query(store, "sum(for $d in jn:collection('mycoll') where $d instance of object() return $d.a)"));
+  }
+
+  @Test
+  public void storeAndReopenFloat() throws Exception {
+    query(new BinaryJsonStore(dir), "jn:store('mycoll', {\"f\": xs:float(-1.5), \"g\": [xs:float('INF')]})");
+
+    BinaryJsonStore store = new BinaryJsonStore(dir);
+    assertEquals("true", query(store, "jn:collection('mycoll').f instance of xs:float"));
+    assertEquals("-1.5 INF", query(store, "let $d := jn:collection('mycoll') return ($d.f, $d.g[[0]])"));
+  }
+
+  @Test
+  public void loadAllResources() throws Exception {
+    Path a = dir.resolve("a.json");
+    Path b = dir.resolve("b.json");
+    Files.writeString(a, "{\"n\": 1}");
+    Files.writeString(b, "{\"n\": 2}");
+    query(new BinaryJsonStore(dir), "jn:load('files', ('" + a.toUri() + "', '" + b.toUri() + "'))");
+    assertEquals("1 2", query(new BinaryJsonStore(dir), "jn:collection('files').n"));
+  }
+
+  @Test
+  public void syncOnClose() throws Exception {
+    try (BinaryJsonStore store = new BinaryJsonStore(dir)) {
+      query(store, "jn:store('mycoll', {\"a\": 1})");
+      query(store, "jn:store('mycoll', ({\"a\": 2}, {\"a\": 3}), false())");
+    }
+    try (BinaryJsonStore store = new BinaryJsonStore(dir)) {
+      assertEquals("1 2 3", query(store, "jn:collection('mycoll').a"));
+    }
+  }
+
+  @Test
+  public void recreateOpenCollection() throws Exception {
+    try (BinaryJsonStore store = new BinaryJsonStore(dir)) {
+      query(store, "jn:store('mycoll', ({\"a\": 1}, {\"a\": 2}))");
+      BinaryJsonCollection old = (BinaryJsonCollection) store.lookup("mycoll");
+      assertEquals("1 2", query(store, "jn:collection('mycoll').a"));
+      query(store, "jn:store('mycoll', {\"a\": 3})");
+      // the old collection is closed, but its mapped documents stay readable
+      try (var docs = old.getDocuments()) {
+        JsonItem doc = docs.next();
+        assertEquals(new Int32(1), ((Object) doc).get(new QNm("a")));
+      }
+      try {
+        old.add("{}");
+        fail("closed collection accepted a document");
+      } catch (DocumentException expected) {
+        // ok
+      }
+      assertEquals("3", query(store, "jn:collection('mycoll').a"));
+    }
+  }
+
+  @Test
+  public void ignoreIncompleteDocument() throws Exception {
+    query(new BinaryJsonStore(dir), "jn:store('mycoll', ({\"a\": 1}, {\"a\": 2}))");
+    Path data = dir.resolve("mycoll" + BinaryJsonCollection.DATA_SUFFIX);
+    try (FileChannel channel = FileChannel.open(data, StandardOpenOption.WRITE)) {
+      channel.truncate(channel.size() - 1);
+    }
+    BinaryJsonStore store = new BinaryJsonStore(dir);
+    assertEquals(1, store.lookup("mycoll").getDocumentCount());
+    query(store, "jn:store('mycoll', {\"a\": 3}, false())");
+    assertEquals("1 3", query(new BinaryJsonStore(dir), "jn:collection('mycoll').a"));
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.jsonitem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.brackit.query.atomic.Int32;
+import io.brackit.query.atomic.QNm;
+import io.brackit.query.jdm.DocumentException;
+import io.brackit.query.jdm.Stream;
+import io.brackit.query.jdm.json.JsonItem;
+import io.brackit.query.jdm.json.Object;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StreamingJsonCollectionTest {
+
+  private Path first;
+
+  private Path second;
+
+  @Before
+  public void setUp() throws Exception {
+    first = Files.createTempFile("collection", ".jsonl");
+    Files.writeString(first, """
+        {"a":1}
+        {"a":2}
+        """);
+    second = Files.createTempFile("collection", ".jsonl");
+    Files.writeString(second, """
+        {"a":3}
+        """);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    Files.deleteIfExists(first);
+    Files.deleteIfExists(second);
+  }
+
+  private StreamingJsonCollection collection() {
+    StreamingJsonCollection collection = new StreamingJsonCollection("test");
+    collection.addSource(first.toUri());
+    collection.addSource(second.toUri());
+    return collection;
+  }
+
+  private static List<JsonItem> scan(StreamingJsonCollection collection) {
+    List<JsonItem> docs = new ArrayList<>();
+    try (Stream<? extends JsonItem> stream = collection.getDocuments()) {
+      JsonItem doc;
+      while ((doc = stream.next()) != null) {
+        docs.add(doc);
+      }
+    }
+    return docs;
+  }
+
+  private static void assertValues(List<JsonItem> docs, int... values) {
+    assertEquals(values.length, docs.size());
+    for (int i = 0; i < values.length; i++) {
+      assertEquals(new Int32(values[i]), ((Object) docs.get(i)).get(new QNm("a")));
+    }
+  }
+
+  @Test
+  public void reuseCachedDocuments() {
+    StreamingJsonCollection collection = collection();
+    List<JsonItem> docs = scan(collection);
+    assertValues(docs, 1, 2, 3);
+    List<JsonItem> again = scan(collection);
+    for (int i = 0; i < docs.size(); i++) {
+      assertSame(docs.get(i), again.get(i));
+    }
+  }
+
+  @Test
+  public void reparseEvictedDocuments() {
+    StreamingJsonCollection collection = collection();
+    List<JsonItem> docs = scan(collection);
+    collection.evict();
+    List<JsonItem> again = scan(collection);
+    assertValues(again, 1, 2, 3);
+    assertNotSame(docs.get(1), again.get(1));
+    assertEquals(3, collection.getDocumentCount());
+    // documents parsed again are cached as well
+    assertSame(again.get(2), scan(collection).get(2));
+  }
+
+  @Test
+  public void reparseEvictedDocumentsOfManySources() throws Exception {
+    StringBuilder json = new StringBuilder();
+    for (int i = 0; i < 2500; i++) {
+      json.append("{\"a\":").append(i).append("}\n");
+    }
+    Files.writeString(first, json);
+    StreamingJsonCollection collection = collection();
+    assertEquals(2501, collection.getDocumentCount());
+    collection.evict();
+    List<JsonItem> docs = scan(collection);
+    assertEquals(2501, docs.size());
+    for (int i = 0; i < 2500; i++) {
+      assertEquals(new Int32(i), ((Object) docs.get(i)).get(new QNm("a")));
+    }
+    assertEquals(new Int32(3), ((Object) docs.get(2500)).get(new QNm("a")));
+  }
+
+  @Test
+  public void reparseChangedSource() throws Exception {
+    StreamingJsonCollection collection = collection();
+    assertEquals(3, collection.getDocumentCount());
+    collection.evict();
+    Files.writeString(first, """
+        {"a":1}
+        """);
+    try (Stream<? extends JsonItem> stream = collection.getDocuments()) {
+      stream.next();
+      stream.next();
+      fail("Changed source not detected");
+    } catch (DocumentException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void retainDocuments() throws Exception {
+    boolean retain = StreamingJsonCollection.RETAIN;
+    StreamingJsonCollection.RETAIN = true;
+    StreamingJsonCollection collection;
+    try {
+      collection = collection();
+    } finally {
+      StreamingJsonCollection.RETAIN = retain;
+    }
+    List<JsonItem> docs = scan(collection);
+    collection.evict();
+    Files.delete(first);
+    Files.delete(second);
+    List<JsonItem> again = scan(collection);
+    assertEquals(docs.size(), again.size());
+    for (int i = 0; i < docs.size(); i++) {
+      assertSame(docs.get(i), again.get(i));
+    }
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.jsonitem.object;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import io.brackit.query.atomic.Int32;
+import io.brackit.query.atomic.QNm;
+import io.brackit.query.jdm.Sequence;
+import io.brackit.query.jdm.json.Object;
+import org.junit.Test;
+
+public class ShapedObjectTest {
+
+  private static Object create(String... fields) {
+    QNm[] names = new QNm[fields.length];
+    Sequence[] vals = new Sequence[fields.length];
+    for (int i = 0; i < fields.length; i++) {
+      names[i] = new QNm(fields[i]);
+      vals[i] = new Int32(i);
+    }
+    return ShapedObject.create(names, vals);
+  }
+
+  @Test
+  public void sameLayoutSharesShape() {
+    ShapedObject o1 = (ShapedObject) create("a", "b", "c");
+    ShapedObject o2 = (ShapedObject) create("a", "b", "c");
+    ShapedObject o3 = (ShapedObject) create("b", "a", "c");
+    assertSame(o1.shape(), o2.shape());
+    assertTrue(o1.shape() != o3.shape());
+    assertEquals(new Int32(1), o3.get(new QNm("a")));
+    assertNull(o3.get(new QNm("d")));
+  }
+
+  @Test
+  public void duplicateFieldsFallBack() {
+    assertTrue(create("a", "b", "a") instanceof ArrayObject);
+  }
+
+  @Test
+  public void updatesChangeShape() {
+    ShapedObject o = (ShapedObject) create("a", "b");
+    o.insert(new QNm("c"), new Int32(2));
+    assertSame(((ShapedObject) create("a", "b", "c")).shape(), o.shape());
+    o.rename(new QNm("a"), new QNm("x"));
+    assertEquals(new QNm("x"), o.name(0));
+    assertEquals(new Int32(0), o.get(new QNm("x")));
+    o.remove(new QNm("b"));
+    assertEquals(2, o.len());
+    assertEquals(new Int32(2), o.get(new QNm("c")));
+    o.replace(new QNm("c"), new Int32(42));
+    assertEquals(new Int32(42), o.value(1));
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.node;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.brackit.query.atomic.QNm;
+import io.brackit.query.jdm.node.Node;
+import io.brackit.query.node.d2linked.D2NodeFactory;
+import io.brackit.query.node.parser.DocumentParser;
+import io.brackit.query.util.path.Path;
+import org.junit.Test;
+
+public class PathStackStreamTest {
+  private static final String DOCUMENT =
+      "<r><a><x><b id='1'><c id='2'/></b></x><a><b id='3'><c id='4'/><c id='5'/></b></a></a><b id='6'><c id='7'/></b></r>";
+
+  private Node<?> root() {
+    return new D2NodeFactory().build(new DocumentParser(DOCUMENT)).getFirstChild();
+  }
+
+  private static String id(Node<?> node) {
+    return node.getAttribute(new QNm("id")).getValue().stringValue();
+  }
+
+  @Test
+  public void descendantChildPath() {
+    Node<?> root = root();
+    Path<String> path = new Path<String>().descendant("a").descendant("b").child("c");
+    try (PathStackStream.Default s = new PathStackStream.Default(root.getDescendantOrSelf(), path)) {
+      assertEquals("2", id(s.next()));
+      assertEquals("4", id(s.next()));
+      assertEquals("5", id(s.next()));
+      assertNull(s.next());
+    }
+  }
+
+  @Test
+  public void childPath() {
+    Node<?> root = root();
+    Path<String> path = new Path<String>().child("b").child("c");
+    try (PathStackStream.Default s = new PathStackStream.Default(root.getDescendantOrSelf(), path)) {
+      assertEquals("7", id(s.next()));
+      assertNull(s.next());
+    }
+  }
+
+  @Test
+  public void matchingNodes() {
+    Node<?> root = root();
+    Path<String> path = new Path<String>().descendant("a").child(null).child("c");
+    try (PathStackStream<Node<?>[]> s = new PathStackStream<>(root.getDescendantOrSelf(), path) {
+      @Override
+      protected Node<?>[] match(Node<?>[] matchingNodes) {
+        return matchingNodes;
+      }
+    }) {
+      Node<?>[] match = s.next();
+      assertEquals(3, match.length);
+      assertEquals("a", match[0].getName().stringValue());
+      assertTrue(match[0].isParentOf(match[1]));
+      assertEquals("3", id(match[1]));
+      assertEquals("4", id(match[2]));
+      assertEquals("5", id(s.next()[2]));
+      assertNull(s.next());
+    }
+  }
+}
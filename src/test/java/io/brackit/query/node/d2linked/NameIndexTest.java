@@ -0,0 +1,113 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.node.d2linked;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.brackit.query.atomic.QNm;
+import io.brackit.query.jdm.Axis;
+import io.brackit.query.jdm.Kind;
+import io.brackit.query.jdm.Stream;
+import io.brackit.query.jdm.node.Node;
+import io.brackit.query.jdm.type.ElementType;
+import io.brackit.query.node.parser.DocumentParser;
+import org.junit.Test;
+
+public class NameIndexTest {
+  private static final String DOCUMENT =
+      "<a><b><c/><b><c/></b></b><x:c xmlns:x='urn:x'/><c><b/></c></a>";
+
+  private static List<Node<?>> list(Stream<? extends Node<?>> s) {
+    List<Node<?>> nodes = new ArrayList<>();
+    try (s) {
+      Node<?> node;
+      while ((node = s.next()) != null) {
+        nodes.add(node);
+      }
+    }
+    return nodes;
+  }
+
+  private static List<Node<?>> scan(Node<?> node, QNm name, boolean self) {
+    List<Node<?>> nodes = new ArrayList<>();
+    for (Node<?> n : list(node.getDescendantOrSelf())) {
+      if ((n.getKind() == Kind.ELEMENT) && (n.getName().equals(name)) && ((self) || (n != node))) {
+        nodes.add(n);
+      }
+    }
+    return nodes;
+  }
+
+  private static void check(Node<?> node, QNm name) {
+    Stream<? extends Node<?>> descendants = node.performStep(Axis.DESCENDANT, new ElementType(name));
+    assertNotNull(descendants);
+    assertEquals(scan(node, name, false), list(descendants));
+    Stream<? extends Node<?>> descendantsOrSelf = node.performStep(Axis.DESCENDANT_OR_SELF, new ElementType(name));
+    assertNotNull(descendantsOrSelf);
+    assertEquals(scan(node, name, true), list(descendantsOrSelf));
+  }
+
+  @Test
+  public void descendantsInDocumentOrder() {
+    D2Node document = new D2NodeFactory().build(new DocumentParser(DOCUMENT));
+    for (Node<?> node : list(document.getDescendantOrSelf())) {
+      if (node.getKind() != Kind.TEXT) {
+        check(node, new QNm("b"));
+        check(node, new QNm("c"));
+        check(node, new QNm("urn:x", "x", "c"));
+        check(node, new QNm("d"));
+      }
+    }
+  }
+
+  @Test
+  public void descendantsAfterUpdate() {
+    D2Node document = new D2NodeFactory().build(new DocumentParser(DOCUMENT));
+    D2Node a = document.getFirstChild();
+    D2Node c = a.getLastChild();
+    c.getFirstChild().append(Kind.ELEMENT, new QNm("c"), null);
+    check(document, new QNm("c"));
+    a.getFirstChild().delete();
+    check(document, new QNm("c"));
+    c.setName(new QNm("d"));
+    check(document, new QNm("c"));
+    check(document, new QNm("d"));
+  }
+
+  @Test
+  public void fragmentWithoutIndex() {
+    D2Node element = new D2NodeFactory().build(new DocumentParser(DOCUMENT)).getFirstChild();
+    D2Node copy = new D2NodeFactory().copy(element);
+    assertNull(copy.performStep(Axis.DESCENDANT, new ElementType(new QNm("b"))));
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.operator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.brackit.query.QueryContext;
+import io.brackit.query.Tuple;
+import io.brackit.query.atomic.Bool;
+import io.brackit.query.atomic.Int32;
+import io.brackit.query.atomic.IntNumeric;
+import io.brackit.query.jdm.Expr;
+import io.brackit.query.jdm.Item;
+import io.brackit.query.jdm.Sequence;
+import io.brackit.query.sequence.ItemSequence;
+import org.junit.Test;
+
+public class BatchCursorTest {
+
+  private abstract static class Fn implements Expr {
+    @Override
+    public Item evaluateToItem(QueryContext ctx, Tuple tuple) {
+      return (Item) evaluate(ctx, tuple);
+    }
+
+    @Override
+    public boolean isUpdating() {
+      return false;
+    }
+
+    @Override
+    public boolean isVacuous() {
+      return false;
+    }
+  }
+
+  private static int intAt(Tuple t, int pos) {
+    return ((IntNumeric) t.get(pos)).intValue();
+  }
+
+  /**
+   * for $x in (0 to $n - 1) for $y in (0 to $x mod 4 - 1) let $z := $x + $y
+   * where $z mod 3 ne 0 count $c
+   */
+  private static Operator pipeline(int n) {
+    Operator op = new ForBind(new Start(), new Fn() {
+      @Override
+      public Sequence evaluate(QueryContext ctx, Tuple tuple) {
+        Item[] items = new Item[n];
+        for (int i = 0; i < n; i++) {
+          items[i] = new Int32(i);
+        }
+        return new ItemSequence(items);
+      }
+    }, false);
+    op = new ForBind(op, new Fn() {
+      @Override
+      public Sequence evaluate(QueryContext ctx, Tuple tuple) {
+        int len = intAt(tuple, 0) % 4;
+        Item[] items = new Item[len];
+        for (int i = 0; i < len; i++) {
+          items[i] = new Int32(i);
+        }
+        return new ItemSequence(items);
+      }
+    }, false);
+    op = new LetBind(op, new Fn() {
+      @Override
+      public Sequence evaluate(QueryContext ctx, Tuple tuple) {
+        return new Int32(intAt(tuple, 0) + intAt(tuple, 1));
+      }
+    });
+    op = new Select(op, new Fn() {
+      @Override
+      public Sequence evaluate(QueryContext ctx, Tuple tuple) {
+        return (intAt(tuple, 2) % 3 != 0) ? Bool.TRUE : Bool.FALSE;
+      }
+    });
+    return new Count(op);
+  }
+
+  private static List<String> drain(Cursor c, int batchSize) {
+    List<String> result = new ArrayList<>();
+    c.open(null);
+    if (batchSize == 0) {
+      Tuple t;
+      while ((t = c.next(null)) != null) {
+        result.add(intAt(t, 0) + "/" + intAt(t, 1) + "/" + intAt(t, 2) + "/" + intAt(t, 3));
+      }
+    } else {
+      Tuple[] buf = new Tuple[batchSize];
+      int n;
+      while ((n = c.next(null, buf)) > 0) {
+        for (int i = 0; i < n; i++) {
+          Tuple t = buf[i];
+          result.add(intAt(t, 0) + "/" + intAt(t, 1) + "/" + intAt(t, 2) + "/" + intAt(t, 3));
+        }
+      }
+    }
+    c.close(null);
+    return result;
+  }
+
+  @Test
+  public void batchesMatchSingleTuples() {
+    List<String> expected = drain(pipeline(100).create(null, new TupleImpl()), 0);
+    assertEquals(100, expected.size());
+    for (int batchSize : new int[] { 1, 2, 7, 64, 1000 }) {
+      assertEquals(expected, drain(pipeline(100).create(null, new TupleImpl()), batchSize));
+    }
+  }
+
+  @Test
+  public void legacyCursorIsAdapted() {
+    Cursor c = new IntegerSource(1, 2, 3, 4, 5);
+    c.open(null);
+    Tuple[] buf = new Tuple[2];
+    assertEquals(2, c.next(null, buf));
+    assertEquals(1, ((IntNumeric) buf[0]).intValue());
+    assertEquals(2, c.next(null, buf));
+    assertEquals(1, c.next(null, buf));
+    assertEquals(5, ((IntNumeric) buf[0]).intValue());
+    assertEquals(0, c.next(null, buf));
+  }
+}
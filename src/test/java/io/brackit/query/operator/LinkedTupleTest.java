@@ -0,0 +1,83 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.operator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import io.brackit.query.Tuple;
+import io.brackit.query.atomic.Int32;
+import io.brackit.query.jdm.Sequence;
+import org.junit.Test;
+
+public class LinkedTupleTest {
+
+  private static void assertSameColumns(Tuple expected, Tuple actual) {
+    assertEquals(expected.getSize(), actual.getSize());
+    for (int i = 0; i < expected.getSize(); i++) {
+      assertSame(expected.get(i), actual.get(i));
+    }
+    assertArrayEquals(expected.array(), actual.array());
+  }
+
+  @Test
+  public void behavesLikeCopyingTuple() {
+    Tuple copied = new TupleImpl(new Sequence[] { new Int32(0), new Int32(1) });
+    Tuple linked = LinkedTuple.wrap(copied);
+    // deep enough to force flattening of the prefix chain
+    for (int i = 2; i < 3 * LinkedTuple.MAX_DEPTH; i++) {
+      Sequence s = new Int32(i);
+      if (i % 3 == 0) {
+        Sequence[] two = new Sequence[] { s, null };
+        copied = copied.concat(two);
+        linked = linked.concat(two);
+      } else {
+        copied = copied.concat(s);
+        linked = linked.concat(s);
+      }
+      assertSameColumns(copied, linked);
+    }
+    assertSameColumns(copied.replace(1, Int32.ZERO), linked.replace(1, Int32.ZERO));
+    int last = copied.getSize() - 1;
+    assertSameColumns(copied.replace(last, Int32.ZERO), linked.replace(last, Int32.ZERO));
+    assertSameColumns(copied.conreplace(Int32.ONE, 0, Int32.ONE).project(1, 3),
+                      linked.conreplace(Int32.ONE, 0, Int32.ONE).project(1, 3));
+    assertSameColumns(copied.project(4, 2, 0), linked.project(4, 2, 0));
+  }
+
+  @Test
+  public void strippingAppendedColumnsSharesPrefix() {
+    Tuple base = LinkedTuple.wrap(new TupleImpl(new Sequence[] { new Int32(0), new Int32(1) }));
+    Tuple t = base.concat(new Int32(2));
+    Tuple keys = t.concat(new Sequence[] { new Int32(3), new Int32(4) });
+    assertSame(t, keys.project(0, 3));
+    assertEquals(2, keys.project(0, 2).getSize());
+    assertSame(keys.get(1), keys.project(0, 2).get(1));
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.operator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.brackit.query.ErrorCode;
+import io.brackit.query.QueryContext;
+import io.brackit.query.QueryException;
+import io.brackit.query.Tuple;
+import io.brackit.query.atomic.Int32;
+import io.brackit.query.atomic.IntNumeric;
+import org.junit.Test;
+
+public class ParallelizerTest {
+
+  private static class Source implements Operator {
+    final int size;
+    final boolean fail;
+    final CountDownLatch closed = new CountDownLatch(1);
+
+    Source(int size, boolean fail) {
+      this.size = size;
+      this.fail = fail;
+    }
+
+    @Override
+    public Cursor create(QueryContext ctx, Tuple tuple) {
+      return new Cursor() {
+        int pos;
+
+        @Override
+        public void open(QueryContext ctx) {
+        }
+
+        @Override
+        public Tuple next(QueryContext ctx) {
+          if (pos == size) {
+            if (fail) {
+              throw new QueryException(ErrorCode.BIT_DYN_INT_ERROR, "failed");
+            }
+            return null;
+          }
+          return new Int32(pos++);
+        }
+
+        @Override
+        public void close(QueryContext ctx) {
+          closed.countDown();
+        }
+      };
+    }
+
+    @Override
+    public Cursor create(QueryContext ctx, Tuple[] buf, int len) {
+      return create(ctx, buf[0]);
+    }
+
+    @Override
+    public int tupleWidth(int initSize) {
+      return 1;
+    }
+  }
+
+  @Test
+  public void deliversAllTuplesInOrder() {
+    int size = Parallelizer.BATCH_SIZE * Parallelizer.BUFFERS * 5 + 7;
+    Cursor c = new Parallelizer(new Source(size, false)).create(null, (Tuple) null);
+    c.open(null);
+    Tuple t;
+    int expected = 0;
+    while ((t = c.next(null)) != null) {
+      assertEquals(expected++, ((IntNumeric) t).intValue());
+    }
+    c.close(null);
+    assertEquals(size, expected);
+  }
+
+  @Test
+  public void closeCancelsBlockedProducer() throws Exception {
+    Source source = new Source(Integer.MAX_VALUE, false);
+    Cursor c = new Parallelizer(source).create(null, (Tuple) null);
+    c.open(null);
+    assertEquals(0, ((IntNumeric) c.next(null)).intValue());
+    c.close(null);
+    assertNull(c.next(null));
+    assertTrue(source.closed.await(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void errorIsRethrownToConsumer() {
+    Cursor c = new Parallelizer(new Source(10, true)).create(null, (Tuple) null);
+    c.open(null);
+    for (int i = 0; i < 10; i++) {
+      c.next(null);
+    }
+    try {
+      c.next(null);
+    } catch (QueryException e) {
+      assertEquals(ErrorCode.BIT_DYN_INT_ERROR, e.getCode());
+      return;
+    } finally {
+      c.close(null);
+    }
+    throw new AssertionError("expected QueryException");
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.util.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.brackit.query.jdm.Item;
+import io.brackit.query.jdm.Iter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedLineIterTest {
+
+  private Path file;
+
+  private int windowSize;
+
+  private int splitSize;
+
+  @Before
+  public void setUp() throws Exception {
+    file = Files.createTempFile("lines", ".txt");
+    windowSize = MappedLineIter.WINDOW_SIZE;
+    splitSize = MappedLineIter.SPLIT_SIZE;
+    // tiny windows and splits to cross all boundaries
+    MappedLineIter.WINDOW_SIZE = 7;
+    MappedLineIter.SPLIT_SIZE = 16;
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    MappedLineIter.WINDOW_SIZE = windowSize;
+    MappedLineIter.SPLIT_SIZE = splitSize;
+    Files.deleteIfExists(file);
+  }
+
+  private static List<String> readLines(String content) throws Exception {
+    List<String> lines = new ArrayList<>();
+    try (BufferedReader in = new BufferedReader(new StringReader(content))) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        lines.add(line);
+      }
+    }
+    return lines;
+  }
+
+  private static void drain(Iter it, List<String> lines) throws Exception {
+    try (it) {
+      Item item;
+      while ((item = it.next()) != null) {
+        lines.add(item.atomize().stringValue());
+      }
+    }
+  }
+
+  private static void splitAll(Iter it, List<String> lines) throws Exception {
+    Iter.Split split = it.split(1, 1);
+    if (split.tail == null) {
+      drain(split.head, lines);
+    } else {
+      splitAll(split.head, lines);
+      splitAll(split.tail, lines);
+    }
+  }
+
+  private void check(String content) throws Exception {
+    Files.writeString(file, content, StandardCharsets.UTF_8);
+    List<String> expected = readLines(content);
+
+    List<String> lines = new ArrayList<>();
+    drain(new MappedLineIter(file), lines);
+    assertEquals(expected, lines);
+
+    lines = new ArrayList<>();
+    splitAll(new MappedLineIter(file), lines);
+    assertEquals(expected, lines);
+  }
+
+  @Test
+  public void lineTerminators() throws Exception {
+    check("");
+    check("\n");
+    check("a");
+    check("a\nb\n");
+    check("a\r\nb\rc\n\n\r\nd");
+    check("a very long line that spans several windows\r\nend\r");
+  }
+
+  @Test
+  public void multiByteCharacters() throws Exception {
+    check("\u00e4\u00f6\u00fc\n\u20ac\u20ac\u20ac\u20ac\n\ud83d\ude00x\n");
+  }
+
+  @Test
+  public void splitLargeFile() throws Exception {
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      content.append("{\"id\": ").append(i).append("}\n");
+    }
+    check(content.toString());
+  }
+
+  @Test
+  public void localPath() throws Exception {
+    assertNotNull(URIHandler.getLocalPath(file.toUri().toString()));
+    assertEquals(file, URIHandler.getLocalPath(file.toString()));
+    assertEquals(null, URIHandler.getLocalPath("http://example.org/lines.txt"));
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.util.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import io.brackit.query.Tuple;
+import io.brackit.query.atomic.Int32;
+import io.brackit.query.atomic.QNm;
+import io.brackit.query.atomic.Str;
+import io.brackit.query.function.json.JSONParser;
+import io.brackit.query.jdm.Sequence;
+import io.brackit.query.jdm.json.Array;
+import io.brackit.query.jdm.json.Object;
+import io.brackit.query.operator.TupleImpl;
+import org.junit.Test;
+
+public class TupleCodecTest {
+
+  @Test
+  public void jsonItemsByValue() throws Exception {
+    Object object = (Object) new JSONParser("{\"a\": 1, \"b\": [\"x\", {\"c\": null}], \"d\": {}}").parse();
+    Tuple tuple = new TupleImpl(new Sequence[] { object, new Int32(42) });
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    TupleCodec writer = new TupleCodec();
+    writer.write(new DataOutputStream(bytes), tuple);
+
+    // a fresh codec has no references, so the items must be in the bytes
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    Tuple read = new TupleCodec().read(in);
+    assertNull(new TupleCodec().read(in));
+
+    Object copy = (Object) read.get(0);
+    assertEquals(3, copy.len());
+    assertEquals(new Int32(1), copy.get(new QNm("a")));
+    Array b = (Array) copy.get(new QNm("b"));
+    assertEquals(new Str("x"), b.at(0));
+    assertEquals(1, ((Object) b.at(1)).len());
+    assertEquals(0, ((Object) copy.get(new QNm("d"))).len());
+    assertEquals(new Int32(42), read.get(1));
+  }
+
+  @Test
+  public void jsonItemsSizedByContent() throws Exception {
+    Array small = (Array) new JSONParser("[1]").parse();
+    Array large = (Array) new JSONParser("[\"" + "x".repeat(10000) + "\", 2, 3]").parse();
+    long smallSize = TupleCodec.size(new Sequence[] { small });
+    long largeSize = TupleCodec.size(new Sequence[] { large });
+    assertTrue(largeSize > smallSize + 10000);
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.util.join;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import io.brackit.query.Tuple;
+import io.brackit.query.atomic.Atomic;
+import io.brackit.query.atomic.Dbl;
+import io.brackit.query.atomic.Int32;
+import io.brackit.query.atomic.Str;
+import io.brackit.query.atomic.Una;
+import io.brackit.query.jdm.Sequence;
+import io.brackit.query.jdm.Stream;
+import io.brackit.query.operator.TupleImpl;
+import io.brackit.query.sequence.ItemSequence;
+import io.brackit.query.util.Cmp;
+import org.junit.Test;
+
+public class HybridJoinTableTest {
+
+  private static Atomic key(int i) {
+    switch (i % 4) {
+      case 0:
+        return new Int32(i % 50);
+      case 1:
+        return new Dbl(i % 50);
+      case 2:
+        return new Str("k" + (i % 50));
+      default:
+        return new Una(Integer.toString(i % 50));
+    }
+  }
+
+  private static void build(HybridJoinTable hybrid, MultiTypeJoinTable table, boolean isGCmp) {
+    for (int i = 0; i < 1000; i++) {
+      Sequence keys = (isGCmp && i % 10 == 0) ? new ItemSequence(new Int32(i % 50), new Str("k" + (i % 7))) : key(i);
+      Sequence[] bindings = new Sequence[] { new Int32(i), new Str("v" + i) };
+      hybrid.add(keys, bindings, i + 1);
+      table.add(keys, bindings, i + 1);
+    }
+    hybrid.build();
+  }
+
+  private static List<String> toList(FastList<Sequence[]> matches) {
+    List<String> list = new ArrayList<>();
+    for (int i = 0; i < matches.getSize(); i++) {
+      list.add(matches.get(i)[0].toString());
+    }
+    return list;
+  }
+
+  @Test
+  public void deferredBatch() {
+    for (boolean isGCmp : new boolean[] { false, true }) {
+      HybridJoinTable hybrid = new HybridJoinTable(Cmp.eq, isGCmp, false, 4096);
+      MultiTypeJoinTable table = new MultiTypeJoinTable(Cmp.eq, isGCmp, false);
+      build(hybrid, table, isGCmp);
+      assertTrue(hybrid.isSpilled());
+      hybrid.beginDeferred(false, 2);
+      Tuple[] ts = new Tuple[120];
+      Sequence[] keys = new Sequence[120];
+      List<String> expected = new ArrayList<>();
+      for (int i = 0; i < keys.length; i++) {
+        ts[i] = new TupleImpl(new Sequence[] { new Int32(i) });
+        keys[i] = (isGCmp && i % 3 == 0) ? new ItemSequence(key(i), key(i + 1)) : key(i);
+      }
+      long base = hybrid.deferBatch(ts, keys, 60);
+      base += hybrid.deferBatch(Arrays.copyOfRange(ts, 60, 120), Arrays.copyOfRange(keys, 60, 120), 60) - 60;
+      for (int i = 0; i < keys.length; i++) {
+        for (String match : toList(table.probe(keys[i]))) {
+          expected.add((base + i) + ":" + i + ":" + match);
+        }
+      }
+      List<String> actual = new ArrayList<>();
+      Stream<Tuple> rows = hybrid.endDeferredRows();
+      Tuple row;
+      while ((row = rows.next()) != null) {
+        Tuple t = HybridJoinTable.strip(row);
+        actual.add(HybridJoinTable.seq(row) + ":" + t.get(0) + ":" + t.get(1));
+      }
+      rows.close();
+      hybrid.clear();
+      assertEquals(expected, actual);
+    }
+  }
+
+  @Test
+  public void deferredLeftJoin() {
+    HybridJoinTable hybrid = new HybridJoinTable(Cmp.eq, true, false, 4096);
+    MultiTypeJoinTable table = new MultiTypeJoinTable(Cmp.eq, true, false);
+    build(hybrid, table, true);
+    assertTrue(hybrid.isSpilled());
+
+    List<String> expected = new ArrayList<>();
+    List<String> actual = new ArrayList<>();
+    hybrid.beginDeferred(true, 2);
+    for (int i = 0; i < 200; i++) {
+      Tuple t = new TupleImpl(new Sequence[] { new Int32(i) });
+      // keys 50 to 59 have no matches
+      Sequence keys = (i % 5 == 0) ? new ItemSequence(key(i), new Int32(50 + i % 10)) : key(i);
+      List<String> matches = toList(table.probe(keys));
+      if (matches.isEmpty()) {
+        expected.add(i + ":null");
+      }
+      for (String match : matches) {
+        expected.add(i + ":" + match);
+      }
+      assertEquals(0, hybrid.probeDeferred(t, keys).getSize());
+    }
+    Stream<Tuple> results = hybrid.endDeferred();
+    Tuple t;
+    while ((t = results.next()) != null) {
+      actual.add(t.get(0) + ":" + t.get(1));
+    }
+    results.close();
+    hybrid.clear();
+    assertEquals(expected, actual);
+  }
+
+  @Test
+  public void inMemory() {
+    HybridJoinTable hybrid = new HybridJoinTable(Cmp.eq, false, false, -1);
+    MultiTypeJoinTable table = new MultiTypeJoinTable(Cmp.eq, false, false);
+    build(hybrid, table, false);
+    assertTrue(!hybrid.isSpilled());
+    assertEquals(toList(table.probe(new Int32(7))), toList(hybrid.probe(new Int32(7))));
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.util.join;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.brackit.query.atomic.Atomic;
+import io.brackit.query.atomic.Dbl;
+import io.brackit.query.atomic.Int;
+import io.brackit.query.atomic.Int32;
+import io.brackit.query.atomic.Int64;
+import io.brackit.query.atomic.Str;
+import io.brackit.query.jdm.Sequence;
+import io.brackit.query.jdm.Type;
+import io.brackit.query.util.join.AbstractJoinTable.TValue;
+import org.junit.Test;
+
+public class OpenHashJoinTableTest {
+
+  private static List<String> lookup(AbstractJoinTable table, Atomic key) {
+    FastList<TValue> matches = new FastList<>();
+    table.lookup(matches, key);
+    List<String> list = new ArrayList<>();
+    for (int i = 0; i < matches.getSize(); i++) {
+      list.add(matches.get(i).toString());
+    }
+    return list;
+  }
+
+  private static void add(AbstractJoinTable t1, AbstractJoinTable t2, Atomic key, int pos) {
+    Sequence[] bindings = new Sequence[] { new Int32(pos) };
+    t1.add(key, pos, bindings);
+    t2.add(key, pos, bindings);
+  }
+
+  @Test
+  public void integerKeys() {
+    HashJoinTable expected = new HashJoinTable();
+    NumericHashJoinTable table = new NumericHashJoinTable(Type.INR);
+    Atomic big = new Int(new BigDecimal("123456789012345678901234567890"));
+    for (int i = 1; i <= 5000; i++) {
+      add(expected, table, (i % 2 == 0) ? new Int32(i % 300) : new Int64(i % 300), i);
+      // duplicate keys of the same row are ignored
+      add(expected, table, new Int32(i % 300), i);
+      if (i % 100 == 0) {
+        add(expected, table, big, i);
+      }
+    }
+    // out of order positions
+    add(expected, table, new Int32(7), 3);
+    add(expected, table, new Int32(7), 7);
+    for (int i = 0; i < 310; i++) {
+      assertEquals(lookup(expected, new Int32(i)), lookup(table, new Int64(i)));
+    }
+    assertEquals(lookup(expected, big), lookup(table, big));
+    assertEquals(expected.entries().size(), table.entries().size());
+  }
+
+  @Test
+  public void doubleKeys() {
+    HashJoinTable expected = new HashJoinTable();
+    NumericHashJoinTable table = new NumericHashJoinTable(Type.DBL);
+    double[] values = { 0.0, -0.0, Double.NaN, 1.5, Double.POSITIVE_INFINITY };
+    for (int i = 1; i <= 100; i++) {
+      add(expected, table, new Dbl(values[i % values.length]), i);
+    }
+    for (double v : values) {
+      assertEquals(lookup(expected, new Dbl(v)), lookup(table, new Dbl(v)));
+    }
+  }
+
+  @Test
+  public void stringKeys() {
+    HashJoinTable expected = new HashJoinTable();
+    StringHashJoinTable table = new StringHashJoinTable(Type.STR);
+    for (int i = 1; i <= 2000; i++) {
+      add(expected, table, new Str("k" + (i % 97)), i);
+    }
+    for (int i = 0; i < 100; i++) {
+      assertEquals(lookup(expected, new Str("k" + i)), lookup(table, new Str("k" + i)));
+    }
+  }
+}
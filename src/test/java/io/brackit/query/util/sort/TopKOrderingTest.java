@@ -0,0 +1,83 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.util.sort;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Random;
+
+import io.brackit.query.Tuple;
+import io.brackit.query.atomic.Int32;
+import io.brackit.query.jdm.Expr;
+import io.brackit.query.jdm.Sequence;
+import io.brackit.query.jdm.Stream;
+import io.brackit.query.operator.TupleImpl;
+import io.brackit.query.util.sort.Ordering.OrderModifier;
+import org.junit.Test;
+
+public class TopKOrderingTest {
+
+  private static final OrderModifier[] DESC = new OrderModifier[] { new OrderModifier(false, true, null) };
+
+  @Test
+  public void matchesPrefixOfFullSort() {
+    for (int k : new int[] { 1, 10, 100, 2000 }) {
+      Ordering full = new Ordering(new Expr[1], DESC);
+      Ordering topK = new TopKOrdering(new Expr[1], DESC, k);
+      Random rnd = new Random(k);
+      for (int i = 0; i < 1000; i++) {
+        Sequence key = new Int32(rnd.nextInt(50));
+        Tuple t = new TupleImpl(new Sequence[] { new Int32(i) });
+        full.add(new Sequence[] { key }, t);
+        topK.add(new Sequence[] { key }, t);
+      }
+      Stream<Tuple> expected = full.sorted();
+      Stream<Tuple> actual = topK.sorted();
+      for (int i = 0; i < Math.min(k, 1000); i++) {
+        // ties must keep the arrival order of the stable full sort
+        assertEquals(expected.next().get(0), actual.next().get(0));
+      }
+      assertNull(actual.next());
+      expected.close();
+      actual.close();
+    }
+  }
+
+  @Test
+  public void emptyKeysOrderLeast() {
+    Ordering topK = new TopKOrdering(new Expr[1], new OrderModifier[] { new OrderModifier(true, true, null) }, 2);
+    topK.add(new Sequence[] { new Int32(2) }, new TupleImpl(new Int32(0)));
+    topK.add(new Sequence[] { null }, new TupleImpl(new Int32(1)));
+    topK.add(new Sequence[] { new Int32(1) }, new TupleImpl(new Int32(2)));
+    Stream<Tuple> sorted = topK.sorted();
+    assertEquals(new Int32(1), sorted.next().get(0));
+    assertEquals(new Int32(2), sorted.next().get(0));
+    assertNull(sorted.next());
+  }
+}
@@ -0,0 +1,213 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package io.brackit.query.util.sort;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import io.brackit.query.Tuple;
+import io.brackit.query.atomic.Atomic;
+import io.brackit.query.atomic.Dbl;
+import io.brackit.query.atomic.Int32;
+import io.brackit.query.atomic.QNm;
+import io.brackit.query.atomic.Str;
+import io.brackit.query.block.FJControl;
+import io.brackit.query.jdm.Expr;
+import io.brackit.query.jdm.Sequence;
+import io.brackit.query.jdm.Stream;
+import io.brackit.query.jdm.json.Array;
+import io.brackit.query.jsonitem.array.DArray;
+import io.brackit.query.node.d2linked.D2Node;
+import io.brackit.query.node.d2linked.D2NodeFactory;
+import io.brackit.query.operator.TupleImpl;
+import io.brackit.query.sequence.ItemSequence;
+import org.junit.Test;
+
+public class TupleSortTest {
+
+  private static final Comparator<Tuple> BY_KEY =
+      (t1, t2) -> Integer.compare(((Int32) t1.get(0)).intValue(), ((Int32) t2.get(0)).intValue());
+
+  @Test
+  public void mainMemorySort() {
+    TupleSort sort = new TupleSort(BY_KEY, -1);
+    Random rnd = new Random(42);
+    for (int i = 0; i < 1000; i++) {
+      sort.add(new TupleImpl(new Sequence[] { new Int32(rnd.nextInt(100)), new Int32(i) }));
+    }
+    sort.sort();
+    checkSortedAndStable(sort.stream(), 1000);
+  }
+
+  @Test
+  public void externalSort() {
+    // a tiny budget forces a spill after a few tuples
+    TupleSort sort = new TupleSort(BY_KEY, 2048);
+    Random rnd = new Random(42);
+    for (int i = 0; i < 10000; i++) {
+      sort.add(new TupleImpl(new Sequence[] { new Int32(rnd.nextInt(100)), new Int32(i), new Str("v" + i) }));
+    }
+    sort.sort();
+    checkSortedAndStable(sort.stream(), 10000);
+  }
+
+  @Test
+  public void externalSortWithIntermediateMerges() {
+    int fanIn = TupleSort.FAN_IN;
+    TupleSort.FAN_IN = 3;
+    try {
+      TupleSort sort = new TupleSort(BY_KEY, 512);
+      for (int i = 0; i < 5000; i++) {
+        sort.add(new TupleImpl(new Sequence[] { new Int32((i * 7919) % 101), new Int32(i) }));
+      }
+      sort.sort();
+      checkSortedAndStable(sort.stream(), 5000);
+    } finally {
+      TupleSort.FAN_IN = fanIn;
+    }
+  }
+
+  @Test
+  public void parallelSortOnQueryPool() {
+    FJControl control = new FJControl(4, FJControl.PERMITS);
+    int threshold = TupleSort.PARALLEL_THRESHOLD;
+    TupleSort.PARALLEL_THRESHOLD = 1;
+    try {
+      TupleSort sort = new TupleSort(BY_KEY, -1, control);
+      Random rnd = new Random(42);
+      for (int i = 0; i < 50000; i++) {
+        sort.add(new TupleImpl(new Sequence[] { new Int32(rnd.nextInt(100)), new Int32(i) }));
+      }
+      sort.sort();
+      checkSortedAndStable(sort.stream(), 50000);
+    } finally {
+      TupleSort.PARALLEL_THRESHOLD = threshold;
+      control.retire();
+    }
+  }
+
+  @Test
+  public void spilledBindingsAreRestored() {
+    DArray array = new DArray(java.util.List.of(new Int32(1)));
+    D2Node node = new D2NodeFactory().element(new QNm("e"));
+    TupleSort sort = new TupleSort(BY_KEY, 256);
+    for (int i = 100; i > 0; i--) {
+      sort.add(new TupleImpl(new Sequence[] { new Int32(i),
+          new ItemSequence(new Str("s" + i), new Int32(i)), array, null, node }));
+    }
+    sort.sort();
+    Stream<Tuple> sorted = sort.stream();
+    for (int i = 1; i <= 100; i++) {
+      Tuple t = sorted.next();
+      assertEquals(new Int32(i), t.get(0));
+      assertEquals("s" + i + "," + i, t.get(1).toString());
+      // JSON arrays are spilled by value
+      assertEquals(1, ((Array) t.get(2)).len());
+      assertEquals(new Int32(1), ((Array) t.get(2)).at(0));
+      assertNull(t.get(3));
+      // nodes keep their identity
+      assertSame(node, t.get(4));
+    }
+    assertNull(sorted.next());
+    sorted.close();
+  }
+
+  @Test
+  public void normalizedKeysMatchItemComparison() throws Exception {
+    Ordering.OrderModifier[] modifier = new Ordering.OrderModifier[] { new Ordering.OrderModifier(true, true, null),
+        new Ordering.OrderModifier(false, false, null) };
+    FJControl control = new FJControl(4, FJControl.PERMITS);
+    Ordering ordering = new Ordering(new Expr[2], modifier, control);
+    List<Sequence[]> rows = new ArrayList<>();
+    Random rnd = new Random(7);
+    for (int i = 0; i < 20000; i++) {
+      Sequence k1 = (rnd.nextInt(10) == 0) ? null : new Int32(rnd.nextInt(20) - 10);
+      double d = rnd.nextInt(5) - 2;
+      Sequence k2 = (rnd.nextInt(10) == 0) ? null : new Dbl((d == 2) ? Double.NaN : d);
+      rows.add(new Sequence[] { new Int32(i), k1, k2 });
+      ordering.add(new Sequence[] { k1, k2 }, new TupleImpl(new Int32(i)));
+    }
+    // reference order on the items themselves
+    rows.sort((r1, r2) -> {
+      for (int i = 1; i <= 2; i++) {
+        Atomic l = (Atomic) r1[i];
+        Atomic r = (Atomic) r2[i];
+        if ((l == null) || (r == null)) {
+          if (l != r) {
+            return ((l == null) == modifier[i - 1].EMPTY_LEAST) ? -1 : 1;
+          }
+          continue;
+        }
+        int res = l.atomicCmp(r);
+        if (res != 0) {
+          return modifier[i - 1].ASC ? res : -res;
+        }
+      }
+      return 0;
+    });
+    int threshold = TupleSort.PARALLEL_THRESHOLD;
+    TupleSort.PARALLEL_THRESHOLD = 1;
+    Stream<Tuple> sorted;
+    try {
+      sorted = ordering.sorted();
+    } finally {
+      TupleSort.PARALLEL_THRESHOLD = threshold;
+      control.retire();
+    }
+    for (Sequence[] row : rows) {
+      assertEquals(row[0], sorted.next().get(0));
+    }
+    assertNull(sorted.next());
+    sorted.close();
+  }
+
+  private static void checkSortedAndStable(Stream<Tuple> sorted, int expected) {
+    Tuple prev = null;
+    int count = 0;
+    Tuple t;
+    while ((t = sorted.next()) != null) {
+      if (prev != null) {
+        int res = BY_KEY.compare(prev, t);
+        if (res > 0 || (res == 0
+            && ((Int32) prev.get(1)).intValue() > ((Int32) t.get(1)).intValue())) {
+          throw new AssertionError("Not sorted: " + prev.get(0) + "," + prev.get(1) + " > " + t.get(0) + "," + t.get(1));
+        }
+      }
+      prev = t;
+      count++;
+    }
+    sorted.close();
+    assertEquals(expected, count);
+  }
+}